@@ -0,0 +1,43 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * Runs the benchmarks with the GC profiler enabled, so that allocation rates are reported along with
+ * throughput and latency. Accepts the same command-line options as the standard JMH launcher.
+ *
+ * @author ppgllrd
+ */
+public class Benchmarks {
+  /**
+   * Main method
+   *
+   * @param args JMH command-line options.
+   * @throws CommandLineOptionException if options are not valid.
+   * @throws RunnerException            if some benchmark fails.
+   * @throws IOException                if help cannot be shown.
+   */
+  public static void main(String[] args) throws CommandLineOptionException, RunnerException, IOException {
+    CommandLineOptions options = new CommandLineOptions(args);
+    if (options.shouldHelp()) {
+      options.showHelp();
+      return;
+    }
+    if (options.shouldList()) {
+      new Runner(options).list();
+      return;
+    }
+    if (options.shouldListWithParams()) {
+      new Runner(options).listWithParams(options);
+      return;
+    }
+    new Runner(new OptionsBuilder().parent(options).addProfiler(GCProfiler.class).build()).run();
+  }
+}
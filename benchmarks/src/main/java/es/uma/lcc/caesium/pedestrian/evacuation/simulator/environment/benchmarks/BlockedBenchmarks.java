@@ -0,0 +1,67 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment.benchmarks;
+
+import es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment.Domain;
+import es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment.EnvironmentGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for domain-wide queries checking whether points are blocked by obstacles, one at a
+ * time and in batches.
+ *
+ * @author ppgllrd
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class BlockedBenchmarks {
+  private static final int QUERIES = 4096;
+
+  @Param({"OFFICE_GRID", "STADIUM", "CAMPUS"})
+  EnvironmentGenerator.Topology topology;
+
+  @Param({"100", "10000"})
+  int obstacles;
+
+  @Param({"8", "64"})
+  int vertices;
+
+  private Domain domain;
+  private double[] xs, ys;
+  private long[] bits;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    domain = new EnvironmentGenerator(topology, 1, obstacles, vertices, 0).generate().getDomain(1);
+    double[][] points = Environments.points(domain, QUERIES, new Random(1));
+    xs = points[0];
+    ys = points[1];
+    bits = new long[(QUERIES + 63) / 64];
+    // build spatial indexes before measuring
+    domain.isBlocked(0, 0);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(QUERIES)
+  public int isBlocked() {
+    int count = 0;
+    for (int i = 0; i < QUERIES; i++) {
+      if (domain.isBlocked(xs[i], ys[i])) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(QUERIES)
+  public long[] blockedMask() {
+    domain.blockedMask(xs, ys, QUERIES, bits);
+    return bits;
+  }
+}
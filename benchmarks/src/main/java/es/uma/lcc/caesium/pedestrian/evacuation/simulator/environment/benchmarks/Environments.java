@@ -0,0 +1,63 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment.benchmarks;
+
+import es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic shapes and query points used by benchmarks.
+ *
+ * @author ppgllrd
+ */
+final class Environments {
+  private Environments() {
+  }
+
+  /**
+   * Creates a shape of a given type centered at a point.
+   *
+   * @param type     type of shape.
+   * @param x        x-coordinate of center.
+   * @param y        y-coordinate of center.
+   * @param size     approximate radius of the shape.
+   * @param vertices number of vertices of polygons.
+   * @param random   source of randomness.
+   * @return the shape.
+   */
+  static Shape shape(ShapeType type, double x, double y, double size, int vertices, Random random) {
+    return switch (type) {
+      case CIRCLE -> new Shape.Circle(x, y, size * (0.5 + 0.5 * random.nextDouble()));
+      case RECTANGLE -> new Shape.Rectangle(x - size, y - size / 2, 2 * size * random.nextDouble(),
+          size * random.nextDouble());
+      case POLYGON -> {
+        // star-shaped polygon with vertices at random distances from the center
+        List<Point2D> points = new ArrayList<>(vertices);
+        for (int i = 0; i < vertices; i++) {
+          double angle = 2 * Math.PI * i / vertices;
+          double r = size * (0.3 + 0.7 * random.nextDouble());
+          points.add(new Point2D(x + r * Math.cos(angle), y + r * Math.sin(angle)));
+        }
+        yield new Shape.Polygon(points);
+      }
+    };
+  }
+
+  /**
+   * Creates random points within a domain.
+   *
+   * @param domain the domain.
+   * @param n      number of points.
+   * @param random source of randomness.
+   * @return x-coordinates followed by y-coordinates of the points.
+   */
+  static double[][] points(Domain domain, int n, Random random) {
+    double[] xs = new double[n], ys = new double[n];
+    for (int i = 0; i < n; i++) {
+      xs[i] = random.nextDouble() * domain.getWidth();
+      ys[i] = random.nextDouble() * domain.getHeight();
+    }
+    return new double[][]{xs, ys};
+  }
+}
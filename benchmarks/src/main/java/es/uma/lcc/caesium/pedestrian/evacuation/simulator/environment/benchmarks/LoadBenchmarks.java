@@ -0,0 +1,67 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment.benchmarks;
+
+import com.github.cliftonlabs.json_simple.JsonException;
+import com.github.cliftonlabs.json_simple.JsonObject;
+import es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment.Environment;
+import es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment.EnvironmentGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for loading environments from json files and serializing them.
+ *
+ * @author ppgllrd
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadBenchmarks {
+  @Param({"OFFICE_GRID", "CAMPUS"})
+  EnvironmentGenerator.Topology topology;
+
+  @Param({"1", "16"})
+  int domains;
+
+  @Param({"100", "10000"})
+  int obstacles;
+
+  @Param({"8", "64"})
+  int vertices;
+
+  private Environment environment;
+  private File file;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    environment = new EnvironmentGenerator(topology, domains, obstacles, vertices, 0).generate();
+    file = File.createTempFile("environment", ".json");
+    file.deleteOnExit();
+    environment.toFile(file);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    file.delete();
+  }
+
+  @Benchmark
+  public Environment fromFile() throws IOException, JsonException {
+    return Environment.fromFile(file);
+  }
+
+  @Benchmark
+  public JsonObject toJson() {
+    return environment.toJson();
+  }
+
+  @Benchmark
+  public String jsonPrettyPrinted() {
+    return environment.jsonPrettyPrinted();
+  }
+}
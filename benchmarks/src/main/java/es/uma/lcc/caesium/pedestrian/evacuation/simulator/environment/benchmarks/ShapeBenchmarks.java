@@ -0,0 +1,99 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment.benchmarks;
+
+import es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment.Shape;
+import es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment.ShapeType;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for point containment and rectangle intersection queries on single shapes. Each
+ * operation is a query for one of a fixed set of random points around the shape. Circles and
+ * rectangles ({@link Analytic}) and polygons ({@link Polygons}) are benchmarked separately, so that
+ * only polygons are run for each number of vertices.
+ *
+ * @author ppgllrd
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class ShapeBenchmarks {
+  private static final int QUERIES = 1024;
+
+  private Shape shape;
+  private double[] xs, ys;
+
+  /**
+   * Creates the shape to be queried.
+   *
+   * @param random source of randomness.
+   * @return the shape.
+   */
+  abstract Shape shape(Random random);
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Random random = new Random(0);
+    shape = shape(random);
+    xs = new double[QUERIES];
+    ys = new double[QUERIES];
+    for (int i = 0; i < QUERIES; i++) {
+      xs[i] = 50 + 30 * (random.nextDouble() - 0.5);
+      ys[i] = 50 + 30 * (random.nextDouble() - 0.5);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(QUERIES)
+  public int contains() {
+    int count = 0;
+    for (int i = 0; i < QUERIES; i++) {
+      if (shape.contains(xs[i], ys[i])) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(QUERIES)
+  public int intersects() {
+    int count = 0;
+    for (int i = 0; i < QUERIES; i++) {
+      if (shape.intersects(xs[i], ys[i], 1, 1)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Queries on circles and rectangles.
+   */
+  public static class Analytic extends ShapeBenchmarks {
+    @Param({"CIRCLE", "RECTANGLE"})
+    ShapeType type;
+
+    @Override
+    Shape shape(Random random) {
+      return Environments.shape(type, 50, 50, 10, 0, random);
+    }
+  }
+
+  /**
+   * Queries on polygons with different numbers of vertices.
+   */
+  public static class Polygons extends ShapeBenchmarks {
+    @Param({"4", "32", "256"})
+    int vertices;
+
+    @Override
+    Shape shape(Random random) {
+      return Environments.shape(ShapeType.POLYGON, 50, 50, 10, vertices, random);
+    }
+  }
+}
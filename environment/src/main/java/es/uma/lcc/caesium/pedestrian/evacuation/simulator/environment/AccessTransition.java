@@ -0,0 +1,23 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+/**
+ * Transition of a pedestrian from a domain to another one through an access.
+ *
+ * @param time         fraction of the step (in {@code [0, 1]}) at which the access is entered
+ *                     (0 if the pedestrian is already within the access).
+ * @param access       the access entered by the pedestrian.
+ * @param gateway      the gateway the access belongs to ({@code null} if there is no such gateway).
+ * @param targetDomain the id of the domain the gateway leads to (0 for the safety domain, or -1 if
+ *                     there is no gateway).
+ * @author ppgllrd
+ */
+public record AccessTransition(double time, Access access, Gateway gateway, int targetDomain) {
+  /**
+   * Returns the id of the access (and of its gateway).
+   *
+   * @return the id of the access.
+   */
+  public int accessId() {
+    return access.id();
+  }
+}
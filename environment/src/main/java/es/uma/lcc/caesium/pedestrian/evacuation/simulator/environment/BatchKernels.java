@@ -0,0 +1,134 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+/**
+ * Containment kernels over structure-of-arrays point batches. Results are stored as bitsets,
+ * where bit {@code i} of the batch is bit {@code i % 64} of word {@code i / 64}. If the
+ * {@code jdk.incubator.vector} module is present (i.e. the JVM is started with
+ * {@code --add-modules jdk.incubator.vector}), circle and rectangle kernels are vectorized;
+ * otherwise scalar loops are used. Both produce the same results. Vectorized kernels are compiled
+ * separately, as they need that module, and loaded reflectively, so that this class does not depend on them.
+ *
+ * @author ppgllrd
+ */
+final class BatchKernels {
+  /**
+   * vectorized kernels, or {@code null} if they cannot be used
+   */
+  private static final Vectorized VECTORIZED_KERNELS = vectorizedKernels();
+  /**
+   * whether vectorized kernels can be used
+   */
+  static final boolean VECTORIZED = VECTORIZED_KERNELS != null;
+  /**
+   * minimum number of points in a batch for vectorized kernels to pay off
+   */
+  private static final int VECTORIZATION_THRESHOLD = 32;
+
+  private BatchKernels() {
+  }
+
+  /**
+   * Vectorized parts of kernels, each processing points from the first one in the range and returning
+   * the index of the first point not processed (implemented by {@code VectorKernels}).
+   */
+  interface Vectorized {
+    /**
+     * Vectorized part of {@link BatchKernels#markInCircle}.
+     */
+    int markInCircle(double[] xs, double[] ys, int from, int to, double left, double bottom, double diameter,
+                     long[] bits);
+
+    /**
+     * Vectorized part of {@link BatchKernels#markInRectangle}.
+     */
+    int markInRectangle(double[] xs, double[] ys, int from, int to, double left, double bottom, double right,
+                        double top, long[] bits);
+  }
+
+  /**
+   * Loads the vectorized kernels if the {@code jdk.incubator.vector} module is present.
+   *
+   * @return the vectorized kernels, or {@code null} if the module is not present or they were not compiled.
+   */
+  private static Vectorized vectorizedKernels() {
+    if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+      return null;
+    }
+    try {
+      return (Vectorized) Class.forName(BatchKernels.class.getPackageName() + ".VectorKernels")
+          .getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException | LinkageError e) {
+      return null;
+    }
+  }
+
+  /**
+   * Sets bits of points within a circle, using the same arithmetic as {@link Shape.Circle#contains}.
+   *
+   * @param xs       x-coordinates of points.
+   * @param ys       y-coordinates of points.
+   * @param from     index of first point (inclusive).
+   * @param to       index of last point (exclusive).
+   * @param left     x-coordinate of the bottom-left corner of the bounding box of the circle.
+   * @param bottom   y-coordinate of the bottom-left corner of the bounding box of the circle.
+   * @param diameter diameter of the circle.
+   * @param bits     bitset where bits of contained points are set.
+   */
+  static void markInCircle(double[] xs, double[] ys, int from, int to,
+                           double left, double bottom, double diameter, long[] bits) {
+    if (diameter <= 0) {
+      return;
+    }
+    int i = VECTORIZED && to - from >= VECTORIZATION_THRESHOLD
+        ? VECTORIZED_KERNELS.markInCircle(xs, ys, from, to, left, bottom, diameter, bits) : from;
+    for (; i < to; i++) {
+      double normX = (xs[i] - left) / diameter - 0.5;
+      double normY = (ys[i] - bottom) / diameter - 0.5;
+      if ((normX * normX + normY * normY) < 0.25) {
+        bits[i >>> 6] |= 1L << i;
+      }
+    }
+  }
+
+  /**
+   * Sets bits of points within a rectangle, using the same arithmetic as {@link Shape.Rectangle#contains}.
+   *
+   * @param xs     x-coordinates of points.
+   * @param ys     y-coordinates of points.
+   * @param from   index of first point (inclusive).
+   * @param to     index of last point (exclusive).
+   * @param left   x-coordinate of the bottom-left corner of the rectangle.
+   * @param bottom y-coordinate of the bottom-left corner of the rectangle.
+   * @param right  x-coordinate of the top-right corner of the rectangle.
+   * @param top    y-coordinate of the top-right corner of the rectangle.
+   * @param bits   bitset where bits of contained points are set.
+   */
+  static void markInRectangle(double[] xs, double[] ys, int from, int to,
+                              double left, double bottom, double right, double top, long[] bits) {
+    int i = VECTORIZED && to - from >= VECTORIZATION_THRESHOLD
+        ? VECTORIZED_KERNELS.markInRectangle(xs, ys, from, to, left, bottom, right, top, bits) : from;
+    for (; i < to; i++) {
+      double x = xs[i], y = ys[i];
+      if (x >= left && y >= bottom && x < right && y < top) {
+        bits[i >>> 6] |= 1L << i;
+      }
+    }
+  }
+
+  /**
+   * Sets bits {@code index} to {@code index + length - 1} of a bitset according to a mask.
+   *
+   * @param bits   the bitset.
+   * @param index  index of first bit.
+   * @param mask   mask whose {@code length} lowest bits are to be set.
+   * @param length number of bits in mask (at most 64).
+   */
+  static void orBits(long[] bits, int index, long mask, int length) {
+    int word = index >>> 6;
+    int offset = index & 63;
+    bits[word] |= mask << offset;
+    if (offset + length > 64) {
+      bits[word + 1] |= mask >>> (64 - offset);
+    }
+  }
+}
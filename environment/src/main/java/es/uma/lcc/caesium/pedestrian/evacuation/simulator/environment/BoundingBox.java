@@ -0,0 +1,102 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+/**
+ * Axis-aligned bounding box of a shape.
+ *
+ * @param minX x-coordinate of the bottom-left corner of the box.
+ * @param minY y-coordinate of the bottom-left corner of the box.
+ * @param maxX x-coordinate of the top-right corner of the box.
+ * @param maxY y-coordinate of the top-right corner of the box.
+ * @author ppgllrd
+ */
+public record BoundingBox(double minX, double minY, double maxX, double maxY) {
+  /**
+   * Returns the width of the box.
+   *
+   * @return the width of the box.
+   */
+  public double width() {
+    return maxX - minX;
+  }
+
+  /**
+   * Returns the height of the box.
+   *
+   * @return the height of the box.
+   */
+  public double height() {
+    return maxY - minY;
+  }
+
+  /**
+   * Checks whether a point lies within this box (borders included).
+   *
+   * @param x x-coordinate of point.
+   * @param y y-coordinate of point.
+   * @return {@code true} if point lies within this box.
+   */
+  public boolean contains(double x, double y) {
+    return x >= minX && x <= maxX && y >= minY && y <= maxY;
+  }
+
+  /**
+   * Checks whether a rectangle overlaps this box (borders included).
+   *
+   * @param left   X coordinate of bottom left corner of rectangle.
+   * @param bottom Y coordinate of bottom left corner of rectangle.
+   * @param width  width of rectangle.
+   * @param height height of rectangle.
+   * @return {@code true} if rectangle overlaps this box.
+   */
+  public boolean overlaps(double left, double bottom, double width, double height) {
+    return left <= maxX && left + width >= minX && bottom <= maxY && bottom + height >= minY;
+  }
+
+  /**
+   * Returns the distance from a point to this box (0 if point lies within the box).
+   *
+   * @param x x-coordinate of point.
+   * @param y y-coordinate of point.
+   * @return the distance from the point to this box.
+   */
+  public double distance(double x, double y) {
+    double dx = Math.max(Math.max(minX - x, 0), x - maxX);
+    double dy = Math.max(Math.max(minY - y, 0), y - maxY);
+    return Math.sqrt(dx * dx + dy * dy);
+  }
+
+  /**
+   * Returns the first point along a ray which lies within this box (borders included). Points on
+   * the ray are {@code (originX + t dirX, originY + t dirY)} for {@code t >= 0}.
+   *
+   * @param originX x-coordinate of origin of ray.
+   * @param originY y-coordinate of origin of ray.
+   * @param dirX    x-component of direction of ray.
+   * @param dirY    y-component of direction of ray.
+   * @param maxT    maximum value of parameter {@code t}.
+   * @return the smallest {@code t} in {@code [0, maxT]} such that the point lies within this box, or
+   * {@code Double.POSITIVE_INFINITY} if there is none.
+   */
+  public double raycast(double originX, double originY, double dirX, double dirY, double maxT) {
+    double tMin = 0, tMax = maxT;
+    if (dirX == 0) {
+      if (originX < minX || originX > maxX) {
+        return Double.POSITIVE_INFINITY;
+      }
+    } else {
+      double t0 = (minX - originX) / dirX, t1 = (maxX - originX) / dirX;
+      tMin = Math.max(tMin, Math.min(t0, t1));
+      tMax = Math.min(tMax, Math.max(t0, t1));
+    }
+    if (dirY == 0) {
+      if (originY < minY || originY > maxY) {
+        return Double.POSITIVE_INFINITY;
+      }
+    } else {
+      double t0 = (minY - originY) / dirY, t1 = (maxY - originY) / dirY;
+      tMin = Math.max(tMin, Math.min(t0, t1));
+      tMax = Math.min(tMax, Math.max(t0, t1));
+    }
+    return tMin <= tMax ? tMin : Double.POSITIVE_INFINITY;
+  }
+}
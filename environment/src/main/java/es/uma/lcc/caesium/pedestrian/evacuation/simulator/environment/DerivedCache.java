@@ -0,0 +1,500 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * On-disk cache of structures derived from domains (rasters, distance fields and floor fields).
+ * Entries are keyed by a SHA-256 hash of the geometry of the domain (its dimensions and the shapes
+ * of its obstacles and accesses), the kind of structure and its parameters, so that they are
+ * reused by any run loading an environment with the same geometry. Entries are stored in a binary
+ * layout, one file per entry.
+ * <p>
+ * Several JVMs may share a cache directory: entries are written to temporary files and atomically
+ * renamed, and eviction is done while holding a lock on the directory. When the total size of
+ * entries exceeds a bound, least recently used ones are evicted (the modification time of entries
+ * is updated whenever they are read). Temporary files older than an hour are deleted too.
+ *
+ * @author ppgllrd
+ */
+public final class DerivedCache {
+  /**
+   * first int in every entry ("PEDC")
+   */
+  private static final int MAGIC = 0x50454443;
+  /**
+   * version of the layout of entries (and of keys)
+   */
+  private static final int VERSION = 2;
+  private static final String ENTRY_SUFFIX = ".bin";
+  private static final String TEMPORARY_PREFIX = "entry";
+  private static final String TEMPORARY_SUFFIX = ".tmp";
+  private static final String LOCK_FILE = ".lock";
+  /**
+   * age after which temporary files are considered left behind by a JVM that died while writing them
+   */
+  private static final long STALE_TEMPORARY_MILLIS = 60 * 60 * 1000;
+
+  /**
+   * directory where entries are stored
+   */
+  private final Path directory;
+  /**
+   * maximum total size in bytes of entries
+   */
+  private final long maxBytes;
+
+  /**
+   * Creates a cache storing entries in a directory, which is created if it does not exist.
+   *
+   * @param directory the directory where entries are stored.
+   * @param maxBytes  maximum total size in bytes of entries.
+   * @throws IOException if the directory cannot be created.
+   */
+  public DerivedCache(Path directory, long maxBytes) throws IOException {
+    if (maxBytes < 0) {
+      throw new IllegalArgumentException(String.format("DerivedCache: invalid maximum size %d", maxBytes));
+    }
+    this.directory = Files.createDirectories(directory);
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Returns the directory where entries are stored.
+   *
+   * @return the directory where entries are stored.
+   */
+  public Path getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Returns the maximum total size in bytes of entries.
+   *
+   * @return the maximum total size in bytes of entries.
+   */
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * Returns the raster of a domain, reading it from the cache or computing and storing it.
+   *
+   * @param domain   the domain.
+   * @param cellSize side of cells.
+   * @return the raster of the domain.
+   * @see Domain#rasterize(double)
+   */
+  public Raster raster(Domain domain, double cellSize) {
+    return get(RASTER, domain, cellSize, () -> domain.rasterize(cellSize));
+  }
+
+  /**
+   * Returns the distance field of a domain, reading it from the cache or computing and storing it.
+   * A field read from the cache is also installed in the domain, so that later calls to
+   * {@link Domain#distanceField(double)} with the same cell size return it.
+   *
+   * @param domain   the domain.
+   * @param cellSize side of cells.
+   * @return the distance field of the domain.
+   * @see Domain#distanceField(double)
+   */
+  public ScalarField distanceField(Domain domain, double cellSize) {
+    long version = domain.version();
+    ScalarField field = get(DISTANCE_FIELD, domain, cellSize, () -> domain.distanceField(cellSize));
+    domain.installDistanceField(field, version);
+    return field;
+  }
+
+  /**
+   * Returns the floor fields of a domain, reading them from the cache or computing and storing them.
+   * Fields read from the cache are also installed in the domain, so that later calls to
+   * {@link Domain#floorFields(double)} with the same cell size return them. As the raster they were
+   * computed on is not cached, they are computed again, rather than updated, when the domain changes.
+   *
+   * @param domain   the domain.
+   * @param cellSize side of cells.
+   * @return the floor fields of the domain.
+   * @see Domain#floorFields(double)
+   */
+  public FloorFields floorFields(Domain domain, double cellSize) {
+    long version = domain.version();
+    FloorFields fields = get(FLOOR_FIELDS, domain, cellSize, () -> domain.floorFields(cellSize));
+    domain.installFloorFields(fields, version);
+    return fields;
+  }
+
+  /**
+   * Returns the total size in bytes of entries currently in the cache.
+   *
+   * @return the total size in bytes of entries.
+   * @throws IOException if the directory cannot be read.
+   */
+  public long size() throws IOException {
+    long size = 0;
+    for (Entry entry : entries()) {
+      size += entry.size;
+    }
+    return size;
+  }
+
+  private <T> T get(Codec<T> codec, Domain domain, double parameter, Supplier<T> compute) {
+    Path path = directory.resolve(key(codec, domain, parameter) + ENTRY_SUFFIX);
+    T value = read(codec, path);
+    if (value == null) {
+      value = compute.get();
+      try {
+        write(codec, value, path);
+        evict();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    return value;
+  }
+
+  /**
+   * Reads an entry, returning {@code null} if it is missing or invalid.
+   */
+  private <T> T read(Codec<T> codec, Path path) {
+    byte[] bytes;
+    try {
+      bytes = Files.readAllBytes(path);
+    } catch (IOException e) {
+      return null;
+    }
+    try {
+      ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getInt() != codec.kind()) {
+        return null;
+      }
+      T value = codec.read(buffer);
+      // mark as recently used
+      Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+      return value;
+    } catch (RuntimeException | IOException e) {
+      // corrupted, or evicted after being read
+      return null;
+    }
+  }
+
+  private <T> void write(Codec<T> codec, T value, Path path) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(12 + codec.size(value)).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(MAGIC).putInt(VERSION).putInt(codec.kind());
+    codec.write(value, buffer);
+    Path temporary = Files.createTempFile(directory, TEMPORARY_PREFIX, TEMPORARY_SUFFIX);
+    try {
+      Files.write(temporary, buffer.array());
+      Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  /**
+   * Deletes least recently used entries until their total size is within bounds, along with stale
+   * temporary files.
+   */
+  private void evict() throws IOException {
+    // file locks are held by whole JVMs, so threads in this one must be excluded separately
+    synchronized (DerivedCache.class) {
+      try (FileChannel channel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE)) {
+        FileLock lock = channel.lock();
+        try {
+          List<Entry> entries = entries();
+          long size = 0;
+          for (Entry entry : entries) {
+            size += entry.size;
+          }
+          entries.sort(Comparator.comparing((Entry entry) -> entry.lastUsed));
+          for (int i = 0; i < entries.size() && size > maxBytes; i++) {
+            Files.deleteIfExists(entries.get(i).path);
+            size -= entries.get(i).size;
+          }
+          deleteStaleTemporaries();
+        } finally {
+          lock.release();
+        }
+      }
+    }
+  }
+
+  /**
+   * Deletes temporary files old enough not to be still being written by any JVM.
+   */
+  private void deleteStaleTemporaries() throws IOException {
+    long limit = System.currentTimeMillis() - STALE_TEMPORARY_MILLIS;
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+        TEMPORARY_PREFIX + "*" + TEMPORARY_SUFFIX)) {
+      for (Path path : stream) {
+        try {
+          if (Files.getLastModifiedTime(path).toMillis() < limit) {
+            Files.deleteIfExists(path);
+          }
+        } catch (NoSuchFileException e) {
+          // renamed or deleted by another JVM
+        }
+      }
+    }
+  }
+
+  private List<Entry> entries() throws IOException {
+    List<Entry> entries = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + ENTRY_SUFFIX)) {
+      for (Path path : stream) {
+        try {
+          BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+          entries.add(new Entry(path, attributes.size(), attributes.lastModifiedTime()));
+        } catch (NoSuchFileException e) {
+          // deleted by another JVM
+        }
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * Computes the key of an entry from the geometry of a domain, the kind of structure and its parameter.
+   */
+  static String key(Codec<?> codec, Domain domain, double parameter) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(4096).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(VERSION).putInt(codec.kind()).putDouble(parameter);
+    buffer.putDouble(domain.getWidth()).putDouble(domain.getHeight());
+    buffer.putInt(domain.getObstacles().size());
+    for (Obstacle obstacle : domain.getObstacles()) {
+      buffer = digestShape(digest, buffer, obstacle.shape());
+    }
+    // closed accesses do not take part in derived structures
+    List<Access> accesses = new ArrayList<>();
+    for (Access access : domain.getAccesses()) {
+      if (domain.isAccessOpen(access.id())) {
+        accesses.add(access);
+      }
+    }
+    buffer = flushIfFull(digest, buffer, 8);
+    buffer.putInt(accesses.size());
+    for (Access access : accesses) {
+      buffer = flushIfFull(digest, buffer, 4);
+      buffer.putInt(access.id());
+      buffer = digestShape(digest, buffer, access.shape());
+    }
+    digest.update(buffer.flip());
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  private static ByteBuffer digestShape(MessageDigest digest, ByteBuffer buffer, Shape shape) {
+    buffer = flushIfFull(digest, buffer, 40);
+    buffer.putInt(shape.getType().ordinal());
+    switch (shape.getType()) {
+      case CIRCLE -> {
+        Shape.Circle circle = (Shape.Circle) shape;
+        buffer.putDouble(circle.getX()).putDouble(circle.getY()).putDouble(circle.getRadius());
+      }
+      case RECTANGLE -> {
+        Shape.Rectangle rectangle = (Shape.Rectangle) shape;
+        buffer.putDouble(rectangle.getLeft()).putDouble(rectangle.getBottom())
+            .putDouble(rectangle.getWidth()).putDouble(rectangle.getHeight());
+      }
+      case POLYGON -> {
+        List<Point2D> points = ((Shape.Polygon) shape).getPoints();
+        buffer.putInt(points.size());
+        for (Point2D point : points) {
+          buffer = flushIfFull(digest, buffer, 16);
+          buffer.putDouble(point.getX()).putDouble(point.getY());
+        }
+      }
+    }
+    return buffer;
+  }
+
+  private static ByteBuffer flushIfFull(MessageDigest digest, ByteBuffer buffer, int needed) {
+    if (buffer.remaining() < needed) {
+      digest.update(buffer.flip());
+      buffer.clear();
+    }
+    return buffer;
+  }
+
+  /**
+   * An entry in the cache directory.
+   */
+  private record Entry(Path path, long size, FileTime lastUsed) {
+  }
+
+  /**
+   * Binary layout of a kind of structure.
+   */
+  interface Codec<T> {
+    /**
+     * Returns a number identifying the kind of structure.
+     */
+    int kind();
+
+    /**
+     * Returns the number of bytes needed to encode a structure.
+     */
+    int size(T value);
+
+    /**
+     * Encodes a structure at the current position of a buffer.
+     */
+    void write(T value, ByteBuffer buffer);
+
+    /**
+     * Decodes a structure from the current position of a buffer.
+     */
+    T read(ByteBuffer buffer);
+  }
+
+  private static final Codec<Raster> RASTER = new Codec<>() {
+    @Override
+    public int kind() {
+      return 1;
+    }
+
+    @Override
+    public int size(Raster raster) {
+      return 16 + 4 * raster.getColumns() * raster.getRows();
+    }
+
+    @Override
+    public void write(Raster raster, ByteBuffer buffer) {
+      buffer.putInt(raster.getColumns()).putInt(raster.getRows()).putDouble(raster.getCellSize());
+      buffer.asIntBuffer().put(raster.toArray());
+      buffer.position(buffer.position() + 4 * raster.getColumns() * raster.getRows());
+    }
+
+    @Override
+    public Raster read(ByteBuffer buffer) {
+      int columns = buffer.getInt(), rows = buffer.getInt();
+      double cellSize = buffer.getDouble();
+      int[] labels = new int[cellCount(columns, rows, buffer)];
+      buffer.asIntBuffer().get(labels);
+      buffer.position(buffer.position() + 4 * labels.length);
+      return new Raster(columns, rows, cellSize, labels);
+    }
+  };
+
+  private static final Codec<ScalarField> DISTANCE_FIELD = new Codec<>() {
+    @Override
+    public int kind() {
+      return 2;
+    }
+
+    @Override
+    public int size(ScalarField field) {
+      return fieldSize(field);
+    }
+
+    @Override
+    public void write(ScalarField field, ByteBuffer buffer) {
+      writeField(field, buffer);
+    }
+
+    @Override
+    public ScalarField read(ByteBuffer buffer) {
+      return readField(buffer);
+    }
+  };
+
+  private static final Codec<FloorFields> FLOOR_FIELDS = new Codec<>() {
+    @Override
+    public int kind() {
+      return 3;
+    }
+
+    @Override
+    public int size(FloorFields floorFields) {
+      int size = 4 + fieldSize(floorFields.nearestAccess());
+      for (int id : floorFields.getAccessIds()) {
+        size += 4 + fieldSize(floorFields.field(id));
+      }
+      return size;
+    }
+
+    @Override
+    public void write(FloorFields floorFields, ByteBuffer buffer) {
+      int[] accessIds = floorFields.getAccessIds();
+      buffer.putInt(accessIds.length);
+      for (int id : accessIds) {
+        buffer.putInt(id);
+        writeField(floorFields.field(id), buffer);
+      }
+      writeField(floorFields.nearestAccess(), buffer);
+    }
+
+    @Override
+    public FloorFields read(ByteBuffer buffer) {
+      int n = buffer.getInt();
+      // each field takes at least its access id and header
+      if (n < 0 || n > buffer.remaining() / 20) {
+        throw new IllegalArgumentException(String.format("DerivedCache.read: invalid number of fields %d", n));
+      }
+      int[] accessIds = new int[n];
+      ScalarField[] fields = new ScalarField[n];
+      for (int i = 0; i < n; i++) {
+        accessIds[i] = buffer.getInt();
+        fields[i] = readField(buffer);
+      }
+      return new FloorFields(accessIds, fields, readField(buffer));
+    }
+  };
+
+  /**
+   * Returns the number of cells of a grid with some dimensions read from a buffer, checking that the
+   * buffer holds a value of 4 bytes for each of them before they are allocated, so that corrupted
+   * dimensions are rejected rather than exhausting memory.
+   */
+  private static int cellCount(int columns, int rows, ByteBuffer buffer) {
+    if (columns < 0 || rows < 0 || 4L * columns * rows > buffer.remaining()) {
+      throw new IllegalArgumentException(String.format("DerivedCache.read: invalid dimensions %d x %d for %d bytes",
+          columns, rows, buffer.remaining()));
+    }
+    return columns * rows;
+  }
+
+  private static int fieldSize(ScalarField field) {
+    return 16 + 4 * field.getColumns() * field.getRows();
+  }
+
+  private static void writeField(ScalarField field, ByteBuffer buffer) {
+    buffer.putInt(field.getColumns()).putInt(field.getRows()).putDouble(field.getCellSize());
+    buffer.asFloatBuffer().put(field.toArray());
+    buffer.position(buffer.position() + 4 * field.getColumns() * field.getRows());
+  }
+
+  private static ScalarField readField(ByteBuffer buffer) {
+    int columns = buffer.getInt(), rows = buffer.getInt();
+    double cellSize = buffer.getDouble();
+    float[] values = new float[cellCount(columns, rows, buffer)];
+    buffer.asFloatBuffer().get(values);
+    buffer.position(buffer.position() + 4 * values.length);
+    return new ScalarField(columns, rows, cellSize, values);
+  }
+}
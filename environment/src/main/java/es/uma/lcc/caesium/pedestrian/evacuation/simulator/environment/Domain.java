@@ -0,0 +1,1023 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+import com.github.cliftonlabs.json_simple.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.ToLongFunction;
+
+/**
+ * Class for handling domains, namely enclosed areas that the
+ * pedestrians can navigate.
+ *
+ * @author ccottap, ppgllrd
+ */
+public class Domain {
+  /**
+   * id of the domain
+   */
+  private final int id;
+  /**
+   * height of the domain
+   */
+  private final double height;
+  /**
+   * width of the domain
+   */
+  private final double width;
+  /**
+   * list of obstacles in the domain
+   */
+  private final List<Obstacle> obstacles;
+  /**
+   * list of accesses in the domain
+   */
+  private final List<Access> accesses;
+  /**
+   * name of the domain
+   */
+  private String name;
+  /**
+   * description of the domain
+   */
+  private String description;
+  /**
+   * spatial index over the shapes of obstacles (lazily built)
+   */
+  private volatile ShapeIndex<Obstacle> obstacleIndex;
+  /**
+   * spatial index over the shapes of accesses (lazily built)
+   */
+  private volatile ShapeIndex<Access> accessIndex;
+  /**
+   * signed distance field to obstacles (lazily built)
+   */
+  private volatile ScalarField distanceField;
+  /**
+   * static floor fields to accesses (lazily built)
+   */
+  private volatile FloorFields floorFields;
+  /**
+   * navigation mesh (lazily built)
+   */
+  private volatile NavigationMesh navigationMesh;
+  /**
+   * visibility graph (lazily built)
+   */
+  private volatile VisibilityGraph visibilityGraph;
+  /**
+   * whether the domain is an immutable snapshot
+   */
+  private final boolean frozen;
+  /**
+   * ids of closed accesses
+   */
+  private final Set<Integer> closedAccesses;
+  /**
+   * number of changes made to obstacles and accesses
+   */
+  private long version;
+  /**
+   * instrumentation of spatial queries
+   */
+  private volatile QueryMetrics metrics;
+
+  /**
+   * Creates an empty domain with the given id and dimensions.
+   * Initially there are no obstacles or accesses.
+   *
+   * @param id     The id of the domain.
+   * @param width  The width of the domain.
+   * @param height The height of the domain.
+   */
+  public Domain(int id, double width, double height) {
+    this.id = id;
+    this.width = width;
+    this.height = height;
+    name = "domain" + id;
+    description = "";
+    obstacles = new ArrayList<>();
+    accesses = new ArrayList<>();
+    frozen = false;
+    closedAccesses = new HashSet<>();
+    metrics = QueryMetrics.NOOP;
+  }
+
+  /**
+   * Creates an immutable snapshot of a domain, with unmodifiable lists of obstacles and accesses and
+   * eagerly built spatial indexes. Derived fields already computed are shared, as they are immutable.
+   *
+   * @param domain  the domain to copy.
+   * @param metrics instrumentation of spatial queries on the snapshot.
+   */
+  private Domain(Domain domain, QueryMetrics metrics) {
+    id = domain.id;
+    width = domain.width;
+    height = domain.height;
+    name = domain.name;
+    description = domain.description;
+    obstacles = List.copyOf(domain.obstacles);
+    accesses = List.copyOf(domain.accesses);
+    frozen = true;
+    closedAccesses = Set.copyOf(domain.closedAccesses);
+    version = domain.version;
+    this.metrics = metrics;
+    obstacleIndex = EnvironmentEvents.derived("obstacle index", this, 0,
+        () -> new ShapeIndex<>(width, height, obstacles, Obstacle::shape));
+    accessIndex = newAccessIndex();
+    distanceField = domain.distanceField;
+    floorFields = domain.floorFields;
+    navigationMesh = domain.navigationMesh;
+    visibilityGraph = domain.visibilityGraph;
+  }
+
+  /** Constructs a domain from a json object.
+   * @param json The json object to parse.
+   * @return a domain from the provided json.
+   */
+  public static Domain fromJson(JsonObject json) {
+    int id = json.getInteger(JsonKeys.ID);
+    double width = json.getDouble(JsonKeys.WIDTH);
+    double height = json.getDouble(JsonKeys.HEIGHT);
+    EnvironmentEvents.DomainBuild build = new EnvironmentEvents.DomainBuild();
+    build.begin();
+    Domain domain = new Domain(id, width, height);
+
+    domain.setName(json.getStringOrDefault(JsonKeys.NAME));
+    domain.setDescription(json.getStringOrDefault(JsonKeys.DESCRIPTION));
+    if (json.containsKey(JsonKeys.OBSTACLES.getKey())) {
+      List<JsonObject> jsonObstacles = json.getCollection(JsonKeys.OBSTACLES);
+      for (JsonObject jsonObstacle : jsonObstacles) {
+        domain.addObstacle(Obstacle.fromJson(jsonObstacle));
+      }
+    }
+    if (json.containsKey(JsonKeys.ACCESSES.getKey())) {
+      List<JsonObject> jsonAccesses = json.getCollection(JsonKeys.ACCESSES);
+      for (JsonObject jsonAccess : jsonAccesses) {
+        domain.addAccess(Access.fromJson(jsonAccess));
+      }
+    }
+    build.end(domain);
+    return domain;
+  }
+
+  /**
+   * Returns the id of the domain.
+   *
+   * @return the id of the domain.
+   */
+  public int id() {
+    return id;
+  }
+
+  /**
+   * Returns the name of the domain.
+   *
+   * @return the name of the domain.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Sets the name of the domain.
+   *
+   * @param name of the domain.
+   * @throws UnsupportedOperationException if the domain is frozen.
+   */
+  public void setName(String name) {
+    checkNotFrozen("setName");
+    this.name = name;
+  }
+
+  /**
+   * Returns the description of the domain.
+   *
+   * @return the description of the domain.
+   */
+  public String getDescription() {
+    return description;
+  }
+
+  /**
+   * Sets the description of the domain.
+   *
+   * @param description the description of the domain.
+   * @throws UnsupportedOperationException if the domain is frozen.
+   */
+  public void setDescription(String description) {
+    checkNotFrozen("setDescription");
+    this.description = description;
+  }
+
+  /**
+   * Returns the height of the domain.
+   *
+   * @return the height of the domain.
+   */
+  public double getHeight() {
+    return height;
+  }
+
+  /**
+   * Returns the width of the domain.
+   *
+   * @return the width of the domain.
+   */
+  public double getWidth() {
+    return width;
+  }
+
+  /**
+   * Adds an obstacle to the domain. Spatial indexes and derived fields already computed are
+   * updated only around the new obstacle.
+   *
+   * @param obstacle an obstacle.
+   * @throws UnsupportedOperationException if the domain is frozen.
+   */
+  public void addObstacle(Obstacle obstacle) {
+    checkNotFrozen("addObstacle");
+    obstacles.add(obstacle);
+    version++;
+    ShapeIndex<Obstacle> index = obstacleIndex;
+    if (index != null) {
+      index.add(obstacle, obstacle.shape());
+      if (index.needsRebuild()) {
+        obstacleIndex = null;
+      }
+    }
+    ScalarField field = distanceField;
+    if (field != null) {
+      distanceField = field.withShapeAdded(obstacle.shape());
+    }
+    updateFloorFields(obstacle.shape().getBoundingBox());
+  }
+
+  /**
+   * Removes an obstacle from the domain (e.g. debris that has been cleared). Spatial indexes and
+   * derived fields already computed are updated only around the removed obstacle.
+   *
+   * @param obstacle the obstacle to remove.
+   * @return {@code true} if the domain had such an obstacle.
+   * @throws UnsupportedOperationException if the domain is frozen.
+   */
+  public boolean removeObstacle(Obstacle obstacle) {
+    checkNotFrozen("removeObstacle");
+    if (!obstacles.remove(obstacle)) {
+      return false;
+    }
+    version++;
+    ShapeIndex<Obstacle> index = obstacleIndex;
+    if (index != null) {
+      index.detach(index.indexOf(obstacle, obstacle.shape()));
+      if (index.needsRebuild()) {
+        obstacleIndex = null;
+      }
+    }
+    ScalarField field = distanceField;
+    if (field != null) {
+      distanceField = field.withShapeRemoved(obstacle.shape(), this::signedDistance);
+    }
+    updateFloorFields(obstacle.shape().getBoundingBox());
+    return true;
+  }
+
+  /**
+   * Adds an access to the domain. The access is closed if other accesses with the same id are closed.
+   *
+   * @param a an access.
+   * @throws UnsupportedOperationException if the domain is frozen.
+   */
+  public void addAccess(Access a) {
+    checkNotFrozen("addAccess");
+    accesses.add(a);
+    version++;
+    ShapeIndex<Access> index = accessIndex;
+    if (index != null) {
+      int element = index.add(a, a.shape());
+      if (closedAccesses.contains(a.id())) {
+        index.detach(element);
+      }
+    }
+    if (isAccessOpen(a.id())) {
+      updateFloorFields(a.shape().getBoundingBox());
+    }
+  }
+
+  /**
+   * Closes the accesses with a given id (e.g. a door jammed shut). Closed accesses are still listed
+   * by {@link #getAccesses()}, but are ignored by access queries, rasters and floor fields, which are
+   * updated only around the closed accesses.
+   *
+   * @param accessId the id of the accesses.
+   * @return {@code true} if the accesses were open.
+   * @throws UnsupportedOperationException if the domain is frozen.
+   */
+  public boolean closeAccess(int accessId) {
+    checkNotFrozen("closeAccess");
+    if (!closedAccesses.add(accessId)) {
+      return false;
+    }
+    changeAccess(accessId, true);
+    return true;
+  }
+
+  /**
+   * Opens again the accesses with a given id.
+   *
+   * @param accessId the id of the accesses.
+   * @return {@code true} if the accesses were closed.
+   * @throws UnsupportedOperationException if the domain is frozen.
+   * @see #closeAccess(int)
+   */
+  public boolean openAccess(int accessId) {
+    checkNotFrozen("openAccess");
+    if (!closedAccesses.remove(accessId)) {
+      return false;
+    }
+    changeAccess(accessId, false);
+    return true;
+  }
+
+  /**
+   * Checks whether the accesses with a given id are open.
+   *
+   * @param accessId the id of the accesses.
+   * @return {@code false} if the accesses have been closed.
+   */
+  public boolean isAccessOpen(int accessId) {
+    return !closedAccesses.contains(accessId);
+  }
+
+  /**
+   * Updates the access index and floor fields after accesses with a given id have been closed or opened.
+   */
+  private void changeAccess(int accessId, boolean closed) {
+    version++;
+    ShapeIndex<Access> index = accessIndex;
+    double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+    double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < accesses.size(); i++) {
+      Access access = accesses.get(i);
+      if (access.id() == accessId) {
+        if (index != null) {
+          if (closed) {
+            index.detach(i);
+          } else {
+            index.attach(i);
+          }
+        }
+        BoundingBox box = access.shape().getBoundingBox();
+        minX = Math.min(minX, box.minX());
+        minY = Math.min(minY, box.minY());
+        maxX = Math.max(maxX, box.maxX());
+        maxY = Math.max(maxY, box.maxY());
+      }
+    }
+    if (minX <= maxX) {
+      updateFloorFields(new BoundingBox(minX, minY, maxX, maxY));
+    }
+  }
+
+  /**
+   * Updates floor fields already computed after a change within a region.
+   */
+  private void updateFloorFields(BoundingBox region) {
+    FloorFields fields = floorFields;
+    if (fields != null) {
+      floorFields = fields.updated(this, region);
+    }
+  }
+
+  /**
+   * Returns the number of changes made to the obstacles and accesses of the domain (including closing
+   * and opening accesses). Readers can compare versions to detect changes, and use {@link #freeze()} to
+   * get a consistent view of the domain.
+   *
+   * @return the version of the domain.
+   */
+  public long version() {
+    return version;
+  }
+
+  /**
+   * Returns an immutable snapshot of the domain, which can be shared by any number of threads without
+   * synchronization. Obstacles and accesses are copied into unmodifiable lists, spatial indexes are
+   * built upfront, and methods modifying the snapshot throw {@code UnsupportedOperationException}.
+   * Obstacles, accesses and their shapes are immutable, so they are shared with this domain.
+   *
+   * @return an immutable snapshot of the domain (the domain itself if it is already frozen).
+   */
+  public Domain freeze() {
+    return frozen ? this : new Domain(this, metrics);
+  }
+
+  /**
+   * Returns an immutable snapshot of the domain whose queries are recorded in some metrics rather than
+   * in those of the domain (see {@link #freeze()}), for derived structures querying obstacles.
+   *
+   * @param metrics the query metrics of the snapshot.
+   * @return an immutable snapshot of the domain (the domain itself if it is already frozen).
+   */
+  Domain freeze(QueryMetrics metrics) {
+    return frozen ? this : new Domain(this, metrics);
+  }
+
+  /**
+   * Checks whether the domain is an immutable snapshot.
+   *
+   * @return {@code true} if the domain is frozen.
+   * @see #freeze()
+   */
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  /**
+   * Sets the instrumentation of spatial queries on the domain (see {@link QueryType}). This does not
+   * change the domain, so it can also be done on frozen domains. Frozen snapshots inherit the metrics of
+   * the domain they are taken from.
+   *
+   * @param metrics the query metrics ({@link QueryMetrics#NOOP} to disable instrumentation).
+   */
+  public void setQueryMetrics(QueryMetrics metrics) {
+    this.metrics = Objects.requireNonNull(metrics);
+  }
+
+  /**
+   * Returns the instrumentation of spatial queries on the domain.
+   *
+   * @return the query metrics ({@link QueryMetrics#NOOP} by default).
+   */
+  public QueryMetrics getQueryMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Estimates the heap memory used by the domain: its obstacles and accesses (including their shapes)
+   * and the derived structures built so far (spatial indexes, distance field, floor fields, navigation
+   * mesh and visibility graph). Structures shared with frozen snapshots are counted in each of them.
+   *
+   * @return the estimated memory footprint of the domain, with a part for each of the above.
+   */
+  public MemoryFootprint memoryFootprint() {
+    List<MemoryFootprint> parts = new ArrayList<>();
+    long obstacleBytes = MemoryFootprint.list(obstacles.size());
+    for (Obstacle obstacle : obstacles) {
+      obstacleBytes += MemoryFootprint.object(3 * MemoryFootprint.REFERENCE) + MemoryFootprint.string(obstacle.name())
+          + MemoryFootprint.string(obstacle.description()) + obstacle.shape().memoryFootprint();
+    }
+    parts.add(new MemoryFootprint("obstacles", obstacleBytes, List.of()));
+    long accessBytes = MemoryFootprint.list(accesses.size());
+    for (Access access : accesses) {
+      accessBytes += MemoryFootprint.object(Integer.BYTES + 3 * MemoryFootprint.REFERENCE)
+          + MemoryFootprint.string(access.name()) + MemoryFootprint.string(access.description())
+          + access.shape().memoryFootprint();
+    }
+    parts.add(new MemoryFootprint("accesses", accessBytes, List.of()));
+    addPart(parts, "obstacle index", obstacleIndex, ShapeIndex::memoryFootprint);
+    addPart(parts, "access index", accessIndex, ShapeIndex::memoryFootprint);
+    addPart(parts, "distance field", distanceField, ScalarField::memoryFootprint);
+    addPart(parts, "floor fields", floorFields, FloorFields::memoryFootprint);
+    addPart(parts, "navigation mesh", navigationMesh, NavigationMesh::memoryFootprint);
+    addPart(parts, "visibility graph", visibilityGraph, VisibilityGraph::memoryFootprint);
+    long ownBytes = MemoryFootprint.object(Integer.BYTES + 2 * Double.BYTES + Long.BYTES + 1
+        + 12 * MemoryFootprint.REFERENCE) + MemoryFootprint.string(name) + MemoryFootprint.string(description)
+        + MemoryFootprint.hashSet(closedAccesses.size(), MemoryFootprint.BOXED_INT);
+    return MemoryFootprint.of("domain " + id, ownBytes, parts);
+  }
+
+  private static <T> void addPart(List<MemoryFootprint> parts, String name, T structure, ToLongFunction<T> bytes) {
+    if (structure != null) {
+      parts.add(new MemoryFootprint(name, bytes.applyAsLong(structure), List.of()));
+    }
+  }
+
+  private void checkNotFrozen(String method) {
+    if (frozen) {
+      throw new UnsupportedOperationException(String.format("Domain.%s: domain %d is frozen", method, id));
+    }
+  }
+
+  /**
+   * Returns the list of obstacles in the domain.
+   *
+   * @return the obstacles.
+   */
+  public List<Obstacle> getObstacles() {
+    return obstacles;
+  }
+
+  /**
+   * Returns the list of accesses in the domain, including closed ones.
+   *
+   * @return the accesses.
+   */
+  public List<Access> getAccesses() {
+    return accesses;
+  }
+
+  /**
+   * Returns the spatial index over the obstacles in the domain, building it if needed.
+   *
+   * @return the spatial index over the obstacles.
+   */
+  ShapeIndex<Obstacle> obstacleIndex() {
+    ShapeIndex<Obstacle> index = obstacleIndex;
+    if (index == null) {
+      obstacleIndex = index = EnvironmentEvents.derived("obstacle index", this, 0,
+          () -> new ShapeIndex<>(width, height, obstacles, Obstacle::shape));
+    }
+    return index;
+  }
+
+  /**
+   * Returns the spatial index over the accesses in the domain, building it if needed.
+   *
+   * @return the spatial index over the accesses.
+   */
+  ShapeIndex<Access> accessIndex() {
+    ShapeIndex<Access> index = accessIndex;
+    if (index == null) {
+      accessIndex = index = newAccessIndex();
+    }
+    return index;
+  }
+
+  /**
+   * Builds a spatial index over the accesses in the domain, where closed accesses are detached.
+   */
+  private ShapeIndex<Access> newAccessIndex() {
+    ShapeIndex<Access> index = EnvironmentEvents.derived("access index", this, 0,
+        () -> new ShapeIndex<>(width, height, accesses, Access::shape));
+    for (int i = 0; i < accesses.size(); i++) {
+      if (closedAccesses.contains(accesses.get(i).id())) {
+        index.detach(i);
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Checks whether a position is blocked, i.e. whether it lies within some obstacle in the domain.
+   *
+   * @param x x-coordinate of position.
+   * @param y y-coordinate of position.
+   * @return {@code true} if the position lies within some obstacle.
+   */
+  public boolean isBlocked(double x, double y) {
+    QueryMetrics metrics = this.metrics;
+    long start = metrics.start();
+    boolean blocked = obstacleIndex().anyContains(x, y);
+    metrics.record(id, QueryType.BLOCKED, start);
+    return blocked;
+  }
+
+  /**
+   * Checks which positions in a batch are blocked, i.e. lie within some obstacle in the domain.
+   *
+   * @param xs   x-coordinates of positions.
+   * @param ys   y-coordinates of positions.
+   * @param n    number of positions in the batch.
+   * @param bits bitset where bit {@code i % 64} of {@code bits[i / 64]} is set iff position {@code i}
+   *             is blocked. Must hold at least {@code (n + 63) / 64} words.
+   */
+  public void blockedMask(double[] xs, double[] ys, int n, long[] bits) {
+    QueryMetrics metrics = this.metrics;
+    long start = metrics.start();
+    obstacleIndex().containedMask(xs, ys, n, bits);
+    metrics.record(id, QueryType.BLOCKED_MASK, start);
+  }
+
+  /**
+   * Returns the obstacles in the domain whose shapes intersect a rectangle.
+   *
+   * @param left   X coordinate of bottom left corner of rectangle.
+   * @param bottom Y coordinate of bottom left corner of rectangle.
+   * @param width  width of rectangle.
+   * @param height height of rectangle.
+   * @return the obstacles intersecting the rectangle.
+   */
+  public List<Obstacle> obstaclesIntersecting(double left, double bottom, double width, double height) {
+    QueryMetrics metrics = this.metrics;
+    long start = metrics.start();
+    List<Obstacle> intersecting = obstacleIndex().intersecting(left, bottom, width, height);
+    metrics.record(id, QueryType.OBSTACLES_INTERSECTING, start);
+    return intersecting;
+  }
+
+  /**
+   * Returns the signed distance from a position to the nearest obstacle in the domain. The distance
+   * is negative if the position lies within some obstacle.
+   *
+   * @param x x-coordinate of position.
+   * @param y y-coordinate of position.
+   * @return the signed distance to the nearest obstacle ({@code Double.POSITIVE_INFINITY} if there are no obstacles).
+   */
+  public double distanceToObstacles(double x, double y) {
+    QueryMetrics metrics = this.metrics;
+    long start = metrics.start();
+    double distance = signedDistance(x, y);
+    metrics.record(id, QueryType.NEAREST_OBSTACLE, start);
+    return distance;
+  }
+
+  /**
+   * Returns the signed distance from a position to the nearest obstacle (see {@link #distanceToObstacles}),
+   * without recording it as a query, for building derived structures.
+   */
+  double signedDistance(double x, double y) {
+    ShapeIndex<Obstacle> index = obstacleIndex();
+    int nearest = index.nearest(x, y);
+    return nearest < 0 ? Double.POSITIVE_INFINITY : index.shape(nearest).signedDistance(x, y);
+  }
+
+  /**
+   * Returns the point on the boundary of the nearest obstacle in the domain that is closest to a position.
+   *
+   * @param x x-coordinate of position.
+   * @param y y-coordinate of position.
+   * @return the nearest point on the boundary of an obstacle ({@code null} if there are no obstacles).
+   */
+  public Point2D nearestObstaclePoint(double x, double y) {
+    QueryMetrics metrics = this.metrics;
+    long start = metrics.start();
+    ShapeIndex<Obstacle> index = obstacleIndex();
+    int nearest = index.nearest(x, y);
+    Point2D point = nearest < 0 ? null : index.shape(nearest).nearestPoint(x, y);
+    metrics.record(id, QueryType.NEAREST_OBSTACLE, start);
+    return point;
+  }
+
+  /**
+   * Returns the nearest obstacle in the domain to a position.
+   *
+   * @param x x-coordinate of position.
+   * @param y y-coordinate of position.
+   * @return the nearest obstacle ({@code null} if there are no obstacles).
+   */
+  public Obstacle nearestObstacle(double x, double y) {
+    QueryMetrics metrics = this.metrics;
+    long start = metrics.start();
+    ShapeIndex<Obstacle> index = obstacleIndex();
+    int nearest = index.nearest(x, y);
+    Obstacle obstacle = nearest < 0 ? null : index.element(nearest);
+    metrics.record(id, QueryType.NEAREST_OBSTACLE, start);
+    return obstacle;
+  }
+
+  /**
+   * Checks whether two positions can see each other, i.e. whether the segment joining them does not
+   * meet any obstacle (touching the boundary of an obstacle blocks visibility).
+   *
+   * @param x1 x-coordinate of first position.
+   * @param y1 y-coordinate of first position.
+   * @param x2 x-coordinate of second position.
+   * @param y2 y-coordinate of second position.
+   * @return {@code true} if the segment joining both positions does not meet any obstacle.
+   */
+  public boolean isVisible(double x1, double y1, double x2, double y2) {
+    QueryMetrics metrics = this.metrics;
+    long start = metrics.start();
+    boolean visible = obstacleIndex().raycast(x1, y1, x2 - x1, y2 - y1, 1) > 1;
+    metrics.record(id, QueryType.VISIBILITY, start);
+    return visible;
+  }
+
+  /**
+   * Casts a fan of rays from a position and computes the distance along each one to the first obstacle.
+   *
+   * @param originX    x-coordinate of origin of rays.
+   * @param originY    y-coordinate of origin of rays.
+   * @param angles     directions of rays, as angles in radians measured counterclockwise from the x-axis.
+   * @param maxDist    maximum distance along each ray.
+   * @param hitDistOut array where the distance to the first obstacle along ray {@code i} is stored at
+   *                   index {@code i} ({@code maxDist} if there is none closer).
+   */
+  public void castRays(double originX, double originY, double[] angles, double maxDist, double[] hitDistOut) {
+    if (hitDistOut.length < angles.length) {
+      throw new IllegalArgumentException(String.format("Domain.castRays: output array too short (%d < %d)",
+          hitDistOut.length, angles.length));
+    }
+    QueryMetrics metrics = this.metrics;
+    long start = metrics.start();
+    ShapeIndex<Obstacle> index = obstacleIndex();
+    for (int i = 0; i < angles.length; i++) {
+      double t = index.raycast(originX, originY, Math.cos(angles[i]), Math.sin(angles[i]), maxDist);
+      hitDistOut[i] = Math.min(t, maxDist);
+    }
+    metrics.record(id, QueryType.RAYS, start);
+  }
+
+  /**
+   * Moves a disc along a segment and finds its first contact with an obstacle (continuous collision
+   * detection), so that discs cannot tunnel through thin obstacles.
+   *
+   * @param x0     x-coordinate of initial center of disc.
+   * @param y0     y-coordinate of initial center of disc.
+   * @param x1     x-coordinate of final center of disc.
+   * @param y1     y-coordinate of final center of disc.
+   * @param radius radius of disc.
+   * @return the first contact along the move ({@code null} if the disc does not meet any obstacle).
+   * If the disc already overlaps an obstacle at its initial position, contact time is 0.
+   */
+  public SweepHit sweepCircle(double x0, double y0, double x1, double y1, double radius) {
+    if (!(radius >= 0)) {
+      throw new IllegalArgumentException(String.format("Domain.sweepCircle: invalid radius %f", radius));
+    }
+    QueryMetrics metrics = this.metrics;
+    long start = metrics.start();
+    SweepHit hit = sweep(x0, y0, x1, y1, radius);
+    metrics.record(id, QueryType.SWEEP_CIRCLE, start);
+    return hit;
+  }
+
+  /**
+   * Moves a disc along a segment and finds its first contact with an obstacle (see {@link #sweepCircle}),
+   * without recording it as a query, for building derived structures.
+   */
+  SweepHit sweep(double x0, double y0, double x1, double y1, double radius) {
+    ShapeIndex<Obstacle> index = obstacleIndex();
+    double dx = x1 - x0, dy = y1 - y0;
+    double[] time = new double[1];
+    int hit = index.sweepCircle(x0, y0, dx, dy, radius, time);
+    if (hit < 0) {
+      return null;
+    }
+    Shape shape = index.shape(hit);
+    double t = time[0];
+    double cx = x0 + t * dx, cy = y0 + t * dy;
+    Point2D contact = shape.nearestPoint(cx, cy);
+    double nx = cx - contact.getX(), ny = cy - contact.getY();
+    if (shape.contains(cx, cy)) {
+      // center is inside the obstacle: push it out through nearest boundary point
+      nx = -nx;
+      ny = -ny;
+    }
+    double length = Math.hypot(nx, ny);
+    if (length == 0) {
+      // center on the boundary: oppose the move
+      nx = -dx;
+      ny = -dy;
+      length = Math.hypot(nx, ny);
+    }
+    if (length > 0) {
+      nx /= length;
+      ny /= length;
+    }
+    return new SweepHit(t, contact.getX(), contact.getY(), nx, ny, index.element(hit));
+  }
+
+  /**
+   * Returns a precomputed signed distance field to the obstacles in the domain, sampled at the
+   * centers of the cells of a grid. The last computed field is kept, and updated locally when obstacles
+   * are added or removed, so it is only recomputed if a different resolution is requested.
+   *
+   * @param cellSize side of the square cells of the grid.
+   * @return the signed distance field to obstacles.
+   */
+  public ScalarField distanceField(double cellSize) {
+    ScalarField field = distanceField;
+    if (field == null || field.getCellSize() != cellSize) {
+      distanceField = field = EnvironmentEvents.derived("distance field", this, cellSize,
+          () -> ScalarField.sample(this, cellSize, this::signedDistance));
+    }
+    return field;
+  }
+
+  /**
+   * Returns the static floor fields of the domain, namely the walking distances from each cell of a
+   * grid to each access and to the nearest access (closed accesses are ignored). The last computed
+   * fields are kept, and updated locally when obstacles or accesses change, so they are only recomputed
+   * if a different resolution is requested.
+   *
+   * @param cellSize side of the square cells of the grid.
+   * @return the static floor fields of the domain.
+   */
+  public FloorFields floorFields(double cellSize) {
+    FloorFields fields = floorFields;
+    if (fields == null || fields.nearestAccess().getCellSize() != cellSize) {
+      floorFields = fields = EnvironmentEvents.derived("floor fields", this, cellSize,
+          () -> FloorFields.of(this, cellSize));
+    }
+    return fields;
+  }
+
+  /**
+   * Installs a distance field read from a {@link DerivedCache}, unless the domain has changed since the
+   * key of the entry was computed or it already has a field with the same cell size.
+   *
+   * @param field   the distance field.
+   * @param version version of the domain when the key of the entry was computed.
+   */
+  void installDistanceField(ScalarField field, long version) {
+    ScalarField current = distanceField;
+    if (this.version == version && (current == null || current.getCellSize() != field.getCellSize())) {
+      distanceField = field;
+    }
+  }
+
+  /**
+   * Installs floor fields read from a {@link DerivedCache}, unless the domain has changed since the key
+   * of the entry was computed or it already has fields with the same cell size.
+   *
+   * @param fields  the floor fields.
+   * @param version version of the domain when the key of the entry was computed.
+   */
+  void installFloorFields(FloorFields fields, long version) {
+    FloorFields current = floorFields;
+    double cellSize = fields.nearestAccess().getCellSize();
+    if (this.version == version && (current == null || current.nearestAccess().getCellSize() != cellSize)) {
+      floorFields = fields;
+    }
+  }
+
+  /**
+   * Returns the walking distances between the open accesses of the domain, computed from its static
+   * floor fields (see {@link #floorFields(double)}). The distance from an access to another is the value
+   * of the floor field of the latter at the center of the former (the least one if several accesses share
+   * the id of the former).
+   *
+   * @param cellSize side of the square cells of the grid.
+   * @return a matrix whose element {@code [i][j]} is the walking distance from access with id
+   * {@code ids[i]} to access with id {@code ids[j]}, where {@code ids} are the access ids of the floor
+   * fields ({@code Double.POSITIVE_INFINITY} if the latter cannot be reached).
+   */
+  public double[][] accessDistances(double cellSize) {
+    FloorFields fields = floorFields(cellSize);
+    int[] ids = fields.getAccessIds();
+    double[][] distances = new double[ids.length][ids.length];
+    for (double[] row : distances) {
+      Arrays.fill(row, Double.POSITIVE_INFINITY);
+    }
+    for (Access access : accesses) {
+      int i = Arrays.binarySearch(ids, access.id());
+      if (i < 0) {
+        continue;
+      }
+      Point2D center = access.shape().center();
+      for (int j = 0; j < ids.length; j++) {
+        double distance = i == j ? 0 : fields.field(ids[j]).valueAt(center.getX(), center.getY());
+        distances[i][j] = Math.min(distances[i][j], distance);
+      }
+    }
+    return distances;
+  }
+
+  /**
+   * Returns the navigation mesh of the domain, made of walkable triangles covering its free space, which
+   * answers shortest path queries to accesses (see {@link NavigationMesh#path(double, double, int)}).
+   * The last built mesh is kept, along with its cache of paths. Unlike distance and floor fields, it is
+   * not updated locally: any change to the domain makes it be rebuilt from scratch on the next call, as
+   * does requesting a different resolution.
+   *
+   * @param cellSize resolution of the mesh: free space is triangulated in square tiles of 16 cells a side,
+   *                 and circular obstacles are approximated to within a quarter of a cell.
+   * @return the navigation mesh of the domain.
+   */
+  public NavigationMesh navigationMesh(double cellSize) {
+    NavigationMesh mesh = navigationMesh;
+    if (mesh == null || mesh.getCellSize() != cellSize || mesh.version() != version) {
+      navigationMesh = mesh = EnvironmentEvents.derived("navigation mesh", this, cellSize,
+          () -> NavigationMesh.of(this, cellSize, NavigationMesh.DEFAULT_CACHE_CAPACITY));
+    }
+    return mesh;
+  }
+
+  /**
+   * Returns the visibility graph of the domain, for any-angle shortest paths keeping a clearance from
+   * obstacles (see {@link VisibilityGraph}). The last built graph is kept. Unlike distance and floor
+   * fields, it is not updated locally: any change to the domain makes it be rebuilt from scratch on the
+   * next call, as does requesting a different clearance.
+   *
+   * @param clearance distance kept from obstacles.
+   * @return the visibility graph of the domain.
+   */
+  public VisibilityGraph visibilityGraph(double clearance) {
+    VisibilityGraph graph = visibilityGraph;
+    if (graph == null || graph.getClearance() != clearance || graph.version() != version) {
+      visibilityGraph = graph = EnvironmentEvents.derived("visibility graph", this, clearance,
+          () -> VisibilityGraph.of(this, clearance));
+    }
+    return graph;
+  }
+
+  /**
+   * Returns the accesses in the domain whose shapes lie within a given distance of a point.
+   *
+   * @param x x-coordinate of point.
+   * @param y y-coordinate of point.
+   * @param r maximum distance.
+   * @return the accesses near the point.
+   */
+  public List<Access> accessesNear(double x, double y, double r) {
+    QueryMetrics metrics = this.metrics;
+    long start = metrics.start();
+    List<Access> near = accessIndex().near(x, y, r);
+    metrics.record(id, QueryType.ACCESSES_NEAR, start);
+    return near;
+  }
+
+  /**
+   * Returns the access in the domain whose shape contains a point.
+   *
+   * @param x x-coordinate of point.
+   * @param y y-coordinate of point.
+   * @return the access containing the point ({@code null} if there is none). If several accesses
+   * contain the point, the first one in the domain is returned.
+   */
+  public Access accessAt(double x, double y) {
+    QueryMetrics metrics = this.metrics;
+    long start = metrics.start();
+    ShapeIndex<Access> index = accessIndex();
+    int found = index.firstContaining(x, y);
+    Access access = found < 0 ? null : index.element(found);
+    metrics.record(id, QueryType.ACCESS_AT, start);
+    return access;
+  }
+
+  /**
+   * Returns the first access in the domain entered by a step along a segment.
+   *
+   * @param x0 x-coordinate of initial position.
+   * @param y0 y-coordinate of initial position.
+   * @param x1 x-coordinate of final position.
+   * @param y1 y-coordinate of final position.
+   * @return the first access whose shape is met by the segment ({@code null} if there is none). If
+   * the initial position already lies within an access, that access is returned.
+   */
+  public Access firstAccessCrossed(double x0, double y0, double x1, double y1) {
+    QueryMetrics metrics = this.metrics;
+    long start = metrics.start();
+    ShapeIndex<Access> index = accessIndex();
+    int hit = index.raycast(x0, y0, x1 - x0, y1 - y0, 1, new double[1]);
+    Access access = hit < 0 ? null : index.element(hit);
+    metrics.record(id, QueryType.ACCESS_CROSSED, start);
+    return access;
+  }
+
+  /**
+   * Constructs a labeled occupancy grid of the domain, whose cells are marked as free, as
+   * occupied by an obstacle or with the id of the access they belong to.
+   *
+   * @param cellSize side of the square cells of the grid.
+   * @return a labeled occupancy grid of the domain.
+   */
+  public Raster rasterize(double cellSize) {
+    return EnvironmentEvents.derived("raster", this, cellSize, () -> Raster.of(this, cellSize));
+  }
+
+  /**
+   * Constructs a json representation of the domain.
+   * @return a json representation of the domain.
+   */
+  public JsonObject toJson() {
+    JsonObject json = new JsonObject();
+    json.put(JsonKeys.ID, id);
+    if (!name.isEmpty()) {
+      json.put(JsonKeys.NAME, name);
+    }
+    if (!description.isEmpty()) {
+      json.put(JsonKeys.DESCRIPTION, description);
+    }
+    json.put(JsonKeys.WIDTH, width);
+    json.put(JsonKeys.HEIGHT, height);
+    if (!obstacles.isEmpty()) {
+      List<JsonObject> jsonObstacles = new ArrayList<>();
+      for (Obstacle obstacle : obstacles) {
+        jsonObstacles.add(obstacle.toJson());
+      }
+      json.put(JsonKeys.OBSTACLES, jsonObstacles);
+
+    }
+    if (!accesses.isEmpty()) {
+      List<JsonObject> jsonAccesses = new ArrayList<>();
+      for (Access a : accesses) {
+        jsonAccesses.add(a.toJson());
+      }
+      json.put(JsonKeys.ACCESSES, jsonAccesses);
+    }
+    return json;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    Domain domain = (Domain) o;
+    return id == domain.id;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(id);
+  }
+}
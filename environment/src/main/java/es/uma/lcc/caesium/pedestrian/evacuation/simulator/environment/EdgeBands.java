@@ -0,0 +1,119 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+/**
+ * Horizontal bands over the bounding box of a polygon, each one listing the edges whose vertical
+ * extent overlaps it. Crossing-number tests for a point only need to examine the edges in the band
+ * containing the point, as no other edge crosses the horizontal line through it.
+ *
+ * @author ppgllrd
+ */
+final class EdgeBands {
+  /**
+   * Maximum number of bands.
+   */
+  private static final int MAX_BANDS = 1024;
+
+  /**
+   * y-coordinate of the bottom of the first band
+   */
+  private final double minY;
+  /**
+   * height of bands
+   */
+  private final double bandHeight;
+  /**
+   * number of bands
+   */
+  private final int bands;
+  /**
+   * start of the edges of each band in {@code edges}
+   */
+  private final int[] starts;
+  /**
+   * edges overlapping each band, where edge {@code i} goes from vertex {@code i - 1} (or the last one
+   * if {@code i} is 0) to vertex {@code i}
+   */
+  private final int[] edges;
+
+  /**
+   * Builds the bands of a polygon.
+   *
+   * @param ys y-coordinates of vertices of polygon.
+   * @param box bounding box of polygon.
+   */
+  EdgeBands(double[] ys, BoundingBox box) {
+    int n = ys.length;
+    minY = box.minY();
+    bands = Math.max(1, Math.min(n, MAX_BANDS));
+    bandHeight = box.height() / bands;
+    starts = new int[bands + 1];
+    for (int i = 0, j = n - 1; i < n; j = i++) {
+      int b1 = band(Math.max(ys[j], ys[i]));
+      for (int b = band(Math.min(ys[j], ys[i])); b <= b1; b++) {
+        starts[b + 1]++;
+      }
+    }
+    for (int b = 0; b < bands; b++) {
+      starts[b + 1] += starts[b];
+    }
+    edges = new int[starts[bands]];
+    int[] next = starts.clone();
+    for (int i = 0, j = n - 1; i < n; j = i++) {
+      int b1 = band(Math.max(ys[j], ys[i]));
+      for (int b = band(Math.min(ys[j], ys[i])); b <= b1; b++) {
+        edges[next[b]++] = i;
+      }
+    }
+  }
+
+  /**
+   * Returns the band containing a y-coordinate (clamped to the first and last bands).
+   *
+   * @param y the y-coordinate.
+   * @return the band containing the y-coordinate.
+   */
+  int band(double y) {
+    int b = bandHeight > 0 ? (int) Math.floor((y - minY) / bandHeight) : 0;
+    return b < 0 ? 0 : Math.min(b, bands - 1);
+  }
+
+  /**
+   * Returns the position in {@link #edge} of the first edge of a band.
+   *
+   * @param band the band.
+   * @return the position of the first edge of the band.
+   */
+  int start(int band) {
+    return starts[band];
+  }
+
+  /**
+   * Returns the position in {@link #edge} following the last edge of a band.
+   *
+   * @param band the band.
+   * @return the position following the last edge of the band.
+   */
+  int end(int band) {
+    return starts[band + 1];
+  }
+
+  /**
+   * Returns an edge of some band.
+   *
+   * @param position position of the edge.
+   * @return the edge, as the index of its final vertex.
+   */
+  int edge(int position) {
+    return edges[position];
+  }
+
+  /**
+   * Estimates the heap memory used by the bands (see {@link MemoryFootprint}).
+   *
+   * @return the estimated number of bytes.
+   */
+  long memoryFootprint() {
+    return MemoryFootprint.object(2 * Double.BYTES + Integer.BYTES + 2 * MemoryFootprint.REFERENCE)
+        + MemoryFootprint.array(starts.length, Integer.BYTES) + MemoryFootprint.array(edges.length, Integer.BYTES);
+  }
+}
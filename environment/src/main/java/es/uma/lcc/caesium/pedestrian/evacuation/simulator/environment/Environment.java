@@ -0,0 +1,659 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+import com.github.cliftonlabs.json_simple.JsonArray;
+import com.github.cliftonlabs.json_simple.JsonException;
+import com.github.cliftonlabs.json_simple.JsonObject;
+import com.github.cliftonlabs.json_simple.Jsoner;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.Objects;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+
+/**
+ * This class allows handling the basic information of the physical environment
+ * to be simulated.
+ *
+ * @author ccottap, ppgllrd
+ */
+public class Environment {
+  /**
+   * Domains in the environment.
+   */
+  protected final Map<Integer, Domain> domains;
+
+  /**
+   * Gateways in the environment.
+   */
+  protected final Map<Integer, Gateway> gateways;
+
+  /**
+   * Connectivity graph of domains and gateways (lazily built).
+   */
+  private volatile GatewayGraph gatewayGraph;
+
+  /**
+   * ids of closed gateways
+   */
+  private final Set<Integer> closedGateways = new HashSet<>();
+
+  /**
+   * number of changes made to domains and gateways of the environment itself
+   */
+  private long modifications;
+
+  /**
+   * instrumentation of spatial queries, set on domains added to the environment
+   * (accessed by {@link FrozenEnvironment} when taking a snapshot)
+   */
+  volatile QueryMetrics queryMetrics = QueryMetrics.NOOP;
+
+  /**
+   * minimum number of obstacles and accesses for constructing environments in parallel
+   */
+  private static final int PARALLEL_CONSTRUCTION_THRESHOLD = 10_000;
+
+  /**
+   * Basic constructor. Creates an environment with no domains or gateways.
+   */
+  public Environment() {
+    this(new HashMap<>(), new HashMap<>());
+  }
+
+  /**
+   * Creates an environment backed by the given maps of domains and gateways.
+   *
+   * @param domains  map from ids to domains.
+   * @param gateways map from ids to gateways.
+   */
+  protected Environment(Map<Integer, Domain> domains, Map<Integer, Gateway> gateways) {
+    this.domains = domains;
+    this.gateways = gateways;
+  }
+
+  /** Constructs an environment with the given domains and gateways. Large environments are
+   * constructed in parallel using the common fork-join pool (see {@link #fromJson(JsonObject, Executor)}).
+   * @param json The json object to be parsed.
+   * @return an environment with the given domains and gateways.
+   */
+  public static Environment fromJson(JsonObject json) {
+    JsonArray domains = json.getCollection(JsonKeys.DOMAINS);
+    if (domains.size() > 1 && numberOfElements(domains) >= PARALLEL_CONSTRUCTION_THRESHOLD) {
+      return fromJson(json, ForkJoinPool.commonPool());
+    }
+    Environment environment = new Environment();
+    for (Object object : domains) {
+      Domain domain = Domain.fromJson((JsonObject) object);
+      environment.addDomain(domain);
+    }
+    environment.addGateways(json);
+    return environment;
+  }
+
+  /** Constructs an environment with the given domains and gateways. Domains (along with their
+   * obstacles and accesses) are constructed concurrently by tasks submitted to an executor, and
+   * then added in the same order as in the json object, so that the result is identical to the
+   * one constructed sequentially. Gateways are validated and added once all domains are available.
+   * @param json The json object to be parsed.
+   * @param executor executor used to construct domains.
+   * @return an environment with the given domains and gateways.
+   */
+  public static Environment fromJson(JsonObject json, Executor executor) {
+    JsonArray domains = json.getCollection(JsonKeys.DOMAINS);
+    List<CompletableFuture<Domain>> futures = new ArrayList<>(domains.size());
+    for (Object object : domains) {
+      futures.add(CompletableFuture.supplyAsync(() -> Domain.fromJson((JsonObject) object), executor));
+    }
+    Environment environment = new Environment();
+    for (CompletableFuture<Domain> future : futures) {
+      try {
+        environment.addDomain(future.join());
+      } catch (CompletionException e) {
+        // report same exceptions as sequential construction
+        if (e.getCause() instanceof RuntimeException cause) {
+          throw cause;
+        }
+        throw e;
+      }
+    }
+    environment.addGateways(json);
+    return environment;
+  }
+
+  /**
+   * Total number of obstacles and accesses in some json domains.
+   */
+  private static int numberOfElements(JsonArray domains) {
+    int elements = 0;
+    for (Object object : domains) {
+      JsonObject domain = (JsonObject) object;
+      if (domain.get(JsonKeys.OBSTACLES.getKey()) instanceof JsonArray obstacles) {
+        elements += obstacles.size();
+      }
+      if (domain.get(JsonKeys.ACCESSES.getKey()) instanceof JsonArray accesses) {
+        elements += accesses.size();
+      }
+    }
+    return elements;
+  }
+
+  /**
+   * Adds gateways in a json environment, once its domains have been added.
+   */
+  private void addGateways(JsonObject json) {
+    JsonArray gateways = json.getCollection(JsonKeys.GATEWAYS);
+    EnvironmentEvents.GatewayValidation event = new EnvironmentEvents.GatewayValidation();
+    event.begin();
+    for (Object object : gateways) {
+      Gateway gateway = Gateway.fromJson((JsonObject) object);
+      if (!addGateway(gateway)) {
+        throw new UnsupportedOperationException(String.format("Environment.fromJson: gateway %d could not be added",
+            gateway.id()));
+      }
+    }
+    event.end(this);
+  }
+
+  /**
+   * Contents are parsed in a streaming fashion, building the environment as they are read
+   * (see {@link #fromJson} for the expected keys). Gzipped files are also accepted.
+   *
+   * @param file the file with json contents to be parsed.
+   * @return an environment from the provided file.
+   * @throws IOException
+   * @throws JsonException
+   */
+  public static Environment fromFile(File file) throws IOException, JsonException {
+    return EnvironmentReader.read(file.toPath());
+  }
+
+  /**
+   * @param filename the name of the file with json contents to be parsed.
+   * @return an environment from the provided file.
+   * @throws IOException
+   * @throws JsonException
+   */
+  public static Environment fromFile(String filename) throws IOException, JsonException {
+    return fromFile(new File(filename));
+  }
+
+  /**
+   * Writes the json serialization of the environment to a file, so that it can be read back with
+   * {@link #fromFile}. The file is gzipped if its name ends with {@code .gz}.
+   *
+   * @param file the file to write.
+   * @throws IOException if the file cannot be written.
+   */
+  public void toFile(File file) throws IOException {
+    OutputStream output = new FileOutputStream(file);
+    if (file.getName().endsWith(".gz")) {
+      output = new GZIPOutputStream(output, 1 << 16);
+    }
+    try (Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), 1 << 16)) {
+      Jsoner.serialize(toJson(), writer);
+    }
+  }
+
+  /**
+   * @param filename the name of the file to write.
+   * @throws IOException if the file cannot be written.
+   */
+  public void toFile(String filename) throws IOException {
+    toFile(new File(filename));
+  }
+
+  /**
+   * Memory-maps a file in binary format (as written by {@link #writeBinary}) and decodes the
+   * environment in it. Decoding reads primitives directly from the mapped pages instead of parsing
+   * text. Gateways are decoded upfront, but each domain (with its obstacles, accesses and shapes) is
+   * decoded from the mapped pages the first time it is looked up, so processes only build on their
+   * heaps the domains they use, while the pages of the file are shared through the page cache.
+   * Operations on the whole environment (such as iterating over domains or freezing) decode all of them.
+   *
+   * @param path the file in binary format.
+   * @return an environment from the provided file.
+   * @throws IOException if the file cannot be read or is not in binary format.
+   */
+  public static Environment mapBinary(Path path) throws IOException {
+    return EnvironmentBinary.map(path);
+  }
+
+  /**
+   * Writes this environment to a file in a compact binary format, which can be loaded back with
+   * {@link #mapBinary}.
+   *
+   * @param path the file to write.
+   * @throws IOException if the file cannot be written.
+   */
+  public void writeBinary(Path path) throws IOException {
+    EnvironmentBinary.write(this, path);
+  }
+
+  /**
+   * Returns an immutable snapshot of the environment, which can be queried by any number of threads
+   * without synchronization or defensive copies. Later changes to this environment do not affect the
+   * snapshot.
+   *
+   * @return an immutable snapshot of the environment.
+   * @see FrozenEnvironment
+   */
+  public FrozenEnvironment freeze() {
+    return new FrozenEnvironment(this);
+  }
+
+  /**
+   * Adds a domain to the environment. Note that it is not possible to
+   * add a domain whose id is 0, since this is assumed to represent
+   * the safety domain.
+   *
+   * @param domain the domain to be added.
+   */
+  public void addDomain(Domain domain) {
+    int id = domain.id();
+    if (id == 0) {
+      throw new UnsupportedOperationException(String.format("Environment.addDomain: domain %d could not be added",  id));
+    }
+    if (queryMetrics != QueryMetrics.NOOP) {
+      domain.setQueryMetrics(queryMetrics);
+    }
+    Domain replaced = domains.put(id, domain);
+    // keep versions increasing when a domain is replaced
+    modifications += 1 + (replaced == null ? 0 : replaced.version());
+    gatewayGraph = null;
+  }
+
+  /**
+   * Adds a gateway to the environment. The domains must already exist in the environment, otherwise nothing is done.
+   *
+   * @param gateway the gateway to be added.
+   * @return true iff the gateway could be added.
+   */
+  public boolean addGateway(Gateway gateway) {
+    if ((gateway.domain1() != gateway.domain2()) && ((gateway.domain1() == 0)
+        || domains.containsKey(gateway.domain1())) && ((gateway.domain2() == 0)
+        || domains.containsKey(gateway.domain2()))) {
+      gateways.put(gateway.id(), gateway);
+      modifications++;
+      gatewayGraph = null;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Closes a gateway, along with its accesses in both domains (see {@link Domain#closeAccess(int)}).
+   * Closed gateways are not part of the gateway graph.
+   *
+   * @param id the id of the gateway.
+   * @return {@code true} if the gateway exists and was open.
+   */
+  public boolean closeGateway(int id) {
+    Gateway gateway = gateways.get(id);
+    if (gateway == null || !closedGateways.add(id)) {
+      return false;
+    }
+    for (int domainId : new int[]{gateway.domain1(), gateway.domain2()}) {
+      Domain domain = domains.get(domainId);
+      if (domain != null) {
+        domain.closeAccess(id);
+      }
+    }
+    modifications++;
+    gatewayGraph = null;
+    return true;
+  }
+
+  /**
+   * Opens again a gateway, along with its accesses in both domains.
+   *
+   * @param id the id of the gateway.
+   * @return {@code true} if the gateway exists and was closed.
+   * @see #closeGateway(int)
+   */
+  public boolean openGateway(int id) {
+    Gateway gateway = gateways.get(id);
+    if (gateway == null || !closedGateways.remove(id)) {
+      return false;
+    }
+    for (int domainId : new int[]{gateway.domain1(), gateway.domain2()}) {
+      Domain domain = domains.get(domainId);
+      if (domain != null) {
+        domain.openAccess(id);
+      }
+    }
+    modifications++;
+    gatewayGraph = null;
+    return true;
+  }
+
+  /**
+   * Checks whether a gateway is open.
+   *
+   * @param id the id of the gateway.
+   * @return {@code false} if the gateway has been closed.
+   */
+  public boolean isGatewayOpen(int id) {
+    return !closedGateways.contains(id);
+  }
+
+  /**
+   * Returns the number of changes made to the environment, including changes to its domains. Readers
+   * can compare versions to detect changes, and use {@link #freeze()} to get a consistent view of the
+   * environment.
+   *
+   * @return the version of the environment.
+   */
+  public long version() {
+    return modifications + domainVersions();
+  }
+
+  /**
+   * Returns the sum of the versions of all domains in the environment.
+   */
+  long domainVersions() {
+    long versions = 0;
+    for (Domain domain : domains.values()) {
+      versions += domain.version();
+    }
+    return versions;
+  }
+
+  /**
+   * Gets a specific domain.
+   *
+   * @param id the id of the domain sought.
+   * @return the domain whose id is indicated (null if it does not exist).
+   */
+  public Domain getDomain(int id) {
+    return domains.get(id);
+  }
+
+  /**
+   * Returns a set with the ids of all domains in the environment.
+   *
+   * @return a set with the ids of all domains in the environment.
+   */
+  public Set<Integer> getDomainsIDs() {
+    return domains.keySet();
+  }
+
+  /**
+   * Gets a specific gateway.
+   *
+   * @param id the id of the gateway sought.
+   * @return the gateway whose id is indicated (null if it does not exist)..
+   */
+  public Gateway getGateway(int id) {
+    return gateways.get(id);
+  }
+
+  /**
+   * Returns a set with the ids of all gateways in the environment.
+   *
+   * @return a set with the ids of all gateways in the environment.
+   */
+  public Set<Integer> getGatewayIDs() {
+    return gateways.keySet();
+  }
+
+  /**
+   * Returns the connectivity graph of domains (including the safety domain) and gateways, building it if needed.
+   *
+   * @return the connectivity graph of the environment.
+   */
+  public GatewayGraph gatewayGraph() {
+    GatewayGraph graph = gatewayGraph;
+    if (graph == null) {
+      gatewayGraph = graph = EnvironmentEvents.derived("gateway graph", this, 0, () -> new GatewayGraph(this));
+    }
+    return graph;
+  }
+
+  /**
+   * Returns the transition through the access containing a point of a domain.
+   *
+   * @param domainId the id of the domain the pedestrian is in.
+   * @param x        x-coordinate of point.
+   * @param y        y-coordinate of point.
+   * @return the transition through the access containing the point ({@code null} if there is none
+   * or the domain does not exist).
+   * @see Domain#accessAt(double, double)
+   */
+  public AccessTransition accessAt(int domainId, double x, double y) {
+    Domain domain = getDomain(domainId);
+    if (domain == null) {
+      return null;
+    }
+    QueryMetrics metrics = domain.getQueryMetrics();
+    long start = metrics.start();
+    ShapeIndex<Access> index = domain.accessIndex();
+    int found = index.firstContaining(x, y);
+    metrics.record(domainId, QueryType.ACCESS_AT, start);
+    return found < 0 ? null : transition(domainId, 0, index.element(found));
+  }
+
+  /**
+   * Returns the transition through the first access entered by a step along a segment within a domain.
+   *
+   * @param domainId the id of the domain the pedestrian is in.
+   * @param x0       x-coordinate of initial position.
+   * @param y0       y-coordinate of initial position.
+   * @param x1       x-coordinate of final position.
+   * @param y1       y-coordinate of final position.
+   * @return the transition through the first access met by the segment ({@code null} if there is none
+   * or the domain does not exist).
+   * @see Domain#firstAccessCrossed(double, double, double, double)
+   */
+  public AccessTransition firstAccessCrossed(int domainId, double x0, double y0, double x1, double y1) {
+    Domain domain = getDomain(domainId);
+    if (domain == null) {
+      return null;
+    }
+    QueryMetrics metrics = domain.getQueryMetrics();
+    long start = metrics.start();
+    ShapeIndex<Access> index = domain.accessIndex();
+    double[] time = new double[1];
+    int hit = index.raycast(x0, y0, x1 - x0, y1 - y0, 1, time);
+    metrics.record(domainId, QueryType.ACCESS_CROSSED, start);
+    return hit < 0 ? null : transition(domainId, time[0], index.element(hit));
+  }
+
+  /**
+   * Resolves the gateway an access in a domain belongs to and the domain it leads to.
+   */
+  private AccessTransition transition(int domainId, double time, Access access) {
+    Gateway gateway = getGateway(access.id());
+    if (gateway == null) {
+      return new AccessTransition(time, access, null, -1);
+    }
+    int target = gateway.domain1() == domainId ? gateway.domain2() : gateway.domain1();
+    return new AccessTransition(time, access, gateway, target);
+  }
+
+  /**
+   * Returns the static floor fields of all domains in the environment, computed in parallel.
+   *
+   * @param cellSize side of the square cells of the grids.
+   * @return a map from the id of each domain to its floor fields.
+   * @see Domain#floorFields(double)
+   */
+  public Map<Integer, FloorFields> floorFields(double cellSize) {
+    Map<Integer, FloorFields> fields = new ConcurrentHashMap<>();
+    domains.values().parallelStream().forEach(domain -> fields.put(domain.id(), domain.floorFields(cellSize)));
+    return new HashMap<>(fields);
+  }
+
+  /**
+   * Builds a router to the safety domain across the domains of the environment, from the static floor
+   * fields of its domains (computed in parallel). The router is a snapshot of the current state of the
+   * environment, so a new one should be built after changes.
+   *
+   * @param cellSize side of the square cells of the grids of floor fields.
+   * @return a router to the safety domain.
+   * @see HierarchicalRouter
+   */
+  public HierarchicalRouter router(double cellSize) {
+    return EnvironmentEvents.derived("router", this, cellSize, () -> new HierarchicalRouter(this, cellSize));
+  }
+
+  /**
+   * Sets the instrumentation of spatial queries on all domains of the environment, including those added
+   * later (see {@link Domain#setQueryMetrics}). Frozen snapshots inherit the metrics of the environment.
+   *
+   * @param metrics the query metrics ({@link QueryMetrics#NOOP} to disable instrumentation).
+   */
+  public void setQueryMetrics(QueryMetrics metrics) {
+    queryMetrics = Objects.requireNonNull(metrics);
+    for (Domain domain : domains.values()) {
+      domain.setQueryMetrics(metrics);
+    }
+  }
+
+  /**
+   * Returns the instrumentation of spatial queries set on the environment.
+   *
+   * @return the query metrics ({@link QueryMetrics#NOOP} by default).
+   */
+  public QueryMetrics getQueryMetrics() {
+    return queryMetrics;
+  }
+
+  /**
+   * Estimates the heap memory used by the environment: its domains (see {@link Domain#memoryFootprint()}),
+   * its gateways and its gateway graph, if built. Structures shared by several domains or snapshots are
+   * counted in each of them.
+   *
+   * @return the estimated memory footprint of the environment, with a part for each domain (sorted by id),
+   * for gateways and for the gateway graph.
+   */
+  public MemoryFootprint memoryFootprint() {
+    List<MemoryFootprint> parts = new ArrayList<>();
+    domains.values().stream().sorted(Comparator.comparingInt(Domain::id))
+        .forEach(domain -> parts.add(domain.memoryFootprint()));
+    long gatewayBytes = MemoryFootprint.hashMap(gateways.size(), false)
+        + (long) gateways.size() * MemoryFootprint.BOXED_INT;
+    for (Gateway gateway : gateways.values()) {
+      gatewayBytes += MemoryFootprint.object(3 * Integer.BYTES + 2 * MemoryFootprint.REFERENCE)
+          + MemoryFootprint.string(gateway.name()) + MemoryFootprint.string(gateway.description());
+    }
+    parts.add(new MemoryFootprint("gateways", gatewayBytes, List.of()));
+    GatewayGraph graph = builtGatewayGraph();
+    if (graph != null) {
+      parts.add(new MemoryFootprint("gateway graph", graph.memoryFootprint(), List.of()));
+    }
+    long ownBytes = MemoryFootprint.object(Long.BYTES + 6 * MemoryFootprint.REFERENCE)
+        + MemoryFootprint.hashMap(domains.size(), false) + (long) domains.size() * MemoryFootprint.BOXED_INT
+        + MemoryFootprint.hashSet(closedGateways.size(), MemoryFootprint.BOXED_INT);
+    return MemoryFootprint.of("environment", ownBytes, parts);
+  }
+
+  /**
+   * Returns the gateway graph if already built, without building it.
+   */
+  GatewayGraph builtGatewayGraph() {
+    return gatewayGraph;
+  }
+
+  /**
+   * Registers a platform MXBean exposing the query metrics and memory footprint of the environment, under
+   * name {@code es.uma.lcc.caesium.pedestrian.evacuation:type=Environment,name=<name>} (see
+   * {@link EnvironmentMXBean}). The bean keeps the environment reachable until it is unregistered.
+   *
+   * @param name name of the bean.
+   * @return the object name the bean was registered with, for unregistering it.
+   * @throws JMException if the bean could not be registered (e.g. if the name is already in use).
+   */
+  public ObjectName registerMBean(String name) throws JMException {
+    ObjectName objectName = new ObjectName(String.format("%s:type=Environment,name=%s",
+        EnvironmentMXBean.DOMAIN, ObjectName.quote(name)));
+    ManagementFactory.getPlatformMBeanServer().registerMBean(new EnvironmentMonitor(this), objectName);
+    return objectName;
+  }
+
+  /**
+   * Constructs a json object with the environment information.
+   * @return a json object with the environment information.
+   */
+  public JsonObject toJson() {
+    JsonObject json = new JsonObject();
+    JsonArray domains = new JsonArray();
+    for (Domain domain : this.domains.values()) {
+      domains.add(domain.toJson());
+    }
+    json.put(JsonKeys.DOMAINS, domains);
+    JsonArray gateways = new JsonArray();
+    for (Gateway gateway : this.gateways.values()) {
+      gateways.add(gateway.toJson());
+    }
+    json.put(JsonKeys.GATEWAYS, gateways);
+    return json;
+  }
+
+  /**
+   * Returns a string with the json serialization of the environment.
+   * @return a string with the json serialization of the environment.
+   */
+  String jsonSerialized() {
+    return Jsoner.serialize(toJson());
+  }
+
+
+  /**
+   * Returns a string with the json serialization of the environment, pretty printed.
+   * @param indentation the indentation to be used.
+   * @return a string with the json serialization of the environment, pretty printed.
+   */
+   private String jsonPrettyPrinted(String indentation) {
+    String printable = jsonSerialized();
+    StringWriter writer = new StringWriter();
+
+    try {
+      Jsoner.prettyPrint(new StringReader(printable), writer, indentation, "\n");
+    } catch (IOException | JsonException ioException) {
+    }
+
+    return writer.toString();
+  }
+
+  /**
+   * Returns a string with the json serialization of the environment, pretty printed.
+   * @return a string with the json serialization of the environment, pretty printed.
+   */
+  public String jsonPrettyPrinted() {
+    return jsonPrettyPrinted("  ");
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Environment)) {
+      return false;
+    }
+    Environment that = (Environment) o;
+    return Objects.equals(domains, that.domains) && Objects.equals(gateways, that.gateways);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(domains, gateways);
+  }
+}
\ No newline at end of file
@@ -0,0 +1,645 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Compact binary format for environments. All data is stored in flat sections of primitives
+ * (little-endian), so that a file can be memory-mapped and decoded without parsing text:
+ * <pre>
+ *   header:   magic, version, #domains, #elements, #shapes, #gateways, #strings, #doubles, #string bytes
+ *   ints:     domains   (id, name, description, first obstacle, #obstacles, first access, #accesses)
+ *             elements  (access id or -1 for obstacles, name, description, shape)
+ *             shapes    (type, first double, #doubles)
+ *             gateways  (id, name, description, domain1, domain2)
+ *             string offsets (#strings + 1)
+ *   doubles:  width and height of each domain, followed by the coordinates of all shapes
+ *             (aligned to 8 bytes)
+ *   bytes:    UTF-8 encoded strings
+ * </pre>
+ * Names and descriptions are indexes into the table of (deduplicated) strings. Shape coordinates
+ * are stored as center and radius for circles, bottom-left corner, width and height for
+ * rectangles, and the list of vertices for polygons.
+ *
+ * @author ppgllrd
+ */
+final class EnvironmentBinary {
+  /**
+   * first int in every file ("PEVB")
+   */
+  static final int MAGIC = 0x50455642;
+  /**
+   * current version of the format
+   */
+  static final int VERSION = 1;
+
+  private static final int HEADER_INTS = 9;
+  private static final int DOMAIN_INTS = 7;
+  private static final int ELEMENT_INTS = 4;
+  private static final int SHAPE_INTS = 3;
+  private static final int GATEWAY_INTS = 5;
+  /**
+   * id stored for elements which are obstacles
+   */
+  private static final int NO_ID = -1;
+
+  private EnvironmentBinary() {
+  }
+
+  /**
+   * Writes an environment to a file.
+   *
+   * @param environment the environment.
+   * @param path        the file.
+   * @throws IOException if the file cannot be written.
+   */
+  static void write(Environment environment, Path path) throws IOException {
+    List<Domain> domains = new ArrayList<>();
+    for (int id : environment.getDomainsIDs()) {
+      domains.add(environment.getDomain(id));
+    }
+    List<Gateway> gateways = new ArrayList<>();
+    for (int id : environment.getGatewayIDs()) {
+      gateways.add(environment.getGateway(id));
+    }
+    Encoder encoder = new Encoder(domains, gateways);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, encoder.size());
+      encoder.encode(buffer);
+      buffer.force();
+    }
+  }
+
+  /**
+   * Encodes some domains and gateways in binary format.
+   *
+   * @param domains  the domains.
+   * @param gateways the gateways.
+   * @return a buffer with the binary encoding, positioned at its start.
+   */
+  static ByteBuffer encode(Collection<Domain> domains, Collection<Gateway> gateways) {
+    Encoder encoder = new Encoder(domains, gateways);
+    ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(encoder.size()));
+    encoder.encode(buffer);
+    return buffer.flip();
+  }
+
+  /**
+   * Memory-maps a file and decodes the environment in it.
+   *
+   * @param path the file.
+   * @return the environment.
+   * @throws IOException if the file cannot be read or is not in binary environment format.
+   */
+  static Environment map(Path path) throws IOException {
+    EnvironmentEvents.Read event = new EnvironmentEvents.Read();
+    event.begin();
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      Environment environment = decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+      event.end(path, "binary", environment);
+      return environment;
+    }
+  }
+
+  /**
+   * Decodes an environment in binary format. Only the header, the ids of domains and the gateways are
+   * decoded upfront, after checking that all indexes and ranges in the contents are valid. Each domain,
+   * along with its obstacles, accesses and shapes, is decoded from the buffer the first time it is looked
+   * up, so that domains which are never used are not built on the heap. Operations on the whole
+   * environment (such as iterating over its domains, freezing it or writing it) decode all domains.
+   *
+   * @param buffer a buffer whose contents, from its current position, are in binary environment format.
+   * @return the environment.
+   * @throws IOException if contents are not in binary environment format.
+   */
+  static Environment decode(ByteBuffer buffer) throws IOException {
+    Contents contents = new Contents(buffer);
+    Environment environment = new MappedEnvironment(contents);
+    EnvironmentEvents.GatewayValidation validation = new EnvironmentEvents.GatewayValidation();
+    validation.begin();
+    for (int g = 0; g < contents.gatewayCount; g++) {
+      Gateway gateway = contents.gateway(g);
+      if (!environment.addGateway(gateway)) {
+        throw new IOException(String.format("EnvironmentBinary.decode: gateway %d could not be added", gateway.id()));
+      }
+    }
+    validation.end(environment);
+    return environment;
+  }
+
+  private static long intCount(long domains, long elements, long shapes, long gateways, long strings) {
+    return DOMAIN_INTS * domains + ELEMENT_INTS * elements + SHAPE_INTS * shapes + GATEWAY_INTS * gateways
+        + strings + 1;
+  }
+
+  private static long doublesOffset(long intCount) {
+    long end = 4L * (HEADER_INTS + intCount);
+    return (end + 7) & ~7L;
+  }
+
+  /**
+   * Sections of some contents in binary format, from which domains and gateways are decoded.
+   */
+  private static final class Contents {
+    private final ByteBuffer bytes;
+    private final IntBuffer ints;
+    private final DoubleBuffer doubles;
+    private final int domainCount, elementCount, shapeCount, gatewayCount, stringCount, doubleCount, stringBytes;
+    // positions of sections within ints, and of strings within bytes
+    private final int elementsAt, shapesAt, gatewaysAt, stringOffsetsAt, stringsOffset;
+
+    /**
+     * Reads the header of some contents and checks them.
+     *
+     * @param buffer a buffer whose contents, from its current position, are in binary environment format.
+     * @throws IOException if contents are not in binary environment format.
+     */
+    Contents(ByteBuffer buffer) throws IOException {
+      bytes = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+      if (bytes.remaining() < 4 * HEADER_INTS || bytes.getInt(0) != MAGIC) {
+        throw new IOException("EnvironmentBinary.decode: not a binary environment");
+      }
+      if (bytes.getInt(4) != VERSION) {
+        throw new IOException(String.format("EnvironmentBinary.decode: unsupported version %d", bytes.getInt(4)));
+      }
+      domainCount = count(8);
+      elementCount = count(12);
+      shapeCount = count(16);
+      gatewayCount = count(20);
+      stringCount = count(24);
+      doubleCount = count(28);
+      stringBytes = count(32);
+      long doublesOffset = doublesOffset(intCount(domainCount, elementCount, shapeCount, gatewayCount, stringCount));
+      if (bytes.remaining() < doublesOffset + 8L * doubleCount + stringBytes) {
+        throw new IOException("EnvironmentBinary.decode: truncated binary environment");
+      }
+      ints = bytes.position(4 * HEADER_INTS).slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+      doubles = bytes.position((int) doublesOffset).slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+      bytes.position(0);
+      stringsOffset = (int) doublesOffset + 8 * doubleCount;
+      elementsAt = DOMAIN_INTS * domainCount;
+      shapesAt = elementsAt + ELEMENT_INTS * elementCount;
+      gatewaysAt = shapesAt + SHAPE_INTS * shapeCount;
+      stringOffsetsAt = gatewaysAt + GATEWAY_INTS * gatewayCount;
+      check();
+    }
+
+    private int count(int offset) throws IOException {
+      int count = bytes.getInt(offset);
+      if (count < 0) {
+        throw new IOException(String.format("EnvironmentBinary.decode: invalid section size %d", count));
+      }
+      return count;
+    }
+
+    /**
+     * Checks that all indexes and ranges are within their sections, so that decoding cannot fail later.
+     */
+    private void check() throws IOException {
+      checkRange(0, 2L * domainCount, doubleCount, "dimension");
+      for (int s = 0; s < stringCount; s++) {
+        int from = ints.get(stringOffsetsAt + s);
+        checkRange(from, (long) ints.get(stringOffsetsAt + s + 1) - from, stringBytes, "string");
+      }
+      for (int d = 0; d < domainCount; d++) {
+        int at = DOMAIN_INTS * d;
+        checkStrings(at + 1);
+        checkRange(ints.get(at + 3), ints.get(at + 4), elementCount, "element");
+        checkRange(ints.get(at + 5), ints.get(at + 6), elementCount, "element");
+      }
+      for (int e = 0; e < elementCount; e++) {
+        int at = elementsAt + ELEMENT_INTS * e;
+        checkStrings(at + 1);
+        checkRange(ints.get(at + 3), 1, shapeCount, "shape");
+      }
+      ShapeType[] types = ShapeType.values();
+      for (int s = 0; s < shapeCount; s++) {
+        int at = shapesAt + SHAPE_INTS * s;
+        int type = ints.get(at), count = ints.get(at + 2);
+        checkRange(type, 1, types.length, "shape type");
+        checkRange(ints.get(at + 1), count, doubleCount, "coordinate");
+        boolean valid = switch (types[type]) {
+          case CIRCLE -> count == 3;
+          case RECTANGLE -> count == 4;
+          case POLYGON -> count % 2 == 0;
+        };
+        if (!valid) {
+          throw new IOException(String.format("EnvironmentBinary.decode: invalid number of coordinates %d for %s",
+              count, types[type]));
+        }
+      }
+      for (int g = 0; g < gatewayCount; g++) {
+        checkStrings(gatewaysAt + GATEWAY_INTS * g + 1);
+      }
+    }
+
+    /**
+     * Checks the indexes of a name and a description, stored at consecutive ints.
+     */
+    private void checkStrings(int at) throws IOException {
+      checkRange(ints.get(at), 1, stringCount, "string");
+      checkRange(ints.get(at + 1), 1, stringCount, "string");
+    }
+
+    private static void checkRange(long first, long count, long size, String section) throws IOException {
+      if (first < 0 || count < 0 || first + count > size) {
+        throw new IOException(String.format("EnvironmentBinary.decode: invalid %s range [%d, %d) out of %d",
+            section, first, first + count, size));
+      }
+    }
+
+    int domainId(int d) {
+      return ints.get(DOMAIN_INTS * d);
+    }
+
+    /**
+     * Returns the version a domain has once decoded (one change for each obstacle and access added).
+     */
+    long domainVersion(int d) {
+      int at = DOMAIN_INTS * d;
+      return (long) ints.get(at + 4) + ints.get(at + 6);
+    }
+
+    Domain domain(int d) {
+      int at = DOMAIN_INTS * d;
+      EnvironmentEvents.DomainBuild build = new EnvironmentEvents.DomainBuild();
+      build.begin();
+      Domain domain = new Domain(ints.get(at), doubles.get(2 * d), doubles.get(2 * d + 1));
+      domain.setName(string(ints.get(at + 1)));
+      domain.setDescription(string(ints.get(at + 2)));
+      for (int e = ints.get(at + 3), end = e + ints.get(at + 4); e < end; e++) {
+        int elementAt = elementsAt + ELEMENT_INTS * e;
+        domain.addObstacle(new Obstacle(string(ints.get(elementAt + 1)), string(ints.get(elementAt + 2)),
+            shape(ints.get(elementAt + 3))));
+      }
+      for (int e = ints.get(at + 5), end = e + ints.get(at + 6); e < end; e++) {
+        int elementAt = elementsAt + ELEMENT_INTS * e;
+        domain.addAccess(new Access(ints.get(elementAt), string(ints.get(elementAt + 1)),
+            string(ints.get(elementAt + 2)), shape(ints.get(elementAt + 3))));
+      }
+      build.end(domain);
+      return domain;
+    }
+
+    Gateway gateway(int g) {
+      int at = gatewaysAt + GATEWAY_INTS * g;
+      return new Gateway(ints.get(at), string(ints.get(at + 1)), string(ints.get(at + 2)),
+          ints.get(at + 3), ints.get(at + 4));
+    }
+
+    private String string(int s) {
+      int from = ints.get(stringOffsetsAt + s), to = ints.get(stringOffsetsAt + s + 1);
+      byte[] utf8 = new byte[to - from];
+      bytes.get(stringsOffset + from, utf8);
+      return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private Shape shape(int s) {
+      int at = shapesAt + SHAPE_INTS * s;
+      int first = ints.get(at + 1), count = ints.get(at + 2);
+      return switch (ShapeType.values()[ints.get(at)]) {
+        case CIRCLE -> new Shape.Circle(doubles.get(first), doubles.get(first + 1), doubles.get(first + 2));
+        case RECTANGLE -> new Shape.Rectangle(doubles.get(first), doubles.get(first + 1),
+            doubles.get(first + 2), doubles.get(first + 3));
+        case POLYGON -> {
+          List<Point2D> points = new ArrayList<>(count / 2);
+          for (int i = first; i < first + count; i += 2) {
+            points.add(new Point2D(doubles.get(i), doubles.get(i + 1)));
+          }
+          yield new Shape.Polygon(points);
+        }
+      };
+    }
+  }
+
+  /**
+   * Map of domains by id, backed by some contents in binary format. Domains are decoded the first time
+   * they are looked up (also when iterating over values or entries), and can be added, replaced or removed
+   * like in any other map.
+   */
+  private static final class MappedDomains extends AbstractMap<Integer, Domain> {
+    private final Contents contents;
+    /**
+     * domains by id, in the order of the contents (null for those not decoded yet)
+     */
+    private final Map<Integer, Domain> domains = new LinkedHashMap<>();
+    /**
+     * indexes in the contents of domains not decoded yet, by id
+     */
+    private final Map<Integer, Integer> pending = new HashMap<>();
+    /**
+     * environment whose query metrics are set on decoded domains (set once the environment is created)
+     */
+    private Environment environment;
+
+    MappedDomains(Contents contents) {
+      this.contents = contents;
+      for (int d = 0; d < contents.domainCount; d++) {
+        domains.put(contents.domainId(d), null);
+        pending.put(contents.domainId(d), d);
+      }
+    }
+
+    @Override
+    public synchronized Domain get(Object key) {
+      Domain domain = domains.get(key);
+      if (domain == null) {
+        Integer index = pending.remove(key);
+        if (index != null) {
+          domain = contents.domain(index);
+          domain.setQueryMetrics(environment.queryMetrics);
+          domains.put(domain.id(), domain);
+        }
+      }
+      return domain;
+    }
+
+    @Override
+    public synchronized boolean containsKey(Object key) {
+      return domains.containsKey(key);
+    }
+
+    @Override
+    public synchronized Domain put(Integer key, Domain value) {
+      Domain previous = get(key);
+      domains.put(key, Objects.requireNonNull(value));
+      return previous;
+    }
+
+    @Override
+    public synchronized Domain remove(Object key) {
+      Domain previous = get(key);
+      domains.remove(key);
+      return previous;
+    }
+
+    @Override
+    public synchronized int size() {
+      return domains.size();
+    }
+
+    @Override
+    public Set<Entry<Integer, Domain>> entrySet() {
+      return new AbstractSet<>() {
+        @Override
+        public Iterator<Entry<Integer, Domain>> iterator() {
+          Iterator<Integer> ids = domains.keySet().iterator();
+          return new Iterator<>() {
+            private Integer id;
+
+            @Override
+            public boolean hasNext() {
+              return ids.hasNext();
+            }
+
+            @Override
+            public Entry<Integer, Domain> next() {
+              id = ids.next();
+              Integer key = id;
+              // the domain is decoded only if the value of the entry is requested
+              return new SimpleEntry<>(key, null) {
+                @Override
+                public Domain getValue() {
+                  return get(key);
+                }
+
+                @Override
+                public Domain setValue(Domain value) {
+                  return put(key, value);
+                }
+              };
+            }
+
+            @Override
+            public void remove() {
+              synchronized (MappedDomains.this) {
+                ids.remove();
+                pending.remove(id);
+              }
+            }
+          };
+        }
+
+        @Override
+        public int size() {
+          return MappedDomains.this.size();
+        }
+      };
+    }
+
+    /**
+     * Sums the versions of all domains, without decoding those not decoded yet.
+     */
+    synchronized long versions() {
+      long versions = 0;
+      for (Entry<Integer, Domain> entry : domains.entrySet()) {
+        Domain domain = entry.getValue();
+        versions += domain != null ? domain.version() : contents.domainVersion(pending.get(entry.getKey()));
+      }
+      return versions;
+    }
+
+    /**
+     * Sets the instrumentation of spatial queries on decoded domains (the rest get it when decoded).
+     */
+    synchronized void setQueryMetrics(QueryMetrics metrics) {
+      for (Domain domain : domains.values()) {
+        if (domain != null) {
+          domain.setQueryMetrics(metrics);
+        }
+      }
+    }
+  }
+
+  /**
+   * Environment whose domains are decoded from some contents in binary format on first access.
+   */
+  private static final class MappedEnvironment extends Environment {
+    private final MappedDomains mappedDomains;
+
+    MappedEnvironment(Contents contents) {
+      this(new MappedDomains(contents));
+    }
+
+    private MappedEnvironment(MappedDomains domains) {
+      super(domains, new HashMap<>());
+      mappedDomains = domains;
+      domains.environment = this;
+    }
+
+    @Override
+    long domainVersions() {
+      return mappedDomains.versions();
+    }
+
+    @Override
+    public void setQueryMetrics(QueryMetrics metrics) {
+      queryMetrics = Objects.requireNonNull(metrics);
+      mappedDomains.setQueryMetrics(metrics);
+    }
+  }
+
+  /**
+   * Collects the contents of all sections before writing them.
+   */
+  private static final class Encoder {
+    private final int domainCount, gatewayCount;
+    private int[] ints = new int[1024];
+    private int intCount = 0;
+    private double[] doubles = new double[1024];
+    private int doubleCount = 0;
+    private final Map<String, Integer> stringIndexes = new HashMap<>();
+    private final List<byte[]> strings = new ArrayList<>();
+    private int stringBytes = 0;
+    private int elementCount = 0, shapeCount = 0;
+
+    Encoder(Collection<Domain> domains, Collection<Gateway> gateways) {
+      domainCount = domains.size();
+      gatewayCount = gateways.size();
+      string("");
+      // ints of shapes are collected apart, as they follow those of all elements
+      int[] shapeInts = new int[16];
+      int shapeIntCount = 0;
+      List<Object> elements = new ArrayList<>();
+      for (Domain domain : domains) {
+        add(domain.getWidth());
+        add(domain.getHeight());
+      }
+      for (Domain domain : domains) {
+        add(domain.id());
+        add(string(domain.getName()));
+        add(string(domain.getDescription()));
+        add(elements.size());
+        add(domain.getObstacles().size());
+        elements.addAll(domain.getObstacles());
+        add(elements.size());
+        add(domain.getAccesses().size());
+        elements.addAll(domain.getAccesses());
+      }
+      for (Object element : elements) {
+        Shape shape;
+        if (element instanceof Access access) {
+          add(access.id());
+          add(string(access.name()));
+          add(string(access.description()));
+          shape = access.shape();
+        } else {
+          Obstacle obstacle = (Obstacle) element;
+          add(NO_ID);
+          add(string(obstacle.name()));
+          add(string(obstacle.description()));
+          shape = obstacle.shape();
+        }
+        add(shapeCount++);
+        int first = doubleCount;
+        switch (shape.getType()) {
+          case CIRCLE -> {
+            Shape.Circle circle = (Shape.Circle) shape;
+            add(circle.getX());
+            add(circle.getY());
+            add(circle.getRadius());
+          }
+          case RECTANGLE -> {
+            Shape.Rectangle rectangle = (Shape.Rectangle) shape;
+            add(rectangle.getLeft());
+            add(rectangle.getBottom());
+            add(rectangle.getWidth());
+            add(rectangle.getHeight());
+          }
+          case POLYGON -> {
+            for (Point2D point : ((Shape.Polygon) shape).getPoints()) {
+              add(point.getX());
+              add(point.getY());
+            }
+          }
+        }
+        if (shapeIntCount + SHAPE_INTS > shapeInts.length) {
+          shapeInts = Arrays.copyOf(shapeInts, 2 * shapeInts.length);
+        }
+        shapeInts[shapeIntCount++] = shape.getType().ordinal();
+        shapeInts[shapeIntCount++] = first;
+        shapeInts[shapeIntCount++] = doubleCount - first;
+      }
+      elementCount = elements.size();
+      for (int i = 0; i < shapeIntCount; i++) {
+        add(shapeInts[i]);
+      }
+      for (Gateway gateway : gateways) {
+        add(gateway.id());
+        add(string(gateway.name()));
+        add(string(gateway.description()));
+        add(gateway.domain1());
+        add(gateway.domain2());
+      }
+      int offset = 0;
+      add(offset);
+      for (byte[] string : strings) {
+        offset += string.length;
+        add(offset);
+      }
+    }
+
+    private int string(String string) {
+      return stringIndexes.computeIfAbsent(string, s -> {
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        strings.add(utf8);
+        stringBytes += utf8.length;
+        return strings.size() - 1;
+      });
+    }
+
+    private void add(int value) {
+      if (intCount == ints.length) {
+        ints = Arrays.copyOf(ints, 2 * intCount);
+      }
+      ints[intCount++] = value;
+    }
+
+    private void add(double value) {
+      if (doubleCount == doubles.length) {
+        doubles = Arrays.copyOf(doubles, 2 * doubleCount);
+      }
+      doubles[doubleCount++] = value;
+    }
+
+    long size() {
+      return doublesOffset(intCount) + 8L * doubleCount + stringBytes;
+    }
+
+    void encode(ByteBuffer target) {
+      ByteBuffer buffer = target.slice().order(ByteOrder.LITTLE_ENDIAN);
+      buffer.putInt(MAGIC).putInt(VERSION).putInt(domainCount).putInt(elementCount).putInt(shapeCount)
+          .putInt(gatewayCount).putInt(strings.size()).putInt(doubleCount).putInt(stringBytes);
+      buffer.asIntBuffer().put(ints, 0, intCount);
+      int doublesOffset = (int) doublesOffset(intCount);
+      buffer.position(doublesOffset);
+      buffer.asDoubleBuffer().put(doubles, 0, doubleCount);
+      buffer.position(doublesOffset + 8 * doubleCount);
+      for (byte[] string : strings) {
+        buffer.put(string);
+      }
+      target.position(target.position() + buffer.position());
+    }
+  }
+}
@@ -0,0 +1,242 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Java Flight Recorder events for loading environments and building structures derived from them.
+ * Events are timed with {@code begin()} and ended with one of the {@code end} methods defined here,
+ * which only compute their fields if the event is to be committed, so they have no noticeable cost
+ * when no recording is running. Events are enabled in any recording (e.g. one started with
+ * {@code -XX:StartFlightRecording}), and are listed under the "Pedestrian Evacuation" category.
+ *
+ * @author ppgllrd
+ */
+final class EnvironmentEvents {
+  private EnvironmentEvents() {
+  }
+
+  /**
+   * Reading an environment from a file.
+   */
+  @Name("es.uma.lcc.caesium.environment.Read")
+  @Label("Environment Read")
+  @Category({"Pedestrian Evacuation", "Environment"})
+  @Description("Reading an environment from a file, including parsing and construction of domains and gateways")
+  @StackTrace(false)
+  static final class Read extends Event {
+    @Label("Path")
+    String path;
+    @Label("Format")
+    String format;
+    @Label("File Size")
+    @DataAmount
+    long bytes;
+    @Label("Domains")
+    int domains;
+    @Label("Gateways")
+    int gateways;
+
+    void end(Path file, String fileFormat, Environment environment) {
+      end();
+      if (shouldCommit()) {
+        path = file.toString();
+        format = fileFormat;
+        try {
+          bytes = Files.size(file);
+        } catch (IOException e) {
+          bytes = -1;
+        }
+        domains = environment.getDomainsIDs().size();
+        gateways = environment.getGatewayIDs().size();
+        commit();
+      }
+    }
+  }
+
+  /**
+   * Parsing a domain, including construction of the shapes of its obstacles and accesses.
+   */
+  @Name("es.uma.lcc.caesium.environment.Parse")
+  @Label("Domain Parse")
+  @Category({"Pedestrian Evacuation", "Environment"})
+  @Description("Parsing a domain from json, including construction of the shapes of its obstacles and accesses")
+  @StackTrace(false)
+  static final class Parse extends Event {
+    @Label("Domain Id")
+    int domainId;
+    @Label("Obstacles")
+    int obstacles;
+    @Label("Accesses")
+    int accesses;
+    @Label("Polygon Vertices")
+    long vertices;
+
+    void end(int id, List<Obstacle> parsedObstacles, List<Access> parsedAccesses) {
+      end();
+      if (shouldCommit()) {
+        domainId = id;
+        obstacles = parsedObstacles.size();
+        accesses = parsedAccesses.size();
+        vertices = vertices(parsedObstacles, parsedAccesses);
+        commit();
+      }
+    }
+  }
+
+  /**
+   * Construction of a domain from its obstacles and accesses.
+   */
+  @Name("es.uma.lcc.caesium.environment.DomainBuild")
+  @Label("Domain Build")
+  @Category({"Pedestrian Evacuation", "Environment"})
+  @Description("Construction of a domain, adding its obstacles and accesses")
+  @StackTrace(false)
+  static final class DomainBuild extends Event {
+    @Label("Domain Id")
+    int domainId;
+    @Label("Obstacles")
+    int obstacles;
+    @Label("Accesses")
+    int accesses;
+    @Label("Polygon Vertices")
+    long vertices;
+
+    void end(Domain domain) {
+      end();
+      if (shouldCommit()) {
+        domainId = domain.id();
+        obstacles = domain.getObstacles().size();
+        accesses = domain.getAccesses().size();
+        vertices = vertices(domain.getObstacles(), domain.getAccesses());
+        commit();
+      }
+    }
+  }
+
+  /**
+   * Validation of the gateways of an environment, once its domains have been added.
+   */
+  @Name("es.uma.lcc.caesium.environment.GatewayValidation")
+  @Label("Gateway Validation")
+  @Category({"Pedestrian Evacuation", "Environment"})
+  @Description("Validation and addition of the gateways of an environment")
+  @StackTrace(false)
+  static final class GatewayValidation extends Event {
+    @Label("Domains")
+    int domains;
+    @Label("Gateways")
+    int gateways;
+
+    void end(Environment environment) {
+      end();
+      if (shouldCommit()) {
+        domains = environment.getDomainsIDs().size();
+        gateways = environment.getGatewayIDs().size();
+        commit();
+      }
+    }
+  }
+
+  /**
+   * Construction of a structure derived from a domain or environment.
+   */
+  @Name("es.uma.lcc.caesium.environment.DerivedBuild")
+  @Label("Derived Structure Build")
+  @Category({"Pedestrian Evacuation", "Environment"})
+  @Description("Construction of a structure derived from a domain (spatial index, field, mesh or graph) or from "
+      + "a whole environment")
+  @StackTrace(false)
+  static final class DerivedBuild extends Event {
+    @Label("Structure")
+    String structure;
+    @Label("Environment")
+    @Description("Whether the structure is derived from the whole environment, so that there is no domain id")
+    boolean environment;
+    @Label("Domain Id")
+    int domainId;
+    @Label("Parameter")
+    @Description("Cell size or clearance the structure was built for, if any")
+    double parameter;
+    @Label("Elements")
+    @Description("Obstacles and accesses of the domain, or gateways of the environment")
+    int elements;
+  }
+
+  /**
+   * Builds a structure derived from a domain, recording a {@link DerivedBuild} event.
+   *
+   * @param structure name of the structure.
+   * @param domain    the domain.
+   * @param parameter cell size or clearance the structure is built for (0 if none).
+   * @param builder   builder of the structure.
+   * @return the structure built.
+   */
+  static <T> T derived(String structure, Domain domain, double parameter, Supplier<T> builder) {
+    DerivedBuild event = new DerivedBuild();
+    event.begin();
+    T result = builder.get();
+    event.end();
+    if (event.shouldCommit()) {
+      event.structure = structure;
+      event.domainId = domain.id();
+      event.parameter = parameter;
+      event.elements = domain.getObstacles().size() + domain.getAccesses().size();
+      event.commit();
+    }
+    return result;
+  }
+
+  /**
+   * Builds a structure derived from an environment, recording a {@link DerivedBuild} event.
+   *
+   * @param structure   name of the structure.
+   * @param environment the environment.
+   * @param parameter   cell size the structure is built for (0 if none).
+   * @param builder     builder of the structure.
+   * @return the structure built.
+   */
+  static <T> T derived(String structure, Environment environment, double parameter, Supplier<T> builder) {
+    DerivedBuild event = new DerivedBuild();
+    event.begin();
+    T result = builder.get();
+    event.end();
+    if (event.shouldCommit()) {
+      event.structure = structure;
+      event.environment = true;
+      event.parameter = parameter;
+      event.elements = environment.getGatewayIDs().size();
+      event.commit();
+    }
+    return result;
+  }
+
+  /**
+   * Total number of vertices of polygons among the shapes of some obstacles and accesses.
+   */
+  private static long vertices(List<Obstacle> obstacles, List<Access> accesses) {
+    long vertices = 0;
+    for (Obstacle obstacle : obstacles) {
+      if (obstacle.shape() instanceof Shape.Polygon polygon) {
+        vertices += polygon.getPoints().size();
+      }
+    }
+    for (Access access : accesses) {
+      if (access.shape() instanceof Shape.Polygon polygon) {
+        vertices += polygon.getPoints().size();
+      }
+    }
+    return vertices;
+  }
+}
@@ -0,0 +1,367 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generator of synthetic environments for scale testing. Environments are built through the public
+ * API ({@link Domain}, {@link Obstacle}, {@link Access} and {@link Gateway}) and are fully
+ * determined by the parameters of the generator, including its seed.
+ * <p>
+ * Domains are rectangular rooms connected by doors: each door is a gateway with an access on the
+ * wall of each of the two domains it connects (or a single access for doors to the safety domain).
+ * Obstacles are laid out on a jittered grid inside each domain, away from walls so that doors are
+ * never blocked, and mix all shape types. Polygons are star-shaped, with a random number of vertices.
+ *
+ * @author ppgllrd
+ */
+public final class EnvironmentGenerator {
+  /**
+   * Layouts of generated environments.
+   */
+  public enum Topology {
+    /**
+     * Grid of offices, each one connected to its neighbours, with exits at two opposite corners.
+     */
+    OFFICE_GRID,
+    /**
+     * Ring of sectors of a seating bowl, filled with rows of seats, every fourth one with an exit.
+     */
+    STADIUM,
+    /**
+     * Long corridor with rooms on both sides, each one with a door to the corridor, and exits at its ends.
+     */
+    CORRIDOR,
+    /**
+     * Outdoor plaza with exits, surrounded by buildings made of grids of up to nine rooms, each one
+     * with a lobby opening to the plaza.
+     */
+    CAMPUS
+  }
+
+  /**
+   * Furniture of domains, determining sizes of cells and mix of shapes.
+   */
+  private enum Style {
+    OFFICE(8), SEATING(2.5), CORRIDOR(10), OUTDOOR(30);
+
+    /**
+     * area per obstacle
+     */
+    private final double area;
+
+    Style(double area) {
+      this.area = area;
+    }
+  }
+
+  /**
+   * Walls of rectangular domains.
+   */
+  private enum Wall {
+    SOUTH, NORTH, WEST, EAST
+  }
+
+  /**
+   * minimum side of domains
+   */
+  private static final double MIN_SIDE = 10;
+  /**
+   * distance from walls kept free of obstacles
+   */
+  private static final double WALL_MARGIN = 1.5;
+  /**
+   * width of doors
+   */
+  private static final double DOOR_WIDTH = 2;
+  /**
+   * depth of accesses of doors
+   */
+  private static final double DOOR_DEPTH = 0.5;
+  /**
+   * maximum number of rooms in each building of a campus
+   */
+  private static final int ROOMS_PER_BUILDING = 9;
+
+  /**
+   * topology of generated environments
+   */
+  private final Topology topology;
+  /**
+   * number of domains in generated environments
+   */
+  private final int numberOfDomains;
+  /**
+   * number of obstacles in each domain
+   */
+  private final int obstaclesPerDomain;
+  /**
+   * maximum number of vertices of polygons
+   */
+  private final int maxPolygonVertices;
+  /**
+   * seed for random choices
+   */
+  private final long seed;
+
+  private Random random;
+  private Environment environment;
+  private int nextGatewayId;
+
+  /**
+   * Creates a generator.
+   *
+   * @param topology           topology of generated environments.
+   * @param numberOfDomains    number of domains.
+   * @param obstaclesPerDomain number of obstacles in each domain.
+   * @param maxPolygonVertices maximum number of vertices of polygonal obstacles (at least 3).
+   * @param seed               seed for random choices.
+   */
+  public EnvironmentGenerator(Topology topology, int numberOfDomains, int obstaclesPerDomain, int maxPolygonVertices,
+                              long seed) {
+    if (numberOfDomains < 1) {
+      throw new IllegalArgumentException(String.format("EnvironmentGenerator: invalid number of domains %d",
+          numberOfDomains));
+    }
+    if (obstaclesPerDomain < 0) {
+      throw new IllegalArgumentException(String.format("EnvironmentGenerator: invalid number of obstacles %d",
+          obstaclesPerDomain));
+    }
+    if (maxPolygonVertices < 3) {
+      throw new IllegalArgumentException(String.format("EnvironmentGenerator: invalid number of vertices %d",
+          maxPolygonVertices));
+    }
+    this.topology = topology;
+    this.numberOfDomains = numberOfDomains;
+    this.obstaclesPerDomain = obstaclesPerDomain;
+    this.maxPolygonVertices = maxPolygonVertices;
+    this.seed = seed;
+  }
+
+  /**
+   * Generates an environment. Every call with the same generator produces an identical environment.
+   *
+   * @return a new environment.
+   */
+  public Environment generate() {
+    random = new Random(seed);
+    environment = new Environment();
+    nextGatewayId = 1;
+    switch (topology) {
+      case OFFICE_GRID -> officeGrid();
+      case STADIUM -> stadium();
+      case CORRIDOR -> corridor();
+      case CAMPUS -> campus();
+    }
+    Environment generated = environment;
+    environment = null;
+    random = null;
+    return generated;
+  }
+
+  private void officeGrid() {
+    double width = side(Style.OFFICE, 1.2), height = width / 1.2;
+    List<Domain> offices = new ArrayList<>();
+    for (int i = 0; i < numberOfDomains; i++) {
+      offices.add(domain(i + 1, "office " + (i + 1), width, height, Style.OFFICE));
+    }
+    grid(offices, (int) Math.ceil(Math.sqrt(numberOfDomains)), width, height);
+    exit(offices.get(0), Wall.SOUTH, width / 2);
+    if (numberOfDomains > 1) {
+      exit(offices.get(numberOfDomains - 1), Wall.NORTH, width / 2);
+    }
+  }
+
+  private void stadium() {
+    double width = side(Style.SEATING, 2), height = width / 2;
+    List<Domain> sectors = new ArrayList<>();
+    for (int i = 0; i < numberOfDomains; i++) {
+      sectors.add(domain(i + 1, "sector " + (i + 1), width, height, Style.SEATING));
+    }
+    for (int i = 0; i + 1 < numberOfDomains; i++) {
+      connect(sectors.get(i), Wall.EAST, height / 2, sectors.get(i + 1), Wall.WEST, height / 2);
+    }
+    if (numberOfDomains > 2) {
+      // close the bowl
+      connect(sectors.get(numberOfDomains - 1), Wall.EAST, height / 2, sectors.get(0), Wall.WEST, height / 2);
+    }
+    for (int i = 0; i < numberOfDomains; i += 4) {
+      exit(sectors.get(i), Wall.SOUTH, width / 2);
+    }
+  }
+
+  private void corridor() {
+    int rooms = numberOfDomains - 1;
+    double roomWidth = side(Style.OFFICE, 1), roomHeight = roomWidth;
+    double corridorHeight = 2 * WALL_MARGIN + 3;
+    double corridorWidth = Math.max(Math.max(MIN_SIDE, (rooms + 1) / 2 * roomWidth),
+        obstaclesPerDomain * Style.CORRIDOR.area / (corridorHeight - 2 * WALL_MARGIN));
+    Domain corridor = domain(1, "corridor", corridorWidth, corridorHeight, Style.CORRIDOR);
+    for (int k = 0; k < rooms; k++) {
+      Domain room = domain(k + 2, "room " + (k + 2), roomWidth, roomHeight, Style.OFFICE);
+      double position = (k / 2 + 0.5) * roomWidth;
+      if (k % 2 == 0) {
+        connect(corridor, Wall.SOUTH, position, room, Wall.NORTH, roomWidth / 2);
+      } else {
+        connect(corridor, Wall.NORTH, position, room, Wall.SOUTH, roomWidth / 2);
+      }
+    }
+    exit(corridor, Wall.WEST, corridorHeight / 2);
+    exit(corridor, Wall.EAST, corridorHeight / 2);
+  }
+
+  private void campus() {
+    int rooms = numberOfDomains - 1;
+    int buildings = (rooms + ROOMS_PER_BUILDING - 1) / ROOMS_PER_BUILDING;
+    double plazaWidth = Math.max(side(Style.OUTDOOR, 2), buildings * 4 * DOOR_WIDTH), plazaHeight = plazaWidth / 2;
+    Domain plaza = domain(1, "plaza", plazaWidth, plazaHeight, Style.OUTDOOR);
+    double roomWidth = side(Style.OFFICE, 1.2), roomHeight = roomWidth / 1.2;
+    int id = 2;
+    for (int b = 0; b < buildings; b++) {
+      int size = Math.min(ROOMS_PER_BUILDING, rooms - b * ROOMS_PER_BUILDING);
+      List<Domain> building = new ArrayList<>();
+      for (int r = 0; r < size; r++) {
+        building.add(domain(id, String.format("building %d room %d", b + 1, r + 1), roomWidth, roomHeight,
+            Style.OFFICE));
+        id++;
+      }
+      grid(building, (int) Math.ceil(Math.sqrt(size)), roomWidth, roomHeight);
+      connect(plaza, Wall.NORTH, (b + 0.5) * plazaWidth / buildings, building.get(0), Wall.SOUTH, roomWidth / 2);
+    }
+    exit(plaza, Wall.SOUTH, plazaWidth / 4);
+    exit(plaza, Wall.SOUTH, 3 * plazaWidth / 4);
+  }
+
+  /**
+   * Connects domains laid out in a grid with their neighbours to the east and to the north.
+   */
+  private void grid(List<Domain> domains, int columns, double width, double height) {
+    for (int i = 0; i < domains.size(); i++) {
+      if ((i + 1) % columns != 0 && i + 1 < domains.size()) {
+        connect(domains.get(i), Wall.EAST, height / 2, domains.get(i + 1), Wall.WEST, height / 2);
+      }
+      if (i + columns < domains.size()) {
+        connect(domains.get(i), Wall.NORTH, width / 2, domains.get(i + columns), Wall.SOUTH, width / 2);
+      }
+    }
+  }
+
+  /**
+   * Side of domains holding the required number of obstacles for a style.
+   */
+  private double side(Style style, double aspect) {
+    double area = obstaclesPerDomain * style.area;
+    double width = Math.sqrt(area * aspect) + 2 * WALL_MARGIN;
+    return Math.max(MIN_SIDE * aspect, Math.ceil(width));
+  }
+
+  private Domain domain(int id, String name, double width, double height, Style style) {
+    Domain domain = new Domain(id, width, height);
+    domain.setName(name);
+    domain.setDescription("");
+    furnish(domain, style);
+    environment.addDomain(domain);
+    return domain;
+  }
+
+  /**
+   * Connects two domains with a door.
+   */
+  private void connect(Domain domain1, Wall wall1, double position1, Domain domain2, Wall wall2, double position2) {
+    int id = nextGatewayId++;
+    door(domain1, wall1, position1, id);
+    door(domain2, wall2, position2, id);
+    environment.addGateway(new Gateway(id, "door " + id, "", domain1.id(), domain2.id()));
+  }
+
+  /**
+   * Connects a domain with the safety domain.
+   */
+  private void exit(Domain domain, Wall wall, double position) {
+    int id = nextGatewayId++;
+    door(domain, wall, position, id);
+    environment.addGateway(new Gateway(id, "exit " + id, "", domain.id(), 0));
+  }
+
+  /**
+   * Adds the access of a door centered at some position along a wall of a domain.
+   */
+  private static void door(Domain domain, Wall wall, double position, int id) {
+    double from = position - DOOR_WIDTH / 2;
+    Shape shape = switch (wall) {
+      case SOUTH -> new Shape.Rectangle(from, 0, DOOR_WIDTH, DOOR_DEPTH);
+      case NORTH -> new Shape.Rectangle(from, domain.getHeight() - DOOR_DEPTH, DOOR_WIDTH, DOOR_DEPTH);
+      case WEST -> new Shape.Rectangle(0, from, DOOR_DEPTH, DOOR_WIDTH);
+      case EAST -> new Shape.Rectangle(domain.getWidth() - DOOR_DEPTH, from, DOOR_DEPTH, DOOR_WIDTH);
+    };
+    domain.addAccess(new Access(id, "access " + id, "", shape));
+  }
+
+  /**
+   * Adds obstacles to a domain, one in each cell of a grid covering it (except for a margin along
+   * walls), with random jitter.
+   */
+  private void furnish(Domain domain, Style style) {
+    if (obstaclesPerDomain == 0) {
+      return;
+    }
+    double width = domain.getWidth() - 2 * WALL_MARGIN, height = domain.getHeight() - 2 * WALL_MARGIN;
+    int columns = Math.max(1, (int) Math.round(Math.sqrt(obstaclesPerDomain * width / height)));
+    if (style == Style.SEATING) {
+      // wide cells, so that seats form rows with aisles between them
+      columns = Math.max(1, columns / 4);
+    }
+    int rows = (obstaclesPerDomain + columns - 1) / columns;
+    double cellWidth = width / columns, cellHeight = height / rows;
+    for (int i = 0; i < obstaclesPerDomain; i++) {
+      double x = WALL_MARGIN + (i % columns + 0.5 + 0.1 * (random.nextDouble() - 0.5)) * cellWidth;
+      double y = WALL_MARGIN + (i / columns + 0.5 + 0.1 * (random.nextDouble() - 0.5)) * cellHeight;
+      domain.addObstacle(new Obstacle("obstacle " + (i + 1), "", shape(style, x, y, cellWidth, cellHeight)));
+    }
+  }
+
+  /**
+   * Creates a random shape fitting within a cell centered at a point.
+   */
+  private Shape shape(Style style, double x, double y, double cellWidth, double cellHeight) {
+    double choice = random.nextDouble();
+    double size = 0.35 * Math.min(cellWidth, cellHeight);
+    ShapeType type = switch (style) {
+      case OFFICE -> choice < 0.6 ? ShapeType.RECTANGLE : (choice < 0.75 ? ShapeType.CIRCLE : ShapeType.POLYGON);
+      case SEATING -> choice < 0.85 ? ShapeType.RECTANGLE : (choice < 0.95 ? ShapeType.CIRCLE : ShapeType.POLYGON);
+      case CORRIDOR -> choice < 0.2 ? ShapeType.RECTANGLE : (choice < 0.7 ? ShapeType.CIRCLE : ShapeType.POLYGON);
+      case OUTDOOR -> choice < 0.1 ? ShapeType.RECTANGLE : (choice < 0.6 ? ShapeType.CIRCLE : ShapeType.POLYGON);
+    };
+    return switch (type) {
+      case CIRCLE -> new Shape.Circle(x, y, size * (0.3 + 0.7 * random.nextDouble()));
+      case RECTANGLE -> {
+        double width, height;
+        if (style == Style.SEATING) {
+          width = 0.9 * cellWidth;
+          height = 0.3 * cellHeight;
+        } else {
+          width = cellWidth * (0.4 + 0.3 * random.nextDouble());
+          height = cellHeight * (0.25 + 0.2 * random.nextDouble());
+        }
+        yield new Shape.Rectangle(x - width / 2, y - height / 2, width, height);
+      }
+      case POLYGON -> polygon(x, y, size);
+    };
+  }
+
+  /**
+   * Creates a random star-shaped polygon centered at a point.
+   */
+  private Shape polygon(double x, double y, double size) {
+    int vertices = 3 + random.nextInt(maxPolygonVertices - 2);
+    double step = 2 * Math.PI / vertices;
+    List<Point2D> points = new ArrayList<>(vertices);
+    for (int i = 0; i < vertices; i++) {
+      double angle = (i + 0.8 * (random.nextDouble() - 0.5)) * step;
+      double radius = size * (0.5 + 0.5 * random.nextDouble());
+      points.add(new Point2D(x + radius * Math.cos(angle), y + radius * Math.sin(angle)));
+    }
+    return new Shape.Polygon(points);
+  }
+}
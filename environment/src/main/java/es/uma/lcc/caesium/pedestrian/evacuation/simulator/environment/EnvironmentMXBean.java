@@ -0,0 +1,72 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+import java.util.Map;
+
+/**
+ * Management interface of an environment, registered with {@link Environment#registerMBean(String)}, which
+ * exposes the statistics of the spatial queries on its domains (see {@link QueryMetrics}) and its estimated
+ * memory footprint (see {@link Environment#memoryFootprint()}).
+ *
+ * @author ppgllrd
+ */
+public interface EnvironmentMXBean {
+  /**
+   * domain of the object names of environment beans
+   */
+  String DOMAIN = "es.uma.lcc.caesium.pedestrian.evacuation";
+
+  /**
+   * Returns the total number of queries recorded on all domains.
+   *
+   * @return the number of queries.
+   */
+  long getQueryCount();
+
+  /**
+   * Returns the number of queries recorded on all domains, by type.
+   *
+   * @return a map from the name of each type of query recorded to its number of queries.
+   */
+  Map<String, Long> getQueryCounts();
+
+  /**
+   * Returns the mean latency of queries recorded on all domains, by type.
+   *
+   * @return a map from the name of each type of query recorded to its mean latency, in nanoseconds.
+   */
+  Map<String, Double> getMeanLatencyNanos();
+
+  /**
+   * Returns the 99th percentile of latency of queries recorded on all domains, by type.
+   *
+   * @return a map from the name of each type of query recorded to its 99th percentile of latency,
+   * in nanoseconds.
+   */
+  Map<String, Long> getP99LatencyNanos();
+
+  /**
+   * Returns the statistics of queries recorded, by domain and type, one per line.
+   *
+   * @return the formatted statistics of queries.
+   */
+  String[] getQueryStats();
+
+  /**
+   * Returns the estimated heap memory used by the environment.
+   *
+   * @return the estimated number of bytes.
+   */
+  long getMemoryFootprintBytes();
+
+  /**
+   * Returns the estimated heap memory used by the domains, gateways and gateway graph of the environment.
+   *
+   * @return a map from the name of each part of the environment to its estimated number of bytes.
+   */
+  Map<String, Long> getMemoryFootprint();
+
+  /**
+   * Discards all queries recorded so far.
+   */
+  void resetQueryMetrics();
+}
@@ -0,0 +1,85 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Implementation of {@link EnvironmentMXBean}, reading the query metrics and memory footprint of an
+ * environment on demand.
+ *
+ * @author ppgllrd
+ */
+final class EnvironmentMonitor implements EnvironmentMXBean {
+  /**
+   * the monitored environment
+   */
+  private final Environment environment;
+
+  EnvironmentMonitor(Environment environment) {
+    this.environment = environment;
+  }
+
+  @Override
+  public long getQueryCount() {
+    long count = 0;
+    for (QueryStats stats : environment.getQueryMetrics().totals()) {
+      count += stats.count();
+    }
+    return count;
+  }
+
+  @Override
+  public Map<String, Long> getQueryCounts() {
+    Map<String, Long> counts = new LinkedHashMap<>();
+    for (QueryStats stats : environment.getQueryMetrics().totals()) {
+      counts.put(stats.type().name(), stats.count());
+    }
+    return counts;
+  }
+
+  @Override
+  public Map<String, Double> getMeanLatencyNanos() {
+    Map<String, Double> means = new LinkedHashMap<>();
+    for (QueryStats stats : environment.getQueryMetrics().totals()) {
+      means.put(stats.type().name(), stats.meanNanos());
+    }
+    return means;
+  }
+
+  @Override
+  public Map<String, Long> getP99LatencyNanos() {
+    Map<String, Long> percentiles = new LinkedHashMap<>();
+    for (QueryStats stats : environment.getQueryMetrics().totals()) {
+      percentiles.put(stats.type().name(), stats.p99Nanos());
+    }
+    return percentiles;
+  }
+
+  @Override
+  public String[] getQueryStats() {
+    return environment.getQueryMetrics().snapshot().stream()
+        .map(stats -> String.format("domain %d %s: count=%d mean=%.0fns p50=%dns p90=%dns p99=%dns max=%dns",
+            stats.domainId(), stats.type(), stats.count(), stats.meanNanos(), stats.p50Nanos(), stats.p90Nanos(),
+            stats.p99Nanos(), stats.maxNanos()))
+        .toArray(String[]::new);
+  }
+
+  @Override
+  public long getMemoryFootprintBytes() {
+    return environment.memoryFootprint().bytes();
+  }
+
+  @Override
+  public Map<String, Long> getMemoryFootprint() {
+    Map<String, Long> parts = new LinkedHashMap<>();
+    for (MemoryFootprint part : environment.memoryFootprint().parts()) {
+      parts.put(part.name(), part.bytes());
+    }
+    return parts;
+  }
+
+  @Override
+  public void resetQueryMetrics() {
+    environment.getQueryMetrics().reset();
+  }
+}
@@ -0,0 +1,352 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+import com.github.cliftonlabs.json_simple.JsonException;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streaming loader for environments in json format. Domains, obstacles, accesses and gateways
+ * are built directly while the input is parsed, without constructing a json tree first. Accepts
+ * the same keys as {@link Environment#fromJson} and produces an identical environment. Gzipped
+ * input is detected and decompressed transparently.
+ *
+ * @author ppgllrd
+ */
+final class EnvironmentReader {
+  private static final int BUFFER_SIZE = 1 << 16;
+  /**
+   * first two bytes of gzip streams
+   */
+  private static final int GZIP_MAGIC_0 = 0x1f, GZIP_MAGIC_1 = 0x8b;
+  /**
+   * known keys, by their names in json
+   */
+  private static final Map<String, JsonKeys> KEYS = new HashMap<>();
+
+  static {
+    for (JsonKeys key : JsonKeys.values()) {
+      KEYS.put(key.getKey(), key);
+    }
+  }
+
+  private final JsonPullParser parser;
+
+  private EnvironmentReader(JsonPullParser parser) {
+    this.parser = parser;
+  }
+
+  /**
+   * Reads an environment from a file, which may be gzipped.
+   *
+   * @param path the file.
+   * @return the environment.
+   * @throws IOException   if the file cannot be read.
+   * @throws JsonException if the file is not a valid json environment.
+   */
+  static Environment read(Path path) throws IOException, JsonException {
+    EnvironmentEvents.Read event = new EnvironmentEvents.Read();
+    event.begin();
+    try (InputStream input = Files.newInputStream(path)) {
+      Environment environment = read(input);
+      event.end(path, "json", environment);
+      return environment;
+    }
+  }
+
+  /**
+   * Reads an environment from a stream, which may be gzipped. The stream is not closed.
+   *
+   * @param input the stream.
+   * @return the environment.
+   * @throws IOException   if the stream cannot be read.
+   * @throws JsonException if the stream does not contain a valid json environment.
+   */
+  static Environment read(InputStream input) throws IOException, JsonException {
+    BufferedInputStream buffered = new BufferedInputStream(input, BUFFER_SIZE);
+    buffered.mark(2);
+    boolean gzipped = buffered.read() == GZIP_MAGIC_0 && buffered.read() == GZIP_MAGIC_1;
+    buffered.reset();
+    InputStream decoded = gzipped ? new GZIPInputStream(buffered, BUFFER_SIZE) : buffered;
+    JsonPullParser parser = new JsonPullParser(new InputStreamReader(decoded, StandardCharsets.UTF_8));
+    return new EnvironmentReader(parser).environment();
+  }
+
+  private static JsonException missing(JsonKeys key) {
+    return new JsonException(-1, JsonException.Problems.UNEXPECTED_TOKEN, "missing key: " + key.getKey());
+  }
+
+  /**
+   * Returns the next known key of the current object, skipping the values of unknown keys, or
+   * {@code null} at the end of the object.
+   */
+  private JsonKeys nextKey() throws IOException, JsonException {
+    String field;
+    while ((field = parser.nextField()) != null) {
+      JsonKeys key = KEYS.get(field);
+      if (key != null) {
+        return key;
+      }
+      parser.skipValue();
+    }
+    return null;
+  }
+
+  private String stringOrNull() throws IOException, JsonException {
+    return parser.nextNull() ? null : parser.nextString();
+  }
+
+  private Environment environment() throws IOException, JsonException {
+    List<Domain> domains = new ArrayList<>();
+    List<Gateway> gateways = new ArrayList<>();
+    parser.beginObject();
+    JsonKeys key;
+    while ((key = nextKey()) != null) {
+      switch (key) {
+        case DOMAINS -> {
+          parser.beginArray();
+          while (parser.hasNextElement()) {
+            domains.add(domain());
+          }
+        }
+        case GATEWAYS -> {
+          parser.beginArray();
+          while (parser.hasNextElement()) {
+            gateways.add(gateway());
+          }
+        }
+        default -> parser.skipValue();
+      }
+    }
+    // gateways can only be added once their domains exist
+    Environment environment = new Environment();
+    for (Domain domain : domains) {
+      environment.addDomain(domain);
+    }
+    EnvironmentEvents.GatewayValidation event = new EnvironmentEvents.GatewayValidation();
+    event.begin();
+    for (Gateway gateway : gateways) {
+      if (!environment.addGateway(gateway)) {
+        throw new UnsupportedOperationException(String.format("EnvironmentReader.environment: gateway %d could not be added",
+            gateway.id()));
+      }
+    }
+    event.end(environment);
+    return environment;
+  }
+
+  private Domain domain() throws IOException, JsonException {
+    Integer id = null;
+    Double width = null, height = null;
+    String name = "", description = "";
+    List<Obstacle> obstacles = new ArrayList<>();
+    List<Access> accesses = new ArrayList<>();
+    EnvironmentEvents.Parse parse = new EnvironmentEvents.Parse();
+    parse.begin();
+    parser.beginObject();
+    JsonKeys key;
+    while ((key = nextKey()) != null) {
+      switch (key) {
+        case ID -> id = parser.nextInt();
+        case NAME -> name = stringOrNull();
+        case DESCRIPTION -> description = stringOrNull();
+        case WIDTH -> width = parser.nextDouble();
+        case HEIGHT -> height = parser.nextDouble();
+        case OBSTACLES -> {
+          parser.beginArray();
+          while (parser.hasNextElement()) {
+            obstacles.add(obstacle());
+          }
+        }
+        case ACCESSES -> {
+          parser.beginArray();
+          while (parser.hasNextElement()) {
+            accesses.add(access());
+          }
+        }
+        default -> parser.skipValue();
+      }
+    }
+    if (id == null) {
+      throw missing(JsonKeys.ID);
+    }
+    if (width == null) {
+      throw missing(JsonKeys.WIDTH);
+    }
+    if (height == null) {
+      throw missing(JsonKeys.HEIGHT);
+    }
+    parse.end(id, obstacles, accesses);
+    EnvironmentEvents.DomainBuild build = new EnvironmentEvents.DomainBuild();
+    build.begin();
+    Domain domain = new Domain(id, width, height);
+    domain.setName(name);
+    domain.setDescription(description);
+    for (Obstacle obstacle : obstacles) {
+      domain.addObstacle(obstacle);
+    }
+    for (Access access : accesses) {
+      domain.addAccess(access);
+    }
+    build.end(domain);
+    return domain;
+  }
+
+  private Obstacle obstacle() throws IOException, JsonException {
+    String name = "", description = "";
+    Shape shape = null;
+    parser.beginObject();
+    JsonKeys key;
+    while ((key = nextKey()) != null) {
+      switch (key) {
+        case NAME -> name = stringOrNull();
+        case DESCRIPTION -> description = stringOrNull();
+        case SHAPE -> shape = shape();
+        default -> parser.skipValue();
+      }
+    }
+    if (shape == null) {
+      throw missing(JsonKeys.SHAPE);
+    }
+    return new Obstacle(name, description, shape);
+  }
+
+  private Access access() throws IOException, JsonException {
+    Integer id = null;
+    String name = "", description = "";
+    Shape shape = null;
+    parser.beginObject();
+    JsonKeys key;
+    while ((key = nextKey()) != null) {
+      switch (key) {
+        case ID -> id = parser.nextInt();
+        case NAME -> name = stringOrNull();
+        case DESCRIPTION -> description = stringOrNull();
+        case SHAPE -> shape = shape();
+        default -> parser.skipValue();
+      }
+    }
+    if (id == null) {
+      throw missing(JsonKeys.ID);
+    }
+    if (shape == null) {
+      throw missing(JsonKeys.SHAPE);
+    }
+    return new Access(id, name, description, shape);
+  }
+
+  private Gateway gateway() throws IOException, JsonException {
+    Integer id = null, domain1 = null, domain2 = null;
+    String name = "", description = "";
+    parser.beginObject();
+    JsonKeys key;
+    while ((key = nextKey()) != null) {
+      switch (key) {
+        case ID -> id = parser.nextInt();
+        case NAME -> name = stringOrNull();
+        case DESCRIPTION -> description = stringOrNull();
+        case DOMAIN1 -> domain1 = parser.nextInt();
+        case DOMAIN2 -> domain2 = parser.nextInt();
+        default -> parser.skipValue();
+      }
+    }
+    if (id == null) {
+      throw missing(JsonKeys.ID);
+    }
+    if (domain1 == null) {
+      throw missing(JsonKeys.DOMAIN1);
+    }
+    if (domain2 == null) {
+      throw missing(JsonKeys.DOMAIN2);
+    }
+    return new Gateway(id, name, description, domain1, domain2);
+  }
+
+  private Shape shape() throws IOException, JsonException {
+    String type = "";
+    Point2D center = null, bottomLeft = null;
+    Double radius = null, width = null, height = null;
+    List<Point2D> points = null;
+    parser.beginObject();
+    JsonKeys key;
+    while ((key = nextKey()) != null) {
+      switch (key) {
+        case TYPE -> type = stringOrNull();
+        case CENTER -> center = point();
+        case RADIUS -> radius = parser.nextDouble();
+        case BOTTOMLEFT -> bottomLeft = point();
+        case WIDTH -> width = parser.nextDouble();
+        case HEIGHT -> height = parser.nextDouble();
+        case POINTS -> {
+          points = new ArrayList<>();
+          parser.beginArray();
+          while (parser.hasNextElement()) {
+            points.add(point());
+          }
+        }
+        default -> parser.skipValue();
+      }
+    }
+    String typeStr = type.toUpperCase();
+    ShapeType shapeType = typeStr.isEmpty() ? ShapeType.RECTANGLE : ShapeType.valueOf(typeStr);
+    switch (shapeType) {
+      case CIRCLE -> {
+        if (center == null) {
+          throw missing(JsonKeys.CENTER);
+        }
+        if (radius == null) {
+          throw missing(JsonKeys.RADIUS);
+        }
+        return new Shape.Circle(center.getX(), center.getY(), radius);
+      }
+      case POLYGON -> {
+        if (points == null || points.isEmpty()) {
+          throw missing(JsonKeys.POINTS);
+        }
+        return new Shape.Polygon(points);
+      }
+      default -> {
+        if (bottomLeft == null) {
+          throw missing(JsonKeys.BOTTOMLEFT);
+        }
+        if (width == null) {
+          throw missing(JsonKeys.WIDTH);
+        }
+        if (height == null) {
+          throw missing(JsonKeys.HEIGHT);
+        }
+        return new Shape.Rectangle(bottomLeft.getX(), bottomLeft.getY(), width, height);
+      }
+    }
+  }
+
+  private Point2D point() throws IOException, JsonException {
+    Double x = null, y = null;
+    parser.beginObject();
+    JsonKeys key;
+    while ((key = nextKey()) != null) {
+      switch (key) {
+        case X -> x = parser.nextDouble();
+        case Y -> y = parser.nextDouble();
+        default -> parser.skipValue();
+      }
+    }
+    if (x == null) {
+      throw missing(JsonKeys.X);
+    }
+    if (y == null) {
+      throw missing(JsonKeys.Y);
+    }
+    return new Point2D(x, y);
+  }
+}
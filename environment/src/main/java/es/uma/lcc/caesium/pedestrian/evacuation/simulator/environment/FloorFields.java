@@ -0,0 +1,414 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.IntStream;
+
+/**
+ * Static floor fields of a domain: for each access, the walking distance from the center of each
+ * cell of a grid to the nearest cell of the access, plus a combined field with the distance to the
+ * nearest access. Distances are computed by Dijkstra's algorithm over the raster of the domain,
+ * moving between 8-neighbouring cells not occupied by obstacles (diagonal moves cannot cut
+ * corners of occupied cells). Cells that cannot reach an access have infinite distance. Closed
+ * accesses have no field and are not considered when computing the nearest access.
+ *
+ * @author ppgllrd
+ */
+public final class FloorFields {
+  /**
+   * ids of accesses, in increasing order
+   */
+  private final int[] accessIds;
+  /**
+   * field for each access, in the same order as {@code accessIds}
+   */
+  private final ScalarField[] fields;
+  /**
+   * field with distance to nearest access
+   */
+  private final ScalarField nearest;
+  /**
+   * raster the fields were computed on ({@code null} if unknown), used for updating them
+   */
+  private final Raster raster;
+
+  /**
+   * Creates floor fields from already computed fields.
+   *
+   * @param accessIds ids of accesses, in increasing order.
+   * @param fields    field for each access, in the same order as {@code accessIds}.
+   * @param nearest   field with distance to nearest access.
+   */
+  FloorFields(int[] accessIds, ScalarField[] fields, ScalarField nearest) {
+    this(accessIds, fields, nearest, null);
+  }
+
+  /**
+   * Creates floor fields from already computed fields and the raster they were computed on.
+   *
+   * @param accessIds ids of accesses, in increasing order.
+   * @param fields    field for each access, in the same order as {@code accessIds}.
+   * @param nearest   field with distance to nearest access.
+   * @param raster    raster the fields were computed on ({@code null} if unknown).
+   */
+  private FloorFields(int[] accessIds, ScalarField[] fields, ScalarField nearest, Raster raster) {
+    this.accessIds = accessIds;
+    this.fields = fields;
+    this.nearest = nearest;
+    this.raster = raster;
+  }
+
+  /**
+   * Computes the floor fields of a domain. Fields for different accesses are computed in parallel.
+   *
+   * @param domain   the domain.
+   * @param cellSize side of the square cells of the grid.
+   * @return the floor fields of the domain.
+   */
+  static FloorFields of(Domain domain, double cellSize) {
+    Raster raster = domain.rasterize(cellSize);
+    int[] accessIds = openAccessIds(domain);
+    int[] labels = raster.toArray();
+    int columns = raster.getColumns(), rows = raster.getRows();
+    ScalarField[] fields = IntStream.range(0, accessIds.length).parallel()
+        .mapToObj(i -> new ScalarField(columns, rows, cellSize, distances(labels, columns, rows, cellSize, accessIds[i])))
+        .toArray(ScalarField[]::new);
+    return new FloorFields(accessIds, fields, nearest(fields, columns, rows, cellSize), raster);
+  }
+
+  /**
+   * Returns the ids of the open accesses of a domain, in increasing order.
+   */
+  private static int[] openAccessIds(Domain domain) {
+    Set<Integer> ids = new TreeSet<>();
+    for (Access access : domain.getAccesses()) {
+      if (domain.isAccessOpen(access.id())) {
+        ids.add(access.id());
+      }
+    }
+    return ids.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  /**
+   * Computes the field with the distance to the nearest access.
+   */
+  private static ScalarField nearest(ScalarField[] fields, int columns, int rows, double cellSize) {
+    float[] nearest = new float[columns * rows];
+    Arrays.fill(nearest, Float.POSITIVE_INFINITY);
+    for (ScalarField field : fields) {
+      for (int r = 0; r < rows; r++) {
+        for (int c = 0; c < columns; c++) {
+          nearest[r * columns + c] = Math.min(nearest[r * columns + c], field.value(c, r));
+        }
+      }
+    }
+    return new ScalarField(columns, rows, cellSize, nearest);
+  }
+
+  /**
+   * Updates the floor fields of a domain after its obstacles or accesses have changed within a region.
+   * The raster is only updated within the region. Fields of accesses whose cells have not changed are
+   * repaired rather than computed again: distances of cells whose shortest paths went through newly
+   * occupied cells are invalidated, and then distances are propagated again only from the border of
+   * the invalidated cells and from newly freed cells. Fields whose accesses are unaffected by the change
+   * are shared with these fields, and fields of new or changed accesses are computed from scratch. If the
+   * raster these fields were computed on is unknown, all fields are computed again.
+   *
+   * @param domain the domain, already changed.
+   * @param region the region where changes took place.
+   * @return the updated floor fields (these fields are not modified).
+   */
+  FloorFields updated(Domain domain, BoundingBox region) {
+    double cellSize = nearest.getCellSize();
+    if (raster == null) {
+      return of(domain, cellSize);
+    }
+    Raster updatedRaster = raster.repainted(domain, region);
+    int[] oldLabels = raster.toArray(), labels = updatedRaster.toArray();
+    int columns = raster.getColumns(), rows = raster.getRows();
+    int[] changed = new int[labels.length];
+    int numberOfChanged = 0;
+    Set<Integer> changedAccesses = new HashSet<>();
+    for (int cell = 0; cell < labels.length; cell++) {
+      if (labels[cell] != oldLabels[cell]) {
+        if ((labels[cell] == Raster.OBSTACLE) != (oldLabels[cell] == Raster.OBSTACLE)) {
+          changed[numberOfChanged++] = cell;
+        }
+        changedAccesses.add(labels[cell]);
+        changedAccesses.add(oldLabels[cell]);
+      }
+    }
+    int[] changedCells = Arrays.copyOf(changed, numberOfChanged);
+    int[] ids = openAccessIds(domain);
+    ScalarField[] updatedFields = IntStream.range(0, ids.length).parallel().mapToObj(i -> {
+      int previous = Arrays.binarySearch(accessIds, ids[i]);
+      if (previous < 0 || changedAccesses.contains(ids[i])) {
+        return new ScalarField(columns, rows, cellSize, distances(labels, columns, rows, cellSize, ids[i]));
+      } else if (changedCells.length == 0) {
+        return fields[previous];
+      }
+      float[] distances = repair(fields[previous].toArray(), labels, columns, rows, cellSize, ids[i], changedCells);
+      return new ScalarField(columns, rows, cellSize, distances);
+    }).toArray(ScalarField[]::new);
+    return new FloorFields(ids, updatedFields, nearest(updatedFields, columns, rows, cellSize), updatedRaster);
+  }
+
+  /**
+   * Computes distances from all cells to cells labeled with an access.
+   */
+  private static float[] distances(int[] labels, int columns, int rows, double cellSize, int accessId) {
+    int n = columns * rows;
+    float[] distances = new float[n];
+    Arrays.fill(distances, Float.POSITIVE_INFINITY);
+    CellHeap heap = new CellHeap();
+    for (int cell = 0; cell < n; cell++) {
+      if (labels[cell] == accessId) {
+        distances[cell] = 0;
+        heap.add(cell, 0);
+      }
+    }
+    propagate(distances, heap, labels, columns, rows, cellSize);
+    return distances;
+  }
+
+  /**
+   * Repairs distances to cells labeled with an access after some cells have changed from free to
+   * occupied or vice versa (cells labeled with the access must not have changed).
+   */
+  private static float[] repair(float[] distances, int[] labels, int columns, int rows, double cellSize,
+                                int accessId, int[] changedCells) {
+    double diagonal = cellSize * Math.sqrt(2);
+    // invalidate newly occupied cells and, transitively, cells no longer supported by a valid neighbor
+    int[] queue = new int[distances.length];
+    int head = 0, tail = 0;
+    boolean[] invalid = new boolean[distances.length];
+    for (int cell : changedCells) {
+      if (labels[cell] == Raster.OBSTACLE) {
+        // also when already unreachable, as diagonal moves around the cell are no longer allowed
+        distances[cell] = Float.POSITIVE_INFINITY;
+        invalid[cell] = true;
+        queue[tail++] = cell;
+      }
+    }
+    while (head < tail) {
+      int cell = queue[head++];
+      int c = cell % columns, r = cell / columns;
+      for (int dr = -1; dr <= 1; dr++) {
+        for (int dc = -1; dc <= 1; dc++) {
+          int nc = c + dc, nr = r + dr;
+          if ((dc == 0 && dr == 0) || nc < 0 || nc >= columns || nr < 0 || nr >= rows) {
+            continue;
+          }
+          int neighbor = nr * columns + nc;
+          if (labels[neighbor] != Raster.OBSTACLE && labels[neighbor] != accessId
+              && distances[neighbor] != Float.POSITIVE_INFINITY
+              && !isSupported(distances, labels, columns, rows, cellSize, diagonal, neighbor)) {
+            distances[neighbor] = Float.POSITIVE_INFINITY;
+            invalid[neighbor] = true;
+            queue[tail++] = neighbor;
+          }
+        }
+      }
+    }
+    // propagate again from valid neighbors of invalidated and newly freed cells
+    CellHeap heap = new CellHeap();
+    for (int k = 0; k < tail + changedCells.length; k++) {
+      int cell = k < tail ? queue[k] : changedCells[k - tail];
+      if (k >= tail && labels[cell] == Raster.OBSTACLE) {
+        continue;
+      }
+      int c = cell % columns, r = cell / columns;
+      for (int dr = -1; dr <= 1; dr++) {
+        for (int dc = -1; dc <= 1; dc++) {
+          int nc = c + dc, nr = r + dr;
+          if (nc < 0 || nc >= columns || nr < 0 || nr >= rows) {
+            continue;
+          }
+          int neighbor = nr * columns + nc;
+          if (!invalid[neighbor] && distances[neighbor] != Float.POSITIVE_INFINITY) {
+            heap.add(neighbor, distances[neighbor]);
+          }
+        }
+      }
+    }
+    propagate(distances, heap, labels, columns, rows, cellSize);
+    return distances;
+  }
+
+  /**
+   * Checks whether the distance of a cell is obtained from the distance of some neighbor through an
+   * allowed move.
+   */
+  private static boolean isSupported(float[] distances, int[] labels, int columns, int rows, double cellSize,
+                                     double diagonal, int cell) {
+    int c = cell % columns, r = cell / columns;
+    for (int dr = -1; dr <= 1; dr++) {
+      for (int dc = -1; dc <= 1; dc++) {
+        int nc = c + dc, nr = r + dr;
+        if ((dc == 0 && dr == 0) || nc < 0 || nc >= columns || nr < 0 || nr >= rows) {
+          continue;
+        }
+        int neighbor = nr * columns + nc;
+        if (labels[neighbor] == Raster.OBSTACLE || distances[neighbor] == Float.POSITIVE_INFINITY) {
+          continue;
+        }
+        boolean isDiagonal = dc != 0 && dr != 0;
+        if (isDiagonal && (labels[r * columns + nc] == Raster.OBSTACLE || labels[nr * columns + c] == Raster.OBSTACLE)) {
+          continue;
+        }
+        // same arithmetic as when propagating
+        if ((float) (distances[neighbor] + (isDiagonal ? diagonal : cellSize)) == distances[cell]) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Propagates distances from the cells in a heap (Dijkstra's algorithm), lowering distances of cells
+   * reached through shorter paths.
+   */
+  private static void propagate(float[] distances, CellHeap heap, int[] labels, int columns, int rows,
+                                double cellSize) {
+    double diagonal = cellSize * Math.sqrt(2);
+    while (!heap.isEmpty()) {
+      double distance = heap.minKey();
+      int cell = heap.removeMin();
+      if (distance > distances[cell]) {
+        continue;
+      }
+      int c = cell % columns, r = cell / columns;
+      for (int dr = -1; dr <= 1; dr++) {
+        for (int dc = -1; dc <= 1; dc++) {
+          int nc = c + dc, nr = r + dr;
+          if ((dc == 0 && dr == 0) || nc < 0 || nc >= columns || nr < 0 || nr >= rows) {
+            continue;
+          }
+          int neighbor = nr * columns + nc;
+          if (labels[neighbor] == Raster.OBSTACLE) {
+            continue;
+          }
+          boolean isDiagonal = dc != 0 && dr != 0;
+          if (isDiagonal && (labels[r * columns + nc] == Raster.OBSTACLE || labels[nr * columns + c] == Raster.OBSTACLE)) {
+            continue;
+          }
+          float candidate = (float) (distance + (isDiagonal ? diagonal : cellSize));
+          if (candidate < distances[neighbor]) {
+            distances[neighbor] = candidate;
+            heap.add(neighbor, candidate);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the ids of accesses with a floor field, in increasing order.
+   *
+   * @return the ids of accesses with a floor field.
+   */
+  public int[] getAccessIds() {
+    return accessIds.clone();
+  }
+
+  /**
+   * Returns the floor field of an access.
+   *
+   * @param accessId the id of the access.
+   * @return the floor field of the access ({@code null} if there is no access with such id).
+   */
+  public ScalarField field(int accessId) {
+    int i = Arrays.binarySearch(accessIds, accessId);
+    return i < 0 ? null : fields[i];
+  }
+
+  /**
+   * Returns the floor field with the distance to the nearest access.
+   *
+   * @return the floor field with the distance to the nearest access.
+   */
+  public ScalarField nearestAccess() {
+    return nearest;
+  }
+
+  /**
+   * Binary min-heap of cells keyed by distance, over primitive arrays. Decreasing the key of a
+   * cell is done by adding it again; stale entries are skipped when removed.
+   */
+  private static final class CellHeap {
+    private int[] cells = new int[64];
+    private double[] keys = new double[64];
+    private int size = 0;
+
+    boolean isEmpty() {
+      return size == 0;
+    }
+
+    double minKey() {
+      return keys[0];
+    }
+
+    void add(int cell, double key) {
+      if (size == cells.length) {
+        cells = Arrays.copyOf(cells, 2 * size);
+        keys = Arrays.copyOf(keys, 2 * size);
+      }
+      int i = size++;
+      while (i > 0) {
+        int parent = (i - 1) >>> 1;
+        if (keys[parent] <= key) {
+          break;
+        }
+        cells[i] = cells[parent];
+        keys[i] = keys[parent];
+        i = parent;
+      }
+      cells[i] = cell;
+      keys[i] = key;
+    }
+
+    int removeMin() {
+      int min = cells[0];
+      int lastCell = cells[--size];
+      double lastKey = keys[size];
+      int i = 0;
+      while (true) {
+        int child = 2 * i + 1;
+        if (child >= size) {
+          break;
+        }
+        if (child + 1 < size && keys[child + 1] < keys[child]) {
+          child++;
+        }
+        if (keys[child] >= lastKey) {
+          break;
+        }
+        cells[i] = cells[child];
+        keys[i] = keys[child];
+        i = child;
+      }
+      cells[i] = lastCell;
+      keys[i] = lastKey;
+      return min;
+    }
+  }
+
+  /**
+   * Estimates the heap memory used by the fields, including the raster they were computed on
+   * (see {@link MemoryFootprint}).
+   *
+   * @return the estimated number of bytes.
+   */
+  public long memoryFootprint() {
+    long bytes = MemoryFootprint.object(4 * MemoryFootprint.REFERENCE)
+        + MemoryFootprint.array(accessIds.length, Integer.BYTES)
+        + MemoryFootprint.array(fields.length, MemoryFootprint.REFERENCE) + nearest.memoryFootprint();
+    for (ScalarField field : fields) {
+      bytes += field.memoryFootprint();
+    }
+    return bytes + (raster == null ? 0 : raster.memoryFootprint());
+  }
+}
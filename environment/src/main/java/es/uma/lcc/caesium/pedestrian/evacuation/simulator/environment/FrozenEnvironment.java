@@ -0,0 +1,193 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+
+/**
+ * Immutable snapshot of an environment, which can be queried by any number of threads without
+ * synchronization. Domains are frozen (see {@link Domain#freeze()}), domains and gateways are stored
+ * in dense arrays indexed through their ids, so lookups do not box ids, and the gateway graph is
+ * built upfront. Methods modifying the snapshot throw {@code UnsupportedOperationException}.
+ * <p>
+ * Fields declared by the snapshot are final, but those inherited from {@link Environment} are not: the
+ * query metrics are copied from the environment once the snapshot is constructed, and can be set later
+ * (see {@link #setQueryMetrics}). Snapshots should thus be shared with other threads through a safe
+ * publication (e.g. a volatile field, a concurrent collection, or before starting the threads).
+ *
+ * @author ppgllrd
+ */
+public final class FrozenEnvironment extends Environment {
+  /**
+   * dense index of domain ids
+   */
+  private final IdIndex domainIndex;
+  /**
+   * frozen domains, by dense index of their ids
+   */
+  private final Domain[] domainArray;
+  /**
+   * dense index of gateway ids
+   */
+  private final IdIndex gatewayIndex;
+  /**
+   * gateways, by dense index of their ids
+   */
+  private final Gateway[] gatewayArray;
+  /**
+   * whether each gateway is closed, by dense index of its id
+   */
+  private final boolean[] closedGateways;
+  /**
+   * version of the environment when the snapshot was taken
+   */
+  private final long version;
+  /**
+   * connectivity graph of domains and gateways
+   */
+  private final GatewayGraph graph;
+
+  /**
+   * Creates a snapshot of an environment.
+   *
+   * @param environment the environment to copy.
+   */
+  FrozenEnvironment(Environment environment) {
+    this(sortedById(environment.domains.values().stream().map(Domain::freeze), Domain::id, Domain[]::new),
+        sortedById(environment.gateways.values().stream(), Gateway::id, Gateway[]::new), environment);
+    queryMetrics = environment.queryMetrics;
+  }
+
+  private FrozenEnvironment(Domain[] domains, Gateway[] gateways, Environment environment) {
+    super(unmodifiableMap(domains, Domain::id), unmodifiableMap(gateways, Gateway::id));
+    version = environment.version();
+    domainArray = domains;
+    domainIndex = new IdIndex(Arrays.stream(domains).mapToInt(Domain::id).toArray());
+    gatewayArray = gateways;
+    gatewayIndex = new IdIndex(Arrays.stream(gateways).mapToInt(Gateway::id).toArray());
+    closedGateways = new boolean[gateways.length];
+    for (int i = 0; i < gateways.length; i++) {
+      closedGateways[i] = !environment.isGatewayOpen(gateways[i].id());
+    }
+    graph = EnvironmentEvents.derived("gateway graph", this, 0, () -> new GatewayGraph(this));
+  }
+
+  /**
+   * Collects elements into an array sorted by id, matching the dense indexes assigned by {@link IdIndex}.
+   */
+  private static <T> T[] sortedById(Stream<T> elements, ToIntFunction<T> id, IntFunction<T[]> newArray) {
+    return elements.sorted(Comparator.comparingInt(id)).toArray(newArray);
+  }
+
+  private static <T> Map<Integer, T> unmodifiableMap(T[] elements, ToIntFunction<T> id) {
+    Map<Integer, T> map = new LinkedHashMap<>();
+    for (T element : elements) {
+      map.put(id.applyAsInt(element), element);
+    }
+    return Collections.unmodifiableMap(map);
+  }
+
+  /**
+   * Not supported, as the environment is immutable.
+   *
+   * @param domain the domain to be added.
+   * @throws UnsupportedOperationException always.
+   */
+  @Override
+  public void addDomain(Domain domain) {
+    throw new UnsupportedOperationException(String.format("FrozenEnvironment.addDomain: domain %d could not be added",
+        domain.id()));
+  }
+
+  /**
+   * Not supported, as the environment is immutable.
+   *
+   * @param gateway the gateway to be added.
+   * @return never returns.
+   * @throws UnsupportedOperationException always.
+   */
+  @Override
+  public boolean addGateway(Gateway gateway) {
+    throw new UnsupportedOperationException(String.format("FrozenEnvironment.addGateway: gateway %d could not be added",
+        gateway.id()));
+  }
+
+  /**
+   * Not supported, as the environment is immutable.
+   *
+   * @param id the id of the gateway.
+   * @return never returns.
+   * @throws UnsupportedOperationException always.
+   */
+  @Override
+  public boolean closeGateway(int id) {
+    throw new UnsupportedOperationException(String.format("FrozenEnvironment.closeGateway: gateway %d could not be closed",
+        id));
+  }
+
+  /**
+   * Not supported, as the environment is immutable.
+   *
+   * @param id the id of the gateway.
+   * @return never returns.
+   * @throws UnsupportedOperationException always.
+   */
+  @Override
+  public boolean openGateway(int id) {
+    throw new UnsupportedOperationException(String.format("FrozenEnvironment.openGateway: gateway %d could not be opened",
+        id));
+  }
+
+  @Override
+  public boolean isGatewayOpen(int id) {
+    int index = gatewayIndex.indexOf(id);
+    return index < 0 || !closedGateways[index];
+  }
+
+  /**
+   * Returns the version of the environment when the snapshot was taken.
+   *
+   * @return the version of the environment when the snapshot was taken.
+   */
+  @Override
+  public long version() {
+    return version;
+  }
+
+  @Override
+  public Domain getDomain(int id) {
+    int index = domainIndex.indexOf(id);
+    return index < 0 ? null : domainArray[index];
+  }
+
+  @Override
+  public Gateway getGateway(int id) {
+    int index = gatewayIndex.indexOf(id);
+    return index < 0 ? null : gatewayArray[index];
+  }
+
+  @Override
+  public GatewayGraph gatewayGraph() {
+    return graph;
+  }
+
+  @Override
+  GatewayGraph builtGatewayGraph() {
+    return graph;
+  }
+
+  /**
+   * Returns this environment, which is already immutable.
+   *
+   * @return this environment.
+   */
+  @Override
+  public FrozenEnvironment freeze() {
+    return this;
+  }
+}
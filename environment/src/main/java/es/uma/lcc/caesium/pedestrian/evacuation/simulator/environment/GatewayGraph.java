@@ -0,0 +1,240 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Connectivity graph of an environment, whose nodes are domains (including the safety domain 0)
+ * and whose edges are gateways. Adjacency is kept in compressed sparse row form: the gateways of
+ * the domain with dense index {@code d} are those in positions {@code offsets[d]} to
+ * {@code offsets[d + 1] - 1}. Hop distances to the safety domain are precomputed by breadth-first search.
+ * Closed gateways are left out.
+ *
+ * @author ppgllrd
+ */
+public final class GatewayGraph {
+  /**
+   * id of the safety domain
+   */
+  private static final int SAFETY = 0;
+
+  /**
+   * dense indexes of domains
+   */
+  private final IdIndex domains;
+  /**
+   * start of the adjacency of each domain (by dense index)
+   */
+  private final int[] offsets;
+  /**
+   * ids of gateways incident to each domain
+   */
+  private final int[] adjacentGateways;
+  /**
+   * ids of domains reached through each of the gateways in {@code adjacentGateways}
+   */
+  private final int[] adjacentDomains;
+  /**
+   * minimum number of gateways to cross from each domain to reach the safety domain (-1 if unreachable)
+   */
+  private final int[] hops;
+  /**
+   * id of the gateway to cross from each domain along a path with the minimum number of hops to
+   * the safety domain (-1 for the safety domain and for domains that cannot reach it)
+   */
+  private final int[] nextGateways;
+
+  /**
+   * Builds the connectivity graph of an environment.
+   *
+   * @param environment the environment.
+   */
+  GatewayGraph(Environment environment) {
+    int[] domainIds = new int[environment.getDomainsIDs().size() + 1];
+    int k = 0;
+    domainIds[k++] = SAFETY;
+    for (int id : environment.getDomainsIDs()) {
+      domainIds[k++] = id;
+    }
+    domains = new IdIndex(domainIds);
+    int n = domains.size();
+
+    List<Gateway> gateways = new ArrayList<>();
+    for (int id : environment.getGatewayIDs()) {
+      if (environment.isGatewayOpen(id)) {
+        gateways.add(environment.getGateway(id));
+      }
+    }
+    gateways.sort(Comparator.comparingInt(Gateway::id));
+
+    offsets = new int[n + 1];
+    for (Gateway gateway : gateways) {
+      offsets[domains.indexOf(gateway.domain1()) + 1]++;
+      offsets[domains.indexOf(gateway.domain2()) + 1]++;
+    }
+    for (int d = 0; d < n; d++) {
+      offsets[d + 1] += offsets[d];
+    }
+    adjacentGateways = new int[offsets[n]];
+    adjacentDomains = new int[offsets[n]];
+    int[] next = Arrays.copyOf(offsets, n);
+    for (Gateway gateway : gateways) {
+      int d1 = domains.indexOf(gateway.domain1()), d2 = domains.indexOf(gateway.domain2());
+      adjacentGateways[next[d1]] = gateway.id();
+      adjacentDomains[next[d1]++] = gateway.domain2();
+      adjacentGateways[next[d2]] = gateway.id();
+      adjacentDomains[next[d2]++] = gateway.domain1();
+    }
+
+    hops = new int[n];
+    nextGateways = new int[n];
+    Arrays.fill(hops, -1);
+    Arrays.fill(nextGateways, -1);
+    int[] queue = new int[n];
+    int head = 0, tail = 0;
+    int safety = domains.indexOf(SAFETY);
+    hops[safety] = 0;
+    queue[tail++] = safety;
+    while (head < tail) {
+      int d = queue[head++];
+      for (int e = offsets[d]; e < offsets[d + 1]; e++) {
+        int neighbor = domains.indexOf(adjacentDomains[e]);
+        if (hops[neighbor] < 0) {
+          hops[neighbor] = hops[d] + 1;
+          nextGateways[neighbor] = adjacentGateways[e];
+          queue[tail++] = neighbor;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the number of domains in the graph, including the safety domain.
+   *
+   * @return the number of domains in the graph.
+   */
+  public int numberOfDomains() {
+    return domains.size();
+  }
+
+  /**
+   * Returns the number of gateways incident to a domain.
+   *
+   * @param domainId the id of the domain.
+   * @return the number of gateways incident to the domain (0 if domain does not exist).
+   */
+  public int degree(int domainId) {
+    int d = domains.indexOf(domainId);
+    return d < 0 ? 0 : offsets[d + 1] - offsets[d];
+  }
+
+  /**
+   * Returns the id of the {@code k}-th gateway incident to a domain.
+   *
+   * @param domainId the id of the domain.
+   * @param k        position of gateway, in {@code 0..degree(domainId)-1}.
+   * @return the id of the {@code k}-th gateway incident to the domain.
+   * @throws IndexOutOfBoundsException if {@code k} is not in {@code 0..degree(domainId)-1} (no value is valid if
+   *                                   domain does not exist).
+   */
+  public int gatewayOf(int domainId, int k) {
+    return adjacentGateways[position("gatewayOf", domainId, k)];
+  }
+
+  /**
+   * Returns the id of the domain reached through the {@code k}-th gateway incident to a domain.
+   *
+   * @param domainId the id of the domain.
+   * @param k        position of gateway, in {@code 0..degree(domainId)-1}.
+   * @return the id of the domain reached through the {@code k}-th gateway.
+   * @throws IndexOutOfBoundsException if {@code k} is not in {@code 0..degree(domainId)-1} (no value is valid if
+   *                                   domain does not exist).
+   */
+  public int neighborOf(int domainId, int k) {
+    return adjacentDomains[position("neighborOf", domainId, k)];
+  }
+
+  /**
+   * Returns the position in adjacency arrays of the {@code k}-th gateway incident to a domain.
+   */
+  private int position(String method, int domainId, int k) {
+    int degree = degree(domainId);
+    if (k < 0 || k >= degree) {
+      throw new IndexOutOfBoundsException(
+          String.format("GatewayGraph.%s: position %d out of range for domain %d with %d gateways", method, k,
+              domainId, degree));
+    }
+    return offsets[domains.indexOf(domainId)] + k;
+  }
+
+  /**
+   * Returns the ids of the gateways incident to a domain, in increasing order.
+   *
+   * @param domainId the id of the domain.
+   * @return the ids of the gateways incident to the domain (empty if domain does not exist).
+   */
+  public int[] gatewaysOf(int domainId) {
+    int d = domains.indexOf(domainId);
+    return d < 0 ? new int[0] : Arrays.copyOfRange(adjacentGateways, offsets[d], offsets[d + 1]);
+  }
+
+  /**
+   * Returns the ids of the domains adjacent to a domain. The {@code k}-th element is the domain
+   * reached through the {@code k}-th element of {@link #gatewaysOf}, so a domain appears once per
+   * gateway connecting them.
+   *
+   * @param domainId the id of the domain.
+   * @return the ids of the domains adjacent to the domain (empty if domain does not exist).
+   */
+  public int[] neighborsOf(int domainId) {
+    int d = domains.indexOf(domainId);
+    return d < 0 ? new int[0] : Arrays.copyOfRange(adjacentDomains, offsets[d], offsets[d + 1]);
+  }
+
+  /**
+   * Checks whether the safety domain can be reached from a domain.
+   *
+   * @param domainId the id of the domain.
+   * @return {@code true} if the safety domain can be reached from the domain.
+   */
+  public boolean reachesSafety(int domainId) {
+    return hopsToSafety(domainId) >= 0;
+  }
+
+  /**
+   * Returns the minimum number of gateways to cross from a domain to reach the safety domain.
+   *
+   * @param domainId the id of the domain.
+   * @return the minimum number of gateways to cross, or -1 if the safety domain cannot be reached
+   * (or the domain does not exist).
+   */
+  public int hopsToSafety(int domainId) {
+    int d = domains.indexOf(domainId);
+    return d < 0 ? -1 : hops[d];
+  }
+
+  /**
+   * Returns the gateway to cross from a domain along a path with the minimum number of hops to the safety domain.
+   *
+   * @param domainId the id of the domain.
+   * @return the id of the gateway, or -1 if domain is the safety domain or it cannot reach it.
+   */
+  public int nextGatewayToSafety(int domainId) {
+    int d = domains.indexOf(domainId);
+    return d < 0 ? -1 : nextGateways[d];
+  }
+
+  /**
+   * Estimates the heap memory used by the graph (see {@link MemoryFootprint}).
+   *
+   * @return the estimated number of bytes.
+   */
+  public long memoryFootprint() {
+    return MemoryFootprint.object(6 * MemoryFootprint.REFERENCE) + domains.memoryFootprint()
+        + MemoryFootprint.array(offsets.length, Integer.BYTES)
+        + 2 * MemoryFootprint.array(adjacentGateways.length, Integer.BYTES)
+        + 2 * MemoryFootprint.array(hops.length, Integer.BYTES);
+  }
+}
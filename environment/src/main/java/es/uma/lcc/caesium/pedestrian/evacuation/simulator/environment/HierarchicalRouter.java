@@ -0,0 +1,392 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Router to the safety domain (domain 0) across the domains of an environment. Walking distances
+ * between the accesses of each domain are computed in parallel from static floor fields (see
+ * {@link Domain#accessDistances(double)}), and combined with the gateways connecting domains into a
+ * graph whose nodes are pairs (domain, access): a pedestrian within a domain at one of its accesses.
+ * Distances from every node to safety are then computed by a single Dijkstra search from the gateways
+ * leading to the safety domain.
+ * <p>
+ * For each node, all gateways which can be walked to next are kept sorted by the resulting distance to
+ * safety, so that the distance, the next gateway and the {@code k} best alternatives (e.g. for exit
+ * choice models) are obtained in constant time. Points within a domain are routed by combining the floor
+ * fields of its accesses with these distances. Routers are immutable snapshots of the environment they
+ * were built from, and can be queried concurrently.
+ *
+ * @author ppgllrd
+ */
+public final class HierarchicalRouter {
+  /**
+   * id of the safety domain
+   */
+  private static final int SAFETY = 0;
+  /**
+   * domain reached through an access not belonging to an open gateway (not a valid id, as ids are ints)
+   */
+  private static final long NO_DOMAIN = Long.MIN_VALUE;
+
+  /**
+   * routing data of each domain, by id
+   */
+  private final Map<Integer, DomainRoutes> routes;
+  /**
+   * node of each pair (domain, access)
+   */
+  private final Map<Long, Integer> nodes;
+  /**
+   * walking distance from each node to safety
+   */
+  private final double[] distances;
+  /**
+   * start of the sorted choices of each node
+   */
+  private final int[] choiceOffsets;
+  /**
+   * gateway of each choice
+   */
+  private final int[] choiceGateways;
+  /**
+   * node reached after crossing the gateway of each choice
+   */
+  private final int[] choiceNodes;
+  /**
+   * distance to safety of each choice
+   */
+  private final double[] choiceDistances;
+
+  /**
+   * Routing data of a domain: its open accesses (in the order of rows and columns of its distance
+   * matrix), the domain each one leads to ({@link #NO_DOMAIN} if it does not belong to an open gateway), the nodes
+   * reached after crossing each one, and its floor fields, for routing points.
+   */
+  private record DomainRoutes(int[] accessIds, long[] targetDomains, int[] targetNodes, double[][] matrix,
+                              FloorFields fields) {
+  }
+
+  /**
+   * Builds a router for an environment.
+   *
+   * @param environment the environment.
+   * @param cellSize    side of the square cells of the grids of floor fields.
+   */
+  HierarchicalRouter(Environment environment, double cellSize) {
+    Map<Integer, double[][]> matrices = new ConcurrentHashMap<>();
+    environment.getDomainsIDs().parallelStream()
+        .forEach(id -> matrices.put(id, environment.getDomain(id).accessDistances(cellSize)));
+
+    // nodes (domain, access) for accesses of open gateways, and (safety, gateway) for exits
+    nodes = new HashMap<>();
+    List<int[]> nodeList = new ArrayList<>();
+    routes = new HashMap<>();
+    List<Integer> domainIds = new ArrayList<>(environment.getDomainsIDs());
+    domainIds.sort(Comparator.naturalOrder());
+    for (int domainId : domainIds) {
+      FloorFields fields = environment.getDomain(domainId).floorFields(cellSize);
+      int[] accessIds = fields.getAccessIds();
+      long[] targetDomains = new long[accessIds.length];
+      for (int j = 0; j < accessIds.length; j++) {
+        targetDomains[j] = otherDomain(environment, accessIds[j], domainId);
+        if (targetDomains[j] != NO_DOMAIN) {
+          addNode(nodeList, domainId, accessIds[j]);
+          if (targetDomains[j] == SAFETY) {
+            addNode(nodeList, SAFETY, accessIds[j]);
+          }
+        }
+      }
+      routes.put(domainId, new DomainRoutes(accessIds, targetDomains, new int[accessIds.length],
+          matrices.get(domainId), fields));
+    }
+    // gateways whose access is missing or closed on the other side cannot be crossed
+    for (DomainRoutes domain : routes.values()) {
+      for (int j = 0; j < domain.accessIds().length; j++) {
+        int target = domain.targetDomains()[j] == NO_DOMAIN ? -1
+            : node((int) domain.targetDomains()[j], domain.accessIds()[j]);
+        if (target < 0) {
+          domain.targetDomains()[j] = NO_DOMAIN;
+        }
+        domain.targetNodes()[j] = target;
+      }
+    }
+
+    int n = nodeList.size();
+    double[] searched = search(environment, nodeList);
+
+    // choices of each node, sorted by distance to safety
+    distances = new double[n];
+    choiceOffsets = new int[n + 1];
+    List<double[]> choices = new ArrayList<>();
+    for (int v = 0; v < n; v++) {
+      int domainId = nodeList.get(v)[0];
+      List<double[]> nodeChoices = new ArrayList<>();
+      if (domainId != SAFETY) {
+        DomainRoutes domain = routes.get(domainId);
+        int i = Arrays.binarySearch(domain.accessIds(), nodeList.get(v)[1]);
+        for (int j = 0; j < domain.accessIds().length; j++) {
+          int target = domain.targetNodes()[j];
+          // crossing back the access a pedestrian stands at only makes sense to reach safety
+          if (target < 0 || (j == i && domain.targetDomains()[j] != SAFETY)) {
+            continue;
+          }
+          double distance = domain.matrix()[i][j] + searched[target];
+          if (distance < Double.POSITIVE_INFINITY) {
+            nodeChoices.add(new double[]{distance, domain.accessIds()[j], target});
+          }
+        }
+        nodeChoices.sort(Comparator.comparingDouble(choice -> choice[0]));
+      }
+      distances[v] = domainId == SAFETY ? 0
+          : nodeChoices.isEmpty() ? Double.POSITIVE_INFINITY : nodeChoices.get(0)[0];
+      choices.addAll(nodeChoices);
+      choiceOffsets[v + 1] = choices.size();
+    }
+    int m = choices.size();
+    choiceGateways = new int[m];
+    choiceNodes = new int[m];
+    choiceDistances = new double[m];
+    for (int c = 0; c < m; c++) {
+      choiceDistances[c] = choices.get(c)[0];
+      choiceGateways[c] = (int) choices.get(c)[1];
+      choiceNodes[c] = (int) choices.get(c)[2];
+    }
+  }
+
+  private static long key(int domainId, int accessId) {
+    return ((long) domainId << 32) | (accessId & 0xFFFFFFFFL);
+  }
+
+  private void addNode(List<int[]> nodeList, int domainId, int accessId) {
+    if (nodes.putIfAbsent(key(domainId, accessId), nodeList.size()) == null) {
+      nodeList.add(new int[]{domainId, accessId});
+    }
+  }
+
+  /**
+   * Returns the domain an access of a domain leads to, or {@link #NO_DOMAIN} if it does not belong to an
+   * open gateway incident to the domain.
+   */
+  private static long otherDomain(Environment environment, int accessId, int domainId) {
+    Gateway gateway = environment.getGateway(accessId);
+    if (gateway == null || !environment.isGatewayOpen(accessId)) {
+      return NO_DOMAIN;
+    } else if (gateway.domain1() == domainId) {
+      return gateway.domain2();
+    } else if (gateway.domain2() == domainId) {
+      return gateway.domain1();
+    }
+    return NO_DOMAIN;
+  }
+
+  /**
+   * Computes the distance from every node to safety, by a Dijkstra search backwards from the nodes
+   * of the safety domain. The predecessors of a node (domain, access) are the nodes of the domain on
+   * the other side of the access.
+   */
+  private double[] search(Environment environment, List<int[]> nodeList) {
+    int n = nodeList.size();
+    double[] searched = new double[n];
+    Arrays.fill(searched, Double.POSITIVE_INFINITY);
+    PriorityQueue<double[]> open = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+    for (int v = 0; v < n; v++) {
+      if (nodeList.get(v)[0] == SAFETY) {
+        searched[v] = 0;
+        open.add(new double[]{0, v});
+      }
+    }
+    while (!open.isEmpty()) {
+      double[] entry = open.poll();
+      int w = (int) entry[1];
+      if (entry[0] > searched[w]) {
+        continue;
+      }
+      int domainId = nodeList.get(w)[0], accessId = nodeList.get(w)[1];
+      long previousDomain = otherDomain(environment, accessId, domainId);
+      DomainRoutes domain = previousDomain != NO_DOMAIN && previousDomain != SAFETY
+          ? routes.get((int) previousDomain) : null;
+      int j = domain == null ? -1 : Arrays.binarySearch(domain.accessIds(), accessId);
+      if (j < 0) {
+        continue;
+      }
+      for (int i = 0; i < domain.accessIds().length; i++) {
+        if (domain.targetDomains()[i] == NO_DOMAIN || (i == j && domainId != SAFETY)) {
+          continue;
+        }
+        int v = node((int) previousDomain, domain.accessIds()[i]);
+        double distance = searched[w] + domain.matrix()[i][j];
+        if (distance < searched[v]) {
+          searched[v] = distance;
+          open.add(new double[]{distance, v});
+        }
+      }
+    }
+    return searched;
+  }
+
+  private int node(int domainId, int accessId) {
+    Integer node = nodes.get(key(domainId, accessId));
+    return node == null ? -1 : node;
+  }
+
+  /**
+   * Returns the walking distance to safety from an access of a domain, for a pedestrian who has just
+   * entered the domain through that access. Crossing the access back only counts if it leads to safety,
+   * so the distance from the only access of a dead-end domain is {@code Double.POSITIVE_INFINITY}.
+   *
+   * @param domainId the id of the domain.
+   * @param accessId the id of the access.
+   * @return the walking distance to safety, or {@code Double.POSITIVE_INFINITY} if safety cannot be
+   * reached (or the domain has no such access belonging to an open gateway).
+   */
+  public double distanceToSafety(int domainId, int accessId) {
+    int node = node(domainId, accessId);
+    return node < 0 ? Double.POSITIVE_INFINITY : distances[node];
+  }
+
+  /**
+   * Returns the next gateway to walk to from an access of a domain along the shortest route to safety.
+   * As in {@link #distanceToSafety(int, int)}, the pedestrian has just entered through the access.
+   *
+   * @param domainId the id of the domain.
+   * @param accessId the id of the access.
+   * @return the id of the next gateway, or -1 if safety cannot be reached (or the domain is the safety
+   * domain).
+   */
+  public int nextGateway(int domainId, int accessId) {
+    int node = node(domainId, accessId);
+    return node < 0 || choiceOffsets[node] == choiceOffsets[node + 1] ? -1 : choiceGateways[choiceOffsets[node]];
+  }
+
+  /**
+   * Returns the best gateways to walk to next from an access of a domain, each one along with the
+   * shortest walking distance to safety through it. As in {@link #distanceToSafety(int, int)}, the
+   * pedestrian has just entered through the access.
+   *
+   * @param domainId the id of the domain.
+   * @param accessId the id of the access.
+   * @param k        maximum number of choices.
+   * @return up to {@code k} choices, by increasing distance to safety.
+   */
+  public List<RouteChoice> alternatives(int domainId, int accessId, int k) {
+    int node = node(domainId, accessId);
+    List<RouteChoice> alternatives = new ArrayList<>();
+    if (node >= 0) {
+      for (int c = choiceOffsets[node]; c < choiceOffsets[node + 1] && alternatives.size() < k; c++) {
+        alternatives.add(new RouteChoice(choiceGateways[c], choiceDistances[c]));
+      }
+    }
+    return alternatives;
+  }
+
+  /**
+   * Returns the gateways crossed along the shortest route to safety from an access of a domain. As in
+   * {@link #distanceToSafety(int, int)}, the pedestrian has just entered through the access.
+   *
+   * @param domainId the id of the domain.
+   * @param accessId the id of the access.
+   * @return the ids of the gateways, in order (the last one leads to safety), or an empty array if
+   * safety cannot be reached.
+   */
+  public int[] route(int domainId, int accessId) {
+    int node = node(domainId, accessId);
+    if (node < 0 || distances[node] == Double.POSITIVE_INFINITY) {
+      return new int[0];
+    }
+    List<Integer> gateways = new ArrayList<>();
+    // bounded, in case of ties along zero-length steps
+    for (int steps = 0; choiceOffsets[node] < choiceOffsets[node + 1] && steps < distances.length; steps++) {
+      gateways.add(choiceGateways[choiceOffsets[node]]);
+      node = choiceNodes[choiceOffsets[node]];
+    }
+    return gateways.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  /**
+   * Returns the walking distance to safety from a point within a domain.
+   *
+   * @param domainId the id of the domain.
+   * @param x        x-coordinate of point.
+   * @param y        y-coordinate of point.
+   * @return the walking distance to safety, or {@code Double.POSITIVE_INFINITY} if safety cannot be
+   * reached (or the domain does not exist).
+   */
+  public double distanceToSafety(int domainId, double x, double y) {
+    List<RouteChoice> alternatives = alternatives(domainId, x, y, 1);
+    return alternatives.isEmpty() ? Double.POSITIVE_INFINITY : alternatives.get(0).distance();
+  }
+
+  /**
+   * Returns the next gateway to walk to from a point within a domain along the shortest route to safety.
+   *
+   * @param domainId the id of the domain.
+   * @param x        x-coordinate of point.
+   * @param y        y-coordinate of point.
+   * @return the id of the next gateway, or -1 if safety cannot be reached (or the domain does not exist).
+   */
+  public int nextGateway(int domainId, double x, double y) {
+    List<RouteChoice> alternatives = alternatives(domainId, x, y, 1);
+    return alternatives.isEmpty() ? -1 : alternatives.get(0).gatewayId();
+  }
+
+  /**
+   * Returns the best gateways to walk to next from a point within a domain, each one along with the
+   * shortest walking distance to safety through it. Distances within the domain are taken from its
+   * floor fields, so this takes time proportional to the number of accesses of the domain.
+   *
+   * @param domainId the id of the domain.
+   * @param x        x-coordinate of point.
+   * @param y        y-coordinate of point.
+   * @param k        maximum number of choices.
+   * @return up to {@code k} choices, by increasing distance to safety.
+   */
+  public List<RouteChoice> alternatives(int domainId, double x, double y, int k) {
+    DomainRoutes domain = routes.get(domainId);
+    List<RouteChoice> alternatives = new ArrayList<>();
+    if (domain == null) {
+      return alternatives;
+    }
+    for (int j = 0; j < domain.accessIds().length; j++) {
+      int target = domain.targetNodes()[j];
+      if (target >= 0) {
+        double distance = domain.fields().field(domain.accessIds()[j]).valueAt(x, y) + distances[target];
+        if (distance < Double.POSITIVE_INFINITY) {
+          alternatives.add(new RouteChoice(domain.accessIds()[j], distance));
+        }
+      }
+    }
+    alternatives.sort(Comparator.comparingDouble(RouteChoice::distance));
+    return alternatives.size() > k ? new ArrayList<>(alternatives.subList(0, k)) : alternatives;
+  }
+
+  /**
+   * Estimates the heap memory used by the router, excluding the floor fields of domains, which are kept by
+   * the domains themselves (see {@link MemoryFootprint}).
+   *
+   * @return the estimated number of bytes.
+   */
+  public long memoryFootprint() {
+    long bytes = MemoryFootprint.object(7 * MemoryFootprint.REFERENCE) + MemoryFootprint.hashMap(routes.size(), false)
+        + (long) routes.size() * MemoryFootprint.BOXED_INT + MemoryFootprint.hashMap(nodes.size(), false)
+        + (long) nodes.size() * (MemoryFootprint.BOXED_LONG + MemoryFootprint.BOXED_INT)
+        + MemoryFootprint.array(distances.length, Double.BYTES)
+        + MemoryFootprint.array(choiceOffsets.length, Integer.BYTES)
+        + 2 * MemoryFootprint.array(choiceGateways.length, Integer.BYTES)
+        + MemoryFootprint.array(choiceDistances.length, Double.BYTES);
+    for (DomainRoutes domainRoutes : routes.values()) {
+      int accesses = domainRoutes.accessIds().length;
+      bytes += MemoryFootprint.object(5 * MemoryFootprint.REFERENCE)
+          + 2 * MemoryFootprint.array(accesses, Integer.BYTES) + MemoryFootprint.array(accesses, Long.BYTES)
+          + MemoryFootprint.array(accesses, MemoryFootprint.REFERENCE)
+          + accesses * MemoryFootprint.array(accesses, Double.BYTES);
+    }
+    return bytes;
+  }
+}
@@ -0,0 +1,96 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+import java.util.Arrays;
+
+/**
+ * Maps a set of integer ids to dense indexes {@code 0..n-1}, in increasing order of id. Lookups
+ * use a direct table if ids are reasonably compact, and binary search otherwise.
+ *
+ * @author ppgllrd
+ */
+final class IdIndex {
+  /**
+   * Maximum ratio between the range of ids and their number for a direct table to be used.
+   */
+  private static final int MAX_TABLE_SPREAD = 4;
+
+  /**
+   * ids, in increasing order
+   */
+  private final int[] ids;
+  /**
+   * smallest id
+   */
+  private final int minId;
+  /**
+   * index of each id in {@code minId..maxId} (-1 if absent), or null if binary search is used
+   */
+  private final int[] table;
+
+  /**
+   * Creates an index over some ids.
+   *
+   * @param ids the ids (with no repetitions).
+   */
+  IdIndex(int[] ids) {
+    this.ids = ids.clone();
+    Arrays.sort(this.ids);
+    int n = this.ids.length;
+    minId = n == 0 ? 0 : this.ids[0];
+    long range = n == 0 ? 0 : (long) this.ids[n - 1] - minId + 1;
+    if (range <= (long) MAX_TABLE_SPREAD * n + 64) {
+      table = new int[(int) range];
+      Arrays.fill(table, -1);
+      for (int i = 0; i < n; i++) {
+        table[this.ids[i] - minId] = i;
+      }
+    } else {
+      table = null;
+    }
+  }
+
+  /**
+   * Returns the number of ids.
+   *
+   * @return the number of ids.
+   */
+  int size() {
+    return ids.length;
+  }
+
+  /**
+   * Returns the id with a given index.
+   *
+   * @param index the index.
+   * @return the id with the given index.
+   */
+  int id(int index) {
+    return ids[index];
+  }
+
+  /**
+   * Returns the index of an id.
+   *
+   * @param id the id.
+   * @return the index of the id, or -1 if it is not in the index.
+   */
+  int indexOf(int id) {
+    if (table != null) {
+      long offset = (long) id - minId;
+      return offset >= 0 && offset < table.length ? table[(int) offset] : -1;
+    }
+    int index = Arrays.binarySearch(ids, id);
+    return index >= 0 ? index : -1;
+  }
+
+  /**
+   * Estimates the heap memory used by the index (see {@link MemoryFootprint}).
+   *
+   * @return the estimated number of bytes.
+   */
+  long memoryFootprint() {
+    return MemoryFootprint.object(Integer.BYTES + 2 * MemoryFootprint.REFERENCE)
+        + MemoryFootprint.array(ids.length, Integer.BYTES)
+        + (table == null ? 0 : MemoryFootprint.array(table.length, Integer.BYTES));
+  }
+}
@@ -0,0 +1,342 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+import com.github.cliftonlabs.json_simple.JsonException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Minimal pull parser for json text. Values are read one at a time as the caller walks the
+ * document, so no intermediate tree is built and numbers are parsed directly into primitives.
+ *
+ * @author ppgllrd
+ */
+final class JsonPullParser implements Closeable {
+  private static final int BUFFER_SIZE = 1 << 16;
+  /**
+   * largest integer such that it and all smaller ones are exactly representable as doubles
+   */
+  private static final long MAX_EXACT_MANTISSA = 1L << 53;
+  /**
+   * powers of ten exactly representable as doubles
+   */
+  private static final double[] EXACT_POWERS_OF_TEN = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+      1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  private final Reader reader;
+  private final char[] buffer = new char[BUFFER_SIZE];
+  /**
+   * position of next char in buffer
+   */
+  private int position = 0;
+  /**
+   * number of valid chars in buffer
+   */
+  private int limit = 0;
+  /**
+   * number of chars consumed before current buffer
+   */
+  private long consumed = 0;
+  /**
+   * scratch space for strings and numbers
+   */
+  private char[] scratch = new char[64];
+  /**
+   * for each nesting level of objects and arrays, whether a comma is expected before next element
+   */
+  private boolean[] expectComma = new boolean[16];
+  private int depth = 0;
+
+  /**
+   * Creates a parser reading from a reader.
+   *
+   * @param reader the reader.
+   */
+  JsonPullParser(Reader reader) {
+    this.reader = reader;
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+
+  private JsonException unexpected(Object found) {
+    return new JsonException(consumed + position, JsonException.Problems.UNEXPECTED_CHARACTER, found);
+  }
+
+  /**
+   * Returns next char without consuming it (-1 at end of input).
+   */
+  private int peekChar() throws IOException {
+    if (position == limit) {
+      consumed += limit;
+      position = 0;
+      limit = Math.max(reader.read(buffer, 0, BUFFER_SIZE), 0);
+      if (limit == 0) {
+        return -1;
+      }
+    }
+    return buffer[position];
+  }
+
+  private int readChar() throws IOException {
+    int c = peekChar();
+    if (c >= 0) {
+      position++;
+    }
+    return c;
+  }
+
+  /**
+   * Returns next non-whitespace char without consuming it (-1 at end of input).
+   */
+  private int peek() throws IOException {
+    int c = peekChar();
+    while (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+      position++;
+      c = peekChar();
+    }
+    return c;
+  }
+
+  private void expect(char expected) throws IOException, JsonException {
+    int c = peek();
+    if (c != expected) {
+      throw unexpected(c < 0 ? "end of input" : (char) c);
+    }
+    position++;
+  }
+
+  private void push() {
+    if (depth == expectComma.length) {
+      expectComma = Arrays.copyOf(expectComma, 2 * depth);
+    }
+    expectComma[depth++] = false;
+  }
+
+  /**
+   * Advances to next element of current object or array.
+   *
+   * @return {@code false} if closing char was found (and consumed).
+   */
+  private boolean advance(char closing) throws IOException, JsonException {
+    int c = peek();
+    if (c == closing) {
+      position++;
+      depth--;
+      return false;
+    }
+    if (expectComma[depth - 1]) {
+      expect(',');
+    }
+    expectComma[depth - 1] = true;
+    return true;
+  }
+
+  /**
+   * Consumes the start of an object.
+   */
+  void beginObject() throws IOException, JsonException {
+    expect('{');
+    push();
+  }
+
+  /**
+   * Consumes the key of next field in current object.
+   *
+   * @return the key, or {@code null} if the end of the object was reached (and consumed).
+   */
+  String nextField() throws IOException, JsonException {
+    if (!advance('}')) {
+      return null;
+    }
+    String key = nextString();
+    expect(':');
+    return key;
+  }
+
+  /**
+   * Consumes the start of an array.
+   */
+  void beginArray() throws IOException, JsonException {
+    expect('[');
+    push();
+  }
+
+  /**
+   * Checks whether there is a next element in current array.
+   *
+   * @return {@code false} if the end of the array was reached (and consumed).
+   */
+  boolean hasNextElement() throws IOException, JsonException {
+    return advance(']');
+  }
+
+  /**
+   * Checks whether next value is {@code null}, consuming it if so.
+   *
+   * @return {@code true} if next value was {@code null}.
+   */
+  boolean nextNull() throws IOException, JsonException {
+    if (peek() != 'n') {
+      return false;
+    }
+    literal("null");
+    return true;
+  }
+
+  private void literal(String literal) throws IOException, JsonException {
+    for (int i = 0; i < literal.length(); i++) {
+      int c = readChar();
+      if (c != literal.charAt(i)) {
+        throw unexpected(c < 0 ? "end of input" : (char) c);
+      }
+    }
+  }
+
+  private void appendScratch(int length, char c) {
+    if (length == scratch.length) {
+      scratch = Arrays.copyOf(scratch, 2 * length);
+    }
+    scratch[length] = c;
+  }
+
+  /**
+   * Consumes a string value.
+   *
+   * @return the string.
+   */
+  String nextString() throws IOException, JsonException {
+    expect('"');
+    int length = 0;
+    while (true) {
+      int c = readChar();
+      if (c < 0) {
+        throw unexpected("end of input");
+      } else if (c == '"') {
+        return new String(scratch, 0, length);
+      } else if (c == '\\') {
+        c = readChar();
+        switch (c) {
+          case 'b' -> c = '\b';
+          case 'f' -> c = '\f';
+          case 'n' -> c = '\n';
+          case 'r' -> c = '\r';
+          case 't' -> c = '\t';
+          case 'u' -> {
+            int code = 0;
+            for (int i = 0; i < 4; i++) {
+              int digit = Character.digit(readChar(), 16);
+              if (digit < 0) {
+                throw unexpected("invalid unicode escape");
+              }
+              code = 16 * code + digit;
+            }
+            c = code;
+          }
+          case '"', '\\', '/' -> {
+          }
+          default -> throw unexpected(c < 0 ? "end of input" : (char) c);
+        }
+      }
+      appendScratch(length++, (char) c);
+    }
+  }
+
+  /**
+   * Consumes a numeric value.
+   *
+   * @return the number, correctly rounded to the nearest double.
+   */
+  double nextDouble() throws IOException, JsonException {
+    int c = peek();
+    int length = 0;
+    boolean negative = false;
+    long mantissa = 0;
+    int digits = 0;
+    int exponent = 0;
+    boolean fraction = false;
+    boolean simple = true;
+    if (c == '-') {
+      negative = true;
+      appendScratch(length++, (char) readChar());
+      c = peekChar();
+    }
+    while (c >= 0 && (c >= '0' && c <= '9' || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-')) {
+      position++;
+      appendScratch(length++, (char) c);
+      if (c >= '0' && c <= '9') {
+        if (digits < 18) {
+          mantissa = 10 * mantissa + (c - '0');
+          if (mantissa != 0) {
+            digits++;
+          }
+          if (fraction) {
+            exponent--;
+          }
+        } else {
+          simple = false;
+        }
+      } else if (c == '.') {
+        simple &= !fraction;
+        fraction = true;
+      } else {
+        simple = false;
+      }
+      c = peekChar();
+    }
+    if (length == 0 || (negative && length == 1)) {
+      throw unexpected(c < 0 ? "end of input" : (char) c);
+    }
+    if (simple && mantissa <= MAX_EXACT_MANTISSA && -exponent < EXACT_POWERS_OF_TEN.length) {
+      // both operands are exact, so the quotient is correctly rounded
+      double value = mantissa / EXACT_POWERS_OF_TEN[-exponent];
+      return negative ? -value : value;
+    }
+    try {
+      return Double.parseDouble(new String(scratch, 0, length));
+    } catch (NumberFormatException e) {
+      throw unexpected(new String(scratch, 0, length));
+    }
+  }
+
+  /**
+   * Consumes a numeric value and truncates it to an integer.
+   *
+   * @return the integer part of the number.
+   */
+  int nextInt() throws IOException, JsonException {
+    return (int) nextDouble();
+  }
+
+  /**
+   * Consumes and discards next value, whatever its type.
+   */
+  void skipValue() throws IOException, JsonException {
+    int c = peek();
+    switch (c) {
+      case '{' -> {
+        beginObject();
+        while (nextField() != null) {
+          skipValue();
+        }
+      }
+      case '[' -> {
+        beginArray();
+        while (hasNextElement()) {
+          skipValue();
+        }
+      }
+      case '"' -> nextString();
+      case 't' -> literal("true");
+      case 'f' -> literal("false");
+      case 'n' -> literal("null");
+      default -> nextDouble();
+    }
+  }
+}
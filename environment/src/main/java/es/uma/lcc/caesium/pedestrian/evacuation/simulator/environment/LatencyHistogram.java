@@ -0,0 +1,160 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent histogram of latencies with log-linear buckets, as in HDR histograms: each power of two is
+ * split into {@code 2^SUB_BUCKET_BITS} buckets of equal width, so that any value is known within 1/8 of
+ * itself, with a fixed number of buckets covering all non-negative longs.
+ * <p>
+ * Bucket counts are striped by thread, so that threads recording similar values do not all update the
+ * same counter. Stripes are allocated the first time a thread mapped to them records a value, so a
+ * histogram only used by one thread keeps a single array of counts.
+ *
+ * @author ppgllrd
+ */
+final class LatencyHistogram {
+  /**
+   * log2 of number of buckets per power of two
+   */
+  private static final int SUB_BUCKET_BITS = 3;
+  /**
+   * number of buckets per power of two
+   */
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  /**
+   * number of buckets needed for all non-negative longs
+   */
+  static final int BUCKETS = bucket(Long.MAX_VALUE) + 1;
+  /**
+   * number of stripes of bucket counts (a power of two, at least the number of processors up to 16)
+   */
+  private static final int STRIPES =
+      Math.min(16, Integer.highestOneBit(2 * Runtime.getRuntime().availableProcessors() - 1));
+
+  /**
+   * number of values in each bucket, for each stripe (lazily allocated)
+   */
+  private final AtomicReferenceArray<AtomicLongArray> stripes = new AtomicReferenceArray<>(STRIPES);
+  /**
+   * sum of values
+   */
+  private final LongAdder total = new LongAdder();
+  /**
+   * maximum value
+   */
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  /**
+   * Index of the bucket of a value. Values below {@code SUB_BUCKETS} have a bucket each.
+   */
+  static int bucket(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  /**
+   * Largest value falling in a bucket.
+   */
+  static long highestValue(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = bucket / SUB_BUCKETS - 1;
+    long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    return lowest + ((1L << shift) - 1);
+  }
+
+  /**
+   * Records a value.
+   *
+   * @param value the value (negative values are recorded as 0).
+   */
+  void record(long value) {
+    value = Math.max(0, value);
+    int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+    AtomicLongArray counts = stripes.get(stripe);
+    if (counts == null) {
+      stripes.compareAndSet(stripe, null, new AtomicLongArray(BUCKETS));
+      counts = stripes.get(stripe);
+    }
+    counts.incrementAndGet(bucket(value));
+    total.add(value);
+    max.accumulate(value);
+  }
+
+  /**
+   * Adds the values recorded by this histogram to some bucket counts.
+   *
+   * @param bucketCounts counts of values by bucket, of length {@link #BUCKETS}.
+   */
+  void addTo(long[] bucketCounts) {
+    for (int stripe = 0; stripe < STRIPES; stripe++) {
+      AtomicLongArray counts = stripes.get(stripe);
+      if (counts != null) {
+        for (int i = 0; i < BUCKETS; i++) {
+          bucketCounts[i] += counts.get(i);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the sum of the values recorded.
+   */
+  long total() {
+    return total.sum();
+  }
+
+  /**
+   * Returns the maximum value recorded (0 if there is none).
+   */
+  long max() {
+    return max.get();
+  }
+
+  /**
+   * Returns a percentile of some bucket counts, as the largest value of the bucket it falls in, capped by
+   * the maximum value.
+   *
+   * @param bucketCounts counts of values by bucket, of length {@link #BUCKETS}.
+   * @param count        number of values counted.
+   * @param percentile   the percentile, between 0 and 100.
+   * @param max          maximum value counted.
+   * @return the percentile (0 if there are no values).
+   */
+  static long percentile(long[] bucketCounts, long count, double percentile, long max) {
+    long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += bucketCounts[i];
+      if (seen >= rank) {
+        return Math.min(highestValue(i), max);
+      }
+    }
+    return count == 0 ? 0 : max;
+  }
+
+  /**
+   * Discards all values recorded. Values recorded concurrently may be partially discarded.
+   */
+  void reset() {
+    for (int stripe = 0; stripe < STRIPES; stripe++) {
+      AtomicLongArray counts = stripes.get(stripe);
+      if (counts != null) {
+        for (int i = 0; i < BUCKETS; i++) {
+          counts.set(i, 0);
+        }
+      }
+    }
+    total.reset();
+    max.reset();
+  }
+}
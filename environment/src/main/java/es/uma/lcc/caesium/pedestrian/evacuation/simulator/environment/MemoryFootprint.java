@@ -0,0 +1,137 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+import java.util.List;
+
+/**
+ * Estimated heap memory used by an environment, a domain or a structure derived from them, along with the
+ * footprints of its parts. Estimates are computed from the sizes of fields and arrays, assuming a 64-bit JVM
+ * with compressed references (12-byte object headers, 16-byte array headers, 4-byte references and objects
+ * aligned to 8 bytes), so they are approximate but cheap to compute, as the heap is not traversed.
+ *
+ * @param name  name of the object measured.
+ * @param bytes estimated number of bytes used by the object, including its parts.
+ * @param parts footprints of the parts of the object.
+ * @author ppgllrd
+ */
+public record MemoryFootprint(String name, long bytes, List<MemoryFootprint> parts) {
+  /**
+   * size of an object header
+   */
+  static final int OBJECT_HEADER = 12;
+  /**
+   * size of an array header
+   */
+  static final int ARRAY_HEADER = 16;
+  /**
+   * size of a reference
+   */
+  static final int REFERENCE = 4;
+  /**
+   * size of a boxed {@code Integer}
+   */
+  static final int BOXED_INT = 16;
+  /**
+   * size of a boxed {@code Long}
+   */
+  static final int BOXED_LONG = 24;
+
+  /**
+   * Creates a memory footprint.
+   *
+   * @param name  name of the object measured.
+   * @param bytes estimated number of bytes used by the object, including its parts.
+   * @param parts footprints of the parts of the object.
+   */
+  public MemoryFootprint {
+    parts = List.copyOf(parts);
+  }
+
+  /**
+   * Footprint of an object from its own size and those of its parts.
+   */
+  static MemoryFootprint of(String name, long ownBytes, List<MemoryFootprint> parts) {
+    long bytes = ownBytes;
+    for (MemoryFootprint part : parts) {
+      bytes += part.bytes;
+    }
+    return new MemoryFootprint(name, bytes, parts);
+  }
+
+  /**
+   * Size of an object with fields of given total size.
+   */
+  static long object(long fieldBytes) {
+    return align(OBJECT_HEADER + fieldBytes);
+  }
+
+  /**
+   * Size of an array.
+   */
+  static long array(long length, int elementBytes) {
+    return align(ARRAY_HEADER + length * elementBytes);
+  }
+
+  /**
+   * Size of an array of arrays of ints, including the inner arrays.
+   */
+  static long array(int[][] arrays) {
+    long bytes = array(arrays.length, REFERENCE);
+    for (int[] array : arrays) {
+      bytes += array == null ? 0 : array(array.length, Integer.BYTES);
+    }
+    return bytes;
+  }
+
+  /**
+   * Size of a string (assumed to be Latin-1).
+   */
+  static long string(String string) {
+    return string == null ? 0 : object(2 * Integer.BYTES + 2 + REFERENCE) + array(string.length(), 1);
+  }
+
+  /**
+   * Size of an array-backed list, excluding its elements.
+   */
+  static long list(int size) {
+    return object(2 * Integer.BYTES + REFERENCE) + array(size, REFERENCE);
+  }
+
+  /**
+   * Size of a hash map, excluding its keys and values.
+   */
+  static long hashMap(int size, boolean linked) {
+    int capacity = Integer.highestOneBit(Math.max(1, (int) Math.ceil(size / 0.75)) * 2 - 1);
+    long entryBytes = object(Integer.BYTES + 3 * REFERENCE + (linked ? 2 * REFERENCE : 0));
+    return object(4 * Integer.BYTES + Float.BYTES + 4 * REFERENCE + (linked ? 2 * REFERENCE + 1 : 0))
+        + array(capacity, REFERENCE) + size * entryBytes;
+  }
+
+  /**
+   * Size of a hash set, including its elements of given size.
+   */
+  static long hashSet(int size, int elementBytes) {
+    return object(REFERENCE) + hashMap(size, false) + (long) size * elementBytes;
+  }
+
+  private static long align(long bytes) {
+    return (bytes + 7) & ~7L;
+  }
+
+  /**
+   * Formats the footprint and those of its parts as an indented tree, one per line.
+   *
+   * @return the formatted footprint.
+   */
+  public String format() {
+    StringBuilder builder = new StringBuilder();
+    format(builder, 0);
+    return builder.toString();
+  }
+
+  private void format(StringBuilder builder, int depth) {
+    builder.append("  ".repeat(depth)).append(String.format("%s: %,d bytes%n", name, bytes));
+    for (MemoryFootprint part : parts) {
+      part.format(builder, depth + 1);
+    }
+  }
+}
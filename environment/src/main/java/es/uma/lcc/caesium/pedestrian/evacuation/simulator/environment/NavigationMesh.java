@@ -0,0 +1,786 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+import java.awt.geom.Area;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Navigation mesh of a domain, made of convex walkable regions connected through portals. Regions are
+ * the triangles of a triangulation of the free space of the domain (the domain minus its obstacles, plus
+ * its open accesses), and portals are the segments shared by adjacent regions. Free space is split into
+ * square tiles before triangulating, so that regions are not too large, and its boundary is kept exactly,
+ * except for circular obstacles, which are replaced by circumscribed polygons.
+ * <p>
+ * Paths to accesses are found by A* over regions, and then smoothed by pulling them taut through the
+ * portals of the corridor of regions found (funnel algorithm). Corridors are kept in a bounded cache
+ * (least recently used ones are evicted), keyed by start region and target access, as many pedestrians
+ * usually head for a few accesses. Navigation meshes can be queried concurrently.
+ *
+ * @author ppgllrd
+ */
+public final class NavigationMesh {
+  /**
+   * Default maximum number of corridors in the cache.
+   */
+  public static final int DEFAULT_CACHE_CAPACITY = 4096;
+  /**
+   * side of the tiles free space is split into, in cells. Corridors are shared by all points in a
+   * region, so they are only accurate if regions are not too large
+   */
+  private static final int MAX_REGION_CELLS = 16;
+  /**
+   * maximum number of times a tile is split into four when its free space cannot be triangulated due to
+   * rounding (parts of tiles which still cannot be triangulated are left out of the mesh)
+   */
+  private static final int MAX_TILE_SPLITS = 4;
+
+  /**
+   * version of the domain the mesh was built for
+   */
+  private final long version;
+  /**
+   * resolution the mesh was built for
+   */
+  private final double cellSize;
+  /**
+   * coordinates of the vertices of each region, three per region
+   */
+  private final double[] xs, ys;
+  /**
+   * spatial index over regions, for locating points
+   */
+  private final ShapeIndex<Integer> index;
+  /**
+   * start of the portals of each region
+   */
+  private final int[] portalOffsets;
+  /**
+   * region on the other side of each portal
+   */
+  private final int[] portalRegions;
+  /**
+   * endpoints of each portal
+   */
+  private final double[] portalX0s, portalY0s, portalX1s, portalY1s;
+  /**
+   * targets of each access id
+   */
+  private final Map<Integer, Target[]> targets;
+  /**
+   * corridors of regions (least recently used first), by start region and target access
+   */
+  private final LinkedHashMap<Long, Corridor> cache;
+
+  /**
+   * Part of an access within a region: bounds of the intersection of the access and the region.
+   */
+  private record Target(int region, double minX, double minY, double maxX, double maxY) {
+    double distance(double x, double y) {
+      double dx = Math.max(Math.max(minX - x, 0), x - maxX);
+      double dy = Math.max(Math.max(minY - y, 0), y - maxY);
+      return Math.sqrt(dx * dx + dy * dy);
+    }
+  }
+
+  /**
+   * Sequence of regions from a start region to a target, along with the portals crossed.
+   */
+  private record Corridor(int[] portals, Target target) {
+  }
+
+  private NavigationMesh(Domain domain, double cellSize, List<double[]> regions, List<List<double[]>> portals,
+                         int cacheCapacity) {
+    this.version = domain.version();
+    this.cellSize = cellSize;
+    int n = regions.size();
+    xs = new double[3 * n];
+    ys = new double[3 * n];
+    List<Shape> shapes = new ArrayList<>(n);
+    List<Integer> ids = new ArrayList<>(n);
+    for (int k = 0; k < n; k++) {
+      double[] region = regions.get(k);
+      List<Point2D> vertices = new ArrayList<>(3);
+      for (int v = 0; v < 3; v++) {
+        xs[3 * k + v] = region[2 * v];
+        ys[3 * k + v] = region[2 * v + 1];
+        vertices.add(new Point2D(region[2 * v], region[2 * v + 1]));
+      }
+      shapes.add(new Shape.Polygon(vertices));
+      ids.add(k);
+    }
+    index = new ShapeIndex<>(domain.getWidth(), domain.getHeight(), ids, shapes::get);
+
+    portalOffsets = new int[n + 1];
+    for (int k = 0; k < n; k++) {
+      portalOffsets[k + 1] = portalOffsets[k] + portals.get(k).size();
+    }
+    int m = portalOffsets[n];
+    portalRegions = new int[m];
+    portalX0s = new double[m];
+    portalY0s = new double[m];
+    portalX1s = new double[m];
+    portalY1s = new double[m];
+    for (int k = 0, p = 0; k < n; k++) {
+      for (double[] portal : portals.get(k)) {
+        portalRegions[p] = (int) portal[0];
+        portalX0s[p] = portal[1];
+        portalY0s[p] = portal[2];
+        portalX1s[p] = portal[3];
+        portalY1s[p] = portal[4];
+        p++;
+      }
+    }
+
+    // bounds of the intersection of each open access with each region
+    Map<Integer, Map<Integer, double[]>> bounds = new HashMap<>();
+    for (Access access : domain.getAccesses()) {
+      if (!domain.isAccessOpen(access.id())) {
+        continue;
+      }
+      Area accessArea = new Area(access.shape().getAWTShape());
+      BoundingBox box = access.shape().getBoundingBox();
+      for (int region : index.intersecting(box.minX(), box.minY(), box.maxX() - box.minX(), box.maxY() - box.minY())) {
+        Area part = new Area(shapes.get(region).getAWTShape());
+        part.intersect(accessArea);
+        if (part.isEmpty()) {
+          continue;
+        }
+        Rectangle2D partBounds = part.getBounds2D();
+        double[] regionBox = bounds.computeIfAbsent(access.id(), id -> new HashMap<>())
+            .computeIfAbsent(region, r -> new double[]{partBounds.getMinX(), partBounds.getMinY(),
+                partBounds.getMaxX(), partBounds.getMaxY()});
+        regionBox[0] = Math.min(regionBox[0], partBounds.getMinX());
+        regionBox[1] = Math.min(regionBox[1], partBounds.getMinY());
+        regionBox[2] = Math.max(regionBox[2], partBounds.getMaxX());
+        regionBox[3] = Math.max(regionBox[3], partBounds.getMaxY());
+      }
+    }
+    targets = new HashMap<>();
+    bounds.forEach((id, byRegion) -> targets.put(id, byRegion.entrySet().stream()
+        .map(entry -> new Target(entry.getKey(), entry.getValue()[0], entry.getValue()[1], entry.getValue()[2],
+            entry.getValue()[3]))
+        .sorted((a, b) -> Integer.compare(a.region(), b.region()))
+        .toArray(Target[]::new)));
+
+    int capacity = cacheCapacity;
+    cache = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, Corridor> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  private static void addPortals(List<List<double[]>> portals, int region, int other,
+                                 double x0, double y0, double x1, double y1) {
+    portals.get(region).add(new double[]{other, x0, y0, x1, y1});
+    portals.get(other).add(new double[]{region, x0, y0, x1, y1});
+  }
+
+  /**
+   * Builds the navigation mesh of a domain.
+   *
+   * @param domain        the domain.
+   * @param cellSize      resolution of the mesh: free space is split into square tiles of {@code 16}
+   *                      cells a side, and circular obstacles deviate at most a quarter of a cell from
+   *                      the polygons replacing them.
+   * @param cacheCapacity maximum number of corridors in the cache.
+   * @return the navigation mesh of the domain.
+   */
+  static NavigationMesh of(Domain domain, double cellSize, int cacheCapacity) {
+    if (cacheCapacity < 0) {
+      throw new IllegalArgumentException(String.format("NavigationMesh.of: invalid cache capacity %d", cacheCapacity));
+    }
+    if (!(cellSize > 0)) {
+      throw new IllegalArgumentException(String.format("NavigationMesh.of: invalid cell size %f", cellSize));
+    }
+    Builder builder = new Builder(domain, cellSize / 4);
+    double side = MAX_REGION_CELLS * cellSize;
+    int columns = (int) Math.ceil(domain.getWidth() / side), rows = (int) Math.ceil(domain.getHeight() / side);
+    for (int r = 0; r < rows; r++) {
+      for (int c = 0; c < columns; c++) {
+        builder.tile(c * side, r * side, Math.min((c + 1) * side, domain.getWidth()),
+            Math.min((r + 1) * side, domain.getHeight()), MAX_TILE_SPLITS);
+      }
+    }
+    builder.connectTiles();
+    return new NavigationMesh(domain, cellSize, builder.regions, builder.portals, cacheCapacity);
+  }
+
+  /**
+   * Triangulates the free space of a domain tile by tile, and finds the portals between triangles.
+   */
+  private static final class Builder {
+    private final Domain domain;
+    /**
+     * maximum deviation of polygons replacing circles
+     */
+    private final double tolerance;
+    /**
+     * coordinates of the vertices of each region
+     */
+    private final List<double[]> regions = new ArrayList<>();
+    /**
+     * portals of each region, as {other region, x0, y0, x1, y1}
+     */
+    private final List<List<double[]>> portals = new ArrayList<>();
+    /**
+     * edges of regions on the sides of tiles, as {region, from, to, 0 if the tile lies before the line
+     * or 1 if after it}, by vertical and horizontal line
+     */
+    private final Map<Double, List<double[]>> verticalEdges = new HashMap<>(), horizontalEdges = new HashMap<>();
+
+    Builder(Domain domain, double tolerance) {
+      this.domain = domain;
+      this.tolerance = tolerance;
+    }
+
+    /**
+     * Triangulates the free space within a tile, splitting the tile into four if it cannot be triangulated.
+     */
+    void tile(double x0, double y0, double x1, double y1, int splits) {
+      List<Triangulation> triangulations = new ArrayList<>();
+      for (List<double[][]> polygon : polygons(freeSpace(x0, y0, x1, y1))) {
+        List<double[]> holeXs = new ArrayList<>(), holeYs = new ArrayList<>();
+        for (double[][] hole : polygon.subList(1, polygon.size())) {
+          holeXs.add(hole[0]);
+          holeYs.add(hole[1]);
+        }
+        Triangulation triangulation = Triangulation.of(polygon.get(0)[0], polygon.get(0)[1], holeXs, holeYs);
+        if (triangulation != null) {
+          triangulations.add(triangulation);
+        } else if (splits > 0) {
+          double mx = (x0 + x1) / 2, my = (y0 + y1) / 2;
+          tile(x0, y0, mx, my, splits - 1);
+          tile(mx, y0, x1, my, splits - 1);
+          tile(x0, my, mx, y1, splits - 1);
+          tile(mx, my, x1, y1, splits - 1);
+          return;
+        }
+      }
+      double epsilon = 1e-9 * Math.max(x1 - x0, y1 - y0);
+      for (Triangulation triangulation : triangulations) {
+        add(triangulation, x0, y0, x1, y1, epsilon);
+      }
+    }
+
+    /**
+     * Adds the triangles of a triangulation of the free space within a tile as regions, with portals
+     * between those sharing an edge, and records their edges on the sides of the tile.
+     */
+    private void add(Triangulation triangulation, double x0, double y0, double x1, double y1, double epsilon) {
+      int first = regions.size();
+      Map<Long, Integer> edges = new HashMap<>();
+      for (int t = 0; t < triangulation.size(); t++) {
+        double[] region = new double[6];
+        for (int v = 0; v < 3; v++) {
+          region[2 * v] = triangulation.x(triangulation.vertex(t, v));
+          region[2 * v + 1] = triangulation.y(triangulation.vertex(t, v));
+        }
+        regions.add(region);
+        portals.add(new ArrayList<>());
+        for (int v = 0; v < 3; v++) {
+          int a = triangulation.vertex(t, v), b = triangulation.vertex(t, (v + 1) % 3);
+          long key = ((long) Math.min(a, b) << 32) | Math.max(a, b);
+          Integer other = edges.remove(key);
+          if (other != null) {
+            addPortals(portals, first + t, other, triangulation.x(a), triangulation.y(a), triangulation.x(b),
+                triangulation.y(b));
+          } else {
+            edges.put(key, first + t);
+          }
+        }
+      }
+      // edges not shared lie on the boundary of free space, which may be a side of the tile
+      edges.forEach((key, region) -> {
+        int a = (int) (key >>> 32), b = (int) (long) key;
+        double ax = triangulation.x(a), ay = triangulation.y(a), bx = triangulation.x(b), by = triangulation.y(b);
+        for (double x : new double[]{x0, x1}) {
+          if (Math.abs(ax - x) <= epsilon && Math.abs(bx - x) <= epsilon) {
+            verticalEdges.computeIfAbsent(x, line -> new ArrayList<>())
+                .add(new double[]{region, Math.min(ay, by), Math.max(ay, by), x == x0 ? 1 : 0});
+          }
+        }
+        for (double y : new double[]{y0, y1}) {
+          if (Math.abs(ay - y) <= epsilon && Math.abs(by - y) <= epsilon) {
+            horizontalEdges.computeIfAbsent(y, line -> new ArrayList<>())
+                .add(new double[]{region, Math.min(ax, bx), Math.max(ax, bx), y == y0 ? 1 : 0});
+          }
+        }
+      });
+    }
+
+    /**
+     * Adds portals between regions of adjacent tiles, along the overlaps of their edges on the sides of tiles.
+     */
+    void connectTiles() {
+      connect(verticalEdges, true);
+      connect(horizontalEdges, false);
+    }
+
+    private void connect(Map<Double, List<double[]>> edgesByLine, boolean vertical) {
+      edgesByLine.forEach((line, edges) -> {
+        List<double[]> before = new ArrayList<>(), after = new ArrayList<>();
+        for (double[] edge : edges) {
+          (edge[3] == 0 ? before : after).add(edge);
+        }
+        before.sort(Comparator.comparingDouble(edge -> edge[1]));
+        after.sort(Comparator.comparingDouble(edge -> edge[1]));
+        // edges on each side do not overlap, so overlaps are found by merging both sides
+        for (int i = 0, j = 0; i < before.size() && j < after.size(); ) {
+          double[] edge = before.get(i), other = after.get(j);
+          double from = Math.max(edge[1], other[1]), to = Math.min(edge[2], other[2]);
+          if (from < to) {
+            if (vertical) {
+              addPortals(portals, (int) edge[0], (int) other[0], line, from, line, to);
+            } else {
+              addPortals(portals, (int) edge[0], (int) other[0], from, line, to, line);
+            }
+          }
+          if (edge[2] < other[2]) {
+            i++;
+          } else {
+            j++;
+          }
+        }
+      });
+    }
+
+    /**
+     * Returns the free space of the domain within a tile: the tile minus obstacles, plus open accesses.
+     */
+    private Area freeSpace(double x0, double y0, double x1, double y1) {
+      Area tile = new Area(new Rectangle2D.Double(x0, y0, x1 - x0, y1 - y0));
+      Area area = new Area(tile);
+      for (Obstacle obstacle : domain.obstacleIndex().intersecting(x0, y0, x1 - x0, y1 - y0)) {
+        area.subtract(new Area(outline(obstacle.shape())));
+      }
+      for (Access access : domain.getAccesses()) {
+        if (domain.isAccessOpen(access.id()) && access.shape().intersects(x0, y0, x1 - x0, y1 - y0)) {
+          Area accessArea = new Area(access.shape().getAWTShape());
+          accessArea.intersect(tile);
+          area.add(accessArea);
+        }
+      }
+      return area;
+    }
+
+    /**
+     * Returns the outline of the shape of an obstacle. Circles are replaced by circumscribed regular
+     * polygons, so that regions do not overlap them.
+     */
+    private java.awt.Shape outline(Shape shape) {
+      if (!(shape instanceof Shape.Circle circle)) {
+        return shape.getAWTShape();
+      }
+      double radius = circle.getRadius();
+      int sides = Math.max(8, (int) Math.ceil(Math.PI / Math.acos(radius / (radius + tolerance))));
+      double circumradius = radius / Math.cos(Math.PI / sides);
+      List<Point2D> vertices = new ArrayList<>(sides);
+      for (int k = 0; k < sides; k++) {
+        double angle = 2 * Math.PI * k / sides;
+        vertices.add(new Point2D(circle.getX() + circumradius * Math.cos(angle),
+            circle.getY() + circumradius * Math.sin(angle)));
+      }
+      return Path2D.fromPoints(vertices);
+    }
+
+    /**
+     * Splits the boundary of an area into polygons with holes: an outer boundary followed by the
+     * boundaries of the holes within it, each as its x and y-coordinates. Outer boundaries of areas are
+     * clockwise and boundaries of holes counterclockwise.
+     */
+    private List<List<double[][]>> polygons(Area area) {
+      List<double[][]> outers = new ArrayList<>(), holes = new ArrayList<>();
+      List<Double> ringXs = new ArrayList<>(), ringYs = new ArrayList<>();
+      double[] coordinates = new double[6];
+      for (PathIterator iterator = area.getPathIterator(null, tolerance); ; iterator.next()) {
+        int segment = iterator.isDone() ? PathIterator.SEG_CLOSE : iterator.currentSegment(coordinates);
+        if (segment == PathIterator.SEG_MOVETO || segment == PathIterator.SEG_CLOSE) {
+          if (ringXs.size() >= 3) {
+            double[][] ring = {ringXs.stream().mapToDouble(Double::doubleValue).toArray(),
+                ringYs.stream().mapToDouble(Double::doubleValue).toArray()};
+            double signedArea = Triangulation.signedArea(ring[0], ring[1]);
+            if (signedArea != 0) {
+              (signedArea < 0 ? outers : holes).add(ring);
+            }
+          }
+          ringXs.clear();
+          ringYs.clear();
+        }
+        if (iterator.isDone()) {
+          break;
+        }
+        if (segment != PathIterator.SEG_CLOSE) {
+          ringXs.add(coordinates[0]);
+          ringYs.add(coordinates[1]);
+        }
+      }
+      List<List<double[][]>> polygons = new ArrayList<>();
+      double[] areas = new double[outers.size()];
+      for (int k = 0; k < outers.size(); k++) {
+        polygons.add(new ArrayList<>());
+        polygons.get(k).add(outers.get(k));
+        areas[k] = -Triangulation.signedArea(outers.get(k)[0], outers.get(k)[1]);
+      }
+      for (double[][] hole : holes) {
+        // the hole belongs to the smallest outer boundary around the midpoint of its first edge
+        double x = (hole[0][0] + hole[0][1]) / 2, y = (hole[1][0] + hole[1][1]) / 2;
+        int smallest = -1;
+        for (int k = 0; k < outers.size(); k++) {
+          if (contains(outers.get(k), x, y) && (smallest < 0 || areas[k] < areas[smallest])) {
+            smallest = k;
+          }
+        }
+        if (smallest >= 0) {
+          polygons.get(smallest).add(hole);
+        }
+      }
+      return polygons;
+    }
+
+    /**
+     * Checks whether a point lies within a polygon (crossing number).
+     */
+    private static boolean contains(double[][] polygon, double x, double y) {
+      double[] xs = polygon[0], ys = polygon[1];
+      boolean inside = false;
+      for (int i = 0, j = xs.length - 1; i < xs.length; j = i++) {
+        if ((ys[i] > y) != (ys[j] > y) && x < xs[j] + (y - ys[j]) * (xs[i] - xs[j]) / (ys[i] - ys[j])) {
+          inside = !inside;
+        }
+      }
+      return inside;
+    }
+  }
+
+  /**
+   * Returns the number of regions in the mesh.
+   *
+   * @return the number of regions.
+   */
+  public int size() {
+    return xs.length / 3;
+  }
+
+  /**
+   * Returns the resolution the mesh was built for (see {@link Domain#navigationMesh(double)}).
+   *
+   * @return the side of cells.
+   */
+  public double getCellSize() {
+    return cellSize;
+  }
+
+  /**
+   * Returns the version of the domain the mesh was built for.
+   *
+   * @return the version of the domain.
+   */
+  long version() {
+    return version;
+  }
+
+  /**
+   * Returns the region containing a point or, if the point is not within any region (e.g. it is
+   * too close to an obstacle), the nearest region.
+   *
+   * @param x x-coordinate of point.
+   * @param y y-coordinate of point.
+   * @return the region of the point, or -1 if the mesh has no regions.
+   */
+  public int locate(double x, double y) {
+    int region = index.firstContaining(x, y);
+    return region >= 0 ? region : index.nearest(x, y);
+  }
+
+  /**
+   * Returns the shortest walkable path from a point to an access, through the navigation mesh. Points
+   * outside any region are connected to the nearest one.
+   *
+   * @param x        x-coordinate of start point.
+   * @param y        y-coordinate of start point.
+   * @param accessId the id of the access.
+   * @return waypoints of the path, from the start point to the point of the access where it ends, or
+   * {@code null} if the access cannot be reached.
+   */
+  public List<Point2D> path(double x, double y, int accessId) {
+    int start = locate(x, y);
+    Target[] accessTargets = targets.get(accessId);
+    if (start < 0 || accessTargets == null) {
+      return null;
+    }
+    long key = ((long) start << 32) | (accessId & 0xFFFFFFFFL);
+    Corridor corridor;
+    synchronized (cache) {
+      corridor = cache.get(key);
+    }
+    if (corridor == null) {
+      corridor = search(start, accessTargets);
+      synchronized (cache) {
+        cache.put(key, corridor);
+      }
+    }
+    if (corridor.target() == null) {
+      return null;
+    }
+    return funnel(x, y, corridor);
+  }
+
+  /**
+   * Searches for a corridor from a region to the nearest target (A*). Regions are entered at the
+   * points of portals nearest to the entry points of previous regions, starting at the centroid of the
+   * start region, so that corridors only depend
+   * on the start region and can be shared.
+   */
+  private Corridor search(int start, Target[] accessTargets) {
+    int n = size();
+    double goalMinX = Double.POSITIVE_INFINITY, goalMinY = Double.POSITIVE_INFINITY;
+    double goalMaxX = Double.NEGATIVE_INFINITY, goalMaxY = Double.NEGATIVE_INFINITY;
+    Map<Integer, Integer> targetOf = new HashMap<>();
+    for (int t = 0; t < accessTargets.length; t++) {
+      Target target = accessTargets[t];
+      targetOf.put(target.region(), t);
+      goalMinX = Math.min(goalMinX, target.minX());
+      goalMinY = Math.min(goalMinY, target.minY());
+      goalMaxX = Math.max(goalMaxX, target.maxX());
+      goalMaxY = Math.max(goalMaxY, target.maxY());
+    }
+    // admissible heuristic: distance to bounds of all targets
+    Target goal = new Target(-1, goalMinX, goalMinY, goalMaxX, goalMaxY);
+
+    double[] costs = new double[n];
+    Arrays.fill(costs, Double.POSITIVE_INFINITY);
+    int[] entryPortals = new int[n];
+    double[] entryXs = new double[n], entryYs = new double[n];
+    boolean[] closed = new boolean[n];
+    // entries are {estimate, node}, where nodes below 0 stand for reaching target -node - 1
+    PriorityQueue<double[]> open = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+    costs[start] = 0;
+    entryPortals[start] = -1;
+    entryXs[start] = (xs[3 * start] + xs[3 * start + 1] + xs[3 * start + 2]) / 3;
+    entryYs[start] = (ys[3 * start] + ys[3 * start + 1] + ys[3 * start + 2]) / 3;
+    open.add(new double[]{goal.distance(entryXs[start], entryYs[start]), start});
+    while (!open.isEmpty()) {
+      double[] entry = open.poll();
+      int node = (int) entry[1];
+      if (node < 0) {
+        Target target = accessTargets[-node - 1];
+        return new Corridor(portalsTo(target.region(), entryPortals), target);
+      }
+      if (closed[node]) {
+        continue;
+      }
+      closed[node] = true;
+      double ex = entryXs[node], ey = entryYs[node];
+      Integer t = targetOf.get(node);
+      if (t != null) {
+        open.add(new double[]{costs[node] + accessTargets[t].distance(ex, ey), -t - 1});
+      }
+      for (int p = portalOffsets[node]; p < portalOffsets[node + 1]; p++) {
+        int other = portalRegions[p];
+        if (closed[other]) {
+          continue;
+        }
+        // enter next region at the point of the portal nearest to the entry point of this one
+        double mx = Math.max(Math.min(portalX0s[p], portalX1s[p]),
+            Math.min(ex, Math.max(portalX0s[p], portalX1s[p])));
+        double my = Math.max(Math.min(portalY0s[p], portalY1s[p]),
+            Math.min(ey, Math.max(portalY0s[p], portalY1s[p])));
+        double cost = costs[node] + Math.hypot(mx - ex, my - ey);
+        if (cost < costs[other]) {
+          costs[other] = cost;
+          entryPortals[other] = p;
+          entryXs[other] = mx;
+          entryYs[other] = my;
+          open.add(new double[]{cost + goal.distance(mx, my), other});
+        }
+      }
+    }
+    return new Corridor(new int[0], null);
+  }
+
+  /**
+   * Returns the portals crossed to reach a region, in order.
+   */
+  private int[] portalsTo(int region, int[] entryPortals) {
+    List<Integer> portals = new ArrayList<>();
+    for (int p = entryPortals[region]; p >= 0; p = entryPortals[regionBefore(p)]) {
+      portals.add(p);
+    }
+    int[] result = new int[portals.size()];
+    for (int k = 0; k < result.length; k++) {
+      result[k] = portals.get(result.length - 1 - k);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the region a portal belongs to (the one it is crossed from).
+   */
+  private int regionBefore(int portal) {
+    int k = Arrays.binarySearch(portalOffsets, portal);
+    if (k < 0) {
+      return -k - 2;
+    }
+    // several regions may start at the same offset if some have no portals
+    while (portalOffsets[k + 1] == portal) {
+      k++;
+    }
+    return k;
+  }
+
+  /**
+   * Pulls a path taut through the portals of a corridor (simple stupid funnel algorithm). Portals are
+   * oriented so that their left endpoint lies to the left of the direction of travel.
+   */
+  private List<Point2D> funnel(double x, double y, Corridor corridor) {
+    int[] portals = corridor.portals();
+    Target target = corridor.target();
+    int n = portals.length + 2;
+    double[] leftXs = new double[n], leftYs = new double[n], rightXs = new double[n], rightYs = new double[n];
+    leftXs[0] = rightXs[0] = x;
+    leftYs[0] = rightYs[0] = y;
+    for (int k = 0; k < portals.length; k++) {
+      int p = portals[k];
+      int from = regionBefore(p), to = portalRegions[p];
+      // direction from the centroid of the region the portal is crossed from to that of the next one
+      double dx = (xs[3 * to] + xs[3 * to + 1] + xs[3 * to + 2]) - (xs[3 * from] + xs[3 * from + 1] + xs[3 * from + 2]);
+      double dy = (ys[3 * to] + ys[3 * to + 1] + ys[3 * to + 2]) - (ys[3 * from] + ys[3 * from + 1] + ys[3 * from + 2]);
+      double mx = (portalX0s[p] + portalX1s[p]) / 2, my = (portalY0s[p] + portalY1s[p]) / 2;
+      boolean firstIsLeft = dx * (portalY0s[p] - my) - dy * (portalX0s[p] - mx) > 0;
+      leftXs[k + 1] = firstIsLeft ? portalX0s[p] : portalX1s[p];
+      leftYs[k + 1] = firstIsLeft ? portalY0s[p] : portalY1s[p];
+      rightXs[k + 1] = firstIsLeft ? portalX1s[p] : portalX0s[p];
+      rightYs[k + 1] = firstIsLeft ? portalY1s[p] : portalY0s[p];
+    }
+    // end at the point of the bounds of the target nearest to the last portal (or to the start point),
+    // moved into the region if needed
+    double lx = n > 2 ? (leftXs[n - 2] + rightXs[n - 2]) / 2 : x;
+    double ly = n > 2 ? (leftYs[n - 2] + rightYs[n - 2]) / 2 : y;
+    double[] goal = nearestInRegion(target.region(), Math.max(target.minX(), Math.min(lx, target.maxX())),
+        Math.max(target.minY(), Math.min(ly, target.maxY())));
+    double gx = goal[0], gy = goal[1];
+    leftXs[n - 1] = rightXs[n - 1] = gx;
+    leftYs[n - 1] = rightYs[n - 1] = gy;
+
+    List<Point2D> path = new ArrayList<>();
+    path.add(new Point2D(x, y));
+    double apexX = x, apexY = y, leftX = x, leftY = y, rightX = x, rightY = y;
+    int apex = 0, left = 0, right = 0;
+    for (int i = 1; i < n; i++) {
+      double px = rightXs[i], py = rightYs[i];
+      // tighten right side of funnel
+      if (cross(apexX, apexY, rightX, rightY, px, py) >= 0) {
+        if ((apexX == rightX && apexY == rightY) || cross(apexX, apexY, leftX, leftY, px, py) < 0) {
+          rightX = px;
+          rightY = py;
+          right = i;
+        } else {
+          // right crosses over left: left becomes the new apex
+          addWaypoint(path, leftX, leftY);
+          apexX = rightX = leftX;
+          apexY = rightY = leftY;
+          apex = right = left;
+          i = apex;
+          continue;
+        }
+      }
+      px = leftXs[i];
+      py = leftYs[i];
+      // tighten left side of funnel
+      if (cross(apexX, apexY, leftX, leftY, px, py) <= 0) {
+        if ((apexX == leftX && apexY == leftY) || cross(apexX, apexY, rightX, rightY, px, py) > 0) {
+          leftX = px;
+          leftY = py;
+          left = i;
+        } else {
+          // left crosses over right: right becomes the new apex
+          addWaypoint(path, rightX, rightY);
+          apexX = leftX = rightX;
+          apexY = leftY = rightY;
+          apex = left = right;
+          i = apex;
+        }
+      }
+    }
+    addWaypoint(path, gx, gy);
+    return path;
+  }
+
+  /**
+   * Returns the point of a region nearest to a given point.
+   */
+  private double[] nearestInRegion(int region, double x, double y) {
+    int k = 3 * region;
+    double orientation = cross(xs[k], ys[k], xs[k + 1], ys[k + 1], xs[k + 2], ys[k + 2]);
+    boolean inside = true;
+    double nearestX = x, nearestY = y, nearestDistance = Double.POSITIVE_INFINITY;
+    for (int v = 0; v < 3; v++) {
+      double ax = xs[k + v], ay = ys[k + v], bx = xs[k + (v + 1) % 3], by = ys[k + (v + 1) % 3];
+      if (orientation * cross(ax, ay, bx, by, x, y) < 0) {
+        inside = false;
+      }
+      double dx = bx - ax, dy = by - ay, length = dx * dx + dy * dy;
+      double s = length == 0 ? 0 : Math.max(0, Math.min(1, ((x - ax) * dx + (y - ay) * dy) / length));
+      double px = ax + s * dx, py = ay + s * dy, distance = Math.hypot(x - px, y - py);
+      if (distance < nearestDistance) {
+        nearestDistance = distance;
+        nearestX = px;
+        nearestY = py;
+      }
+    }
+    return inside ? new double[]{x, y} : new double[]{nearestX, nearestY};
+  }
+
+  private static void addWaypoint(List<Point2D> path, double x, double y) {
+    Point2D last = path.get(path.size() - 1);
+    if (last.getX() != x || last.getY() != y) {
+      path.add(new Point2D(x, y));
+    }
+  }
+
+  /**
+   * Cross product of {@code b - a} and {@code c - a}: positive if {@code c} lies to the left of the
+   * line from {@code a} to {@code b}.
+   */
+  private static double cross(double ax, double ay, double bx, double by, double cx, double cy) {
+    return (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+  }
+
+  /**
+   * Estimates the heap memory used by the mesh, including its cache of corridors (see {@link MemoryFootprint}).
+   *
+   * @return the estimated number of bytes.
+   */
+  public long memoryFootprint() {
+    int regions = size(), portals = portalRegions.length;
+    long targetBytes = MemoryFootprint.hashMap(targets.size(), false)
+        + (long) targets.size() * MemoryFootprint.BOXED_INT;
+    for (Target[] regionTargets : targets.values()) {
+      targetBytes += MemoryFootprint.array(regionTargets.length, MemoryFootprint.REFERENCE)
+          + regionTargets.length * MemoryFootprint.object(Integer.BYTES + 4 * Double.BYTES);
+    }
+    long cacheBytes;
+    synchronized (cache) {
+      cacheBytes = MemoryFootprint.hashMap(cache.size(), true) + (long) cache.size() * MemoryFootprint.BOXED_LONG;
+      for (Corridor corridor : cache.values()) {
+        cacheBytes += MemoryFootprint.object(2 * MemoryFootprint.REFERENCE)
+            + MemoryFootprint.array(corridor.portals().length, Integer.BYTES);
+      }
+    }
+    return MemoryFootprint.object(Long.BYTES + Double.BYTES + 11 * MemoryFootprint.REFERENCE + Integer.BYTES)
+        + 2 * MemoryFootprint.array(3 * regions, Double.BYTES) + index.memoryFootprint()
+        + (long) regions * MemoryFootprint.BOXED_INT + MemoryFootprint.array(portalOffsets.length, Integer.BYTES)
+        + MemoryFootprint.array(portals, Integer.BYTES) + 4 * MemoryFootprint.array(portals, Double.BYTES) + targetBytes
+        + cacheBytes;
+  }
+}
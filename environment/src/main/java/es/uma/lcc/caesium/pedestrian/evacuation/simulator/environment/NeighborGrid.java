@@ -0,0 +1,398 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Uniform grid over the pedestrians of a domain, for finding neighbors without comparing all pairs.
+ * Positions are given as arrays of coordinates (pedestrian {@code i} is at {@code (xs[i], ys[i])}),
+ * and are sorted by cell with a counting sort every time the grid is rebuilt (e.g. once per simulation
+ * step), so that pedestrians in the same cell are contiguous in memory. Arrays are reused between
+ * rebuilds, so rebuilding does not allocate memory unless the number of pedestrians grows.
+ * <p>
+ * Positions outside the domain are assigned to the nearest cell on its border. Grids are not thread
+ * safe while being rebuilt, but can be queried concurrently afterwards.
+ *
+ * @author ppgllrd
+ */
+public final class NeighborGrid {
+  /**
+   * minimum number of pedestrians per chunk in parallel rebuilds
+   */
+  private static final int MIN_CHUNK_SIZE = 4096;
+
+  /**
+   * side of the square cells
+   */
+  private final double cellSize;
+  /**
+   * number of columns of cells
+   */
+  private final int columns;
+  /**
+   * number of rows of cells
+   */
+  private final int rows;
+  /**
+   * start of the pedestrians of each cell in sorted arrays (one more entry than cells)
+   */
+  private final int[] cellStarts;
+  /**
+   * number of pedestrians in the grid
+   */
+  private int size;
+  /**
+   * cell of each pedestrian, by index of pedestrian
+   */
+  private int[] cells;
+  /**
+   * indexes of pedestrians, sorted by cell
+   */
+  private int[] sortedIndexes;
+  /**
+   * coordinates of pedestrians, sorted by cell
+   */
+  private double[] sortedXs, sortedYs;
+  /**
+   * number of pedestrians of each chunk in each cell, for parallel rebuilds (lazily allocated, with no
+   * more entries than pedestrians)
+   */
+  private int[] chunkCounts;
+
+  /**
+   * Creates an empty grid covering a domain.
+   *
+   * @param domain   the domain.
+   * @param cellSize side of the square cells (usually the interaction radius of pedestrians).
+   * @param capacity expected number of pedestrians.
+   */
+  public NeighborGrid(Domain domain, double cellSize, int capacity) {
+    this(domain.getWidth(), domain.getHeight(), cellSize, capacity);
+  }
+
+  /**
+   * Creates an empty grid covering a rectangle with its bottom left corner at the origin.
+   *
+   * @param width    width of the rectangle.
+   * @param height   height of the rectangle.
+   * @param cellSize side of the square cells (usually the interaction radius of pedestrians).
+   * @param capacity expected number of pedestrians.
+   */
+  public NeighborGrid(double width, double height, double cellSize, int capacity) {
+    if (!(cellSize > 0)) {
+      throw new IllegalArgumentException(String.format("NeighborGrid: invalid cell size %f", cellSize));
+    }
+    if (capacity < 0) {
+      throw new IllegalArgumentException(String.format("NeighborGrid: invalid capacity %d", capacity));
+    }
+    this.cellSize = cellSize;
+    columns = Math.max(1, (int) Math.ceil(width / cellSize));
+    rows = Math.max(1, (int) Math.ceil(height / cellSize));
+    cellStarts = new int[columns * rows + 1];
+    cells = new int[capacity];
+    sortedIndexes = new int[capacity];
+    sortedXs = new double[capacity];
+    sortedYs = new double[capacity];
+  }
+
+  private int column(double x) {
+    int c = (int) (x / cellSize);
+    return c < 0 ? 0 : Math.min(c, columns - 1);
+  }
+
+  private int row(double y) {
+    int r = (int) (y / cellSize);
+    return r < 0 ? 0 : Math.min(r, rows - 1);
+  }
+
+  /**
+   * Grows arrays if there are more pedestrians than they can hold.
+   */
+  private void ensureCapacity(double[] xs, double[] ys, int n) {
+    if (n < 0 || n > xs.length || n > ys.length) {
+      throw new IllegalArgumentException(String.format("NeighborGrid.rebuild: invalid number of pedestrians %d",
+          n));
+    }
+    if (n > cells.length) {
+      int capacity = Math.max(n, 2 * cells.length);
+      cells = new int[capacity];
+      sortedIndexes = new int[capacity];
+      sortedXs = new double[capacity];
+      sortedYs = new double[capacity];
+    }
+  }
+
+  /**
+   * Rebuilds the grid for new positions of pedestrians.
+   *
+   * @param xs x-coordinates of pedestrians.
+   * @param ys y-coordinates of pedestrians.
+   * @param n  number of pedestrians (the first {@code n} elements of arrays are used).
+   */
+  public void rebuild(double[] xs, double[] ys, int n) {
+    ensureCapacity(xs, ys, n);
+    size = n;
+    Arrays.fill(cellStarts, 0);
+    for (int i = 0; i < n; i++) {
+      int cell = row(ys[i]) * columns + column(xs[i]);
+      cells[i] = cell;
+      cellStarts[cell + 1]++;
+    }
+    for (int cell = 0; cell < columns * rows; cell++) {
+      cellStarts[cell + 1] += cellStarts[cell];
+    }
+    // scatter, using starts of cells as cursors and restoring them afterwards
+    for (int i = 0; i < n; i++) {
+      int position = cellStarts[cells[i]]++;
+      sortedIndexes[position] = i;
+      sortedXs[position] = xs[i];
+      sortedYs[position] = ys[i];
+    }
+    System.arraycopy(cellStarts, 0, cellStarts, 1, columns * rows);
+    cellStarts[0] = 0;
+  }
+
+  /**
+   * Rebuilds the grid for new positions of pedestrians, using the common fork-join pool. Pedestrians
+   * are split into chunks which are counted and scattered in parallel, so this pays off for crowded
+   * domains with many thousands of pedestrians. Each chunk counts pedestrians in every cell, so there
+   * are no more chunks than pedestrians per cell, and grids with more cells than pedestrians are rebuilt
+   * sequentially. The result is the same as that of {@link #rebuild(double[], double[], int)}.
+   *
+   * @param xs x-coordinates of pedestrians.
+   * @param ys y-coordinates of pedestrians.
+   * @param n  number of pedestrians (the first {@code n} elements of arrays are used).
+   */
+  public void rebuildInParallel(double[] xs, double[] ys, int n) {
+    ensureCapacity(xs, ys, n);
+    int numberOfCells = columns * rows;
+    int chunks = Math.min(ForkJoinPool.getCommonPoolParallelism(), Math.min(n / MIN_CHUNK_SIZE, n / numberOfCells));
+    if (chunks <= 1) {
+      rebuild(xs, ys, n);
+      return;
+    }
+    size = n;
+    if (chunkCounts == null || chunkCounts.length < chunks * numberOfCells) {
+      chunkCounts = new int[chunks * numberOfCells];
+    }
+    int[] counts = chunkCounts;
+    int chunkSize = (n + chunks - 1) / chunks;
+    IntStream.range(0, chunks).parallel().forEach(chunk -> {
+      int offset = chunk * numberOfCells;
+      Arrays.fill(counts, offset, offset + numberOfCells, 0);
+      for (int i = chunk * chunkSize, end = Math.min(n, i + chunkSize); i < end; i++) {
+        int cell = row(ys[i]) * columns + column(xs[i]);
+        cells[i] = cell;
+        counts[offset + cell]++;
+      }
+    });
+    // add up counts of chunks for ranges of cells in parallel, and accumulate them into starts of cells
+    int cellRange = (numberOfCells + chunks - 1) / chunks;
+    IntStream.range(0, chunks).parallel().forEach(range -> {
+      for (int cell = range * cellRange, end = Math.min(numberOfCells, cell + cellRange); cell < end; cell++) {
+        int total = 0;
+        for (int chunk = 0; chunk < chunks; chunk++) {
+          total += counts[chunk * numberOfCells + cell];
+        }
+        cellStarts[cell + 1] = total;
+      }
+    });
+    cellStarts[0] = 0;
+    for (int cell = 0; cell < numberOfCells; cell++) {
+      cellStarts[cell + 1] += cellStarts[cell];
+    }
+    // turn counts into positions where each chunk scatters its pedestrians of each cell, so that
+    // pedestrians within a cell keep the order of the sequential rebuild
+    IntStream.range(0, chunks).parallel().forEach(range -> {
+      for (int cell = range * cellRange, end = Math.min(numberOfCells, cell + cellRange); cell < end; cell++) {
+        int position = cellStarts[cell];
+        for (int chunk = 0; chunk < chunks; chunk++) {
+          int count = counts[chunk * numberOfCells + cell];
+          counts[chunk * numberOfCells + cell] = position;
+          position += count;
+        }
+      }
+    });
+    IntStream.range(0, chunks).parallel().forEach(chunk -> {
+      int offset = chunk * numberOfCells;
+      for (int i = chunk * chunkSize, end = Math.min(n, i + chunkSize); i < end; i++) {
+        int target = counts[offset + cells[i]]++;
+        sortedIndexes[target] = i;
+        sortedXs[target] = xs[i];
+        sortedYs[target] = ys[i];
+      }
+    });
+  }
+
+  /**
+   * Returns the number of pedestrians in the grid.
+   *
+   * @return the number of pedestrians.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the side of the square cells.
+   *
+   * @return the side of cells.
+   */
+  public double getCellSize() {
+    return cellSize;
+  }
+
+  /**
+   * Finds the pedestrians within a given distance of a point.
+   *
+   * @param x       x-coordinate of point.
+   * @param y       y-coordinate of point.
+   * @param radius  maximum distance.
+   * @param exclude index of a pedestrian to leave out (e.g. the one at the point), or -1.
+   * @param result  array where the indexes of pedestrians found are stored (only as many as fit).
+   * @return the number of pedestrians found, which may be larger than the length of {@code result}.
+   */
+  public int near(double x, double y, double radius, int exclude, int[] result) {
+    double radius2 = radius * radius;
+    int c0 = column(x - radius), c1 = column(x + radius);
+    int r0 = row(y - radius), r1 = row(y + radius);
+    int found = 0;
+    for (int r = r0; r <= r1; r++) {
+      // cells of a row are contiguous in sorted arrays
+      int from = cellStarts[r * columns + c0], to = cellStarts[r * columns + c1 + 1];
+      for (int p = from; p < to; p++) {
+        double dx = sortedXs[p] - x, dy = sortedYs[p] - y;
+        if (dx * dx + dy * dy <= radius2 && sortedIndexes[p] != exclude) {
+          if (found < result.length) {
+            result[found] = sortedIndexes[p];
+          }
+          found++;
+        }
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Finds the {@code k} pedestrians nearest to a point. Cells are visited in square rings of growing
+   * size around the point, until no unvisited cell can hold a nearer pedestrian.
+   *
+   * @param x         x-coordinate of point.
+   * @param y         y-coordinate of point.
+   * @param k         number of pedestrians sought.
+   * @param exclude   index of a pedestrian to leave out (e.g. the one at the point), or -1.
+   * @param result    array where the indexes of pedestrians found are stored, by increasing distance.
+   *                  Must hold at least {@code k} elements.
+   * @param distances array where the distances to pedestrians found are stored. Must hold at least
+   *                  {@code k} elements.
+   * @return the number of pedestrians found ({@code k} unless there are fewer pedestrians).
+   */
+  public int nearest(double x, double y, int k, int exclude, int[] result, double[] distances) {
+    if (k < 0 || result.length < k || distances.length < k) {
+      throw new IllegalArgumentException(String.format("NeighborGrid.nearest: invalid number of neighbors %d", k));
+    }
+    // max-heap of squared distances in result arrays
+    int found = 0;
+    int pc = column(x), pr = row(y);
+    int maxRing = Math.max(columns, rows);
+    for (int ring = 0; ring <= maxRing && k > 0; ring++) {
+      if (ring > 0 && found == k) {
+        // lower bound on distance from point to cells in this ring
+        double bound = Math.min(Math.min(x - (pc - ring + 1) * cellSize, (pc + ring) * cellSize - x),
+            Math.min(y - (pr - ring + 1) * cellSize, (pr + ring) * cellSize - y));
+        bound = Math.max(bound, (ring - 1) * cellSize);
+        if (bound * bound > distances[0]) {
+          break;
+        }
+      }
+      int r0 = Math.max(pr - ring, 0), r1 = Math.min(pr + ring, rows - 1);
+      for (int r = r0; r <= r1; r++) {
+        boolean borderRow = r == pr - ring || r == pr + ring;
+        int step = borderRow ? 1 : 2 * ring;
+        for (int c = pc - ring; c <= pc + ring; c += step) {
+          if (c < 0 || c >= columns) {
+            continue;
+          }
+          int cell = r * columns + c;
+          for (int p = cellStarts[cell]; p < cellStarts[cell + 1]; p++) {
+            if (sortedIndexes[p] == exclude) {
+              continue;
+            }
+            double dx = sortedXs[p] - x, dy = sortedYs[p] - y;
+            double distance2 = dx * dx + dy * dy;
+            if (found < k) {
+              result[found] = sortedIndexes[p];
+              distances[found] = distance2;
+              siftUp(result, distances, found++);
+            } else if (distance2 < distances[0]) {
+              result[0] = sortedIndexes[p];
+              distances[0] = distance2;
+              siftDown(result, distances, 0, k);
+            }
+          }
+        }
+      }
+    }
+    // heap sort, so that nearest come first
+    for (int end = found - 1; end > 0; end--) {
+      swap(result, distances, 0, end);
+      siftDown(result, distances, 0, end);
+    }
+    for (int i = 0; i < found; i++) {
+      distances[i] = Math.sqrt(distances[i]);
+    }
+    return found;
+  }
+
+  private static void siftUp(int[] indexes, double[] keys, int i) {
+    while (i > 0) {
+      int parent = (i - 1) / 2;
+      if (keys[parent] >= keys[i]) {
+        return;
+      }
+      swap(indexes, keys, i, parent);
+      i = parent;
+    }
+  }
+
+  private static void siftDown(int[] indexes, double[] keys, int i, int n) {
+    while (true) {
+      int largest = i, left = 2 * i + 1, right = left + 1;
+      if (left < n && keys[left] > keys[largest]) {
+        largest = left;
+      }
+      if (right < n && keys[right] > keys[largest]) {
+        largest = right;
+      }
+      if (largest == i) {
+        return;
+      }
+      swap(indexes, keys, i, largest);
+      i = largest;
+    }
+  }
+
+  private static void swap(int[] indexes, double[] keys, int i, int j) {
+    int index = indexes[i];
+    indexes[i] = indexes[j];
+    indexes[j] = index;
+    double key = keys[i];
+    keys[i] = keys[j];
+    keys[j] = key;
+  }
+
+  /**
+   * Estimates the heap memory used by the grid, including the capacity reserved for positions
+   * (see {@link MemoryFootprint}).
+   *
+   * @return the estimated number of bytes.
+   */
+  public long memoryFootprint() {
+    return MemoryFootprint.object(Double.BYTES + 3 * Integer.BYTES + 6 * MemoryFootprint.REFERENCE)
+        + MemoryFootprint.array(cellStarts.length, Integer.BYTES) + MemoryFootprint.array(cells.length, Integer.BYTES)
+        + MemoryFootprint.array(sortedIndexes.length, Integer.BYTES)
+        + 2 * MemoryFootprint.array(sortedXs.length, Double.BYTES)
+        + (chunkCounts == null ? 0 : MemoryFootprint.array(chunkCounts.length, Integer.BYTES));
+  }
+}
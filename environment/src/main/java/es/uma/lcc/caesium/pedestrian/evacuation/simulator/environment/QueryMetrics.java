@@ -0,0 +1,76 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+import java.util.List;
+
+/**
+ * Instrumentation of the spatial queries on domains (see {@link QueryType}). Domains time each query as
+ * {@code long start = metrics.start(); ... metrics.record(id, type, start);}, so that {@link #NOOP}, used by
+ * default, does not even read the clock. Metrics are set with {@link Domain#setQueryMetrics} or
+ * {@link Environment#setQueryMetrics}, e.g. to a {@link RecordingQueryMetrics}.
+ *
+ * @author ppgllrd
+ */
+public interface QueryMetrics {
+  /**
+   * Metrics which record nothing.
+   */
+  QueryMetrics NOOP = new QueryMetrics() {
+    @Override
+    public long start() {
+      return 0;
+    }
+
+    @Override
+    public void record(int domainId, QueryType type, long start) {
+    }
+
+    @Override
+    public List<QueryStats> snapshot() {
+      return List.of();
+    }
+
+    @Override
+    public List<QueryStats> totals() {
+      return List.of();
+    }
+
+    @Override
+    public void reset() {
+    }
+  };
+
+  /**
+   * Called when a query starts.
+   *
+   * @return the start time of the query, to be passed to {@link #record}.
+   */
+  long start();
+
+  /**
+   * Called when a query ends.
+   *
+   * @param domainId the id of the domain queried.
+   * @param type     the type of the query.
+   * @param start    the start time of the query, as returned by {@link #start()}.
+   */
+  void record(int domainId, QueryType type, long start);
+
+  /**
+   * Returns the statistics of the queries recorded so far, by domain and type.
+   *
+   * @return statistics of each domain and type of query recorded, sorted by domain id and type.
+   */
+  List<QueryStats> snapshot();
+
+  /**
+   * Returns the statistics of the queries recorded so far, by type, over all domains.
+   *
+   * @return statistics of each type of query recorded, sorted by type (with domain id -1).
+   */
+  List<QueryStats> totals();
+
+  /**
+   * Discards all queries recorded so far.
+   */
+  void reset();
+}
@@ -0,0 +1,27 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+/**
+ * Statistics of the queries of some type recorded by {@link QueryMetrics}. Latency percentiles come from
+ * log-linear histograms, so they are upper bounds within 1/8 of their value.
+ *
+ * @param domainId   the id of the domain queried (-1 for totals over all domains).
+ * @param type       the type of the queries.
+ * @param count      number of queries.
+ * @param totalNanos total latency of the queries, in nanoseconds.
+ * @param p50Nanos   median latency, in nanoseconds.
+ * @param p90Nanos   90th percentile of latency, in nanoseconds.
+ * @param p99Nanos   99th percentile of latency, in nanoseconds.
+ * @param maxNanos   maximum latency, in nanoseconds.
+ * @author ppgllrd
+ */
+public record QueryStats(int domainId, QueryType type, long count, long totalNanos, long p50Nanos, long p90Nanos,
+                         long p99Nanos, long maxNanos) {
+  /**
+   * Returns the mean latency of the queries.
+   *
+   * @return the mean latency, in nanoseconds (0 if there are no queries).
+   */
+  public double meanNanos() {
+    return count == 0 ? 0 : (double) totalNanos / count;
+  }
+}
@@ -0,0 +1,50 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+/**
+ * Types of spatial queries on domains recorded by {@link QueryMetrics}.
+ *
+ * @author ppgllrd
+ */
+public enum QueryType {
+  /**
+   * containment of a position in obstacles ({@link Domain#isBlocked})
+   */
+  BLOCKED,
+  /**
+   * containment of a batch of positions in obstacles ({@link Domain#blockedMask})
+   */
+  BLOCKED_MASK,
+  /**
+   * intersection of a rectangle with obstacles ({@link Domain#obstaclesIntersecting})
+   */
+  OBSTACLES_INTERSECTING,
+  /**
+   * nearest obstacle, or nearest point or signed distance to it ({@link Domain#distanceToObstacles},
+   * {@link Domain#nearestObstacle}, {@link Domain#nearestObstaclePoint})
+   */
+  NEAREST_OBSTACLE,
+  /**
+   * visibility between two positions ({@link Domain#isVisible})
+   */
+  VISIBILITY,
+  /**
+   * fan of rays cast from a position ({@link Domain#castRays})
+   */
+  RAYS,
+  /**
+   * disc swept along a segment ({@link Domain#sweepCircle})
+   */
+  SWEEP_CIRCLE,
+  /**
+   * accesses near a position ({@link Domain#accessesNear})
+   */
+  ACCESSES_NEAR,
+  /**
+   * access containing a position ({@link Domain#accessAt})
+   */
+  ACCESS_AT,
+  /**
+   * first access crossed by a segment ({@link Domain#firstAccessCrossed})
+   */
+  ACCESS_CROSSED
+}
@@ -0,0 +1,354 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Labeled occupancy grid of a domain. Each square cell is labeled as free, as occupied by an
+ * obstacle or with the id of the access it belongs to. A cell gets a label if the corresponding
+ * shape intersects it; accesses take precedence over obstacles. Labels of free and occupied cells
+ * are the two smallest ints, so any other access id can be used as a label.
+ *
+ * @author ppgllrd
+ */
+public final class Raster {
+  /**
+   * Label of cells not intersected by any obstacle or access.
+   */
+  public static final int FREE = Integer.MIN_VALUE;
+  /**
+   * Label of cells intersected by some obstacle.
+   */
+  public static final int OBSTACLE = Integer.MIN_VALUE + 1;
+
+  /**
+   * side of (square) cells
+   */
+  private final double cellSize;
+  /**
+   * number of columns in the grid
+   */
+  private final int columns;
+  /**
+   * number of rows in the grid
+   */
+  private final int rows;
+  /**
+   * labels of cells (row-major order, row 0 at the bottom)
+   */
+  private final int[] labels;
+
+  /**
+   * Creates a raster with all cells free.
+   *
+   * @param columns  number of columns.
+   * @param rows     number of rows.
+   * @param cellSize side of cells.
+   */
+  private Raster(int columns, int rows, double cellSize) {
+    this(columns, rows, cellSize, new int[columns * rows]);
+    Arrays.fill(labels, FREE);
+  }
+
+  /**
+   * Creates a raster from its labels.
+   *
+   * @param columns  number of columns.
+   * @param rows     number of rows.
+   * @param cellSize side of cells.
+   * @param labels   labels of cells, in row-major order.
+   */
+  Raster(int columns, int rows, double cellSize, int[] labels) {
+    this.columns = columns;
+    this.rows = rows;
+    this.cellSize = cellSize;
+    this.labels = labels;
+  }
+
+  /**
+   * Rasterizes the obstacles and open accesses of a domain.
+   *
+   * @param domain   the domain to rasterize.
+   * @param cellSize side of cells.
+   * @return the raster of the domain.
+   */
+  static Raster of(Domain domain, double cellSize) {
+    if (!(cellSize > 0)) {
+      throw new IllegalArgumentException(String.format("Raster.of: invalid cell size %f", cellSize));
+    }
+    int columns = Math.max(1, (int) Math.ceil(domain.getWidth() / cellSize));
+    int rows = Math.max(1, (int) Math.ceil(domain.getHeight() / cellSize));
+    Raster raster = new Raster(columns, rows, cellSize);
+    for (Obstacle obstacle : domain.getObstacles()) {
+      raster.paint(obstacle.shape(), OBSTACLE);
+    }
+    for (Access access : domain.getAccesses()) {
+      if (domain.isAccessOpen(access.id())) {
+        raster.paint(access.shape(), label(access));
+      }
+    }
+    return raster;
+  }
+
+  /**
+   * Rasterizes again the cells of a domain overlapping a region, after obstacles or accesses within
+   * the region have changed. Only shapes overlapping the region are painted.
+   *
+   * @param domain the domain.
+   * @param region the region.
+   * @return the updated raster (this raster is not modified).
+   */
+  Raster repainted(Domain domain, BoundingBox region) {
+    int c0 = Math.max(0, (int) Math.floor(region.minX() / cellSize));
+    int c1 = Math.min(columns - 1, (int) Math.floor(region.maxX() / cellSize));
+    int r0 = Math.max(0, (int) Math.floor(region.minY() / cellSize));
+    int r1 = Math.min(rows - 1, (int) Math.floor(region.maxY() / cellSize));
+    int[] updated = labels.clone();
+    if (c0 > c1 || r0 > r1) {
+      return new Raster(columns, rows, cellSize, updated);
+    }
+    double left = c0 * cellSize, bottom = r0 * cellSize;
+    double width = (c1 + 1 - c0) * cellSize, height = (r1 + 1 - r0) * cellSize;
+    // shapes are painted on a scratch raster, of which only cells in the region are kept. Obstacles
+    // are looked up with a margin, so that those just touching the region are painted too
+    Raster scratch = new Raster(columns, rows, cellSize);
+    for (Obstacle obstacle : domain.obstacleIndex().intersecting(left - cellSize, bottom - cellSize,
+        width + 2 * cellSize, height + 2 * cellSize)) {
+      scratch.paint(obstacle.shape(), OBSTACLE);
+    }
+    for (Access access : domain.getAccesses()) {
+      // in the same order as when rasterizing the whole domain
+      if (domain.isAccessOpen(access.id()) && access.shape().getBoundingBox().overlaps(left - cellSize,
+          bottom - cellSize, width + 2 * cellSize, height + 2 * cellSize)) {
+        scratch.paint(access.shape(), label(access));
+      }
+    }
+    for (int r = r0; r <= r1; r++) {
+      System.arraycopy(scratch.labels, r * columns + c0, updated, r * columns + c0, c1 - c0 + 1);
+    }
+    return new Raster(columns, rows, cellSize, updated);
+  }
+
+  /**
+   * Returns the label used for an access.
+   *
+   * @throws IllegalArgumentException if the id of the access is {@link #FREE} or {@link #OBSTACLE}.
+   */
+  private static int label(Access access) {
+    if (access.id() == FREE || access.id() == OBSTACLE) {
+      throw new IllegalArgumentException(String.format("Raster.label: access id %d cannot be used as label",
+          access.id()));
+    }
+    return access.id();
+  }
+
+  /**
+   * Returns the number of columns in the grid.
+   *
+   * @return the number of columns in the grid.
+   */
+  public int getColumns() {
+    return columns;
+  }
+
+  /**
+   * Returns the number of rows in the grid.
+   *
+   * @return the number of rows in the grid.
+   */
+  public int getRows() {
+    return rows;
+  }
+
+  /**
+   * Returns the side of cells.
+   *
+   * @return the side of cells.
+   */
+  public double getCellSize() {
+    return cellSize;
+  }
+
+  /**
+   * Returns the label of a cell.
+   *
+   * @param column column of the cell.
+   * @param row    row of the cell (row 0 is the bottom one).
+   * @return {@link #FREE}, {@link #OBSTACLE} or the id of the access the cell belongs to.
+   */
+  public int label(int column, int row) {
+    return labels[row * columns + column];
+  }
+
+  /**
+   * Returns the label of the cell containing a point.
+   *
+   * @param x x-coordinate of point.
+   * @param y y-coordinate of point.
+   * @return the label of the cell containing the point, or {@link #OBSTACLE} if point is outside the grid.
+   */
+  public int labelAt(double x, double y) {
+    int column = (int) Math.floor(x / cellSize);
+    int row = (int) Math.floor(y / cellSize);
+    if (column < 0 || column >= columns || row < 0 || row >= rows) {
+      return OBSTACLE;
+    }
+    return labels[row * columns + column];
+  }
+
+  /**
+   * Returns a copy of the labels of all cells, in row-major order starting at the bottom row.
+   *
+   * @return a copy of the labels of all cells.
+   */
+  public int[] toArray() {
+    return labels.clone();
+  }
+
+  /**
+   * Labels all cells intersected by a shape.
+   */
+  private void paint(Shape shape, int label) {
+    switch (shape.getType()) {
+      case CIRCLE -> paintCircle((Shape.Circle) shape, label);
+      case RECTANGLE -> paintRectangle((Shape.Rectangle) shape, label);
+      case POLYGON -> paintPolygon((Shape.Polygon) shape, label);
+    }
+  }
+
+  /**
+   * Labels cells in a row whose interiors meet the open interval {@code (xFrom, xTo)}.
+   */
+  private void paintSpan(int row, double xFrom, double xTo, int label) {
+    int c0 = Math.max(0, (int) Math.floor(xFrom / cellSize));
+    int c1 = Math.min(columns - 1, (int) Math.ceil(xTo / cellSize) - 1);
+    if (c0 <= c1) {
+      Arrays.fill(labels, row * columns + c0, row * columns + c1 + 1, label);
+    }
+  }
+
+  private int firstRow(double yFrom) {
+    return Math.max(0, (int) Math.floor(yFrom / cellSize));
+  }
+
+  private int lastRow(double yTo) {
+    return Math.min(rows - 1, (int) Math.ceil(yTo / cellSize) - 1);
+  }
+
+  private void paintRectangle(Shape.Rectangle rectangle, int label) {
+    if (rectangle.getWidth() <= 0 || rectangle.getHeight() <= 0) {
+      return;
+    }
+    double right = rectangle.getLeft() + rectangle.getWidth();
+    int r1 = lastRow(rectangle.getBottom() + rectangle.getHeight());
+    for (int r = firstRow(rectangle.getBottom()); r <= r1; r++) {
+      paintSpan(r, rectangle.getLeft(), right, label);
+    }
+  }
+
+  private void paintCircle(Shape.Circle circle, int label) {
+    double cx = circle.getX(), cy = circle.getY(), radius = circle.getRadius();
+    int r1 = lastRow(cy + radius);
+    for (int r = firstRow(cy - radius); r <= r1; r++) {
+      // widest chord of the circle within the band of this row
+      double y = Math.max(r * cellSize, Math.min(cy, (r + 1) * cellSize));
+      double dy = y - cy;
+      double halfChord = Math.sqrt(Math.max(0, radius * radius - dy * dy));
+      if (halfChord > 0) {
+        paintSpan(r, cx - halfChord, cx + halfChord, label);
+      }
+    }
+  }
+
+  private void paintPolygon(Shape.Polygon polygon, int label) {
+    List<Point2D> points = polygon.getPoints();
+    int n = points.size();
+    BoundingBox box = polygon.getBoundingBox();
+    // cells crossed by the boundary
+    for (int i = 0, j = n - 1; i < n; j = i++) {
+      paintSegment(points.get(j), points.get(i), label);
+    }
+    // cells whose centers are inside, filled by scanlines (non-zero winding rule, as java.awt.geom.Path2D)
+    double[] crossings = new double[n];
+    int[] directions = new int[n];
+    int r1 = lastRow(box.maxY());
+    for (int r = firstRow(box.minY()); r <= r1; r++) {
+      double y = (r + 0.5) * cellSize;
+      int count = 0;
+      for (int i = 0, j = n - 1; i < n; j = i++) {
+        double y0 = points.get(j).getY(), y1 = points.get(i).getY();
+        if ((y0 <= y) != (y1 <= y)) {
+          double x0 = points.get(j).getX(), x1 = points.get(i).getX();
+          double x = x0 + (y - y0) * (x1 - x0) / (y1 - y0);
+          int direction = y1 > y0 ? 1 : -1;
+          // insertion sort, as there are usually few crossings
+          int k = count++;
+          while (k > 0 && crossings[k - 1] > x) {
+            crossings[k] = crossings[k - 1];
+            directions[k] = directions[k - 1];
+            k--;
+          }
+          crossings[k] = x;
+          directions[k] = direction;
+        }
+      }
+      int winding = 0;
+      for (int k = 0; k < count - 1; k++) {
+        winding += directions[k];
+        if (winding != 0) {
+          paintCenters(r, crossings[k], crossings[k + 1], label);
+        }
+      }
+    }
+  }
+
+  /**
+   * Labels cells in a row whose centers lie within {@code [xFrom, xTo)}.
+   */
+  private void paintCenters(int row, double xFrom, double xTo, int label) {
+    int c0 = Math.max(0, (int) Math.ceil(xFrom / cellSize - 0.5));
+    int c1 = Math.min(columns - 1, (int) Math.ceil(xTo / cellSize - 0.5) - 1);
+    if (c0 <= c1) {
+      Arrays.fill(labels, row * columns + c0, row * columns + c1 + 1, label);
+    }
+  }
+
+  /**
+   * Labels all cells whose interiors are crossed by a segment. Cells are half-open, as in {@link #paintSpan},
+   * so a segment lying on the line between two cells labels neither of them.
+   */
+  private void paintSegment(Point2D from, Point2D to, int label) {
+    double x0 = from.getX(), y0 = from.getY(), x1 = to.getX(), y1 = to.getY();
+    if (y0 > y1) {
+      double t = x0; x0 = x1; x1 = t;
+      t = y0; y0 = y1; y1 = t;
+    }
+    int rFirst = firstRow(y0);
+    int rLast = lastRow(y1);
+    for (int r = rFirst; r <= rLast; r++) {
+      // portion of segment within the band of this row
+      double yFrom = Math.max(y0, r * cellSize), yTo = Math.min(y1, (r + 1) * cellSize);
+      double xFrom = x0, xTo = x1;
+      if (y1 > y0) {
+        xFrom = x0 + (yFrom - y0) * (x1 - x0) / (y1 - y0);
+        xTo = x0 + (yTo - y0) * (x1 - x0) / (y1 - y0);
+      }
+      double xMin = Math.min(xFrom, xTo), xMax = Math.max(xFrom, xTo);
+      int c0 = Math.max(0, (int) Math.floor(xMin / cellSize));
+      int c1 = Math.min(columns - 1, (int) Math.ceil(xMax / cellSize) - 1);
+      if (c0 <= c1) {
+        Arrays.fill(labels, r * columns + c0, r * columns + c1 + 1, label);
+      }
+    }
+  }
+
+  /**
+   * Estimates the heap memory used by the raster (see {@link MemoryFootprint}).
+   *
+   * @return the estimated number of bytes.
+   */
+  public long memoryFootprint() {
+    return MemoryFootprint.object(Double.BYTES + 2 * Integer.BYTES + MemoryFootprint.REFERENCE)
+        + MemoryFootprint.array(labels.length, Integer.BYTES);
+  }
+}
@@ -0,0 +1,166 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Query metrics recording, for each domain and type of query, the number of queries in a {@code LongAdder}
+ * and their latencies in a log-linear histogram whose bucket counts are striped by thread (see
+ * {@link LatencyHistogram}), so that threads querying concurrently hardly contend.
+ * Histograms are only allocated for the types of queries actually made on each domain.
+ *
+ * @author ppgllrd
+ */
+public final class RecordingQueryMetrics implements QueryMetrics {
+  /**
+   * domains with ids in {@code [0, DIRECT_IDS)} are found by index rather than hashing
+   */
+  private static final int DIRECT_IDS = 4096;
+  /**
+   * types of queries
+   */
+  private static final QueryType[] TYPES = QueryType.values();
+
+  /**
+   * counters of domains by id, for small ids
+   */
+  private final AtomicReferenceArray<Counters> direct = new AtomicReferenceArray<>(DIRECT_IDS);
+  /**
+   * counters of domains by id, for other ids
+   */
+  private final Map<Integer, Counters> hashed = new ConcurrentHashMap<>();
+
+  /**
+   * Counters of the queries on a domain, by type.
+   */
+  private static final class Counters {
+    private final int domainId;
+    private final LongAdder[] counts = new LongAdder[TYPES.length];
+    private final AtomicReferenceArray<LatencyHistogram> histograms = new AtomicReferenceArray<>(TYPES.length);
+
+    Counters(int domainId) {
+      this.domainId = domainId;
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] = new LongAdder();
+      }
+    }
+
+    LatencyHistogram histogram(int type) {
+      LatencyHistogram histogram = histograms.get(type);
+      if (histogram == null) {
+        histograms.compareAndSet(type, null, new LatencyHistogram());
+        histogram = histograms.get(type);
+      }
+      return histogram;
+    }
+  }
+
+  @Override
+  public long start() {
+    return System.nanoTime();
+  }
+
+  @Override
+  public void record(int domainId, QueryType type, long start) {
+    long latency = System.nanoTime() - start;
+    Counters counters = counters(domainId);
+    counters.counts[type.ordinal()].increment();
+    counters.histogram(type.ordinal()).record(latency);
+  }
+
+  private Counters counters(int domainId) {
+    if (domainId >= 0 && domainId < DIRECT_IDS) {
+      Counters counters = direct.get(domainId);
+      if (counters == null) {
+        direct.compareAndSet(domainId, null, new Counters(domainId));
+        counters = direct.get(domainId);
+      }
+      return counters;
+    }
+    return hashed.computeIfAbsent(domainId, Counters::new);
+  }
+
+  /**
+   * All counters allocated so far, sorted by domain id.
+   */
+  private List<Counters> allCounters() {
+    List<Counters> all = new ArrayList<>(hashed.values());
+    for (int id = 0; id < DIRECT_IDS; id++) {
+      Counters counters = direct.get(id);
+      if (counters != null) {
+        all.add(counters);
+      }
+    }
+    all.sort(Comparator.comparingInt(counters -> counters.domainId));
+    return all;
+  }
+
+  @Override
+  public List<QueryStats> snapshot() {
+    List<QueryStats> snapshot = new ArrayList<>();
+    for (Counters counters : allCounters()) {
+      for (QueryType type : TYPES) {
+        LatencyHistogram histogram = counters.histograms.get(type.ordinal());
+        long count = counters.counts[type.ordinal()].sum();
+        if (histogram != null && count > 0) {
+          long[] buckets = new long[LatencyHistogram.BUCKETS];
+          histogram.addTo(buckets);
+          snapshot.add(stats(counters.domainId, type, count, buckets, histogram.total(), histogram.max()));
+        }
+      }
+    }
+    return snapshot;
+  }
+
+  @Override
+  public List<QueryStats> totals() {
+    List<Counters> all = allCounters();
+    List<QueryStats> totals = new ArrayList<>();
+    for (QueryType type : TYPES) {
+      long count = 0, total = 0, max = 0;
+      long[] buckets = new long[LatencyHistogram.BUCKETS];
+      for (Counters counters : all) {
+        LatencyHistogram histogram = counters.histograms.get(type.ordinal());
+        if (histogram != null) {
+          count += counters.counts[type.ordinal()].sum();
+          histogram.addTo(buckets);
+          total += histogram.total();
+          max = Math.max(max, histogram.max());
+        }
+      }
+      if (count > 0) {
+        totals.add(stats(-1, type, count, buckets, total, max));
+      }
+    }
+    return totals;
+  }
+
+  private static QueryStats stats(int domainId, QueryType type, long count, long[] buckets, long total, long max) {
+    // percentiles are ranked among values in the histogram, which may differ slightly from count while recording
+    long recorded = 0;
+    for (long bucket : buckets) {
+      recorded += bucket;
+    }
+    return new QueryStats(domainId, type, count, total, LatencyHistogram.percentile(buckets, recorded, 50, max),
+        LatencyHistogram.percentile(buckets, recorded, 90, max),
+        LatencyHistogram.percentile(buckets, recorded, 99, max), max);
+  }
+
+  @Override
+  public void reset() {
+    for (Counters counters : allCounters()) {
+      for (int i = 0; i < TYPES.length; i++) {
+        counters.counts[i].reset();
+        LatencyHistogram histogram = counters.histograms.get(i);
+        if (histogram != null) {
+          histogram.reset();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,11 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+/**
+ * Choice of the next gateway to walk to on the way to the safety domain.
+ *
+ * @param gatewayId the id of the gateway (and of its accesses).
+ * @param distance  walking distance to the safety domain through the gateway.
+ * @author ppgllrd
+ */
+public record RouteChoice(int gatewayId, double distance) {
+}
@@ -0,0 +1,335 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+import java.util.function.DoubleBinaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * Scalar field over the area of a domain, sampled at the centers of the cells of a square grid.
+ * Values at other points are bilinearly interpolated. Samples may be infinite (e.g. unreachable
+ * cells); those are ignored when interpolating as long as some neighbouring sample is finite.
+ *
+ * @author ppgllrd
+ */
+public final class ScalarField {
+  /**
+   * side of (square) cells
+   */
+  private final double cellSize;
+  /**
+   * number of columns in the grid
+   */
+  private final int columns;
+  /**
+   * number of rows in the grid
+   */
+  private final int rows;
+  /**
+   * samples at the center of cells (row-major order, row 0 at the bottom)
+   */
+  private final float[] values;
+
+  /**
+   * Creates a field from its samples.
+   *
+   * @param columns  number of columns.
+   * @param rows     number of rows.
+   * @param cellSize side of cells.
+   * @param values   samples at the center of cells, in row-major order.
+   */
+  ScalarField(int columns, int rows, double cellSize, float[] values) {
+    this.columns = columns;
+    this.rows = rows;
+    this.cellSize = cellSize;
+    this.values = values;
+  }
+
+  /**
+   * Samples a function at the centers of the cells of a grid covering a domain. Rows are sampled in parallel.
+   *
+   * @param domain   the domain.
+   * @param cellSize side of cells.
+   * @param function the function to sample.
+   * @return the sampled field.
+   */
+  static ScalarField sample(Domain domain, double cellSize, DoubleBinaryOperator function) {
+    if (!(cellSize > 0)) {
+      throw new IllegalArgumentException(String.format("ScalarField.sample: invalid cell size %f", cellSize));
+    }
+    int columns = Math.max(1, (int) Math.ceil(domain.getWidth() / cellSize));
+    int rows = Math.max(1, (int) Math.ceil(domain.getHeight() / cellSize));
+    float[] values = new float[columns * rows];
+    IntStream.range(0, rows).parallel().forEach(r -> {
+      double y = (r + 0.5) * cellSize;
+      for (int c = 0; c < columns; c++) {
+        values[r * columns + c] = (float) function.applyAsDouble((c + 0.5) * cellSize, y);
+      }
+    });
+    return new ScalarField(columns, rows, cellSize, values);
+  }
+
+  /**
+   * Updates a signed distance field (sampled as the minimum signed distance to a set of shapes) after a
+   * shape is added to the set. Only samples which may be farther than the new shape are examined (see
+   * {@link #forEachCellNear}), so the update is bounded by the region the shape influences.
+   *
+   * @param shape the added shape.
+   * @return the updated field (this field is not modified).
+   */
+  ScalarField withShapeAdded(Shape shape) {
+    float[] updated = values.clone();
+    BoundingBox box = shape.getBoundingBox();
+    forEachCellNear(box, (cell, x, y) -> {
+      // compared as stored samples, since rounding preserves order
+      float boxDistance = (float) box.distance(x, y);
+      if (boxDistance == 0 || boxDistance < updated[cell]) {
+        updated[cell] = Math.min(updated[cell], (float) shape.signedDistance(x, y));
+      }
+    });
+    return new ScalarField(columns, rows, cellSize, updated);
+  }
+
+  /**
+   * Updates a signed distance field (sampled as the minimum signed distance to a set of shapes) after a
+   * shape is removed from the set. Only samples whose value was due to the removed shape are sampled
+   * again, and only samples which may be so are examined (see {@link #forEachCellNear}).
+   *
+   * @param shape    the removed shape.
+   * @param distance minimum signed distance to the remaining shapes.
+   * @return the updated field (this field is not modified).
+   */
+  ScalarField withShapeRemoved(Shape shape, DoubleBinaryOperator distance) {
+    float[] updated = values.clone();
+    BoundingBox box = shape.getBoundingBox();
+    forEachCellNear(box, (cell, x, y) -> {
+      float boxDistance = (float) box.distance(x, y);
+      if ((boxDistance == 0 || boxDistance <= updated[cell]) && updated[cell] == (float) shape.signedDistance(x, y)) {
+        updated[cell] = (float) distance.applyAsDouble(x, y);
+      }
+    });
+    return new ScalarField(columns, rows, cellSize, updated);
+  }
+
+  /**
+   * Action on a cell of the grid and the coordinates of its center.
+   */
+  private interface CellAction {
+    void apply(int cell, double x, double y);
+  }
+
+  /**
+   * Applies an action to the cells whose samples may change when a shape within a box is added or removed.
+   * <p>
+   * If the sample of a point changes, so do those of all points on the segment joining it to the
+   * nearest point of the shape, as distances are 1-Lipschitz. Every point on that segment is within its
+   * sample of the box, so the center of its cell is within its sample plus a cell diagonal of the box.
+   * Cells are thus visited by a flood fill from the cells of the box (or the border of the grid, if the
+   * box is not within it), which only spreads from cells meeting that bound.
+   */
+  private void forEachCellNear(BoundingBox box, CellAction action) {
+    double slack = 1.5 * cellSize;
+    boolean[] visited = new boolean[values.length];
+    int[] queue = new int[values.length];
+    int tail = 0;
+    int c0 = clampIndex(Math.floor(box.minX() / cellSize), columns);
+    int c1 = clampIndex(Math.floor(box.maxX() / cellSize), columns);
+    int r0 = clampIndex(Math.floor(box.minY() / cellSize), rows);
+    int r1 = clampIndex(Math.floor(box.maxY() / cellSize), rows);
+    for (int r = r0; r <= r1; r++) {
+      for (int c = c0; c <= c1; c++) {
+        visited[r * columns + c] = true;
+        queue[tail++] = r * columns + c;
+      }
+    }
+    if (box.minX() < 0 || box.minY() < 0 || box.maxX() > columns * cellSize || box.maxY() > rows * cellSize) {
+      // the shape may only be reached by leaving the grid
+      for (int r = 0; r < rows; r++) {
+        for (int c = 0; c < columns; c += (r == 0 || r == rows - 1) ? 1 : Math.max(1, columns - 1)) {
+          if (!visited[r * columns + c]) {
+            visited[r * columns + c] = true;
+            queue[tail++] = r * columns + c;
+          }
+        }
+      }
+    }
+    for (int head = 0; head < tail; head++) {
+      int cell = queue[head], r = cell / columns, c = cell % columns;
+      double x = (c + 0.5) * cellSize, y = (r + 0.5) * cellSize;
+      action.apply(cell, x, y);
+      if (box.distance(x, y) < values[cell] + slack) {
+        for (int nr = Math.max(0, r - 1); nr <= Math.min(rows - 1, r + 1); nr++) {
+          for (int nc = Math.max(0, c - 1); nc <= Math.min(columns - 1, c + 1); nc++) {
+            if (!visited[nr * columns + nc]) {
+              visited[nr * columns + nc] = true;
+              queue[tail++] = nr * columns + nc;
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private static int clampIndex(double index, int size) {
+    return (int) Math.max(0, Math.min(size - 1, index));
+  }
+
+  /**
+   * Returns the number of columns in the grid.
+   *
+   * @return the number of columns in the grid.
+   */
+  public int getColumns() {
+    return columns;
+  }
+
+  /**
+   * Returns the number of rows in the grid.
+   *
+   * @return the number of rows in the grid.
+   */
+  public int getRows() {
+    return rows;
+  }
+
+  /**
+   * Returns the side of cells.
+   *
+   * @return the side of cells.
+   */
+  public double getCellSize() {
+    return cellSize;
+  }
+
+  /**
+   * Returns the sample at the center of a cell.
+   *
+   * @param column column of the cell.
+   * @param row    row of the cell (row 0 is the bottom one).
+   * @return the sample at the center of the cell.
+   */
+  public float value(int column, int row) {
+    return values[row * columns + column];
+  }
+
+  /**
+   * Returns a copy of all samples, in row-major order starting at the bottom row.
+   *
+   * @return a copy of all samples.
+   */
+  public float[] toArray() {
+    return values.clone();
+  }
+
+  /**
+   * Returns the bilinearly interpolated value of the field at a point. Points outside the grid
+   * are clamped to its border.
+   *
+   * @param x x-coordinate of point.
+   * @param y y-coordinate of point.
+   * @return the interpolated value of the field at the point.
+   */
+  public double valueAt(double x, double y) {
+    double u = clamp(x / cellSize - 0.5, columns - 1);
+    double v = clamp(y / cellSize - 0.5, rows - 1);
+    int c0 = Math.min((int) u, Math.max(columns - 2, 0)), r0 = Math.min((int) v, Math.max(rows - 2, 0));
+    int c1 = Math.min(c0 + 1, columns - 1), r1 = Math.min(r0 + 1, rows - 1);
+    double tx = u - c0, ty = v - r0;
+    double sum = 0, weights = 0;
+    double w00 = (1 - tx) * (1 - ty), w10 = tx * (1 - ty), w01 = (1 - tx) * ty, w11 = tx * ty;
+    float v00 = values[r0 * columns + c0], v10 = values[r0 * columns + c1];
+    float v01 = values[r1 * columns + c0], v11 = values[r1 * columns + c1];
+    if (Float.isFinite(v00)) {
+      sum += w00 * v00;
+      weights += w00;
+    }
+    if (Float.isFinite(v10)) {
+      sum += w10 * v10;
+      weights += w10;
+    }
+    if (Float.isFinite(v01)) {
+      sum += w01 * v01;
+      weights += w01;
+    }
+    if (Float.isFinite(v11)) {
+      sum += w11 * v11;
+      weights += w11;
+    }
+    if (weights > 0) {
+      return sum / weights;
+    }
+    // no finite sample with positive weight: take any finite neighbouring sample
+    if (Float.isFinite(v10)) {
+      return v10;
+    } else if (Float.isFinite(v01)) {
+      return v01;
+    } else if (Float.isFinite(v11)) {
+      return v11;
+    }
+    return v00;
+  }
+
+  /**
+   * Returns the partial derivative with respect to x of the bilinearly interpolated field at a point.
+   *
+   * @param x x-coordinate of point.
+   * @param y y-coordinate of point.
+   * @return the x-component of the gradient of the field at the point.
+   */
+  public double gradientX(double x, double y) {
+    if (columns < 2) {
+      return 0;
+    }
+    double u = clamp(x / cellSize - 0.5, columns - 1);
+    double v = clamp(y / cellSize - 0.5, rows - 1);
+    int c0 = Math.min((int) u, columns - 2), r0 = Math.min((int) v, Math.max(rows - 2, 0));
+    int r1 = Math.min(r0 + 1, rows - 1);
+    double ty = v - r0;
+    return difference(r0 * columns + c0, 1, r1 * columns + c0, ty) / cellSize;
+  }
+
+  /**
+   * Returns the partial derivative with respect to y of the bilinearly interpolated field at a point.
+   *
+   * @param x x-coordinate of point.
+   * @param y y-coordinate of point.
+   * @return the y-component of the gradient of the field at the point.
+   */
+  public double gradientY(double x, double y) {
+    if (rows < 2) {
+      return 0;
+    }
+    double u = clamp(x / cellSize - 0.5, columns - 1);
+    double v = clamp(y / cellSize - 0.5, rows - 1);
+    int c0 = Math.min((int) u, Math.max(columns - 2, 0)), r0 = Math.min((int) v, rows - 2);
+    int c1 = Math.min(c0 + 1, columns - 1);
+    double tx = u - c0;
+    return difference(r0 * columns + c0, columns, r0 * columns + c1, tx) / cellSize;
+  }
+
+  /**
+   * Interpolates, with weight {@code t}, the differences between samples {@code first0 + stride} and
+   * {@code first0}, and between {@code first1 + stride} and {@code first1}, ignoring non-finite differences.
+   */
+  private double difference(int first0, int stride, int first1, double t) {
+    double d0 = values[first0 + stride] - values[first0];
+    double d1 = values[first1 + stride] - values[first1];
+    boolean finite0 = Double.isFinite(d0), finite1 = Double.isFinite(d1);
+    if (finite0 && finite1) {
+      return (1 - t) * d0 + t * d1;
+    }
+    return finite0 ? d0 : (finite1 ? d1 : 0);
+  }
+
+  private static double clamp(double value, int max) {
+    return value < 0 ? 0 : Math.min(value, max);
+  }
+
+  /**
+   * Estimates the heap memory used by the field (see {@link MemoryFootprint}).
+   *
+   * @return the estimated number of bytes.
+   */
+  public long memoryFootprint() {
+    return MemoryFootprint.object(Double.BYTES + 2 * Integer.BYTES + MemoryFootprint.REFERENCE)
+        + MemoryFootprint.array(values.length, Float.BYTES);
+  }
+}
@@ -0,0 +1,1189 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+
+import com.github.cliftonlabs.json_simple.JsonArray;
+import com.github.cliftonlabs.json_simple.JsonObject;
+
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.random.RandomGenerator;
+
+/**
+ * Abstract class for representing geometrical shapes.
+ *
+ * @author ccottap, ppgllrd
+ */
+public abstract class Shape {
+
+  /**
+   * Constructs a shape from a json object.
+   *
+   * @param json the json object.
+   * @return a shape constructed from the provided json object.
+   */
+  public static Shape fromJson(JsonObject json) {
+    String typeStr = json.getStringOrDefault(JsonKeys.TYPE).toUpperCase();
+    ShapeType type = typeStr.isEmpty() ? ShapeType.RECTANGLE : ShapeType.valueOf(typeStr);
+    return switch (type) {
+      case CIRCLE -> Circle.fromJson(json);
+      case POLYGON -> Polygon.fromJson(json);
+      case RECTANGLE -> Rectangle.fromJson(json);
+    };
+  }
+
+  /**
+   * Returns the type of the shape.
+   *
+   * @return the type of the shape.
+   */
+  public abstract ShapeType getType();
+
+  /**
+   * Returns geometrical {@code java.awt.Shape} corresponding to the obstacle.
+   *
+   * @return geometrical {@code java.awt.Shape} corresponding to the obstacle.
+   */
+  public abstract java.awt.Shape getAWTShape();
+
+  /**
+   * Returns the axis-aligned bounding box of this shape.
+   *
+   * @return the axis-aligned bounding box of this shape.
+   */
+  public abstract BoundingBox getBoundingBox();
+
+  /**
+   * Checks whether a point is contained withing this shape.
+   *
+   * @param x x-coordinate of point.
+   * @param y y-coordinate of point.
+   * @return {@code true} if point is contained within this shape.
+   */
+  public boolean contains(double x, double y) {
+    return getAWTShape().contains(x, y);
+  }
+
+  /**
+   * Returns the point on the boundary of this shape nearest to a given point.
+   *
+   * @param x x-coordinate of point.
+   * @param y y-coordinate of point.
+   * @return the point on the boundary of this shape nearest to the given point.
+   */
+  public abstract Point2D nearestPoint(double x, double y);
+
+  /**
+   * Returns the distance from a point to the boundary of this shape, with negative sign if the
+   * point is contained within this shape.
+   *
+   * @param x x-coordinate of point.
+   * @param y y-coordinate of point.
+   * @return the signed distance from the point to this shape.
+   */
+  public abstract double signedDistance(double x, double y);
+
+  /**
+   * Returns the area of this shape.
+   *
+   * @return the area of this shape.
+   */
+  public abstract double area();
+
+  /**
+   * Returns a point uniformly distributed within this shape.
+   *
+   * @param random source of randomness.
+   * @return a random point within this shape.
+   */
+  public abstract Point2D randomPoint(RandomGenerator random);
+
+  /**
+   * Returns the first point along a ray which lies within this shape (boundary included). Points
+   * on the ray are {@code (originX + t dirX, originY + t dirY)} for {@code t >= 0}, so {@code t} is
+   * a distance if the direction is a unit vector.
+   *
+   * @param originX x-coordinate of origin of ray.
+   * @param originY y-coordinate of origin of ray.
+   * @param dirX    x-component of direction of ray.
+   * @param dirY    y-component of direction of ray.
+   * @param maxT    maximum value of parameter {@code t}.
+   * @return the smallest {@code t} in {@code [0, maxT]} such that the point lies within this shape
+   * ({@code 0} if origin does), or {@code Double.POSITIVE_INFINITY} if there is none.
+   */
+  public abstract double raycast(double originX, double originY, double dirX, double dirY, double maxT);
+
+  /**
+   * Returns the first point along a ray at which a disc centered on it meets this shape. This is the
+   * first point along the ray within the Minkowski sum of this shape and the disc.
+   *
+   * @param originX x-coordinate of origin of ray.
+   * @param originY y-coordinate of origin of ray.
+   * @param dirX    x-component of direction of ray.
+   * @param dirY    y-component of direction of ray.
+   * @param radius  radius of disc.
+   * @param maxT    maximum value of parameter {@code t}.
+   * @return the smallest {@code t} in {@code [0, maxT]} such that the disc centered at
+   * {@code (originX + t dirX, originY + t dirY)} meets this shape, or {@code Double.POSITIVE_INFINITY}
+   * if there is none.
+   */
+  public abstract double sweepCircle(double originX, double originY, double dirX, double dirY, double radius,
+                                     double maxT);
+
+  /**
+   * Returns a representative point of this shape: the center of its bounding box, or the point of
+   * this shape nearest to it if this shape does not contain it (e.g. for concave polygons).
+   *
+   * @return a representative point of this shape.
+   */
+  Point2D center() {
+    BoundingBox box = getBoundingBox();
+    double x = (box.minX() + box.maxX()) / 2, y = (box.minY() + box.maxY()) / 2;
+    return contains(x, y) ? new Point2D(x, y) : nearestPoint(x, y);
+  }
+
+  /**
+   * Returns the distance from a point to this shape (0 if point is contained within this shape).
+   *
+   * @param x x-coordinate of point.
+   * @param y y-coordinate of point.
+   * @return the distance from the point to this shape.
+   */
+  public double distance(double x, double y) {
+    return Math.max(signedDistance(x, y), 0);
+  }
+
+  /**
+   * Checks which points in a batch are contained within this shape.
+   *
+   * @param xs         x-coordinates of points.
+   * @param ys         y-coordinates of points.
+   * @param n          number of points in the batch.
+   * @param resultBits bitset where bit {@code i % 64} of {@code resultBits[i / 64]} is set iff point
+   *                   {@code i} is contained within this shape. Must hold at least {@code (n + 63) / 64} words.
+   */
+  public void containsAll(double[] xs, double[] ys, int n, long[] resultBits) {
+    Arrays.fill(resultBits, 0, (n + 63) >>> 6, 0L);
+    markContained(xs, ys, 0, n, resultBits);
+  }
+
+  /**
+   * Sets the bits of points in a batch which are contained within this shape. Bits of other points are left unchanged.
+   *
+   * @param xs   x-coordinates of points.
+   * @param ys   y-coordinates of points.
+   * @param from index of first point (inclusive).
+   * @param to   index of last point (exclusive).
+   * @param bits bitset where bits of contained points are set.
+   */
+  void markContained(double[] xs, double[] ys, int from, int to, long[] bits) {
+    for (int i = from; i < to; i++) {
+      if (contains(xs[i], ys[i])) {
+        bits[i >>> 6] |= 1L << i;
+      }
+    }
+  }
+
+  /**
+   * Estimates the heap memory used by this shape (see {@link MemoryFootprint}). Shapes of this package
+   * count their fields and the structures built for them; other shapes are only counted as an object.
+   *
+   * @return the estimated number of bytes.
+   */
+  long memoryFootprint() {
+    return MemoryFootprint.object(0);
+  }
+
+  /**
+   * Checks whether a rectangle intersects with this shape.
+   *
+   * @param left   X coordinate of bottom left corner of rectangle.
+   * @param bottom Y coordinate of bottom left corner of rectangle.
+   * @param width  width of rectangle.
+   * @param height height of rectangle.
+   * @return {@code true} if rectangle intersects with this shape.
+   */
+  public boolean intersects(double left, double bottom, double width, double height) {
+    return getAWTShape().intersects(left, bottom, width, height);
+  }
+
+  /**
+   * Returns json representation of shape.
+   *
+   * @return json representation of shape.
+   */
+  public abstract JsonObject toJson();
+
+  /**
+   * Returns the parameter {@code t} in {@code [0, 1]} of the point {@code (x0, y0) + t (x1 - x0, y1 - y0)}
+   * of a segment nearest to a point.
+   */
+  static double segmentParameter(double x, double y, double x0, double y0, double x1, double y1) {
+    double dx = x1 - x0, dy = y1 - y0;
+    double length2 = dx * dx + dy * dy;
+    if (length2 == 0) {
+      return 0;
+    }
+    return Math.max(0, Math.min(1, ((x - x0) * dx + (y - y0) * dy) / length2));
+  }
+
+  /**
+   * Returns the squared distance from a point to a segment.
+   */
+  static double segmentDistanceSquared(double x, double y, double x0, double y0, double x1, double y1) {
+    double t = segmentParameter(x, y, x0, y0, x1, y1);
+    double dx = x0 + t * (x1 - x0) - x, dy = y0 + t * (y1 - y0) - y;
+    return dx * dx + dy * dy;
+  }
+
+  /**
+   * Returns the smallest parameter {@code t} in {@code [0, maxT]} such that {@code (ox, oy) + t (dx, dy)}
+   * lies within the circle centered at {@code (cx, cy)} with radius {@code r}, or {@code Double.POSITIVE_INFINITY}
+   * if there is none.
+   */
+  static double circleRayParameter(double ox, double oy, double dx, double dy, double cx, double cy, double r,
+                                   double maxT) {
+    double fx = ox - cx, fy = oy - cy;
+    double c = fx * fx + fy * fy - r * r;
+    if (c <= 0) {
+      return r >= 0 ? 0 : Double.POSITIVE_INFINITY;
+    }
+    double a = dx * dx + dy * dy;
+    double b = fx * dx + fy * dy;
+    double discriminant = b * b - a * c;
+    if (a == 0 || b >= 0 || discriminant < 0) {
+      // degenerate ray, moving away from circle, or missing it
+      return Double.POSITIVE_INFINITY;
+    }
+    // smaller root (-b - sqrt(discriminant)) / a, computed in a numerically stable way
+    double t = c / (-b + Math.sqrt(discriminant));
+    return t <= maxT ? t : Double.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Returns the smallest parameter {@code t >= 0} such that {@code (ox, oy) + t (dx, dy)} lies on the
+   * segment from {@code (x0, y0)} to {@code (x1, y1)}, or {@code Double.POSITIVE_INFINITY} if there is none.
+   */
+  static double segmentRayParameter(double ox, double oy, double dx, double dy,
+                                    double x0, double y0, double x1, double y1) {
+    double ex = x1 - x0, ey = y1 - y0;
+    double wx = x0 - ox, wy = y0 - oy;
+    double denominator = dx * ey - dy * ex;
+    double wd = wx * dy - wy * dx;
+    if (denominator == 0) {
+      if (wd != 0) {
+        // parallel
+        return Double.POSITIVE_INFINITY;
+      }
+      // collinear: first point of the segment along the ray
+      double length2 = dx * dx + dy * dy;
+      double t0 = (wx * dx + wy * dy) / length2;
+      double t1 = ((x1 - ox) * dx + (y1 - oy) * dy) / length2;
+      return Math.max(t0, t1) < 0 ? Double.POSITIVE_INFINITY : Math.max(0, Math.min(t0, t1));
+    }
+    double t = (wx * ey - wy * ex) / denominator;
+    double s = wd / denominator;
+    return t >= 0 && s >= 0 && s <= 1 ? t : Double.POSITIVE_INFINITY;
+  }
+
+  public static class Circle extends Shape {
+    private final double x;
+    private final double y;
+    private final double radius;
+
+    /**
+     * internal circle object
+     */
+    private final Ellipse2D.Double circle;
+
+    /**
+     * bounding box of the circle
+     */
+    private final BoundingBox boundingBox;
+
+    /**
+     * Basic constructor for circle shape.
+     *
+     * @param x      x-coordinate of the circle center.
+     * @param y      y-coordinate of the circle center.
+     * @param radius radius of the circle.
+     */
+    public Circle(double x, double y, double radius) {
+      this.x = x;
+      this.y = y;
+      this.radius = radius;
+      double diameter = 2 * radius;
+      circle = new Ellipse2D.Double(x - radius, y - radius, diameter, diameter);
+      boundingBox = new BoundingBox(x - radius, y - radius, x + radius, y + radius);
+    }
+
+    /**
+     * Constructs a circle from a json object.
+     *
+     * @param json the json object.
+     * @return a circle constructed from the provided json object.
+     */
+    public static Circle fromJson(JsonObject json) {
+      JsonObject jsonCenter = json.getMap(JsonKeys.CENTER);
+      Point2D point = Point2D.fromJson(jsonCenter);
+      return new Circle(point.getX(), point.getY(), json.getDouble(JsonKeys.RADIUS));
+    }
+
+    /**
+     * Returns x-coordinate of the circle center.
+     *
+     * @return x-coordinate of the circle center.
+     */
+    public double getX() {
+      return x;
+    }
+
+    /**
+     * Returns y-coordinate of the circle center.
+     *
+     * @return y-coordinate of the circle center.
+     */
+    public double getY() {
+      return y;
+    }
+
+    /**
+     * Returns radius of the circle.
+     *
+     * @return radius of the circle.
+     */
+    public double getRadius() {
+      return radius;
+    }
+
+    @Override
+    public ShapeType getType() {
+      return ShapeType.CIRCLE;
+    }
+
+    @Override
+    public java.awt.Shape getAWTShape() {
+      return circle;
+    }
+
+    @Override
+    public BoundingBox getBoundingBox() {
+      return boundingBox;
+    }
+
+    /**
+     * Checks whether a point is contained within this circle. Coordinates are normalized with
+     * respect to the bounding box of the circle, as in {@code java.awt.geom.Ellipse2D}, so that
+     * results are the same.
+     *
+     * @param x x-coordinate of point.
+     * @param y y-coordinate of point.
+     * @return {@code true} if point is contained within this circle.
+     */
+    @Override
+    public boolean contains(double x, double y) {
+      double diameter = 2 * radius;
+      if (diameter <= 0) {
+        return false;
+      }
+      double normX = (x - (this.x - radius)) / diameter - 0.5;
+      double normY = (y - (this.y - radius)) / diameter - 0.5;
+      return (normX * normX + normY * normY) < 0.25;
+    }
+
+    @Override
+    public double area() {
+      return Math.PI * radius * radius;
+    }
+
+    @Override
+    public Point2D randomPoint(RandomGenerator random) {
+      // square root of uniform radius fraction, for uniform density over the disc
+      double r = radius * Math.sqrt(random.nextDouble());
+      double angle = 2 * Math.PI * random.nextDouble();
+      return new Point2D(x + r * Math.cos(angle), y + r * Math.sin(angle));
+    }
+
+    @Override
+    public Point2D nearestPoint(double x, double y) {
+      double dx = x - this.x;
+      double dy = y - this.y;
+      double length = Math.sqrt(dx * dx + dy * dy);
+      if (length == 0) {
+        return new Point2D(this.x + radius, this.y);
+      }
+      return new Point2D(this.x + dx * radius / length, this.y + dy * radius / length);
+    }
+
+    @Override
+    public double signedDistance(double x, double y) {
+      double dx = x - this.x;
+      double dy = y - this.y;
+      return Math.sqrt(dx * dx + dy * dy) - radius;
+    }
+
+    @Override
+    public double raycast(double originX, double originY, double dirX, double dirY, double maxT) {
+      return circleRayParameter(originX, originY, dirX, dirY, x, y, radius, maxT);
+    }
+
+    @Override
+    public double sweepCircle(double originX, double originY, double dirX, double dirY, double radius,
+                              double maxT) {
+      return circleRayParameter(originX, originY, dirX, dirY, x, y, this.radius + radius, maxT);
+    }
+
+    @Override
+    void markContained(double[] xs, double[] ys, int from, int to, long[] bits) {
+      BatchKernels.markInCircle(xs, ys, from, to, x - radius, y - radius, 2 * radius, bits);
+    }
+
+    @Override
+    long memoryFootprint() {
+      // the circle, its AWT ellipse and its bounding box
+      return MemoryFootprint.object(3 * Double.BYTES + 2 * MemoryFootprint.REFERENCE)
+          + 2 * MemoryFootprint.object(4 * Double.BYTES);
+    }
+
+    /**
+     * Checks whether a rectangle intersects with this circle. Coordinates are normalized with
+     * respect to the bounding box of the circle, as in {@code java.awt.geom.Ellipse2D}, so that
+     * results are the same.
+     *
+     * @param left   X coordinate of bottom left corner of rectangle.
+     * @param bottom Y coordinate of bottom left corner of rectangle.
+     * @param width  width of rectangle.
+     * @param height height of rectangle.
+     * @return {@code true} if rectangle intersects with this circle.
+     */
+    @Override
+    public boolean intersects(double left, double bottom, double width, double height) {
+      double diameter = 2 * radius;
+      if (width <= 0 || height <= 0 || diameter <= 0) {
+        return false;
+      }
+      // normalized coordinates of the point in rectangle nearest to center
+      double normX0 = (left - (x - radius)) / diameter - 0.5;
+      double normX1 = normX0 + width / diameter;
+      double normY0 = (bottom - (y - radius)) / diameter - 0.5;
+      double normY1 = normY0 + height / diameter;
+      double nearX = normX0 > 0 ? normX0 : (normX1 < 0 ? normX1 : 0);
+      double nearY = normY0 > 0 ? normY0 : (normY1 < 0 ? normY1 : 0);
+      return (nearX * nearX + nearY * nearY) < 0.25;
+    }
+
+    @Override
+    public JsonObject toJson() {
+      JsonObject json = new JsonObject();
+      json.put(JsonKeys.TYPE, getType().toString());
+      json.put(JsonKeys.CENTER, Point2D.toJson(x, y));
+      json.put(JsonKeys.RADIUS, radius);
+      return json;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Circle circle = (Circle) o;
+      return Double.compare(circle.x, x) == 0 && Double.compare(circle.y, y) == 0 && Double.compare(circle.radius, radius) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(x, y, radius);
+    }
+  }
+
+  public static class Polygon extends Shape {
+    /**
+     * Minimum number of vertices for containment tests to use horizontal bands of edges.
+     */
+    private static final int BANDED_CONTAINS_MIN_VERTICES = 16;
+
+    /**
+     * Maximum number of points drawn from the bounding box when sampling polygons which cannot be
+     * triangulated.
+     */
+    private static final int MAX_REJECTION_ATTEMPTS = 1_000_000;
+
+    private final List<Point2D> points;
+    /**
+     * x-coordinates of vertices
+     */
+    private final double[] xs;
+    /**
+     * y-coordinates of vertices
+     */
+    private final double[] ys;
+
+    /**
+     * Internal polygon object
+     */
+    private final java.awt.geom.Path2D.Double path;
+
+    /**
+     * bounding box of the polygon
+     */
+    private final BoundingBox boundingBox;
+
+    /**
+     * edges of the polygon by horizontal band (lazily built for polygons with many vertices)
+     */
+    private volatile EdgeBands edgeBands;
+
+    /**
+     * triangulation of the polygon (lazily built, {@code null} if the polygon is not simple)
+     */
+    private volatile Triangulation triangulation;
+
+    /**
+     * whether the polygon has already been triangulated
+     */
+    private volatile boolean triangulated;
+
+    /**
+     * Basic constructor for polygon shape.
+     *
+     * @param points a list of points defining the polygon.
+     */
+    public Polygon(List<Point2D> points) {
+      this.points = points;
+      path = Path2D.fromPoints(points);
+      int n = points.size();
+      xs = new double[n];
+      ys = new double[n];
+      double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+      double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+      for (int i = 0; i < n; i++) {
+        xs[i] = points.get(i).getX();
+        ys[i] = points.get(i).getY();
+        minX = Math.min(minX, xs[i]);
+        minY = Math.min(minY, ys[i]);
+        maxX = Math.max(maxX, xs[i]);
+        maxY = Math.max(maxY, ys[i]);
+      }
+      boundingBox = new BoundingBox(minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Constructs a polygon from a json object.
+     *
+     * @param json the json object.
+     * @return a polygon constructed from the provided json object.
+     */
+    public static Polygon fromJson(JsonObject json) {
+      JsonArray jsonArray = json.getCollection(JsonKeys.POINTS);
+      return new Polygon(Path2D.fromJsonArray(jsonArray));
+    }
+
+    /**
+     * Returns the list of points defining the polygon.
+     *
+     * @return the list of points defining the polygon.
+     */
+    public List<Point2D> getPoints() {
+      return points;
+    }
+
+    @Override
+    public ShapeType getType() {
+      return ShapeType.POLYGON;
+    }
+
+    @Override
+    public java.awt.Shape getAWTShape() {
+      return path;
+    }
+
+    @Override
+    public BoundingBox getBoundingBox() {
+      return boundingBox;
+    }
+
+    /**
+     * Checks whether a point is contained within this polygon. Follows the same non-zero winding
+     * rule and boundary conventions as {@code java.awt.geom.Path2D}.
+     *
+     * @param x x-coordinate of point.
+     * @param y y-coordinate of point.
+     * @return {@code true} if point is contained within this polygon.
+     */
+    @Override
+    public boolean contains(double x, double y) {
+      if (!boundingBox.contains(x, y)) {
+        return false;
+      }
+      int crossings = 0;
+      if (xs.length < BANDED_CONTAINS_MIN_VERTICES) {
+        for (int i = 0; i < xs.length; i++) {
+          crossings += crossing(i, x, y);
+        }
+      } else {
+        // only edges overlapping the band of the point can cross the horizontal line through it
+        EdgeBands bands = edgeBands();
+        int band = bands.band(y);
+        for (int k = bands.start(band), end = bands.end(band); k < end; k++) {
+          crossings += crossing(bands.edge(k), x, y);
+        }
+      }
+      return crossings != 0;
+    }
+
+    /**
+     * Returns the contribution of an edge to the winding number of a point, namely whether it crosses
+     * the horizontal ray to the left of the point, and in which direction. The edge goes from vertex
+     * {@code i - 1} (or the last one if {@code i} is 0) to vertex {@code i}.
+     */
+    private int crossing(int i, double x, double y) {
+      int j = (i == 0 ? xs.length : i) - 1;
+      double x0 = xs[j], y0 = ys[j], x1 = xs[i], y1 = ys[i];
+      if ((y < y0 && y < y1) || (y >= y0 && y >= y1) || (x >= x0 && x >= x1)) {
+        return 0;
+      }
+      if (x < x0 && x < x1 || x < x0 + (y - y0) * (x1 - x0) / (y1 - y0)) {
+        return (y0 < y1) ? 1 : -1;
+      }
+      return 0;
+    }
+
+    private EdgeBands edgeBands() {
+      EdgeBands bands = edgeBands;
+      if (bands == null) {
+        edgeBands = bands = new EdgeBands(ys, boundingBox);
+      }
+      return bands;
+    }
+
+    /**
+     * Returns the triangulation of the polygon, computing it if needed.
+     *
+     * @return the triangulation of the polygon, or {@code null} if the polygon is not simple.
+     */
+    Triangulation triangulation() {
+      if (!triangulated) {
+        triangulation = Triangulation.of(xs, ys);
+        triangulated = true;
+      }
+      return triangulation;
+    }
+
+    @Override
+    long memoryFootprint() {
+      int n = xs.length;
+      // the polygon, its points, their coordinates, its AWT path (with a type per point) and its bounding box
+      long bytes = MemoryFootprint.object(6 * MemoryFootprint.REFERENCE + 1) + MemoryFootprint.list(n)
+          + n * MemoryFootprint.object(2 * Double.BYTES) + 2 * MemoryFootprint.array(n, Double.BYTES)
+          + MemoryFootprint.object(3 * Integer.BYTES + 2 * MemoryFootprint.REFERENCE)
+          + MemoryFootprint.array(2L * n, Double.BYTES) + MemoryFootprint.array(n, 1)
+          + MemoryFootprint.object(4 * Double.BYTES);
+      EdgeBands bands = edgeBands;
+      Triangulation triangles = triangulation;
+      bytes += bands == null ? 0 : bands.memoryFootprint();
+      return bytes + (triangles == null ? 0 : triangles.memoryFootprint());
+    }
+
+    /**
+     * Returns the area of the polygon, computed exactly from its triangulation. For polygons whose
+     * boundary intersects itself, the area of the points contained within the polygon under the
+     * non-zero winding rule (as in {@link #contains}) is computed instead, in time cubic in the
+     * number of vertices at worst.
+     *
+     * @return the area of the polygon.
+     */
+    @Override
+    public double area() {
+      Triangulation triangulation = triangulation();
+      return triangulation != null ? triangulation.area() : windingArea();
+    }
+
+    /**
+     * Returns the area of the points with non-zero winding number. The polygon is cut into horizontal
+     * slabs at the y-coordinates of its vertices and of the crossings of its edges, so that edges
+     * spanning a slab do not cross within it. Edges of each slab are sorted from left to right, and
+     * the trapezoids between those where the winding number becomes non-zero and those where it
+     * becomes zero again are added up.
+     */
+    private double windingArea() {
+      int n = xs.length;
+      double[] cuts = Arrays.copyOf(ys, 2 * n);
+      int numberOfCuts = n;
+      for (int i = 0, j = n - 1; i < n; j = i++) {
+        for (int k = i + 1, l = i; k < n; l = k++) {
+          // edges from vertex j to i and from vertex l to k, skipping those sharing a vertex
+          if (l == i || k == j) {
+            continue;
+          }
+          double ex = xs[i] - xs[j], ey = ys[i] - ys[j], fx = xs[k] - xs[l], fy = ys[k] - ys[l];
+          double denominator = ex * fy - ey * fx;
+          if (denominator == 0) {
+            continue;
+          }
+          double wx = xs[l] - xs[j], wy = ys[l] - ys[j];
+          double t = (wx * fy - wy * fx) / denominator, u = (wx * ey - wy * ex) / denominator;
+          if (t >= 0 && t <= 1 && u >= 0 && u <= 1) {
+            if (numberOfCuts == cuts.length) {
+              cuts = Arrays.copyOf(cuts, 2 * cuts.length);
+            }
+            cuts[numberOfCuts++] = ys[j] + t * ey;
+          }
+        }
+      }
+      Arrays.sort(cuts, 0, numberOfCuts);
+      double area = 0;
+      double[] bottoms = new double[n], tops = new double[n], middles = new double[n];
+      int[] directions = new int[n], order = new int[n];
+      for (int c = 0; c + 1 < numberOfCuts; c++) {
+        double bottom = cuts[c], top = cuts[c + 1];
+        if (!(top > bottom)) {
+          continue;
+        }
+        int spanning = 0;
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+          double y0 = ys[j], y1 = ys[i];
+          if (Math.min(y0, y1) <= bottom && Math.max(y0, y1) >= top) {
+            double slope = (xs[i] - xs[j]) / (y1 - y0);
+            bottoms[spanning] = xs[j] + (bottom - y0) * slope;
+            tops[spanning] = xs[j] + (top - y0) * slope;
+            middles[spanning] = (bottoms[spanning] + tops[spanning]) / 2;
+            directions[spanning] = y0 < y1 ? 1 : -1;
+            // insertion sort by x-coordinate at the middle of the slab, as few edges span each slab
+            int k = spanning;
+            for (; k > 0 && middles[order[k - 1]] > middles[spanning]; k--) {
+              order[k] = order[k - 1];
+            }
+            order[k] = spanning;
+            spanning++;
+          }
+        }
+        int winding = 0, left = 0;
+        for (int k = 0; k < spanning; k++) {
+          int edge = order[k];
+          if (winding == 0) {
+            left = edge;
+          }
+          winding += directions[edge];
+          if (winding == 0) {
+            area += (bottoms[edge] - bottoms[left] + tops[edge] - tops[left]) / 2 * (top - bottom);
+          }
+        }
+      }
+      return area;
+    }
+
+    /**
+     * Returns a point uniformly distributed within the polygon, in constant time by drawing a triangle of
+     * its triangulation (alias method) and then a point within it. Points within polygons whose boundary
+     * intersects itself are drawn by rejection from the bounding box instead.
+     *
+     * @param random source of randomness.
+     * @return a random point within the polygon.
+     */
+    @Override
+    public Point2D randomPoint(RandomGenerator random) {
+      Triangulation triangulation = triangulation();
+      if (triangulation != null && triangulation.size() > 0) {
+        return triangulation.randomPoint(random);
+      }
+      for (int attempt = 0; attempt < MAX_REJECTION_ATTEMPTS; attempt++) {
+        double x = boundingBox.minX() + random.nextDouble() * boundingBox.width();
+        double y = boundingBox.minY() + random.nextDouble() * boundingBox.height();
+        if (contains(x, y)) {
+          return new Point2D(x, y);
+        }
+      }
+      throw new IllegalStateException(String.format("Polygon.randomPoint: no point found within polygon %s", points));
+    }
+
+    /**
+     * Checks whether a rectangle intersects with this polygon. Follows the same non-zero winding
+     * rule and boundary conventions as {@code java.awt.geom.Path2D}.
+     *
+     * @param left   X coordinate of bottom left corner of rectangle.
+     * @param bottom Y coordinate of bottom left corner of rectangle.
+     * @param width  width of rectangle.
+     * @param height height of rectangle.
+     * @return {@code true} if rectangle intersects with this polygon.
+     */
+    @Override
+    public boolean intersects(double left, double bottom, double width, double height) {
+      if (!(width > 0 && height > 0)) {
+        return false;
+      }
+      double right = left + width, top = bottom + height;
+      if (left >= boundingBox.maxX() || right <= boundingBox.minX()
+          || bottom >= boundingBox.maxY() || top <= boundingBox.minY()) {
+        return false;
+      }
+      // count crossings of the polygon boundary with the shadow extending to the right of the rectangle
+      int crossings = 0;
+      for (int i = 0, j = xs.length - 1; i < xs.length; j = i++) {
+        double x0 = xs[j], y0 = ys[j], x1 = xs[i], y1 = ys[i];
+        if ((y0 >= top && y1 >= top) || (y0 <= bottom && y1 <= bottom) || (x0 <= left && x1 <= left)) {
+          continue;
+        }
+        if (!(x0 >= right && x1 >= right)) {
+          if ((x0 > left && x0 < right && y0 > bottom && y0 < top)
+              || (x1 > left && x1 < right && y1 > bottom && y1 < top)) {
+            return true;
+          }
+          // x-coordinates where segment enters and leaves the horizontal band of the rectangle
+          double xi0 = x0;
+          if (y0 < bottom) {
+            xi0 += (bottom - y0) * (x1 - x0) / (y1 - y0);
+          } else if (y0 > top) {
+            xi0 += (top - y0) * (x1 - x0) / (y1 - y0);
+          }
+          double xi1 = x1;
+          if (y1 < bottom) {
+            xi1 += (bottom - y1) * (x0 - x1) / (y0 - y1);
+          } else if (y1 > top) {
+            xi1 += (top - y1) * (x0 - x1) / (y0 - y1);
+          }
+          if (xi0 <= left && xi1 <= left) {
+            continue;
+          }
+          if (!(xi0 >= right && xi1 >= right)) {
+            return true;
+          }
+        }
+        if (y0 < y1) {
+          crossings += (y0 <= bottom ? 1 : 0) + (y1 >= top ? 1 : 0);
+        } else if (y1 < y0) {
+          crossings -= (y1 <= bottom ? 1 : 0) + (y0 >= top ? 1 : 0);
+        }
+      }
+      return crossings != 0;
+    }
+
+    /**
+     * Returns the index of the edge nearest to a point, namely the edge going from vertex
+     * {@code i - 1} (or the last one if {@code i} is 0) to vertex {@code i}.
+     */
+    private int nearestEdge(double x, double y) {
+      int nearest = 0;
+      double best = Double.POSITIVE_INFINITY;
+      for (int i = 0, j = xs.length - 1; i < xs.length; j = i++) {
+        double distance = segmentDistanceSquared(x, y, xs[j], ys[j], xs[i], ys[i]);
+        if (distance < best) {
+          best = distance;
+          nearest = i;
+        }
+      }
+      return nearest;
+    }
+
+    @Override
+    public Point2D nearestPoint(double x, double y) {
+      int i = nearestEdge(x, y);
+      int j = (i == 0 ? xs.length : i) - 1;
+      double t = segmentParameter(x, y, xs[j], ys[j], xs[i], ys[i]);
+      return new Point2D(xs[j] + t * (xs[i] - xs[j]), ys[j] + t * (ys[i] - ys[j]));
+    }
+
+    @Override
+    public double signedDistance(double x, double y) {
+      double best = Double.POSITIVE_INFINITY;
+      for (int i = 0, j = xs.length - 1; i < xs.length; j = i++) {
+        best = Math.min(best, segmentDistanceSquared(x, y, xs[j], ys[j], xs[i], ys[i]));
+      }
+      double distance = Math.sqrt(best);
+      return contains(x, y) ? -distance : distance;
+    }
+
+    @Override
+    public double raycast(double originX, double originY, double dirX, double dirY, double maxT) {
+      if (boundingBox.raycast(originX, originY, dirX, dirY, maxT) > maxT) {
+        return Double.POSITIVE_INFINITY;
+      }
+      if (contains(originX, originY)) {
+        return 0;
+      }
+      if (dirX == 0 && dirY == 0) {
+        return signedDistance(originX, originY) <= 0 ? 0 : Double.POSITIVE_INFINITY;
+      }
+      // origin is outside, so the ray enters the polygon through its boundary
+      double best = Double.POSITIVE_INFINITY;
+      for (int i = 0, j = xs.length - 1; i < xs.length; j = i++) {
+        best = Math.min(best, segmentRayParameter(originX, originY, dirX, dirY, xs[j], ys[j], xs[i], ys[i]));
+      }
+      return best <= maxT ? best : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * The Minkowski sum of the polygon and the disc is the union of the polygon and a capsule around
+     * each edge. Every point in the circles around vertices and in the edges offset by the radius lies
+     * within that sum, and so does the first point of the ray in the sum (if origin is outside it), so
+     * the first hit against those circles and offset edges is exact.
+     */
+    @Override
+    public double sweepCircle(double originX, double originY, double dirX, double dirY, double radius,
+                              double maxT) {
+      BoundingBox box = boundingBox;
+      if (new BoundingBox(box.minX() - radius, box.minY() - radius, box.maxX() + radius, box.maxY() + radius)
+          .raycast(originX, originY, dirX, dirY, maxT) > maxT) {
+        return Double.POSITIVE_INFINITY;
+      }
+      if (signedDistance(originX, originY) <= radius) {
+        return 0;
+      }
+      if (dirX == 0 && dirY == 0) {
+        return Double.POSITIVE_INFINITY;
+      }
+      double best = Double.POSITIVE_INFINITY;
+      for (int i = 0, j = xs.length - 1; i < xs.length; j = i++) {
+        double x0 = xs[j], y0 = ys[j], x1 = xs[i], y1 = ys[i];
+        best = Math.min(best, circleRayParameter(originX, originY, dirX, dirY, x1, y1, radius, best));
+        double length = Math.hypot(x1 - x0, y1 - y0);
+        if (length > 0) {
+          double nx = (y1 - y0) / length * radius, ny = (x0 - x1) / length * radius;
+          best = Math.min(best, segmentRayParameter(originX, originY, dirX, dirY, x0 + nx, y0 + ny, x1 + nx, y1 + ny));
+          best = Math.min(best, segmentRayParameter(originX, originY, dirX, dirY, x0 - nx, y0 - ny, x1 - nx, y1 - ny));
+        }
+      }
+      return best <= maxT ? best : Double.POSITIVE_INFINITY;
+    }
+
+    @Override
+    public JsonObject toJson() {
+      JsonObject json = new JsonObject();
+      json.put(JsonKeys.TYPE, getType().toString());
+      json.put(JsonKeys.POINTS, Path2D.toJsonArray(points));
+      return json;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Polygon polygon)) {
+        return false;
+      }
+      return Objects.equals(points, polygon.points);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(points);
+    }
+  }
+
+  public static class Rectangle extends Shape {
+    private final double left;
+    private final double bottom;
+    private final double width;
+    private final double height;
+
+    /**
+     * Internal rectangle object
+     */
+    private final Rectangle2D.Double rectangle;
+
+    /**
+     * bounding box of the rectangle
+     */
+    private final BoundingBox boundingBox;
+
+    /**
+     * Basic constructor for rectangle shaped.
+     *
+     * @param left   x-coordinate of the bottom-left corner of rectangle.
+     * @param bottom y-coordinate of the bottom-left corner of the rectangle.
+     * @param width  width of the rectangle.
+     * @param height height of the rectangle.
+     */
+    public Rectangle(double left, double bottom, double width, double height) {
+      this.left = left;
+      this.bottom = bottom;
+      this.width = width;
+      this.height = height;
+      rectangle = new Rectangle2D.Double(left, bottom, width, height);
+      boundingBox = new BoundingBox(left, bottom, left + width, bottom + height);
+    }
+
+    /**
+     * Constructs a rectangle from a json object.
+     *
+     * @param json the json object.
+     * @return a rectangle constructed from the provided json object.
+     */
+    public static Rectangle fromJson(JsonObject json) {
+      JsonObject jsonBottomLeft = json.getMap(JsonKeys.BOTTOMLEFT);
+      Point2D point = Point2D.fromJson(jsonBottomLeft);
+      double left = point.getX();
+      double bottom = point.getY();
+      double width = json.getDouble(JsonKeys.WIDTH);
+      double height = json.getDouble(JsonKeys.HEIGHT);
+      return new Rectangle(left, bottom, width, height);
+    }
+
+    /**
+     * Returns x-coordinate of the bottom-left corner of the rectangle.
+     *
+     * @return x-coordinate of the bottom-left corner of the rectangle.
+     */
+    public double getLeft() {
+      return left;
+    }
+
+    /**
+     * Returns y-coordinate of the bottom-left corner of the rectangle.
+     *
+     * @return y-coordinate of the bottom-left corner of the rectangle.
+     */
+    public double getBottom() {
+      return bottom;
+    }
+
+    /**
+     * Returns width of the rectangle.
+     *
+     * @return width of the rectangle.
+     */
+    public double getWidth() {
+      return width;
+    }
+
+    /**
+     * Returns height of the rectangle.
+     *
+     * @return height of the rectangle.
+     */
+    public double getHeight() {
+      return height;
+    }
+
+    @Override
+    public ShapeType getType() {
+      return ShapeType.RECTANGLE;
+    }
+
+    @Override
+    public java.awt.Shape getAWTShape() {
+      return rectangle;
+    }
+
+    @Override
+    public BoundingBox getBoundingBox() {
+      return boundingBox;
+    }
+
+    @Override
+    public boolean contains(double x, double y) {
+      return x >= left && y >= bottom && x < left + width && y < bottom + height;
+    }
+
+    @Override
+    public double area() {
+      return width * height;
+    }
+
+    @Override
+    public Point2D randomPoint(RandomGenerator random) {
+      return new Point2D(left + random.nextDouble() * width, bottom + random.nextDouble() * height);
+    }
+
+    @Override
+    public Point2D nearestPoint(double x, double y) {
+      double right = left + width, top = bottom + height;
+      if (x < left || x > right || y < bottom || y > top) {
+        return new Point2D(Math.max(left, Math.min(x, right)), Math.max(bottom, Math.min(y, top)));
+      }
+      // inside: project onto nearest side
+      double toLeft = x - left, toRight = right - x, toBottom = y - bottom, toTop = top - y;
+      double nearest = Math.min(Math.min(toLeft, toRight), Math.min(toBottom, toTop));
+      if (nearest == toLeft) {
+        return new Point2D(left, y);
+      } else if (nearest == toRight) {
+        return new Point2D(right, y);
+      } else if (nearest == toBottom) {
+        return new Point2D(x, bottom);
+      }
+      return new Point2D(x, top);
+    }
+
+    @Override
+    public double signedDistance(double x, double y) {
+      double halfWidth = width / 2, halfHeight = height / 2;
+      double qx = Math.abs(x - (left + halfWidth)) - halfWidth;
+      double qy = Math.abs(y - (bottom + halfHeight)) - halfHeight;
+      double outsideX = Math.max(qx, 0), outsideY = Math.max(qy, 0);
+      return Math.sqrt(outsideX * outsideX + outsideY * outsideY) + Math.min(Math.max(qx, qy), 0);
+    }
+
+    @Override
+    public double raycast(double originX, double originY, double dirX, double dirY, double maxT) {
+      return boundingBox.raycast(originX, originY, dirX, dirY, maxT);
+    }
+
+    /**
+     * The Minkowski sum of the rectangle and the disc is the union of the rectangle stretched
+     * horizontally and vertically by the radius and the circles around its corners.
+     */
+    @Override
+    public double sweepCircle(double originX, double originY, double dirX, double dirY, double radius,
+                              double maxT) {
+      double right = left + width, top = bottom + height;
+      double best = new BoundingBox(left - radius, bottom, right + radius, top)
+          .raycast(originX, originY, dirX, dirY, maxT);
+      best = Math.min(best, new BoundingBox(left, bottom - radius, right, top + radius)
+          .raycast(originX, originY, dirX, dirY, Math.min(best, maxT)));
+      best = Math.min(best, circleRayParameter(originX, originY, dirX, dirY, left, bottom, radius, Math.min(best, maxT)));
+      best = Math.min(best, circleRayParameter(originX, originY, dirX, dirY, right, bottom, radius, Math.min(best, maxT)));
+      best = Math.min(best, circleRayParameter(originX, originY, dirX, dirY, left, top, radius, Math.min(best, maxT)));
+      best = Math.min(best, circleRayParameter(originX, originY, dirX, dirY, right, top, radius, Math.min(best, maxT)));
+      return best;
+    }
+
+    @Override
+    void markContained(double[] xs, double[] ys, int from, int to, long[] bits) {
+      BatchKernels.markInRectangle(xs, ys, from, to, left, bottom, left + width, bottom + height, bits);
+    }
+
+    @Override
+    long memoryFootprint() {
+      // the rectangle, its AWT rectangle and its bounding box
+      return MemoryFootprint.object(4 * Double.BYTES + 2 * MemoryFootprint.REFERENCE)
+          + 2 * MemoryFootprint.object(4 * Double.BYTES);
+    }
+
+    @Override
+    public boolean intersects(double left, double bottom, double width, double height) {
+      return this.width > 0 && this.height > 0 && width > 0 && height > 0
+          && left + width > this.left && bottom + height > this.bottom
+          && left < this.left + this.width && bottom < this.bottom + this.height;
+    }
+
+    public JsonObject toJson() {
+      JsonObject json = new JsonObject();
+      json.put(JsonKeys.TYPE, getType().toString());
+      json.put(JsonKeys.BOTTOMLEFT, Point2D.toJson(left, bottom));
+      json.put(JsonKeys.WIDTH, width);
+      json.put(JsonKeys.HEIGHT, height);
+      return json;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Rectangle rectangle)) {
+        return false;
+      }
+      return Double.compare(rectangle.left, left) == 0 && Double.compare(rectangle.bottom, bottom) == 0 && Double.compare(rectangle.width, width) == 0 && Double.compare(rectangle.height, height) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(left, bottom, width, height);
+    }
+  }
+}
@@ -0,0 +1,629 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Uniform grid over the area of a domain that indexes a collection of shapes by
+ * their bounding boxes. Point and rectangle queries only examine the shapes
+ * registered in the cells they touch. Elements can be appended, and detached from
+ * (or attached again to) the cells they overlap, so that the index can be updated
+ * locally; detached elements keep their indexes but are ignored by all queries.
+ *
+ * @param <T> type of the elements (obstacles or accesses) owning the indexed shapes.
+ * @author ppgllrd
+ */
+final class ShapeIndex<T> {
+  /**
+   * Initial capacity of the list of elements stored in a cell.
+   */
+  private static final int INITIAL_CELL_CAPACITY = 4;
+  /**
+   * Maximum number of cells per indexed element.
+   */
+  private static final int MAX_CELLS_PER_ELEMENT = 4;
+  /**
+   * Number of elements an index can grow to, relative to the number it was built for, before its
+   * grid is considered too coarse.
+   */
+  private static final int MAX_GROWTH = 4;
+
+  /**
+   * side of (square) cells
+   */
+  private final double cellSize;
+  /**
+   * number of columns in the grid
+   */
+  private final int columns;
+  /**
+   * number of rows in the grid
+   */
+  private final int rows;
+  /**
+   * indexed elements
+   */
+  private final List<T> elements;
+  /**
+   * shapes of indexed elements, in the same order as {@code elements}
+   */
+  private Shape[] shapes;
+  /**
+   * whether each element is detached from the cells it overlaps
+   */
+  private boolean[] detached;
+  /**
+   * number of detached elements
+   */
+  private int detachedCount;
+  /**
+   * number of elements the grid was sized for
+   */
+  private final int builtSize;
+  /**
+   * indexes of the elements overlapping each cell (row-major order)
+   */
+  private final int[][] cells;
+  /**
+   * number of elements overlapping each cell
+   */
+  private final int[] cellCounts;
+
+  /**
+   * Builds an index over the given elements.
+   *
+   * @param width    width of the indexed area.
+   * @param height   height of the indexed area.
+   * @param elements elements to index.
+   * @param shapeOf  function returning the shape of an element.
+   */
+  ShapeIndex(double width, double height, List<T> elements, Function<T, Shape> shapeOf) {
+    this.elements = new ArrayList<>(elements);
+    int n = elements.size();
+    builtSize = n;
+    shapes = new Shape[n];
+    detached = new boolean[n];
+    double extent = 0;
+    for (int i = 0; i < n; i++) {
+      shapes[i] = shapeOf.apply(elements.get(i));
+      BoundingBox box = shapes[i].getBoundingBox();
+      extent += Math.max(box.width(), box.height());
+    }
+    // aim at about one element per cell, but avoid cells much smaller than elements
+    double side = Math.sqrt(Math.max(width * height, Double.MIN_NORMAL) / Math.max(n, 1));
+    if (n > 0) {
+      side = Math.max(side, extent / n);
+    }
+    int maxCells = MAX_CELLS_PER_ELEMENT * Math.max(n, 1);
+    while (cellsFor(width, side) * (long) cellsFor(height, side) > maxCells) {
+      side *= 2;
+    }
+    cellSize = side;
+    columns = cellsFor(width, side);
+    rows = cellsFor(height, side);
+    cells = new int[columns * rows][];
+    cellCounts = new int[columns * rows];
+    for (int i = 0; i < n; i++) {
+      insert(i);
+    }
+  }
+
+  private static int cellsFor(double length, double side) {
+    return Math.max(1, (int) Math.ceil(length / side));
+  }
+
+  /**
+   * Appends an element to the index.
+   *
+   * @param element the element.
+   * @param shape   the shape of the element.
+   * @return the index of the element.
+   */
+  int add(T element, Shape shape) {
+    int index = elements.size();
+    if (index == shapes.length) {
+      shapes = Arrays.copyOf(shapes, Math.max(2 * index, INITIAL_CELL_CAPACITY));
+      detached = Arrays.copyOf(detached, shapes.length);
+    }
+    elements.add(element);
+    shapes[index] = shape;
+    insert(index);
+    return index;
+  }
+
+  /**
+   * Detaches an element from the cells it overlaps, so that queries ignore it.
+   *
+   * @param element index of the element.
+   */
+  void detach(int element) {
+    if (detached[element]) {
+      return;
+    }
+    BoundingBox box = shapes[element].getBoundingBox();
+    int c0 = column(box.minX()), c1 = column(box.maxX());
+    int r0 = row(box.minY()), r1 = row(box.maxY());
+    for (int r = r0; r <= r1; r++) {
+      for (int c = c0; c <= c1; c++) {
+        int cell = r * columns + c;
+        int[] list = cells[cell];
+        for (int k = 0; k < cellCounts[cell]; k++) {
+          if (list[k] == element) {
+            // order within a cell is irrelevant
+            list[k] = list[--cellCounts[cell]];
+            break;
+          }
+        }
+      }
+    }
+    detached[element] = true;
+    detachedCount++;
+  }
+
+  /**
+   * Attaches again a detached element to the cells it overlaps.
+   *
+   * @param element index of the element.
+   */
+  void attach(int element) {
+    if (detached[element]) {
+      detached[element] = false;
+      detachedCount--;
+      insert(element);
+    }
+  }
+
+  /**
+   * Checks whether an element is detached.
+   *
+   * @param element index of the element.
+   * @return {@code true} if the element is ignored by queries.
+   */
+  boolean isDetached(int element) {
+    return detached[element];
+  }
+
+  /**
+   * Returns the index of an attached element.
+   *
+   * @param element the element.
+   * @param shape   the shape of the element.
+   * @return the index of an attached element equal to the given one, or -1 if there is none.
+   */
+  int indexOf(T element, Shape shape) {
+    BoundingBox box = shape.getBoundingBox();
+    int cell = row(box.minY()) * columns + column(box.minX());
+    int[] list = cells[cell];
+    for (int k = 0; k < cellCounts[cell]; k++) {
+      if (elements.get(list[k]).equals(element)) {
+        return list[k];
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Checks whether the index has been updated so much that building it again would be worthwhile,
+   * either because most elements are detached or because the grid is too coarse for the number of
+   * elements.
+   *
+   * @return {@code true} if the index should be built again.
+   */
+  boolean needsRebuild() {
+    int n = elements.size();
+    return detachedCount > n / 2 || n > MAX_GROWTH * builtSize + 64;
+  }
+
+  private void insert(int element) {
+    BoundingBox box = shapes[element].getBoundingBox();
+    int c0 = column(box.minX()), c1 = column(box.maxX());
+    int r0 = row(box.minY()), r1 = row(box.maxY());
+    for (int r = r0; r <= r1; r++) {
+      for (int c = c0; c <= c1; c++) {
+        int cell = r * columns + c;
+        int[] list = cells[cell];
+        if (list == null) {
+          list = cells[cell] = new int[INITIAL_CELL_CAPACITY];
+        } else if (cellCounts[cell] == list.length) {
+          list = cells[cell] = Arrays.copyOf(list, 2 * list.length);
+        }
+        list[cellCounts[cell]++] = element;
+      }
+    }
+  }
+
+  /**
+   * Returns the column of the cell containing the given x-coordinate. Coordinates outside the
+   * indexed area are clamped to the border cells.
+   */
+  private int column(double x) {
+    int c = (int) Math.floor(x / cellSize);
+    return c < 0 ? 0 : Math.min(c, columns - 1);
+  }
+
+  /**
+   * Returns the row of the cell containing the given y-coordinate. Coordinates outside the
+   * indexed area are clamped to the border cells.
+   */
+  private int row(double y) {
+    int r = (int) Math.floor(y / cellSize);
+    return r < 0 ? 0 : Math.min(r, rows - 1);
+  }
+
+  /**
+   * Returns the number of indexed elements, including detached ones.
+   *
+   * @return the number of indexed elements.
+   */
+  int size() {
+    return elements.size();
+  }
+
+  /**
+   * Checks whether any indexed shape contains a point.
+   *
+   * @param x x-coordinate of point.
+   * @param y y-coordinate of point.
+   * @return {@code true} if point is contained within some indexed shape.
+   */
+  boolean anyContains(double x, double y) {
+    return firstContaining(x, y) >= 0;
+  }
+
+  /**
+   * Returns the index of an element whose shape contains a point.
+   *
+   * @param x x-coordinate of point.
+   * @param y y-coordinate of point.
+   * @return index of the first element (in insertion order) whose shape contains the point, or -1 if there is none.
+   */
+  int firstContaining(double x, double y) {
+    int cell = row(y) * columns + column(x);
+    int[] list = cells[cell];
+    int found = -1;
+    for (int k = 0; k < cellCounts[cell]; k++) {
+      int element = list[k];
+      if ((found < 0 || element < found) && shapes[element].getBoundingBox().contains(x, y)
+          && shapes[element].contains(x, y)) {
+        found = element;
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Returns the index of the element whose shape is nearest to a point, according to signed distance.
+   * Cells are visited in square rings of growing size around the point, until no unvisited cell can
+   * hold a nearer shape.
+   *
+   * @param x x-coordinate of point.
+   * @param y y-coordinate of point.
+   * @return index of the element nearest to the point, or -1 if there are no elements.
+   */
+  int nearest(double x, double y) {
+    int pc = column(x), pr = row(y);
+    int nearest = -1;
+    double best = Double.POSITIVE_INFINITY;
+    int maxRing = Math.max(columns, rows);
+    for (int ring = 0; ring <= maxRing; ring++) {
+      if (ring > 0) {
+        // lower bound on distance from point to cells in this ring
+        double bound = Math.min(Math.min(x - (pc - ring + 1) * cellSize, (pc + ring) * cellSize - x),
+            Math.min(y - (pr - ring + 1) * cellSize, (pr + ring) * cellSize - y));
+        if (Math.max(bound, (ring - 1) * cellSize) > best) {
+          break;
+        }
+      }
+      int r0 = Math.max(pr - ring, 0), r1 = Math.min(pr + ring, rows - 1);
+      for (int r = r0; r <= r1; r++) {
+        boolean borderRow = r == pr - ring || r == pr + ring;
+        int step = borderRow ? 1 : 2 * ring;
+        for (int c = pc - ring; c <= pc + ring; c += step) {
+          if (c < 0 || c >= columns) {
+            continue;
+          }
+          int cell = r * columns + c;
+          int[] list = cells[cell];
+          for (int k = 0; k < cellCounts[cell]; k++) {
+            int element = list[k];
+            Shape shape = shapes[element];
+            if (shape.getBoundingBox().distance(x, y) <= Math.max(best, 0)) {
+              double distance = shape.signedDistance(x, y);
+              if (distance < best || (distance == best && element < nearest)) {
+                best = distance;
+                nearest = element;
+              }
+            }
+          }
+        }
+      }
+    }
+    return nearest;
+  }
+
+  /**
+   * Returns the first point along a ray which lies within some indexed shape.
+   *
+   * @param originX x-coordinate of origin of ray.
+   * @param originY y-coordinate of origin of ray.
+   * @param dirX    x-component of direction of ray.
+   * @param dirY    y-component of direction of ray.
+   * @param maxT    maximum value of parameter {@code t}.
+   * @return the smallest {@code t} in {@code [0, maxT]} such that point {@code (originX + t dirX, originY + t dirY)}
+   * lies within some indexed shape, or {@code Double.POSITIVE_INFINITY} if there is none.
+   * @see #raycast(double, double, double, double, double, double[])
+   */
+  double raycast(double originX, double originY, double dirX, double dirY, double maxT) {
+    double[] time = new double[1];
+    raycast(originX, originY, dirX, dirY, maxT, time);
+    return time[0];
+  }
+
+  /**
+   * Returns the first element whose shape is met by a ray. Cells are traversed in the order the ray
+   * crosses them (Amanatides-Woo), testing only the shapes registered in them, and traversal stops as
+   * soon as no unvisited cell can hold a nearer hit. Since coordinates are clamped to border cells, only
+   * lines between cells are considered when stepping, so parts of the ray outside the indexed area are
+   * also covered.
+   *
+   * @param originX x-coordinate of origin of ray.
+   * @param originY y-coordinate of origin of ray.
+   * @param dirX    x-component of direction of ray.
+   * @param dirY    y-component of direction of ray.
+   * @param maxT    maximum value of parameter {@code t}.
+   * @param time    array where the smallest {@code t} in {@code [0, maxT]} such that point
+   *                {@code (originX + t dirX, originY + t dirY)} lies within the returned element is
+   *                stored at index 0 ({@code Double.POSITIVE_INFINITY} if there is none).
+   * @return index of the element met first (lowest index among those met at the same point), or -1 if
+   * there is none.
+   */
+  int raycast(double originX, double originY, double dirX, double dirY, double maxT, double[] time) {
+    int c = column(originX), r = row(originY);
+    int stepC = dirX > 0 ? 1 : (dirX < 0 ? -1 : 0);
+    int stepR = dirY > 0 ? 1 : (dirY < 0 ? -1 : 0);
+    double nextX = lineCrossing(c, stepC, columns, originX, dirX);
+    double nextY = lineCrossing(r, stepR, rows, originY, dirY);
+    int hit = -1;
+    double best = Double.POSITIVE_INFINITY;
+    while (true) {
+      int cell = r * columns + c;
+      int[] list = cells[cell];
+      for (int k = 0; k < cellCounts[cell]; k++) {
+        int element = list[k];
+        double t = shapes[element].raycast(originX, originY, dirX, dirY, Math.min(best, maxT));
+        if (t < best || (t == best && t <= maxT && element < hit)) {
+          best = t;
+          hit = element;
+        }
+      }
+      double exit = Math.min(nextX, nextY);
+      // keep going on ties, as the next cell may hold a lower-index element met at the same point
+      if (best < exit || exit > maxT || exit == Double.POSITIVE_INFINITY) {
+        time[0] = best;
+        return hit;
+      }
+      if (nextX <= nextY) {
+        c += stepC;
+        nextX = lineCrossing(c, stepC, columns, originX, dirX);
+      } else {
+        r += stepR;
+        nextY = lineCrossing(r, stepR, rows, originY, dirY);
+      }
+    }
+  }
+
+  /**
+   * Returns the first element whose shape is met by a disc moving along a segment. Candidates are the
+   * elements registered in the cells overlapping the bounding box of the swept disc, and their bounding
+   * boxes, inflated by the radius, are checked before their shapes.
+   *
+   * @param x0     x-coordinate of initial center of disc.
+   * @param y0     y-coordinate of initial center of disc.
+   * @param dx     x-component of displacement of disc.
+   * @param dy     y-component of displacement of disc.
+   * @param radius radius of disc.
+   * @param time   array where the fraction of the displacement at which the disc first meets the
+   *               returned element is stored at index 0.
+   * @return index of the element met first (lowest index in case of ties), or -1 if there is none.
+   */
+  int sweepCircle(double x0, double y0, double dx, double dy, double radius, double[] time) {
+    double left = Math.min(x0, x0 + dx) - radius, bottom = Math.min(y0, y0 + dy) - radius;
+    double right = Math.max(x0, x0 + dx) + radius, top = Math.max(y0, y0 + dy) + radius;
+    int c0 = column(left), c1 = column(right);
+    int r0 = row(bottom), r1 = row(top);
+    int hit = -1;
+    double best = Double.POSITIVE_INFINITY;
+    for (int r = r0; r <= r1; r++) {
+      for (int c = c0; c <= c1; c++) {
+        int cell = r * columns + c;
+        int[] list = cells[cell];
+        for (int k = 0; k < cellCounts[cell]; k++) {
+          int element = list[k];
+          BoundingBox box = shapes[element].getBoundingBox();
+          if (!isReferenceCell(box, c, r, c0, r0)) {
+            continue;
+          }
+          double maxT = Math.min(best, 1);
+          BoundingBox inflated = new BoundingBox(box.minX() - radius, box.minY() - radius,
+              box.maxX() + radius, box.maxY() + radius);
+          if (inflated.raycast(x0, y0, dx, dy, maxT) > maxT) {
+            continue;
+          }
+          double t = shapes[element].sweepCircle(x0, y0, dx, dy, radius, maxT);
+          if (t < best || (t == best && t <= 1 && element < hit)) {
+            best = t;
+            hit = element;
+          }
+        }
+      }
+    }
+    time[0] = best;
+    return hit;
+  }
+
+  /**
+   * Returns the parameter at which a ray leaving cell {@code index} (column or row) in direction
+   * {@code step} crosses the next line between cells, or infinity if there is none.
+   */
+  private double lineCrossing(int index, int step, int count, double origin, double direction) {
+    if (step > 0 && index + 1 < count) {
+      return ((index + 1) * cellSize - origin) / direction;
+    } else if (step < 0 && index > 0) {
+      return (index * cellSize - origin) / direction;
+    }
+    return Double.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Returns the shape of an element.
+   *
+   * @param element index of the element.
+   * @return the shape of the element.
+   */
+  Shape shape(int element) {
+    return shapes[element];
+  }
+
+  /**
+   * Returns an element.
+   *
+   * @param element index of the element.
+   * @return the element.
+   */
+  T element(int element) {
+    return elements.get(element);
+  }
+
+  /**
+   * Checks which points in a batch are contained within some indexed shape. Points are first
+   * bucketed by cell (counting sort), so that each shape is tested as a batch against the points
+   * in the cells it overlaps.
+   *
+   * @param xs         x-coordinates of points.
+   * @param ys         y-coordinates of points.
+   * @param n          number of points in the batch.
+   * @param resultBits bitset where bit {@code i % 64} of {@code resultBits[i / 64]} is set iff point
+   *                   {@code i} is contained within some shape.
+   */
+  void containedMask(double[] xs, double[] ys, int n, long[] resultBits) {
+    int words = (n + 63) >>> 6;
+    Arrays.fill(resultBits, 0, words, 0L);
+    int[] cellOf = new int[n];
+    int[] start = new int[cells.length + 1];
+    for (int i = 0; i < n; i++) {
+      int cell = row(ys[i]) * columns + column(xs[i]);
+      cellOf[i] = cell;
+      start[cell + 1]++;
+    }
+    for (int cell = 0; cell < cells.length; cell++) {
+      start[cell + 1] += start[cell];
+    }
+    int[] next = Arrays.copyOf(start, cells.length);
+    int[] order = new int[n];
+    double[] sortedXs = new double[n];
+    double[] sortedYs = new double[n];
+    for (int i = 0; i < n; i++) {
+      int k = next[cellOf[i]]++;
+      order[k] = i;
+      sortedXs[k] = xs[i];
+      sortedYs[k] = ys[i];
+    }
+    long[] sortedBits = new long[words];
+    for (int cell = 0; cell < cells.length; cell++) {
+      if (start[cell] < start[cell + 1]) {
+        int[] list = cells[cell];
+        for (int k = 0; k < cellCounts[cell]; k++) {
+          shapes[list[k]].markContained(sortedXs, sortedYs, start[cell], start[cell + 1], sortedBits);
+        }
+      }
+    }
+    for (int k = 0; k < n; k++) {
+      if ((sortedBits[k >>> 6] & (1L << k)) != 0) {
+        resultBits[order[k] >>> 6] |= 1L << order[k];
+      }
+    }
+  }
+
+  /**
+   * Returns the elements whose shapes intersect a rectangle.
+   *
+   * @param left   X coordinate of bottom left corner of rectangle.
+   * @param bottom Y coordinate of bottom left corner of rectangle.
+   * @param width  width of rectangle.
+   * @param height height of rectangle.
+   * @return the elements whose shapes intersect the rectangle.
+   */
+  List<T> intersecting(double left, double bottom, double width, double height) {
+    List<T> result = new ArrayList<>();
+    int c0 = column(left), c1 = column(left + width);
+    int r0 = row(bottom), r1 = row(bottom + height);
+    for (int r = r0; r <= r1; r++) {
+      for (int c = c0; c <= c1; c++) {
+        int cell = r * columns + c;
+        int[] list = cells[cell];
+        for (int k = 0; k < cellCounts[cell]; k++) {
+          int element = list[k];
+          Shape shape = shapes[element];
+          if (isReferenceCell(shape.getBoundingBox(), c, r, c0, r0)
+              && shape.getBoundingBox().overlaps(left, bottom, width, height)
+              && shape.intersects(left, bottom, width, height)) {
+            result.add(elements.get(element));
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the elements whose shapes lie within a given distance of a point.
+   *
+   * @param x      x-coordinate of point.
+   * @param y      y-coordinate of point.
+   * @param radius maximum distance.
+   * @return the elements whose shapes lie within {@code radius} of the point.
+   */
+  List<T> near(double x, double y, double radius) {
+    List<T> result = new ArrayList<>();
+    int c0 = column(x - radius), c1 = column(x + radius);
+    int r0 = row(y - radius), r1 = row(y + radius);
+    for (int r = r0; r <= r1; r++) {
+      for (int c = c0; c <= c1; c++) {
+        int cell = r * columns + c;
+        int[] list = cells[cell];
+        for (int k = 0; k < cellCounts[cell]; k++) {
+          int element = list[k];
+          BoundingBox box = shapes[element].getBoundingBox();
+          if (isReferenceCell(box, c, r, c0, r0) && box.distance(x, y) <= radius
+              && shapes[element].distance(x, y) <= radius) {
+            result.add(elements.get(element));
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * An element spanning several cells of a query range is only reported from the first of
+   * those cells (lowest column and row), so that results contain no duplicates.
+   */
+  private boolean isReferenceCell(BoundingBox box, int c, int r, int c0, int r0) {
+    return c == Math.max(column(box.minX()), c0) && r == Math.max(row(box.minY()), r0);
+  }
+
+  /**
+   * Estimates the heap memory used by the index, excluding its elements and their shapes
+   * (see {@link MemoryFootprint}).
+   *
+   * @return the estimated number of bytes.
+   */
+  long memoryFootprint() {
+    return MemoryFootprint.object(Double.BYTES + 4 * Integer.BYTES + 5 * MemoryFootprint.REFERENCE)
+        + MemoryFootprint.list(elements.size()) + MemoryFootprint.array(shapes.length, MemoryFootprint.REFERENCE)
+        + MemoryFootprint.array(detached.length, 1) + MemoryFootprint.array(cells)
+        + MemoryFootprint.array(cellCounts.length, Integer.BYTES);
+  }
+}
@@ -0,0 +1,18 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+/**
+ * First contact of a disc moving along a segment with an obstacle.
+ *
+ * @param time     fraction of the displacement (in {@code [0, 1]}) at which contact occurs.
+ * @param contactX x-coordinate of the point of the obstacle touched by the disc.
+ * @param contactY y-coordinate of the point of the obstacle touched by the disc.
+ * @param normalX  x-component of the unit normal of the obstacle at the contact point, pointing
+ *                 towards the center of the disc.
+ * @param normalY  y-component of the unit normal of the obstacle at the contact point, pointing
+ *                 towards the center of the disc.
+ * @param obstacle the obstacle touched by the disc.
+ * @author ppgllrd
+ */
+public record SweepHit(double time, double contactX, double contactY, double normalX, double normalY,
+                       Obstacle obstacle) {
+}
@@ -0,0 +1,695 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+import com.github.cliftonlabs.json_simple.JsonException;
+import com.github.cliftonlabs.json_simple.JsonObject;
+
+import java.awt.geom.Area;
+import java.awt.geom.PathIterator;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * Class to test the classes modeling the environment.
+ *
+ * @author ccottap, ppgllrd.
+ */
+public class TestEnvironment {
+
+  /**
+   * Main method
+   *
+   * @param args command-line arguments (name of JSON file).
+   * @throws FileNotFoundException if JSON file does  not exist.
+   * @throws JsonException         if there is a problem reading the JSON file.
+   */
+  public static void main(String[] args) throws IOException, JsonException {
+    String defaultFilename = Objects.requireNonNull(TestEnvironment.class.getResource("/environment-example.json")).getFile();
+    String filename = (args.length == 0) ? defaultFilename : args[0];
+
+    Environment environment = Environment.fromFile(filename);
+    JsonObject json = environment.toJson();
+    System.out.println(json);
+    System.out.println(environment.jsonSerialized());
+    System.out.println(environment.jsonPrettyPrinted());
+
+    Environment generated = new EnvironmentGenerator(EnvironmentGenerator.Topology.OFFICE_GRID, 4, 20, 8, 1).generate();
+    // polygon walls with edges on the lines between cells, around a corridor one cell wide
+    Domain corridor = new Domain(1, 5, 5);
+    corridor.addObstacle(new Obstacle("", "", new Shape.Polygon(List.of(new Point2D(0, 0), new Point2D(2, 0),
+        new Point2D(2, 4), new Point2D(0, 4)))));
+    corridor.addObstacle(new Obstacle("", "", new Shape.Polygon(List.of(new Point2D(2.5, 0), new Point2D(5, 0),
+        new Point2D(5, 4), new Point2D(2.5, 4)))));
+    // exit with an id that does not fit in a short
+    corridor.addAccess(new Access(40000, "", "", new Shape.Rectangle(2, 4.5, 0.5, 0.5)));
+    checkRaster(corridor, 0.5);
+    // cell sizes are powers of two, so that lines between cells are exact
+    for (Environment checked : List.of(environment, generated)) {
+      for (int id : checked.getDomainsIDs()) {
+        checkRaster(checked.getDomain(id), 0.5);
+        checkRaster(checked.getDomain(id), 0.25);
+      }
+    }
+    System.out.println("rasters checked");
+
+    checkShapes(new Random(1));
+    System.out.println("shapes checked");
+
+    checkCasts(new Random(1));
+    for (Environment checked : List.of(environment, generated)) {
+      for (int id : checked.getDomainsIDs()) {
+        checkDomainCasts(checked.getDomain(id), new Random(id));
+      }
+    }
+    System.out.println("ray casts and swept circles checked");
+
+    checkRouterWithOneSidedGateways();
+    System.out.println("router checked");
+
+    checkNavigationMesh(environment, 0.5);
+    checkNavigationMesh(generated, 0.25);
+    System.out.println("navigation meshes checked");
+
+    checkBinary(environment);
+    checkBinary(generated);
+    System.out.println("binary format checked");
+
+    checkQueryMetrics();
+    System.out.println("query metrics checked");
+
+    for (long seed = 1; seed <= 3; seed++) {
+      checkMutations(seed, 120);
+    }
+    System.out.println("mutations checked");
+  }
+
+  /**
+   * Checks that spatial indexes, distance fields and floor fields updated after random changes to an
+   * environment (adding and removing obstacles, closing and opening accesses and gateways) agree with
+   * those of domains rebuilt from scratch after each change.
+   *
+   * @param seed      seed of the generated environment and of the changes.
+   * @param mutations number of changes.
+   * @throws IllegalStateException if some updated structure differs from the rebuilt one.
+   */
+  static void checkMutations(long seed, int mutations) {
+    Environment environment = new EnvironmentGenerator(EnvironmentGenerator.Topology.OFFICE_GRID, 3, 12, 6, seed)
+        .generate();
+    Random random = new Random(seed);
+    double cellSize = 0.5;
+    List<Integer> domainIds = new ArrayList<>(environment.getDomainsIDs());
+    List<Integer> gatewayIds = new ArrayList<>(environment.getGatewayIDs());
+    Collections.sort(domainIds);
+    Collections.sort(gatewayIds);
+    for (int id : domainIds) {
+      environment.getDomain(id).distanceField(cellSize);
+      environment.getDomain(id).floorFields(cellSize);
+    }
+    for (int mutation = 0; mutation < mutations; mutation++) {
+      Domain domain = environment.getDomain(domainIds.get(random.nextInt(domainIds.size())));
+      List<Obstacle> obstacles = domain.getObstacles();
+      List<Access> accesses = domain.getAccesses();
+      String change;
+      switch (obstacles.isEmpty() ? 0 : random.nextInt(5)) {
+        case 0 -> {
+          domain.addObstacle(new Obstacle("", "", randomShape(domain, random)));
+          change = "obstacle added";
+        }
+        case 1 -> {
+          domain.removeObstacle(obstacles.get(random.nextInt(obstacles.size())));
+          change = "obstacle removed";
+        }
+        case 2 -> {
+          domain.closeAccess(accesses.get(random.nextInt(accesses.size())).id());
+          change = "access closed";
+        }
+        case 3 -> {
+          domain.openAccess(accesses.get(random.nextInt(accesses.size())).id());
+          change = "access opened";
+        }
+        default -> {
+          int gatewayId = gatewayIds.get(random.nextInt(gatewayIds.size()));
+          if (environment.isGatewayOpen(gatewayId)) {
+            environment.closeGateway(gatewayId);
+            change = "gateway closed";
+          } else {
+            environment.openGateway(gatewayId);
+            change = "gateway opened";
+          }
+        }
+      }
+      for (int id : domainIds) {
+        String differing = differingStructure(environment.getDomain(id), cellSize, random);
+        if (differing != null) {
+          throw new IllegalStateException(String.format("TestEnvironment.checkMutations: %s of domain %d differs "
+              + "from the rebuilt one after change %d (%s), seed %d", differing, id, mutation, change, seed));
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns a random rectangle, circle or triangle within a domain.
+   */
+  private static Shape randomShape(Domain domain, Random random) {
+    double x = random.nextDouble() * domain.getWidth(), y = random.nextDouble() * domain.getHeight();
+    double size = 0.5 + 3 * random.nextDouble();
+    return switch (random.nextInt(3)) {
+      case 0 -> new Shape.Rectangle(x, y, size, size * (0.2 + random.nextDouble()));
+      case 1 -> new Shape.Circle(x, y, size / 2);
+      default -> new Shape.Polygon(List.of(new Point2D(x, y), new Point2D(x + size, y + random.nextDouble()),
+          new Point2D(x + random.nextDouble(), y + size)));
+    };
+  }
+
+  /**
+   * Compares the structures of a domain with those of a copy of it built from scratch: distance field,
+   * floor fields, and spatial queries at random points.
+   *
+   * @return the name of the first structure or query differing, or {@code null} if all agree.
+   */
+  private static String differingStructure(Domain domain, double cellSize, Random random) {
+    Domain rebuilt = new Domain(domain.id(), domain.getWidth(), domain.getHeight());
+    domain.getObstacles().forEach(rebuilt::addObstacle);
+    domain.getAccesses().forEach(rebuilt::addAccess);
+    for (Access access : domain.getAccesses()) {
+      if (!domain.isAccessOpen(access.id())) {
+        rebuilt.closeAccess(access.id());
+      }
+    }
+    if (!Arrays.equals(domain.distanceField(cellSize).toArray(), rebuilt.distanceField(cellSize).toArray())) {
+      return "distance field";
+    }
+    FloorFields fields = domain.floorFields(cellSize), rebuiltFields = rebuilt.floorFields(cellSize);
+    if (!Arrays.equals(fields.getAccessIds(), rebuiltFields.getAccessIds())
+        || !Arrays.equals(fields.nearestAccess().toArray(), rebuiltFields.nearestAccess().toArray())) {
+      return "floor fields";
+    }
+    for (int id : fields.getAccessIds()) {
+      if (!Arrays.equals(fields.field(id).toArray(), rebuiltFields.field(id).toArray())) {
+        return "floor field of access " + id;
+      }
+    }
+    for (int i = 0; i < 200; i++) {
+      double x = random.nextDouble() * domain.getWidth(), y = random.nextDouble() * domain.getHeight();
+      double x1 = random.nextDouble() * domain.getWidth(), y1 = random.nextDouble() * domain.getHeight();
+      double side = 5 * random.nextDouble();
+      SweepHit hit = domain.sweepCircle(x, y, x1, y1, 0.3), rebuiltHit = rebuilt.sweepCircle(x, y, x1, y1, 0.3);
+      if (domain.isBlocked(x, y) != rebuilt.isBlocked(x, y)) {
+        return "blocked query";
+      } else if (domain.distanceToObstacles(x, y) != rebuilt.distanceToObstacles(x, y)) {
+        return "nearest obstacle query";
+      } else if (!new HashSet<>(domain.obstaclesIntersecting(x, y, side, side))
+          .equals(new HashSet<>(rebuilt.obstaclesIntersecting(x, y, side, side)))) {
+        return "intersecting obstacles query";
+      } else if (domain.isVisible(x, y, x1, y1) != rebuilt.isVisible(x, y, x1, y1)) {
+        return "visibility query";
+      } else if ((hit == null) != (rebuiltHit == null) || (hit != null && hit.time() != rebuiltHit.time())) {
+        return "swept circle query";
+      } else if (!new HashSet<>(domain.accessesNear(x, y, side))
+          .equals(new HashSet<>(rebuilt.accessesNear(x, y, side)))) {
+        return "near accesses query";
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Checks that paths through navigation meshes do not cross obstacles (except for open accesses over
+   * them), and that passages narrower than a cell are kept.
+   *
+   * @param environment environment whose domains are checked.
+   * @param cellSize    resolution of meshes.
+   * @throws IllegalStateException if some path crosses an obstacle or the narrow passage is not found.
+   */
+  static void checkNavigationMesh(Environment environment, double cellSize) {
+    Domain narrow = new Domain(1, 10, 10);
+    narrow.addObstacle(new Obstacle("", "", new Shape.Rectangle(0, 4, 5 - 0.3 * cellSize, 2)));
+    narrow.addObstacle(new Obstacle("", "", new Shape.Rectangle(5 + 0.3 * cellSize, 4, 5 - 0.3 * cellSize, 2)));
+    narrow.addObstacle(new Obstacle("", "", new Shape.Circle(3, 8, 1)));
+    narrow.addAccess(new Access(1, "", "", new Shape.Rectangle(4, 9.5, 2, 0.5)));
+    if (narrow.navigationMesh(cellSize).path(5, 1, 1) == null) {
+      throw new IllegalStateException("TestEnvironment.checkNavigationMesh: narrow passage not found");
+    }
+    List<Domain> domains = new ArrayList<>(List.of(narrow));
+    for (int id : environment.getDomainsIDs()) {
+      domains.add(environment.getDomain(id));
+    }
+    Random random = new Random(1);
+    for (Domain domain : domains) {
+      NavigationMesh mesh = domain.navigationMesh(cellSize);
+      for (int i = 0; i < 100; i++) {
+        double x = random.nextDouble() * domain.getWidth(), y = random.nextDouble() * domain.getHeight();
+        // points nearer to circles may lie outside the mesh, as they are replaced by polygons around them
+        if (domain.distanceToObstacles(x, y) <= cellSize / 4) {
+          continue;
+        }
+        for (Access access : domain.getAccesses()) {
+          List<Point2D> path = mesh.path(x, y, access.id());
+          for (int k = 0; path != null && k + 1 < path.size(); k++) {
+            Point2D from = path.get(k), to = path.get(k + 1);
+            for (int s = 1; s < 20; s++) {
+              double px = from.getX() + s * (to.getX() - from.getX()) / 20;
+              double py = from.getY() + s * (to.getY() - from.getY()) / 20;
+              if (domain.distanceToObstacles(px, py) < -1e-9
+                  && domain.getAccesses().stream().noneMatch(open -> open.shape().contains(px, py))) {
+                throw new IllegalStateException(String.format("TestEnvironment.checkNavigationMesh: path from (%f, %f) "
+                    + "to access %d of domain %d crosses an obstacle at (%f, %f)", x, y, access.id(), domain.id(), px,
+                    py));
+              }
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Checks that environments decoded from binary format are equal to the encoded ones, that decoding
+   * domains on first access does not change versions, and that corrupt contents are rejected with an
+   * {@code IOException}.
+   *
+   * @param environment the environment to encode.
+   * @throws IOException           if the encoded environment cannot be decoded.
+   * @throws IllegalStateException if decoded environments are not as expected.
+   */
+  static void checkBinary(Environment environment) throws IOException {
+    List<Domain> domains = new ArrayList<>();
+    for (int id : environment.getDomainsIDs()) {
+      domains.add(environment.getDomain(id));
+    }
+    List<Gateway> gateways = new ArrayList<>();
+    for (int id : environment.getGatewayIDs()) {
+      gateways.add(environment.getGateway(id));
+    }
+    ByteBuffer encoded = EnvironmentBinary.encode(domains, gateways);
+    Environment decoded = EnvironmentBinary.decode(encoded.duplicate());
+    long version = decoded.version();
+    for (Domain domain : domains) {
+      if (!domain.equals(decoded.getDomain(domain.id())) || decoded.version() != version) {
+        throw new IllegalStateException(String.format("TestEnvironment.checkBinary: domain %d differs or changed "
+            + "the version when decoded", domain.id()));
+      }
+    }
+    if (!decoded.equals(environment)) {
+      throw new IllegalStateException("TestEnvironment.checkBinary: decoded environment differs");
+    }
+    Random random = new Random(1);
+    for (int trial = 0; trial < 2000; trial++) {
+      ByteBuffer corrupt = ByteBuffer.allocate(encoded.limit()).put(encoded.duplicate()).flip();
+      int at = 4 * random.nextInt(encoded.limit() / 4);
+      corrupt.order(ByteOrder.LITTLE_ENDIAN).putInt(at, random.nextBoolean() ? random.nextInt()
+          : corrupt.getInt(at) + random.nextInt(7) - 3);
+      try {
+        Environment read = EnvironmentBinary.decode(corrupt);
+        for (int id : read.getDomainsIDs()) {
+          read.getDomain(id);
+        }
+      } catch (IOException e) {
+        // rejected as expected
+      } catch (RuntimeException e) {
+        throw new IllegalStateException(String.format("TestEnvironment.checkBinary: int at %d corrupted to %d "
+            + "was not rejected", at, corrupt.getInt(at)), e);
+      }
+    }
+  }
+
+  /**
+   * Checks that building and updating derived structures does not record queries, and that queries made
+   * through the domain or its derived structures are recorded.
+   *
+   * @throws IllegalStateException if queries are not recorded as expected.
+   */
+  static void checkQueryMetrics() {
+    Domain domain = new Domain(1, 50, 50);
+    domain.addObstacle(new Obstacle("", "", new Shape.Rectangle(10, 10, 5, 20)));
+    Obstacle pillar = new Obstacle("", "", new Shape.Circle(30, 30, 2));
+    domain.addObstacle(pillar);
+    domain.addAccess(new Access(1, "", "", new Shape.Rectangle(49, 20, 1, 4)));
+    RecordingQueryMetrics metrics = new RecordingQueryMetrics();
+    domain.setQueryMetrics(metrics);
+    domain.distanceField(0.5);
+    domain.floorFields(0.5);
+    domain.visibilityGraph(0.3).distance(1, 1, 1);
+    domain.removeObstacle(pillar);
+    domain.addObstacle(pillar);
+    if (!metrics.snapshot().isEmpty()) {
+      throw new IllegalStateException("TestEnvironment.checkQueryMetrics: derived structures recorded queries "
+          + metrics.snapshot());
+    }
+    domain.distanceToObstacles(1, 1);
+    domain.sweepCircle(1, 1, 40, 40, 0.3);
+    if (metrics.snapshot().size() != 2) {
+      throw new IllegalStateException("TestEnvironment.checkQueryMetrics: queries not recorded "
+          + metrics.snapshot());
+    }
+  }
+
+  /**
+   * Checks that routers are built for gateways whose access is closed in one of their domains, or
+   * missing from it, and that such gateways are not crossed.
+   *
+   * @throws IllegalStateException if routes are not as expected.
+   */
+  static void checkRouterWithOneSidedGateways() {
+    // both rooms have an exit (gateways 8 and 10) and are joined by gateway 7; gateway 9 joins room 1 to
+    // room 3, which has no access for it
+    Environment environment = new Environment();
+    Domain room1 = new Domain(1, 10, 10), room2 = new Domain(2, 10, 10), room3 = new Domain(3, 10, 10);
+    room1.addAccess(new Access(8, "", "", new Shape.Rectangle(0, 4, 0.5, 2)));
+    room1.addAccess(new Access(7, "", "", new Shape.Rectangle(9.5, 4, 0.5, 2)));
+    room1.addAccess(new Access(9, "", "", new Shape.Rectangle(4, 9.5, 2, 0.5)));
+    room2.addAccess(new Access(7, "", "", new Shape.Rectangle(0, 4, 0.5, 2)));
+    room2.addAccess(new Access(10, "", "", new Shape.Rectangle(9.5, 4, 0.5, 2)));
+    for (Domain room : List.of(room1, room2, room3)) {
+      environment.addDomain(room);
+    }
+    environment.addGateway(new Gateway(7, "", "", 1, 2));
+    environment.addGateway(new Gateway(8, "", "", 1, 0));
+    environment.addGateway(new Gateway(9, "", "", 1, 3));
+    environment.addGateway(new Gateway(10, "", "", 2, 0));
+    for (Domain closing : Arrays.asList(null, room1, room2)) {
+      if (closing != null) {
+        closing.closeAccess(7);
+      }
+      HierarchicalRouter router = environment.router(0.5);
+      List<Integer> choices = router.alternatives(1, 9, 4).stream().map(RouteChoice::gatewayId).toList();
+      List<Integer> expected = closing == null ? List.of(8, 7) : List.of(8);
+      if (!choices.equals(expected) || router.distanceToSafety(3, 9) != Double.POSITIVE_INFINITY) {
+        throw new IllegalStateException(String.format("TestEnvironment.checkRouterWithOneSidedGateways: "
+            + "gateways %s chosen instead of %s with access 7 closed in domain %s", choices, expected,
+            closing == null ? "none" : closing.id()));
+      }
+      if (closing != null) {
+        closing.openAccess(7);
+      }
+    }
+  }
+
+  /**
+   * Shapes used to check containment, intersection, ray casts and swept circles: rectangles, circles,
+   * convex and concave polygons (with few vertices and with enough vertices to be split in bands of
+   * edges) and self-intersecting polygons, along with random triangles.
+   */
+  private static List<Shape> checkedShapes(Random random) {
+    List<Shape> shapes = new ArrayList<>(List.of(
+        new Shape.Rectangle(1, 2, 3, 1.5),
+        new Shape.Rectangle(-0.1, 0.3, 0.7, 2.9),
+        new Shape.Circle(2, 3, 1.5),
+        new Shape.Circle(0.1, -0.2, 0.3),
+        new Shape.Polygon(List.of(new Point2D(0, 0), new Point2D(4, 1), new Point2D(1, 3))),
+        // L shape, clockwise
+        new Shape.Polygon(List.of(new Point2D(0, 0), new Point2D(0, 4), new Point2D(1, 4), new Point2D(1, 1),
+            new Point2D(3, 1), new Point2D(3, 0))),
+        // bow tie and pentagram
+        new Shape.Polygon(List.of(new Point2D(0, 0), new Point2D(2, 2), new Point2D(2, 0), new Point2D(0, 2))),
+        new Shape.Polygon(List.of(new Point2D(0, 3), new Point2D(1.76, -2.43), new Point2D(-2.85, 0.93),
+            new Point2D(2.85, 0.93), new Point2D(-1.76, -2.43)))));
+    // stars with 24 vertices
+    for (double inner : new double[]{0.4, 1}) {
+      List<Point2D> points = new ArrayList<>();
+      for (int k = 0; k < 24; k++) {
+        double radius = k % 2 == 0 ? 2 : 2 * inner, angle = 2 * Math.PI * k / 24;
+        points.add(new Point2D(5 + radius * Math.cos(angle), 5 + radius * Math.sin(angle)));
+      }
+      shapes.add(new Shape.Polygon(points));
+    }
+    Domain domain = new Domain(1, 10, 10);
+    for (int i = 0; i < 20; i++) {
+      shapes.add(randomShape(domain, random));
+    }
+    return shapes;
+  }
+
+  /**
+   * Returns points on the boundary of a shape (vertices, points along edges, and points of circles at
+   * multiples of 45 degrees), along with points slightly off them and random points around the shape.
+   */
+  private static List<Point2D> checkedPoints(Shape shape, Random random) {
+    List<Point2D> boundary = new ArrayList<>();
+    BoundingBox box = shape.getBoundingBox();
+    if (shape instanceof Shape.Circle circle) {
+      for (int k = 0; k < 8; k++) {
+        double angle = Math.PI * k / 4;
+        boundary.add(new Point2D(circle.getX() + circle.getRadius() * Math.cos(angle),
+            circle.getY() + circle.getRadius() * Math.sin(angle)));
+      }
+      boundary.add(new Point2D(circle.getX(), circle.getY()));
+    } else {
+      List<Point2D> vertices = shape instanceof Shape.Polygon polygon ? polygon.getPoints()
+          : List.of(new Point2D(box.minX(), box.minY()), new Point2D(box.maxX(), box.minY()),
+          new Point2D(box.maxX(), box.maxY()), new Point2D(box.minX(), box.maxY()));
+      for (int i = 0; i < vertices.size(); i++) {
+        Point2D from = vertices.get(i), to = vertices.get((i + 1) % vertices.size());
+        for (int k = 0; k < 4; k++) {
+          boundary.add(new Point2D(from.getX() + k * (to.getX() - from.getX()) / 4,
+              from.getY() + k * (to.getY() - from.getY()) / 4));
+        }
+      }
+    }
+    List<Point2D> points = new ArrayList<>();
+    for (Point2D point : boundary) {
+      for (double offset : new double[]{1e-12, 1e-3}) {
+        for (int dx = -1; dx <= 1; dx++) {
+          for (int dy = -1; dy <= 1; dy++) {
+            points.add(new Point2D(point.getX() + dx * offset, point.getY() + dy * offset));
+          }
+        }
+      }
+    }
+    for (int i = 0; i < 200; i++) {
+      points.add(new Point2D(box.minX() - 1 + random.nextDouble() * (box.width() + 2),
+          box.minY() - 1 + random.nextDouble() * (box.height() + 2)));
+    }
+    return points;
+  }
+
+  /**
+   * Checks that containment and intersection tests of shapes agree with those of their AWT shapes at
+   * points on, near and off their boundaries, and for rectangles with a corner at each of those points,
+   * and that areas of polygons agree with those of the regions their AWT shapes enclose.
+   *
+   * @param random source of randomness.
+   * @throws IllegalStateException if some test disagrees.
+   */
+  static void checkShapes(Random random) {
+    double[] sides = {0, 1e-9, 0.5, 2};
+    for (Shape shape : checkedShapes(random)) {
+      java.awt.Shape awt = shape.getAWTShape();
+      if (shape instanceof Shape.Polygon && Math.abs(shape.area() - enclosedArea(awt)) > 1e-9 * shape.area()) {
+        throw new IllegalStateException(String.format("TestEnvironment.checkShapes: area %s of %s differs from "
+            + "AWT area %s", shape.area(), shape.toJson(), enclosedArea(awt)));
+      }
+      for (Point2D point : checkedPoints(shape, random)) {
+        double x = point.getX(), y = point.getY();
+        if (shape.contains(x, y) != awt.contains(x, y)) {
+          throw new IllegalStateException(String.format("TestEnvironment.checkShapes: containment of (%s, %s) "
+              + "in %s differs from AWT", x, y, shape.toJson()));
+        }
+        for (double width : sides) {
+          for (double height : sides) {
+            for (int corner = 0; corner < 4; corner++) {
+              double left = (corner & 1) == 0 ? x : x - width, bottom = (corner & 2) == 0 ? y : y - height;
+              if (shape.intersects(left, bottom, width, height) != awt.intersects(left, bottom, width, height)) {
+                throw new IllegalStateException(String.format("TestEnvironment.checkShapes: intersection of "
+                    + "rectangle (%s, %s, %s, %s) with %s differs from AWT", left, bottom, width, height,
+                    shape.toJson()));
+              }
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Area of the region enclosed by an AWT shape made of line segments, computed from the boundary of its
+   * {@code java.awt.geom.Area}, whose closed paths do not overlap.
+   */
+  private static double enclosedArea(java.awt.Shape shape) {
+    double area = 0, startX = 0, startY = 0, x = 0, y = 0;
+    double[] coordinates = new double[6];
+    for (PathIterator it = new Area(shape).getPathIterator(null); !it.isDone(); it.next()) {
+      switch (it.currentSegment(coordinates)) {
+        case PathIterator.SEG_MOVETO -> {
+          startX = x = coordinates[0];
+          startY = y = coordinates[1];
+        }
+        case PathIterator.SEG_LINETO -> {
+          area += x * coordinates[1] - coordinates[0] * y;
+          x = coordinates[0];
+          y = coordinates[1];
+        }
+        default -> {
+          area += x * startY - startX * y;
+          x = startX;
+          y = startY;
+        }
+      }
+    }
+    return Math.abs(area) / 2;
+  }
+
+  /**
+   * Checks ray casts and swept circles against shapes with those of samples along the rays, for rays
+   * from random origins in random directions and towards the points of the boundaries of shapes.
+   *
+   * @param random source of randomness.
+   * @throws IllegalStateException if some ray cast or swept circle is not the first hit along its ray.
+   */
+  static void checkCasts(Random random) {
+    double maxT = 8;
+    for (Shape shape : checkedShapes(random)) {
+      BoundingBox box = shape.getBoundingBox();
+      List<Point2D> targets = checkedPoints(shape, random);
+      for (int i = 0; i < 300; i++) {
+        double x = box.minX() - 2 + random.nextDouble() * (box.width() + 4);
+        double y = box.minY() - 2 + random.nextDouble() * (box.height() + 4);
+        double dx, dy;
+        if (i % 2 == 0) {
+          double angle = 2 * Math.PI * random.nextDouble();
+          dx = Math.cos(angle);
+          dy = Math.sin(angle);
+        } else {
+          Point2D target = targets.get(random.nextInt(targets.size()));
+          double length = Math.hypot(target.getX() - x, target.getY() - y);
+          dx = (target.getX() - x) / length;
+          dy = (target.getY() - y) / length;
+        }
+        double radius = i % 3 == 0 ? 0 : 0.05 + random.nextDouble();
+        double t = shape.raycast(x, y, dx, dy, maxT);
+        if (!isFirstHit(shape, x, y, dx, dy, 0, maxT, t)) {
+          throw new IllegalStateException(String.format("TestEnvironment.checkCasts: ray from (%s, %s) towards "
+              + "(%s, %s) hits %s at %s", x, y, dx, dy, shape.toJson(), t));
+        }
+        t = shape.sweepCircle(x, y, dx, dy, radius, maxT);
+        if (!isFirstHit(shape, x, y, dx, dy, radius, maxT, t)) {
+          throw new IllegalStateException(String.format("TestEnvironment.checkCasts: circle of radius %s swept "
+              + "from (%s, %s) towards (%s, %s) hits %s at %s", radius, x, y, dx, dy, shape.toJson(), t));
+        }
+      }
+    }
+  }
+
+  /**
+   * Checks whether a parameter is the first one along a ray (with unit direction) at which a shape is
+   * within some distance, comparing with samples along the ray: the shape must be within that distance
+   * at the point for the parameter, and not at samples before it (or anywhere, if there is none).
+   */
+  private static boolean isFirstHit(Shape shape, double x, double y, double dx, double dy, double radius,
+                                    double maxT, double t) {
+    // rays passing through a vertex or tangent to a circle are ill-conditioned, so hits may be off by
+    // about the square root of the precision
+    double tolerance = 1e-6;
+    boolean found = t < Double.POSITIVE_INFINITY;
+    if (found && !(t >= 0 && t <= maxT && shape.signedDistance(x + t * dx, y + t * dy) <= radius + tolerance)) {
+      return false;
+    }
+    double end = found ? t : maxT;
+    int samples = 1000;
+    for (int k = 0; k <= samples; k++) {
+      double s = end * k / samples;
+      if (found && s >= t) {
+        break;
+      }
+      if (shape.signedDistance(x + s * dx, y + s * dy) < radius - tolerance) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Checks the ray casts and swept circles of a domain, answered through its spatial index, against the
+   * first hit among all of its obstacles.
+   *
+   * @param domain the domain.
+   * @param random source of randomness.
+   * @throws IllegalStateException if some answer differs from the first hit among all obstacles.
+   */
+  static void checkDomainCasts(Domain domain, Random random) {
+    double maxDist = Math.max(domain.getWidth(), domain.getHeight()) / 2;
+    double[] angles = new double[16], distances = new double[angles.length];
+    for (int k = 0; k < angles.length; k++) {
+      angles[k] = 2 * Math.PI * k / angles.length;
+    }
+    for (int i = 0; i < 200; i++) {
+      double x = random.nextDouble() * domain.getWidth(), y = random.nextDouble() * domain.getHeight();
+      domain.castRays(x, y, angles, maxDist, distances);
+      for (int k = 0; k < angles.length; k++) {
+        double dx = Math.cos(angles[k]), dy = Math.sin(angles[k]), first = maxDist;
+        for (Obstacle obstacle : domain.getObstacles()) {
+          first = Math.min(first, obstacle.shape().raycast(x, y, dx, dy, maxDist));
+        }
+        if (Math.abs(distances[k] - first) > 1e-9) {
+          throw new IllegalStateException(String.format("TestEnvironment.checkDomainCasts: ray from (%s, %s) at "
+              + "angle %s in domain %d hits at %s instead of %s", x, y, angles[k], domain.id(), distances[k], first));
+        }
+      }
+      double x1 = random.nextDouble() * domain.getWidth(), y1 = random.nextDouble() * domain.getHeight();
+      double radius = 0.1 + 0.5 * random.nextDouble(), first = Double.POSITIVE_INFINITY;
+      for (Obstacle obstacle : domain.getObstacles()) {
+        first = Math.min(first, obstacle.shape().sweepCircle(x, y, x1 - x, y1 - y, radius, 1));
+      }
+      SweepHit hit = domain.sweepCircle(x, y, x1, y1, radius);
+      if ((hit == null) != (first == Double.POSITIVE_INFINITY) || (hit != null && (Math.abs(hit.time() - first) > 1e-9
+          || hit.obstacle().shape().sweepCircle(x, y, x1 - x, y1 - y, radius, 1) != hit.time()))) {
+        throw new IllegalStateException(String.format("TestEnvironment.checkDomainCasts: circle of radius %s swept "
+            + "from (%s, %s) to (%s, %s) in domain %d hits at %s instead of %s", radius, x, y, x1, y1, domain.id(),
+            hit == null ? null : hit.time(), first));
+      }
+    }
+  }
+
+  /**
+   * Checks that every cell of the raster of a domain is labeled as the shapes intersecting it dictate:
+   * with the id of the last open access intersecting it, otherwise as an obstacle if some obstacle
+   * intersects it, otherwise as free. Cells whose expected label changes when they are slightly shrunk
+   * (shapes just touching them, up to rounding) are not checked.
+   *
+   * @param domain   the domain.
+   * @param cellSize side of cells.
+   * @throws IllegalStateException if some cell is not labeled as expected.
+   */
+  static void checkRaster(Domain domain, double cellSize) {
+    Raster raster = domain.rasterize(cellSize);
+    double margin = 1e-9 * cellSize;
+    for (int row = 0; row < raster.getRows(); row++) {
+      for (int column = 0; column < raster.getColumns(); column++) {
+        int expected = expectedLabel(domain, column * cellSize + margin, row * cellSize + margin,
+            cellSize - 2 * margin);
+        int exact = expectedLabel(domain, column * cellSize, row * cellSize, cellSize);
+        if (expected == exact && raster.label(column, row) != expected) {
+          throw new IllegalStateException(String.format("TestEnvironment.checkRaster: cell (%d, %d) of domain %d "
+              + "labeled %d instead of %d", column, row, domain.id(), raster.label(column, row), expected));
+        }
+      }
+    }
+  }
+
+  /**
+   * Label of a square cell of a domain, according to the shapes intersecting it.
+   */
+  private static int expectedLabel(Domain domain, double left, double bottom, double side) {
+    int label = Raster.FREE;
+    for (Obstacle obstacle : domain.getObstacles()) {
+      if (obstacle.shape().intersects(left, bottom, side, side)) {
+        label = Raster.OBSTACLE;
+      }
+    }
+    for (Access access : domain.getAccesses()) {
+      if (domain.isAccessOpen(access.id()) && access.shape().intersects(left, bottom, side, side)) {
+        label = access.id();
+      }
+    }
+    return label;
+  }
+}
@@ -0,0 +1,483 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.random.RandomGenerator;
+
+/**
+ * Triangulation of a simple polygon (possibly with holes) by ear clipping, along with an alias table over
+ * the areas of its triangles, so that points uniformly distributed within the polygon can be drawn in
+ * constant time. Polygons whose boundaries intersect themselves are not triangulated.
+ *
+ * @author ppgllrd
+ */
+final class Triangulation {
+  /**
+   * vertex indexes of triangles, three per triangle
+   */
+  private final int[] triangles;
+  /**
+   * x-coordinates of vertices
+   */
+  private final double[] xs;
+  /**
+   * y-coordinates of vertices
+   */
+  private final double[] ys;
+  /**
+   * total area of triangles
+   */
+  private final double area;
+  /**
+   * probability of keeping each triangle once it has been drawn (alias method)
+   */
+  private final double[] probabilities;
+  /**
+   * triangle drawn instead of each triangle when it is not kept (alias method)
+   */
+  private final int[] aliases;
+
+  private Triangulation(double[] xs, double[] ys, int[] triangles) {
+    this.xs = xs;
+    this.ys = ys;
+    this.triangles = triangles;
+    int m = triangles.length / 3;
+    double[] areas = new double[m];
+    double total = 0;
+    for (int t = 0; t < m; t++) {
+      int a = triangles[3 * t], b = triangles[3 * t + 1], c = triangles[3 * t + 2];
+      areas[t] = Math.abs(cross(xs, ys, a, b, c)) / 2;
+      total += areas[t];
+    }
+    area = total;
+    // Vose's alias method
+    probabilities = new double[m];
+    aliases = new int[m];
+    int[] small = new int[m], large = new int[m];
+    int smalls = 0, larges = 0;
+    for (int t = 0; t < m; t++) {
+      probabilities[t] = total > 0 ? areas[t] * m / total : 1;
+      if (probabilities[t] < 1) {
+        small[smalls++] = t;
+      } else {
+        large[larges++] = t;
+      }
+    }
+    while (smalls > 0 && larges > 0) {
+      int less = small[--smalls], more = large[--larges];
+      aliases[less] = more;
+      probabilities[more] += probabilities[less] - 1;
+      if (probabilities[more] < 1) {
+        small[smalls++] = more;
+      } else {
+        large[larges++] = more;
+      }
+    }
+    // remaining ones are 1 up to rounding
+    while (larges > 0) {
+      probabilities[large[--larges]] = 1;
+    }
+    while (smalls > 0) {
+      probabilities[small[--smalls]] = 1;
+    }
+  }
+
+  /**
+   * Triangulates a polygon. Repeated consecutive vertices are ignored.
+   *
+   * @param vertexXs x-coordinates of vertices of polygon.
+   * @param vertexYs y-coordinates of vertices of polygon.
+   * @return the triangulation of the polygon, or {@code null} if its boundary intersects itself.
+   */
+  static Triangulation of(double[] vertexXs, double[] vertexYs) {
+    double[][] ring = withoutRepeats(vertexXs, vertexYs);
+    double[] xs = ring[0], ys = ring[1];
+    if (xs.length < 3 || !isSimple(xs, ys)) {
+      return null;
+    }
+    int[] triangles = clipEars(xs, ys);
+    return triangles == null ? null : new Triangulation(xs, ys, triangles);
+  }
+
+  /**
+   * Triangulates a polygon with holes. Each hole is joined to the outer boundary through a pair of
+   * coincident edges (a bridge from its rightmost vertex to a visible vertex of the boundary), and ears
+   * are clipped from the resulting polygon. Triangles refer to distinct vertices, so triangles on both
+   * sides of a bridge share an edge. Holes must lie within the outer boundary without crossing it or
+   * each other, and repeated consecutive vertices are ignored.
+   *
+   * @param outerXs x-coordinates of vertices of the outer boundary.
+   * @param outerYs y-coordinates of vertices of the outer boundary.
+   * @param holeXs  x-coordinates of vertices of each hole.
+   * @param holeYs  y-coordinates of vertices of each hole.
+   * @return the triangulation of the polygon, or {@code null} if no ear is left due to rounding.
+   */
+  static Triangulation of(double[] outerXs, double[] outerYs, List<double[]> holeXs, List<double[]> holeYs) {
+    double[][] outer = oriented(withoutRepeats(outerXs, outerYs), true);
+    if (outer[0].length < 3) {
+      return null;
+    }
+    List<double[][]> holes = new ArrayList<>();
+    for (int h = 0; h < holeXs.size(); h++) {
+      double[][] hole = oriented(withoutRepeats(holeXs.get(h), holeYs.get(h)), false);
+      if (hole[0].length >= 3) {
+        holes.add(hole);
+      }
+    }
+    // holes are bridged from right to left, so that bridges do not cross holes not bridged yet
+    holes.sort(Comparator.comparingDouble((double[][] hole) -> Arrays.stream(hole[0]).max().orElseThrow())
+        .reversed());
+    double[] xs = outer[0], ys = outer[1];
+    for (double[][] hole : holes) {
+      double[][] bridged = bridge(xs, ys, hole[0], hole[1]);
+      if (bridged == null) {
+        return null;
+      }
+      xs = bridged[0];
+      ys = bridged[1];
+    }
+    int[] triangles = clipEars(xs, ys);
+    if (triangles == null) {
+      return null;
+    }
+    // vertices at both ends of bridges are repeated: keep only their first occurrences
+    Map<Point2D, Integer> distinct = new HashMap<>();
+    int[] vertexOf = new int[xs.length];
+    int n = 0;
+    for (int i = 0; i < xs.length; i++) {
+      Integer vertex = distinct.putIfAbsent(new Point2D(xs[i], ys[i]), n);
+      if (vertex == null) {
+        xs[n] = xs[i];
+        ys[n] = ys[i];
+        vertex = n++;
+      }
+      vertexOf[i] = vertex;
+    }
+    for (int k = 0; k < triangles.length; k++) {
+      triangles[k] = vertexOf[triangles[k]];
+    }
+    return new Triangulation(Arrays.copyOf(xs, n), Arrays.copyOf(ys, n), triangles);
+  }
+
+  /**
+   * Removes repeated consecutive vertices of a polygon, returning its x and y-coordinates.
+   */
+  private static double[][] withoutRepeats(double[] vertexXs, double[] vertexYs) {
+    double[] xs = new double[vertexXs.length], ys = new double[vertexYs.length];
+    int n = 0;
+    for (int i = 0; i < vertexXs.length; i++) {
+      if (n == 0 || vertexXs[i] != xs[n - 1] || vertexYs[i] != ys[n - 1]) {
+        xs[n] = vertexXs[i];
+        ys[n] = vertexYs[i];
+        n++;
+      }
+    }
+    while (n > 1 && xs[n - 1] == xs[0] && ys[n - 1] == ys[0]) {
+      n--;
+    }
+    return new double[][]{Arrays.copyOf(xs, n), Arrays.copyOf(ys, n)};
+  }
+
+  /**
+   * Reverses the vertices of a polygon if needed, so that they are in counterclockwise order (or clockwise).
+   */
+  private static double[][] oriented(double[][] ring, boolean counterclockwise) {
+    double[] xs = ring[0], ys = ring[1];
+    if ((signedArea(xs, ys) > 0) != counterclockwise) {
+      for (int i = 0, j = xs.length - 1; i < j; i++, j--) {
+        double x = xs[i], y = ys[i];
+        xs[i] = xs[j];
+        ys[i] = ys[j];
+        xs[j] = x;
+        ys[j] = y;
+      }
+    }
+    return ring;
+  }
+
+  /**
+   * Returns the signed area of a polygon (positive if its vertices are in counterclockwise order).
+   *
+   * @param xs x-coordinates of vertices of polygon.
+   * @param ys y-coordinates of vertices of polygon.
+   * @return the signed area of the polygon.
+   */
+  static double signedArea(double[] xs, double[] ys) {
+    double signedArea = 0;
+    for (int i = 0, j = xs.length - 1; i < xs.length; j = i++) {
+      signedArea += xs[j] * ys[i] - xs[i] * ys[j];
+    }
+    return signedArea / 2;
+  }
+
+  /**
+   * Joins a clockwise hole to a counterclockwise polygon containing it (Eberly's method). A ray from the
+   * rightmost vertex of the hole towards increasing x meets the nearest edge of the polygon, whose
+   * rightmost endpoint is visible from the vertex unless some reflex vertex lies within the triangle they
+   * form with the point met. In that case, the reflex vertex making the smallest angle with the ray is.
+   *
+   * @return the x and y-coordinates of the vertices of the joined polygon, or {@code null} if the ray
+   * meets no edge.
+   */
+  private static double[][] bridge(double[] xs, double[] ys, double[] holeXs, double[] holeYs) {
+    int n = xs.length, m = holeXs.length;
+    int from = 0;
+    for (int k = 1; k < m; k++) {
+      if (holeXs[k] > holeXs[from]) {
+        from = k;
+      }
+    }
+    double mx = holeXs[from], my = holeYs[from];
+    int to = -1;
+    double nearestX = Double.POSITIVE_INFINITY;
+    for (int i = 0, j = n - 1; i < n; j = i++) {
+      // only edges going upwards (counterclockwise polygon) are met from inside
+      if (ys[j] <= my && my <= ys[i] && ys[j] != ys[i]) {
+        double x = xs[j] + (my - ys[j]) * (xs[i] - xs[j]) / (ys[i] - ys[j]);
+        if (x >= mx && x < nearestX) {
+          nearestX = x;
+          to = x == xs[i] && my == ys[i] ? i : x == xs[j] && my == ys[j] ? j : xs[i] > xs[j] ? i : j;
+        }
+      }
+    }
+    if (to < 0) {
+      return null;
+    }
+    if (nearestX != xs[to] || my != ys[to]) {
+      // reflex vertices within the triangle formed by the hole vertex, the point met and the endpoint
+      double px = xs[to], py = ys[to];
+      double bestAngle = Double.POSITIVE_INFINITY, bestDistance = Double.POSITIVE_INFINITY;
+      int best = to;
+      for (int i = 0; i < n; i++) {
+        int previous = (i + n - 1) % n, next = (i + 1) % n;
+        if (i == to || cross(xs, ys, previous, i, next) >= 0) {
+          continue;
+        }
+        double sign = Math.signum(orientation(mx, my, nearestX, my, px, py));
+        if (sign * orientation(mx, my, nearestX, my, xs[i], ys[i]) >= 0
+            && sign * orientation(nearestX, my, px, py, xs[i], ys[i]) >= 0
+            && sign * orientation(px, py, mx, my, xs[i], ys[i]) >= 0) {
+          double angle = Math.abs(ys[i] - my) / (xs[i] - mx), distance = Math.hypot(xs[i] - mx, ys[i] - my);
+          if (xs[i] > mx && (angle < bestAngle || (angle == bestAngle && distance < bestDistance))) {
+            bestAngle = angle;
+            bestDistance = distance;
+            best = i;
+          }
+        }
+      }
+      to = best;
+    }
+    // polygon up to the bridged vertex, the whole hole from its rightmost vertex, and back
+    double[] bridgedXs = new double[n + m + 2], bridgedYs = new double[n + m + 2];
+    int k = 0;
+    for (int i = 0; i <= to; i++, k++) {
+      bridgedXs[k] = xs[i];
+      bridgedYs[k] = ys[i];
+    }
+    for (int i = 0; i <= m; i++, k++) {
+      bridgedXs[k] = holeXs[(from + i) % m];
+      bridgedYs[k] = holeYs[(from + i) % m];
+    }
+    for (int i = to; i < n; i++, k++) {
+      bridgedXs[k] = xs[i];
+      bridgedYs[k] = ys[i];
+    }
+    return new double[][]{bridgedXs, bridgedYs};
+  }
+
+  /**
+   * Clips ears of a polygon without repeated consecutive vertices, whose boundary may touch itself but
+   * not cross itself.
+   *
+   * @return vertex indexes of triangles, three per triangle, or {@code null} if no ear is left due to
+   * rounding.
+   */
+  private static int[] clipEars(double[] xs, double[] ys) {
+    int n = xs.length;
+    double orientation = signedArea(xs, ys) >= 0 ? 1 : -1;
+    int[] previous = new int[n], next = new int[n];
+    for (int i = 0; i < n; i++) {
+      previous[i] = (i + n - 1) % n;
+      next[i] = (i + 1) % n;
+    }
+    int[] triangles = new int[3 * (n - 2)];
+    int count = 0;
+    int remaining = n, vertex = 0, stalled = 0;
+    while (remaining > 3) {
+      int a = previous[vertex], c = next[vertex];
+      double turn = orientation * cross(xs, ys, a, vertex, c);
+      boolean degenerate = turn == 0;
+      if (degenerate || (turn > 0 && isEar(xs, ys, orientation, next, a, vertex, c))) {
+        if (!degenerate) {
+          triangles[count++] = a;
+          triangles[count++] = vertex;
+          triangles[count++] = c;
+        }
+        next[a] = c;
+        previous[c] = a;
+        remaining--;
+        stalled = 0;
+        vertex = c;
+      } else if (++stalled > remaining) {
+        // no ear left, due to rounding
+        return null;
+      } else {
+        vertex = next[vertex];
+      }
+    }
+    int a = previous[vertex], c = next[vertex];
+    if (cross(xs, ys, a, vertex, c) != 0) {
+      triangles[count++] = a;
+      triangles[count++] = vertex;
+      triangles[count++] = c;
+    }
+    return Arrays.copyOf(triangles, count);
+  }
+
+  /**
+   * Checks whether a convex vertex {@code b} forms an ear with its neighbors {@code a} and {@code c},
+   * i.e. whether no other remaining vertex lies within the triangle they form.
+   */
+  private static boolean isEar(double[] xs, double[] ys, double orientation, int[] next, int a, int b, int c) {
+    for (int p = next[c]; p != a; p = next[p]) {
+      if ((xs[p] == xs[a] && ys[p] == ys[a]) || (xs[p] == xs[b] && ys[p] == ys[b])
+          || (xs[p] == xs[c] && ys[p] == ys[c])) {
+        continue;
+      }
+      if (orientation * cross(xs, ys, a, b, p) >= 0 && orientation * cross(xs, ys, b, c, p) >= 0
+          && orientation * cross(xs, ys, c, a, p) >= 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Checks whether no two non-adjacent edges of a polygon meet.
+   */
+  private static boolean isSimple(double[] xs, double[] ys) {
+    int n = xs.length;
+    for (int i = 0; i < n; i++) {
+      int i1 = (i + 1) % n;
+      for (int j = i + 2; j < n; j++) {
+        int j1 = (j + 1) % n;
+        if (j1 == i) {
+          continue;
+        }
+        if (segmentsMeet(xs[i], ys[i], xs[i1], ys[i1], xs[j], ys[j], xs[j1], ys[j1])) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static boolean segmentsMeet(double ax, double ay, double bx, double by,
+                                      double cx, double cy, double dx, double dy) {
+    if (Math.max(ax, bx) < Math.min(cx, dx) || Math.max(cx, dx) < Math.min(ax, bx)
+        || Math.max(ay, by) < Math.min(cy, dy) || Math.max(cy, dy) < Math.min(ay, by)) {
+      return false;
+    }
+    double d1 = orientation(cx, cy, dx, dy, ax, ay), d2 = orientation(cx, cy, dx, dy, bx, by);
+    double d3 = orientation(ax, ay, bx, by, cx, cy), d4 = orientation(ax, ay, bx, by, dx, dy);
+    return Math.signum(d1) * Math.signum(d2) <= 0 && Math.signum(d3) * Math.signum(d4) <= 0;
+  }
+
+  private static double orientation(double ax, double ay, double bx, double by, double px, double py) {
+    return (bx - ax) * (py - ay) - (by - ay) * (px - ax);
+  }
+
+  private static double cross(double[] xs, double[] ys, int a, int b, int c) {
+    return orientation(xs[a], ys[a], xs[b], ys[b], xs[c], ys[c]);
+  }
+
+  /**
+   * Returns a vertex of a triangle.
+   *
+   * @param triangle the index of the triangle.
+   * @param corner   0, 1 or 2 (vertices of triangles are in the same order as those of the polygon).
+   * @return the index of the vertex.
+   */
+  int vertex(int triangle, int corner) {
+    return triangles[3 * triangle + corner];
+  }
+
+  /**
+   * Returns the x-coordinate of a vertex.
+   *
+   * @param vertex the index of the vertex.
+   * @return the x-coordinate of the vertex.
+   */
+  double x(int vertex) {
+    return xs[vertex];
+  }
+
+  /**
+   * Returns the y-coordinate of a vertex.
+   *
+   * @param vertex the index of the vertex.
+   * @return the y-coordinate of the vertex.
+   */
+  double y(int vertex) {
+    return ys[vertex];
+  }
+
+  /**
+   * Returns the number of triangles.
+   *
+   * @return the number of triangles.
+   */
+  int size() {
+    return triangles.length / 3;
+  }
+
+  /**
+   * Returns the area of the triangulated polygon.
+   *
+   * @return the area of the polygon.
+   */
+  double area() {
+    return area;
+  }
+
+  /**
+   * Returns a point uniformly distributed within the triangulated polygon. A triangle is drawn with
+   * probability proportional to its area (alias method), and then a point uniformly distributed
+   * within it.
+   *
+   * @param random source of randomness.
+   * @return a random point within the polygon.
+   */
+  Point2D randomPoint(RandomGenerator random) {
+    int t = random.nextInt(probabilities.length);
+    if (random.nextDouble() >= probabilities[t]) {
+      t = aliases[t];
+    }
+    int a = triangles[3 * t], b = triangles[3 * t + 1], c = triangles[3 * t + 2];
+    double u = random.nextDouble(), v = random.nextDouble();
+    if (u + v > 1) {
+      u = 1 - u;
+      v = 1 - v;
+    }
+    return new Point2D(xs[a] + u * (xs[b] - xs[a]) + v * (xs[c] - xs[a]),
+        ys[a] + u * (ys[b] - ys[a]) + v * (ys[c] - ys[a]));
+  }
+
+  /**
+   * Estimates the heap memory used by the triangulation, including its own copy of the coordinates of
+   * vertices (see {@link MemoryFootprint}).
+   *
+   * @return the estimated number of bytes.
+   */
+  long memoryFootprint() {
+    return MemoryFootprint.object(Double.BYTES + 5 * MemoryFootprint.REFERENCE)
+        + 2 * MemoryFootprint.array(xs.length, Double.BYTES)
+        + MemoryFootprint.array(triangles.length, Integer.BYTES)
+        + MemoryFootprint.array(probabilities.length, Double.BYTES)
+        + MemoryFootprint.array(aliases.length, Integer.BYTES);
+  }
+}
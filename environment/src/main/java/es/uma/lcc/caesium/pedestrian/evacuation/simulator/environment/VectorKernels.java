@@ -0,0 +1,61 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vectorized containment kernels. This class must only be loaded if the
+ * {@code jdk.incubator.vector} module is present (see {@link BatchKernels#VECTORIZED}), which loads it
+ * reflectively. It is compiled on its own, with that module, so that the rest of the sources are not.
+ *
+ * @author ppgllrd
+ */
+final class VectorKernels implements BatchKernels.Vectorized {
+  private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+  VectorKernels() {
+  }
+
+  /**
+   * Vectorized part of {@link BatchKernels#markInCircle}.
+   *
+   * @return index of first point not processed.
+   */
+  @Override
+  public int markInCircle(double[] xs, double[] ys, int from, int to,
+                          double left, double bottom, double diameter, long[] bits) {
+    int i = from;
+    int upper = from + SPECIES.loopBound(to - from);
+    for (; i < upper; i += SPECIES.length()) {
+      DoubleVector normX = DoubleVector.fromArray(SPECIES, xs, i).sub(left).div(diameter).sub(0.5);
+      DoubleVector normY = DoubleVector.fromArray(SPECIES, ys, i).sub(bottom).div(diameter).sub(0.5);
+      VectorMask<Double> inside = normX.mul(normX).add(normY.mul(normY)).compare(VectorOperators.LT, 0.25);
+      BatchKernels.orBits(bits, i, inside.toLong(), SPECIES.length());
+    }
+    return i;
+  }
+
+  /**
+   * Vectorized part of {@link BatchKernels#markInRectangle}.
+   *
+   * @return index of first point not processed.
+   */
+  @Override
+  public int markInRectangle(double[] xs, double[] ys, int from, int to,
+                             double left, double bottom, double right, double top, long[] bits) {
+    int i = from;
+    int upper = from + SPECIES.loopBound(to - from);
+    for (; i < upper; i += SPECIES.length()) {
+      DoubleVector x = DoubleVector.fromArray(SPECIES, xs, i);
+      DoubleVector y = DoubleVector.fromArray(SPECIES, ys, i);
+      VectorMask<Double> inside = x.compare(VectorOperators.GE, left)
+          .and(y.compare(VectorOperators.GE, bottom))
+          .and(x.compare(VectorOperators.LT, right))
+          .and(y.compare(VectorOperators.LT, top));
+      BatchKernels.orBits(bits, i, inside.toLong(), SPECIES.length());
+    }
+    return i;
+  }
+}
@@ -0,0 +1,781 @@
+package es.uma.lcc.caesium.pedestrian.evacuation.simulator.environment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Visibility graph of a domain, for any-angle shortest paths among obstacles. Obstacles are inflated
+ * by a clearance (e.g. the radius of pedestrians), and nodes are placed at the convex corners of
+ * inflated polygons and rectangles, at the corners of octagons circumscribed around inflated circles
+ * (whose sides are tangent to them), and at a point of each access. Two nodes are joined if the segment
+ * between them is tangent to the obstacles at both ends and a disc with the clearance radius can move
+ * along it without meeting any obstacle.
+ * <p>
+ * Edges and tables with the walking distance from each node to each access (along with the next node
+ * towards it) are computed when the graph is built, so that routing from a point to an access only
+ * requires finding the best reachable node. For each access, a grid over the domain keeps in each cell
+ * the few nodes with the smallest lower bounds on the walking distance from points in the cell, so that
+ * a query only checks the visibility of those, and falls back to the other nodes when none of them
+ * proves to be the best one. Visibility queries use the spatial index of obstacles of a frozen snapshot
+ * of the domain taken when the graph is built, so later changes to the domain do not affect the graph,
+ * and segments crossing cells that lie within the clearance of an obstacle are rejected before sweeping
+ * the index. Visibility graphs are immutable, and can be queried concurrently.
+ *
+ * @author ppgllrd
+ */
+public final class VisibilityGraph {
+  /**
+   * relative tolerance on clearance when checking edges, so that edges running along inflated obstacles
+   * are not rejected due to rounding
+   */
+  private static final double SLACK = 1e-6;
+  /**
+   * number of candidate nodes kept for each cell of the grid used to find the best node from a point
+   */
+  private static final int CANDIDATES = 16;
+
+  /**
+   * version of the domain the graph was built for
+   */
+  private final long version;
+  /**
+   * frozen snapshot of the domain the graph was built for
+   */
+  private final Domain domain;
+  /**
+   * whether the snapshot was taken by the graph, rather than being the domain it was built for
+   */
+  private final boolean ownsSnapshot;
+  /**
+   * distance kept from obstacles
+   */
+  private final double clearance;
+  /**
+   * coordinates of nodes
+   */
+  private final double[] xs, ys;
+  /**
+   * start of the neighbors of each node
+   */
+  private final int[] edgeOffsets;
+  /**
+   * neighbors of each node
+   */
+  private final int[] edgeTargets;
+  /**
+   * cells within the clearance of obstacles
+   */
+  private final BlockedCells blockedCells;
+  /**
+   * side of cells of the grid of candidate nodes
+   */
+  private final double cellSize;
+  /**
+   * number of columns and rows of the grid of candidate nodes
+   */
+  private final int columns, rows;
+  /**
+   * distance tables to each access id
+   */
+  private final Map<Integer, Table> tables;
+
+  /**
+   * Walking distance from each node to the nearest access with some id, and next node on the way
+   * ({@code -1} for nodes of the access). Nodes from which the access can be reached are also kept by
+   * increasing walking distance, and each cell of the grid keeps {@code candidateCount} of them, by
+   * increasing lower bound on the walking distance from points in the cell, along with a cutoff no
+   * larger than the lower bounds of the nodes left out.
+   */
+  private record Table(float[] distances, int[] next, int[] byDistance, int candidateCount, int[] candidates,
+                       float[] cutoffs) {
+  }
+
+  private VisibilityGraph(Domain domain, boolean ownsSnapshot, double clearance, double[] xs, double[] ys,
+                          int[] edgeOffsets, int[] edgeTargets, Map<Integer, int[]> accessNodes,
+                          BlockedCells blockedCells) {
+    this.version = domain.version();
+    this.domain = domain;
+    this.ownsSnapshot = ownsSnapshot;
+    this.clearance = clearance;
+    this.xs = xs;
+    this.ys = ys;
+    this.edgeOffsets = edgeOffsets;
+    this.edgeTargets = edgeTargets;
+    this.blockedCells = blockedCells;
+    // about one cell per node
+    double width = domain.getWidth(), height = domain.getHeight();
+    cellSize = Math.max(clearance, Math.sqrt(width * height / Math.max(1, xs.length)));
+    columns = Math.max(1, (int) Math.ceil(width / cellSize));
+    rows = Math.max(1, (int) Math.ceil(height / cellSize));
+    tables = new HashMap<>();
+    accessNodes.forEach((id, nodes) -> tables.put(id, table(nodes)));
+  }
+
+  /**
+   * Builds the visibility graph of a domain.
+   *
+   * @param source    the domain.
+   * @param clearance distance kept from obstacles.
+   * @return the visibility graph of the domain.
+   */
+  static VisibilityGraph of(Domain source, double clearance) {
+    if (!(clearance > 0)) {
+      throw new IllegalArgumentException(String.format("VisibilityGraph.of: invalid clearance %f", clearance));
+    }
+    Domain domain = source.freeze(QueryMetrics.NOOP);
+    List<double[]> nodes = new ArrayList<>();
+    // corners of inflated obstacles, along with their neighbors on the same boundary
+    for (Obstacle obstacle : domain.getObstacles()) {
+      double[][] ring = inflatedRing(obstacle.shape(), clearance);
+      double[] ringXs = ring[0], ringYs = ring[1], convex = ring[2];
+      int n = ringXs.length;
+      for (int i = 0; i < n; i++) {
+        double x = ringXs[i], y = ringYs[i];
+        if (convex[i] != 0 && x >= 0 && x <= domain.getWidth() && y >= 0 && y <= domain.getHeight()
+            && domain.signedDistance(x, y) >= clearance * (1 - SLACK)) {
+          int previous = (i + n - 1) % n, next = (i + 1) % n;
+          nodes.add(new double[]{x, y, ringXs[previous], ringYs[previous], ringXs[next], ringYs[next]});
+        }
+      }
+    }
+    int corners = nodes.size();
+    // a point of each open access
+    Map<Integer, List<Integer>> accessNodeLists = new HashMap<>();
+    for (Access access : domain.getAccesses()) {
+      if (domain.isAccessOpen(access.id())) {
+        Point2D point = access.shape().center();
+        accessNodeLists.computeIfAbsent(access.id(), id -> new ArrayList<>()).add(nodes.size());
+        nodes.add(new double[]{point.getX(), point.getY()});
+      }
+    }
+
+    int n = nodes.size();
+    double[] xs = new double[n], ys = new double[n];
+    for (int i = 0; i < n; i++) {
+      xs[i] = nodes.get(i)[0];
+      ys[i] = nodes.get(i)[1];
+    }
+    List<List<Integer>> neighbors = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      neighbors.add(new ArrayList<>());
+    }
+    double radius = clearance * (1 - SLACK);
+    BlockedCells blockedCells = new BlockedCells(domain, radius);
+    for (int i = 0; i < n; i++) {
+      for (int j = i + 1; j < n; j++) {
+        if ((i < corners && !isTangent(nodes.get(i), xs[j], ys[j]))
+            || (j < corners && !isTangent(nodes.get(j), xs[i], ys[i]))
+            || blockedCells.crosses(xs[i], ys[i], xs[j], ys[j])) {
+          continue;
+        }
+        if (domain.sweep(xs[i], ys[i], xs[j], ys[j], radius) == null) {
+          neighbors.get(i).add(j);
+          neighbors.get(j).add(i);
+        }
+      }
+    }
+    int[] edgeOffsets = new int[n + 1];
+    for (int i = 0; i < n; i++) {
+      edgeOffsets[i + 1] = edgeOffsets[i] + neighbors.get(i).size();
+    }
+    int[] edgeTargets = new int[edgeOffsets[n]];
+    for (int i = 0; i < n; i++) {
+      int k = edgeOffsets[i];
+      for (int j : neighbors.get(i)) {
+        edgeTargets[k++] = j;
+      }
+    }
+    Map<Integer, int[]> accessNodes = new HashMap<>();
+    accessNodeLists.forEach((id, list) -> accessNodes.put(id, list.stream().mapToInt(Integer::intValue).toArray()));
+    return new VisibilityGraph(domain, domain != source, clearance, xs, ys, edgeOffsets, edgeTargets, accessNodes,
+        blockedCells);
+  }
+
+  /**
+   * Grid of square cells marking those whose points are all closer than some radius to an obstacle, so
+   * that a disc with that radius moving along a segment that crosses any of them must meet an obstacle.
+   * A cell is marked if the signed distance from its center to an obstacle is smaller than the radius
+   * minus half its diagonal.
+   */
+  private static final class BlockedCells {
+    /**
+     * maximum number of cells in the grid
+     */
+    private static final int MAX_CELLS = 1 << 22;
+
+    /**
+     * side of cells
+     */
+    private final double cellSize;
+    /**
+     * number of columns and rows of the grid
+     */
+    private final int columns, rows;
+    /**
+     * marked cells, one bit per cell in row-major order
+     */
+    private final long[] bits;
+
+    BlockedCells(Domain domain, double radius) {
+      double width = domain.getWidth(), height = domain.getHeight();
+      cellSize = Math.max(radius / 2, Math.sqrt(width * height / MAX_CELLS));
+      columns = Math.max(1, (int) Math.ceil(width / cellSize));
+      rows = Math.max(1, (int) Math.ceil(height / cellSize));
+      bits = new long[(int) (((long) columns * rows + 63) >>> 6)];
+      // half diagonal is enlarged to absorb rounding when walking cells
+      double threshold = radius - cellSize * Math.sqrt(0.5) * (1 + SLACK);
+      for (Obstacle obstacle : domain.getObstacles()) {
+        Shape shape = obstacle.shape();
+        BoundingBox box = shape.getBoundingBox();
+        int c0 = Math.max(0, (int) Math.floor((box.minX() - radius) / cellSize));
+        int c1 = Math.min(columns - 1, (int) Math.floor((box.maxX() + radius) / cellSize));
+        int r0 = Math.max(0, (int) Math.floor((box.minY() - radius) / cellSize));
+        int r1 = Math.min(rows - 1, (int) Math.floor((box.maxY() + radius) / cellSize));
+        for (int r = r0; r <= r1; r++) {
+          for (int c = c0; c <= c1; c++) {
+            if (shape.signedDistance((c + 0.5) * cellSize, (r + 0.5) * cellSize) < threshold) {
+              int cell = r * columns + c;
+              bits[cell >>> 6] |= 1L << cell;
+            }
+          }
+        }
+      }
+    }
+
+    /**
+     * Checks whether a segment crosses some marked cell, walking the cells it crosses in order.
+     */
+    boolean crosses(double x0, double y0, double x1, double y1) {
+      double dx = x1 - x0, dy = y1 - y0;
+      // clip segment to the grid
+      double t0 = 0, t1 = 1;
+      if (dx != 0) {
+        double a = -x0 / dx, b = (columns * cellSize - x0) / dx;
+        t0 = Math.max(t0, Math.min(a, b));
+        t1 = Math.min(t1, Math.max(a, b));
+      } else if (x0 < 0 || x0 > columns * cellSize) {
+        return false;
+      }
+      if (dy != 0) {
+        double a = -y0 / dy, b = (rows * cellSize - y0) / dy;
+        t0 = Math.max(t0, Math.min(a, b));
+        t1 = Math.min(t1, Math.max(a, b));
+      } else if (y0 < 0 || y0 > rows * cellSize) {
+        return false;
+      }
+      if (!(t0 <= t1)) {
+        return false;
+      }
+      int column = Math.min(columns - 1, Math.max(0, (int) Math.floor((x0 + t0 * dx) / cellSize)));
+      int row = Math.min(rows - 1, Math.max(0, (int) Math.floor((y0 + t0 * dy) / cellSize)));
+      int stepColumn = dx > 0 ? 1 : -1, stepRow = dy > 0 ? 1 : -1;
+      double nextX = dx == 0 ? Double.POSITIVE_INFINITY : ((column + (dx > 0 ? 1 : 0)) * cellSize - x0) / dx;
+      double nextY = dy == 0 ? Double.POSITIVE_INFINITY : ((row + (dy > 0 ? 1 : 0)) * cellSize - y0) / dy;
+      double deltaX = cellSize / Math.abs(dx), deltaY = cellSize / Math.abs(dy);
+      while (true) {
+        int cell = row * columns + column;
+        if ((bits[cell >>> 6] & (1L << cell)) != 0) {
+          return true;
+        }
+        if (Math.min(nextX, nextY) > t1) {
+          return false;
+        }
+        if (nextX < nextY) {
+          column += stepColumn;
+          nextX += deltaX;
+        } else {
+          row += stepRow;
+          nextY += deltaY;
+        }
+        if (column < 0 || column >= columns || row < 0 || row >= rows) {
+          return false;
+        }
+      }
+    }
+
+    long memoryFootprint() {
+      return MemoryFootprint.object(Double.BYTES + 2 * Integer.BYTES + MemoryFootprint.REFERENCE)
+          + MemoryFootprint.array(bits.length, Long.BYTES);
+    }
+  }
+
+  /**
+   * Returns the boundary of a shape inflated by a clearance, as counterclockwise vertices along with
+   * whether each one is convex (nonzero).
+   */
+  private static double[][] inflatedRing(Shape shape, double clearance) {
+    double[] xs, ys;
+    if (shape instanceof Shape.Circle circle) {
+      // octagon circumscribed around inflated circle
+      double r = (circle.getRadius() + clearance) / Math.cos(Math.PI / 8);
+      xs = new double[8];
+      ys = new double[8];
+      double[] convex = new double[8];
+      for (int k = 0; k < 8; k++) {
+        xs[k] = circle.getX() + r * Math.cos(k * Math.PI / 4);
+        ys[k] = circle.getY() + r * Math.sin(k * Math.PI / 4);
+        convex[k] = 1;
+      }
+      return new double[][]{xs, ys, convex};
+    } else if (shape instanceof Shape.Rectangle rectangle) {
+      double left = rectangle.getLeft(), bottom = rectangle.getBottom();
+      double right = left + rectangle.getWidth(), top = bottom + rectangle.getHeight();
+      xs = new double[]{left, right, right, left};
+      ys = new double[]{bottom, bottom, top, top};
+    } else {
+      List<Point2D> points = ((Shape.Polygon) shape).getPoints();
+      int n = points.size();
+      while (n > 1 && points.get(n - 1).equals(points.get(0))) {
+        n--;
+      }
+      xs = new double[n];
+      ys = new double[n];
+      double area = 0;
+      for (int i = 0; i < n; i++) {
+        xs[i] = points.get(i).getX();
+        ys[i] = points.get(i).getY();
+      }
+      for (int i = 0, j = n - 1; i < n; j = i++) {
+        area += xs[j] * ys[i] - xs[i] * ys[j];
+      }
+      if (area < 0) {
+        reverse(xs);
+        reverse(ys);
+      }
+    }
+    // move each vertex to the corner of the boundary with edges shifted outwards by clearance
+    int n = xs.length;
+    double[] inflatedXs = new double[n], inflatedYs = new double[n], convex = new double[n];
+    for (int i = 0; i < n; i++) {
+      int previous = (i + n - 1) % n, next = (i + 1) % n;
+      double ax = xs[i] - xs[previous], ay = ys[i] - ys[previous];
+      double bx = xs[next] - xs[i], by = ys[next] - ys[i];
+      double la = Math.hypot(ax, ay), lb = Math.hypot(bx, by);
+      if (la == 0 || lb == 0) {
+        inflatedXs[i] = xs[i];
+        inflatedYs[i] = ys[i];
+        continue;
+      }
+      // outward normals of both edges
+      double n1x = ay / la, n1y = -ax / la, n2x = by / lb, n2y = -bx / lb;
+      double scale = clearance / (1 + n1x * n2x + n1y * n2y);
+      inflatedXs[i] = xs[i] + scale * (n1x + n2x);
+      inflatedYs[i] = ys[i] + scale * (n1y + n2y);
+      convex[i] = ax * by - ay * bx > 0 ? 1 : 0;
+    }
+    return new double[][]{inflatedXs, inflatedYs, convex};
+  }
+
+  private static void reverse(double[] values) {
+    for (int i = 0, j = values.length - 1; i < j; i++, j--) {
+      double value = values[i];
+      values[i] = values[j];
+      values[j] = value;
+    }
+  }
+
+  /**
+   * Checks whether a segment from a corner towards a point is tangent to the boundary at the corner,
+   * i.e. whether both neighbors of the corner lie on the same side of the line, so that shortest paths
+   * may use it.
+   */
+  private static boolean isTangent(double[] corner, double x, double y) {
+    double dx = x - corner[0], dy = y - corner[1];
+    double previous = dx * (corner[3] - corner[1]) - dy * (corner[2] - corner[0]);
+    double next = dx * (corner[5] - corner[1]) - dy * (corner[4] - corner[0]);
+    return previous * next >= 0;
+  }
+
+  /**
+   * Computes the walking distances from all nodes to the nearest of some nodes (Dijkstra), and the
+   * candidate nodes of each cell.
+   */
+  private Table table(int[] targets) {
+    int n = xs.length;
+    double[] distances = new double[n];
+    Arrays.fill(distances, Double.POSITIVE_INFINITY);
+    int[] next = new int[n];
+    Arrays.fill(next, -1);
+    PriorityQueue<double[]> open = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+    for (int target : targets) {
+      distances[target] = 0;
+      open.add(new double[]{0, target});
+    }
+    while (!open.isEmpty()) {
+      double[] entry = open.poll();
+      int node = (int) entry[1];
+      if (entry[0] > distances[node]) {
+        continue;
+      }
+      for (int e = edgeOffsets[node]; e < edgeOffsets[node + 1]; e++) {
+        int other = edgeTargets[e];
+        double distance = distances[node] + Math.hypot(xs[other] - xs[node], ys[other] - ys[node]);
+        if (distance < distances[other]) {
+          distances[other] = distance;
+          next[other] = node;
+          open.add(new double[]{distance, other});
+        }
+      }
+    }
+    float[] compact = new float[n];
+    long[] order = new long[n];
+    int reachable = 0;
+    for (int i = 0; i < n; i++) {
+      compact[i] = (float) distances[i];
+      if (compact[i] < Float.POSITIVE_INFINITY) {
+        order[reachable++] = ((long) Float.floatToIntBits(compact[i]) << 32) | i;
+      }
+    }
+    Arrays.sort(order, 0, reachable);
+    int[] byDistance = new int[reachable];
+    for (int k = 0; k < reachable; k++) {
+      byDistance[k] = (int) order[k];
+    }
+
+    // keep, for each cell, the nodes with smallest lower bounds, and the lower bound of the next one
+    int count = Math.min(CANDIDATES, reachable);
+    int[] candidates = new int[columns * rows * count];
+    float[] cutoffs = new float[columns * rows];
+    int[] nodes = new int[count + 1];
+    double[] bounds = new double[count + 1];
+    for (int row = 0; row < rows; row++) {
+      for (int column = 0; column < columns; column++) {
+        int kept = 0;
+        for (int i : byDistance) {
+          if (kept == count + 1 && compact[i] >= bounds[count]) {
+            // bounds of this node and the following ones are no smaller than its walking distance
+            break;
+          }
+          double bound = lowerBound(i, column, row, compact);
+          if (kept == count + 1 && bound >= bounds[count]) {
+            continue;
+          }
+          int k = kept == count + 1 ? count : kept++;
+          for (; k > 0 && bounds[k - 1] > bound; k--) {
+            nodes[k] = nodes[k - 1];
+            bounds[k] = bounds[k - 1];
+          }
+          nodes[k] = i;
+          bounds[k] = bound;
+        }
+        int cell = row * columns + column;
+        System.arraycopy(nodes, 0, candidates, cell * count, count);
+        if (kept <= count) {
+          cutoffs[cell] = Float.POSITIVE_INFINITY;
+        } else {
+          float cutoff = (float) bounds[count];
+          cutoffs[cell] = cutoff > bounds[count] ? Math.nextDown(cutoff) : cutoff;
+        }
+      }
+    }
+    return new Table(compact, next, byDistance, count, candidates, cutoffs);
+  }
+
+  /**
+   * Returns a lower bound on the walking distance through a node from points in a cell of the grid.
+   */
+  private double lowerBound(int node, int column, int row, float[] distances) {
+    double dx = Math.max(Math.max(column * cellSize - xs[node], xs[node] - (column + 1) * cellSize), 0);
+    double dy = Math.max(Math.max(row * cellSize - ys[node], ys[node] - (row + 1) * cellSize), 0);
+    return Math.sqrt(dx * dx + dy * dy) + distances[node];
+  }
+
+  /**
+   * Returns the walking distance from a point through a node, if the node can be reached from it.
+   */
+  private double bound(int node, double x, double y, float[] distances) {
+    double dx = xs[node] - x, dy = ys[node] - y;
+    return Math.sqrt(dx * dx + dy * dy) + distances[node];
+  }
+
+  /**
+   * Returns the version of the domain the graph was built for.
+   *
+   * @return the version of the domain.
+   */
+  long version() {
+    return version;
+  }
+
+  /**
+   * Returns the distance kept from obstacles.
+   *
+   * @return the clearance.
+   */
+  public double getClearance() {
+    return clearance;
+  }
+
+  /**
+   * Returns the number of nodes in the graph.
+   *
+   * @return the number of nodes.
+   */
+  public int size() {
+    return xs.length;
+  }
+
+  /**
+   * Returns the number of edges in the graph.
+   *
+   * @return the number of edges.
+   */
+  public int edgeCount() {
+    return edgeTargets.length / 2;
+  }
+
+  /**
+   * Checks whether a disc with the clearance radius can move along a segment without meeting any obstacle.
+   */
+  private boolean isClear(double x0, double y0, double x1, double y1) {
+    return !blockedCells.crosses(x0, y0, x1, y1) && domain.sweep(x0, y0, x1, y1, clearance * (1 - SLACK)) == null;
+  }
+
+  /**
+   * Checks whether a point is far enough from obstacles for a disc with the clearance radius centered
+   * at it not to meet any of them. No segment starting at other points is clear.
+   */
+  private boolean isFree(double x, double y) {
+    return domain.signedDistance(x, y) >= clearance * (1 - SLACK);
+  }
+
+  /**
+   * Finds the node reachable from a point through which the walking distance to an access is shortest.
+   * The candidates of the cell containing the point are checked by increasing lower bound on distance,
+   * and the search is over if the best of them is no worse than the cutoff of the cell. Otherwise, the
+   * remaining nodes are checked in bands of walking distance through them of doubling width, until the
+   * best node found is no worse than the end of the band.
+   *
+   * @return the best node, or -1 if no node leading to the access is reachable.
+   */
+  private int bestNode(double x, double y, Table table) {
+    if (!isFree(x, y)) {
+      return -1;
+    }
+    float[] distances = table.distances();
+    int best = -1;
+    double bestDistance = Double.POSITIVE_INFINITY;
+    int column = -1, row = -1;
+    double cutoff = Double.NEGATIVE_INFINITY;
+    if (x >= 0 && x <= columns * cellSize && y >= 0 && y <= rows * cellSize) {
+      column = Math.min(columns - 1, (int) (x / cellSize));
+      row = Math.min(rows - 1, (int) (y / cellSize));
+      int cell = row * columns + column, count = table.candidateCount();
+      for (int k = cell * count; k < (cell + 1) * count; k++) {
+        int i = table.candidates()[k];
+        if (lowerBound(i, column, row, distances) >= bestDistance) {
+          // neither this candidate nor the following ones nor those left out can be better
+          return best;
+        }
+        double bound = bound(i, x, y, distances);
+        if (bound < bestDistance && isClear(x, y, xs[i], ys[i])) {
+          best = i;
+          bestDistance = bound;
+        }
+      }
+      cutoff = table.cutoffs()[cell];
+      if (bestDistance <= cutoff) {
+        return best;
+      }
+    }
+    double band = column >= 0 ? cutoff : 0, width = cellSize;
+    boolean remaining = true;
+    while (bestDistance > band && remaining) {
+      // check nodes through which the walking distance is in [band, limit), and see if any is beyond
+      double limit = band + width;
+      remaining = false;
+      for (int i : table.byDistance()) {
+        if (distances[i] >= bestDistance) {
+          break;
+        }
+        if (distances[i] >= limit) {
+          remaining = true;
+          break;
+        }
+        double bound = bound(i, x, y, distances);
+        if (bound >= limit) {
+          remaining |= bound < bestDistance;
+        } else if (bound >= band && bound < bestDistance
+            && (column < 0 || lowerBound(i, column, row, distances) >= cutoff) && isClear(x, y, xs[i], ys[i])) {
+          // nodes with lower bounds below the cutoff were checked as candidates
+          best = i;
+          bestDistance = bound;
+        }
+      }
+      band = limit;
+      width *= 2;
+    }
+    return best;
+  }
+
+  /**
+   * Returns the walking distance from a point to the nearest access with some id. The point is joined
+   * to the graph through the nodes it can reach keeping the clearance from obstacles, so a point closer
+   * than the clearance to an obstacle cannot reach any access.
+   *
+   * @param x        x-coordinate of point.
+   * @param y        y-coordinate of point.
+   * @param accessId the id of the access.
+   * @return the walking distance to the access, or {@code Double.POSITIVE_INFINITY} if it cannot be
+   * reached.
+   */
+  public double distance(double x, double y, int accessId) {
+    Table table = tables.get(accessId);
+    if (table == null) {
+      return Double.POSITIVE_INFINITY;
+    }
+    int node = bestNode(x, y, table);
+    return node < 0 ? Double.POSITIVE_INFINITY : bound(node, x, y, table.distances());
+  }
+
+  /**
+   * Returns the next waypoint from a point towards the nearest access with some id, i.e. the first
+   * node of the shortest path to the access.
+   *
+   * @param x        x-coordinate of point.
+   * @param y        y-coordinate of point.
+   * @param accessId the id of the access.
+   * @return the next waypoint, or {@code null} if the access cannot be reached.
+   */
+  public Point2D nextWaypoint(double x, double y, int accessId) {
+    Table table = tables.get(accessId);
+    if (table == null) {
+      return null;
+    }
+    int node = bestNode(x, y, table);
+    return node < 0 ? null : new Point2D(xs[node], ys[node]);
+  }
+
+  /**
+   * Returns the shortest path from a point to the nearest access with some id.
+   *
+   * @param x        x-coordinate of start point.
+   * @param y        y-coordinate of start point.
+   * @param accessId the id of the access.
+   * @return waypoints of the path, from the start point to the point of the access where it ends, or
+   * {@code null} if the access cannot be reached.
+   */
+  public List<Point2D> path(double x, double y, int accessId) {
+    Table table = tables.get(accessId);
+    if (table == null) {
+      return null;
+    }
+    int node = bestNode(x, y, table);
+    if (node < 0) {
+      return null;
+    }
+    List<Point2D> path = new ArrayList<>();
+    path.add(new Point2D(x, y));
+    for (; node >= 0; node = table.next()[node]) {
+      path.add(new Point2D(xs[node], ys[node]));
+    }
+    return path;
+  }
+
+  /**
+   * Returns the shortest path between two points (A*). Both points are joined to the graph through
+   * the nodes they can reach keeping the clearance from obstacles, as edges of the graph do.
+   *
+   * @param x0 x-coordinate of start point.
+   * @param y0 y-coordinate of start point.
+   * @param x1 x-coordinate of end point.
+   * @param y1 y-coordinate of end point.
+   * @return waypoints of the path, from the start point to the end point, or {@code null} if the end
+   * point cannot be reached.
+   */
+  public List<Point2D> path(double x0, double y0, double x1, double y1) {
+    if (!isFree(x0, y0) || !isFree(x1, y1)) {
+      return null;
+    }
+    if (isClear(x0, y0, x1, y1)) {
+      return List.of(new Point2D(x0, y0), new Point2D(x1, y1));
+    }
+    int n = xs.length;
+    // nodes from which the end point can be reached, with their distance to it
+    double[] toEnd = new double[n];
+    for (int i = 0; i < n; i++) {
+      toEnd[i] = isClear(xs[i], ys[i], x1, y1) ? Math.hypot(x1 - xs[i], y1 - ys[i])
+          : Double.POSITIVE_INFINITY;
+    }
+    double[] costs = new double[n];
+    Arrays.fill(costs, Double.POSITIVE_INFINITY);
+    int[] previous = new int[n];
+    boolean[] closed = new boolean[n];
+    // entries are {estimate, cost, node}, where node n stands for the end point, reached from node in 4th place
+    PriorityQueue<double[]> open = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+    for (int i = 0; i < n; i++) {
+      if (isClear(x0, y0, xs[i], ys[i])) {
+        costs[i] = Math.hypot(xs[i] - x0, ys[i] - y0);
+        previous[i] = -1;
+        open.add(new double[]{costs[i] + Math.hypot(x1 - xs[i], y1 - ys[i]), costs[i], i});
+      }
+    }
+    int last = -1;
+    while (!open.isEmpty()) {
+      double[] entry = open.poll();
+      int node = (int) entry[2];
+      if (node == n) {
+        last = (int) entry[3];
+        break;
+      }
+      if (closed[node] || entry[1] > costs[node]) {
+        continue;
+      }
+      closed[node] = true;
+      if (toEnd[node] < Double.POSITIVE_INFINITY) {
+        open.add(new double[]{costs[node] + toEnd[node], costs[node] + toEnd[node], n, node});
+      }
+      for (int e = edgeOffsets[node]; e < edgeOffsets[node + 1]; e++) {
+        int other = edgeTargets[e];
+        double cost = costs[node] + Math.hypot(xs[other] - xs[node], ys[other] - ys[node]);
+        if (cost < costs[other]) {
+          costs[other] = cost;
+          previous[other] = node;
+          open.add(new double[]{cost + Math.hypot(x1 - xs[other], y1 - ys[other]), cost, other});
+        }
+      }
+    }
+    if (last < 0) {
+      return null;
+    }
+    List<Point2D> path = new ArrayList<>();
+    path.add(new Point2D(x1, y1));
+    for (int node = last; node >= 0; node = previous[node]) {
+      path.add(new Point2D(xs[node], ys[node]));
+    }
+    path.add(new Point2D(x0, y0));
+    Collections.reverse(path);
+    return path;
+  }
+
+  /**
+   * Estimates the heap memory used by the graph, including its distance tables and the obstacle index of
+   * the snapshot of the domain it took (see {@link MemoryFootprint}).
+   *
+   * @return the estimated number of bytes.
+   */
+  public long memoryFootprint() {
+    long bytes = MemoryFootprint.object(Long.BYTES + 2 * Double.BYTES + 1 + 2 * Integer.BYTES
+        + 7 * MemoryFootprint.REFERENCE)
+        + 2 * MemoryFootprint.array(xs.length, Double.BYTES) + MemoryFootprint.array(edgeOffsets.length, Integer.BYTES)
+        + MemoryFootprint.array(edgeTargets.length, Integer.BYTES) + MemoryFootprint.hashMap(tables.size(), false)
+        + (long) tables.size() * MemoryFootprint.BOXED_INT + blockedCells.memoryFootprint();
+    if (ownsSnapshot) {
+      bytes += domain.obstacleIndex().memoryFootprint();
+    }
+    for (Table table : tables.values()) {
+      bytes += MemoryFootprint.object(Integer.BYTES + 5 * MemoryFootprint.REFERENCE)
+          + MemoryFootprint.array(table.distances().length, Float.BYTES)
+          + MemoryFootprint.array(table.next().length, Integer.BYTES)
+          + MemoryFootprint.array(table.byDistance().length, Integer.BYTES)
+          + MemoryFootprint.array(table.candidates().length, Integer.BYTES)
+          + MemoryFootprint.array(table.cutoffs().length, Float.BYTES);
+    }
+    return bytes;
+  }
+}